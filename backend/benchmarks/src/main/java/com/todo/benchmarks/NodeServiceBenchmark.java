@@ -0,0 +1,101 @@
+package com.todo.benchmarks;
+
+import com.todo.dto.NodePage;
+import com.todo.dto.SearchHit;
+import com.todo.entity.Node;
+import com.todo.service.OutlineImporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The write and search paths of {@code NodeService}, called directly against a loaded outline.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class NodeServiceBenchmark {
+    
+    private static final int BATCH_SIZE = 100;
+    
+    /**
+     * A fresh subtree of {@code size} nodes under a random parent for every delete, so the outline
+     * keeps its size. The statement count of a delete does not grow with {@code size}; its time
+     * shows what the set-based statements cost per row.
+     */
+    @State(Scope.Thread)
+    public static class Subtree {
+        
+        @Param({"10", "100", "1000", "5000"})
+        public int size;
+        
+        long root;
+        
+        @Setup(Level.Invocation)
+        public void create(OutlineState outline) throws IOException {
+            Node created = outline.nodeService.createNode(new Node("doomed", outline.randomParent(), null));
+            if (size > 1) {
+                ByteArrayOutputStream descendants = new ByteArrayOutputStream();
+                new OutlineGenerator(size - 1, outline.depth, outline.fanOut, outline.tagDensity, 0, outline.seed)
+                        .write(descendants);
+                outline.context.getBean(OutlineImporter.class)
+                        .importOutline(created.getId(), new ByteArrayInputStream(descendants.toByteArray()));
+            }
+            root = created.getId();
+        }
+    }
+    
+    @Benchmark
+    public Node moveLeaf(OutlineState outline) {
+        return outline.nodeService.moveNode(outline.randomLeaf(), outline.randomParent(), 0, null);
+    }
+    
+    @Benchmark
+    public void deleteSubtree(OutlineState outline, Subtree subtree) {
+        outline.nodeService.deleteNode(subtree.root, null);
+    }
+    
+    @Benchmark
+    public NodePage searchContent(OutlineState outline) {
+        return outline.nodeService.search(outline.randomWord(), null, null, null, 50, false);
+    }
+    
+    @Benchmark
+    public NodePage searchContentAndTag(OutlineState outline) {
+        return outline.nodeService.search(outline.randomWord(), outline.randomTag(), false, null, 50, false);
+    }
+    
+    @Benchmark
+    public List<SearchHit> searchText(OutlineState outline) {
+        return outline.nodeService.searchText(outline.randomWord() + " " + outline.randomWord(), 20);
+    }
+    
+    @Benchmark
+    public List<Node> batchUpdate(OutlineState outline) {
+        List<Node> nodes = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Node node = new Node(outline.randomWord() + " " + i, null, null);
+            node.setId(outline.randomLeaf());
+            nodes.add(node);
+        }
+        return outline.nodeService.batchUpdate(nodes);
+    }
+}
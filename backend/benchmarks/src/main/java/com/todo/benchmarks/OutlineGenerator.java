@@ -0,0 +1,110 @@
+package com.todo.benchmarks;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic outline in the JSON shape {@code OutlineImporter} reads: trees of nested
+ * {@code children}, added until the requested number of nodes is reached.
+ *
+ * <p>Every internal node has {@code fanOut} children down to {@code depth} levels. Each node carries
+ * {@code tagDensity} tags on average from a fixed set of {@link #TAGS}, a note of {@code noteSize}
+ * characters (none when 0) and content made of {@link #WORDS}, so searches for any word have hits.
+ * The same seed always writes the same outline.
+ */
+public final class OutlineGenerator {
+    
+    static final List<String> WORDS = List.of("plan", "review", "draft", "call", "budget", "release", "fix",
+            "design", "meeting", "invoice", "garden", "travel", "report", "backlog", "deploy", "research");
+    
+    static final List<String> TAGS = List.of("work", "home", "urgent", "someday", "errand", "waiting",
+            "idea", "reading", "health", "finance");
+    
+    private final int nodes;
+    
+    private final int depth;
+    
+    private final int fanOut;
+    
+    private final double tagDensity;
+    
+    private final int noteSize;
+    
+    private final long seed;
+    
+    public OutlineGenerator(int nodes, int depth, int fanOut, double tagDensity, int noteSize, long seed) {
+        if (nodes < 1 || depth < 1 || fanOut < 1 || tagDensity < 0 || tagDensity > TAGS.size() || noteSize < 0) {
+            throw new IllegalArgumentException("Invalid outline shape");
+        }
+        this.nodes = nodes;
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.tagDensity = tagDensity;
+        this.noteSize = noteSize;
+        this.seed = seed;
+    }
+    
+    /**
+     * Writes the outline as one JSON array and returns the number of nodes written.
+     */
+    public int write(OutputStream out) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] remaining = {nodes};
+        try (JsonGenerator json = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartArray();
+            while (remaining[0] > 0) {
+                writeNode(json, random, 1, remaining);
+            }
+            json.writeEndArray();
+        }
+        return nodes;
+    }
+    
+    // Depth first, so a tree is complete before the next root starts and the importer needs no refs
+    private void writeNode(JsonGenerator json, SplittableRandom random, int level, int[] remaining)
+            throws IOException {
+        remaining[0]--;
+        json.writeStartObject();
+        json.writeStringField("content", words(random, 3 + random.nextInt(6), 0));
+        if (noteSize > 0) {
+            json.writeStringField("notes", words(random, Integer.MAX_VALUE, noteSize));
+        }
+        json.writeBooleanField("isCompleted", random.nextInt(10) == 0);
+        json.writeBooleanField("isStarred", random.nextInt(50) == 0);
+        int tagCount = (int) tagDensity + (random.nextDouble() < tagDensity - (int) tagDensity ? 1 : 0);
+        if (tagCount > 0) {
+            json.writeArrayFieldStart("tags");
+            int first = random.nextInt(TAGS.size());
+            for (int i = 0; i < tagCount; i++) {
+                json.writeString(TAGS.get((first + i) % TAGS.size()));
+            }
+            json.writeEndArray();
+        }
+        if (level < depth && remaining[0] > 0) {
+            json.writeArrayFieldStart("children");
+            for (int i = 0; i < fanOut && remaining[0] > 0; i++) {
+                writeNode(json, random, level + 1, remaining);
+            }
+            json.writeEndArray();
+        }
+        json.writeEndObject();
+    }
+    
+    // Up to `count` words, stopping once `length` characters are reached when length is positive
+    private static String words(SplittableRandom random, int count, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count && (length == 0 || text.length() < length); i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS.get(random.nextInt(WORDS.size())));
+        }
+        return length > 0 && text.length() > length ? text.substring(0, length) : text.toString();
+    }
+}
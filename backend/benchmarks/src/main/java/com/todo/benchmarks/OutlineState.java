@@ -0,0 +1,116 @@
+package com.todo.benchmarks;
+
+import com.todo.TodoApplication;
+import com.todo.service.NodeService;
+import com.todo.service.OutlineImporter;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The whole application, started on a random port against its embedded database and loaded with a
+ * generated outline once per trial. Benchmarks pick their targets from {@link #leaves} and
+ * {@link #parents}; leaves are only ever moved under parents, so no move can form a cycle.
+ */
+@State(Scope.Benchmark)
+public class OutlineState {
+    
+    @Param({"10000", "100000", "1000000"})
+    public int nodes;
+    
+    @Param("6")
+    public int depth;
+    
+    @Param("8")
+    public int fanOut;
+    
+    @Param("0.5")
+    public double tagDensity;
+    
+    @Param("200")
+    public int noteSize;
+    
+    @Param("42")
+    public long seed;
+    
+    ConfigurableApplicationContext context;
+    
+    NodeService nodeService;
+    
+    int port;
+    
+    long[] leaves;
+    
+    long[] parents;
+    
+    private SplittableRandom random;
+    
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        context = new SpringApplicationBuilder(TodoApplication.class)
+                .properties("server.port=0",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN")
+                .run();
+        nodeService = context.getBean(NodeService.class);
+        port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+        
+        Path outline = Files.createTempFile("outline", ".json");
+        try {
+            try (OutputStream out = Files.newOutputStream(outline)) {
+                new OutlineGenerator(nodes, depth, fanOut, tagDensity, noteSize, seed).write(out);
+            }
+            try (InputStream in = Files.newInputStream(outline)) {
+                context.getBean(OutlineImporter.class).importOutline(null, in);
+            }
+        } finally {
+            Files.delete(outline);
+        }
+        
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        parents = toArray(jdbc.queryForList(
+                "SELECT DISTINCT parent_id FROM nodes WHERE parent_id IS NOT NULL ORDER BY parent_id", Long.class));
+        leaves = toArray(jdbc.queryForList("SELECT id FROM nodes n WHERE NOT EXISTS "
+                + "(SELECT 1 FROM nodes c WHERE c.parent_id = n.id) ORDER BY id", Long.class));
+        random = new SplittableRandom(seed);
+    }
+    
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+    
+    long randomLeaf() {
+        return leaves[random.nextInt(leaves.length)];
+    }
+    
+    long randomParent() {
+        return parents[random.nextInt(parents.length)];
+    }
+    
+    String randomWord() {
+        return OutlineGenerator.WORDS.get(random.nextInt(OutlineGenerator.WORDS.size()));
+    }
+    
+    String randomTag() {
+        return OutlineGenerator.TAGS.get(random.nextInt(OutlineGenerator.TAGS.size()));
+    }
+    
+    private static long[] toArray(List<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+}
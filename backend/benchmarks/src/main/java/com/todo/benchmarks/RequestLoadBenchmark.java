@@ -0,0 +1,118 @@
+package com.todo.benchmarks;
+
+import com.todo.TodoApplication;
+import com.todo.entity.Node;
+import com.todo.service.NodeService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bursts of concurrent reads and writes, far more than there are pooled connections, served on
+ * platform or on virtual request threads. The bulkhead queues what the pool cannot take, so every
+ * request of a burst must succeed; the score is how long a whole burst takes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx2g"})
+public class RequestLoadBenchmark {
+    
+    private static final int NODES = 50;
+    
+    @State(Scope.Benchmark)
+    public static class Server {
+        
+        // virtual needs a Java 21 runtime
+        @Param({"platform", "virtual"})
+        public String threads;
+        
+        @Param("4")
+        public int poolSize;
+        
+        @Param("1000")
+        public int burst;
+        
+        ConfigurableApplicationContext context;
+        
+        HttpClient http;
+        
+        List<URI> reads = new ArrayList<>();
+        
+        List<URI> writes = new ArrayList<>();
+        
+        @Setup(Level.Trial)
+        public void start() {
+            boolean virtual = threads.equals("virtual");
+            if (virtual && Runtime.version().feature() < 21) {
+                throw new IllegalStateException("Virtual threads need Java 21, this is " + Runtime.version());
+            }
+            context = new SpringApplicationBuilder(TodoApplication.class)
+                    .properties("server.port=0",
+                            "spring.threads.virtual.enabled=" + virtual,
+                            "spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                            "todo.bulkhead.max-wait-ms=30000",
+                            "spring.jpa.show-sql=false",
+                            "logging.level.root=WARN")
+                    .run();
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            NodeService nodeService = context.getBean(NodeService.class);
+            for (int i = 0; i < NODES; i++) {
+                String node = "http://localhost:" + port + "/api/nodes/"
+                        + nodeService.createNode(new Node("node " + i, null, null)).getId();
+                reads.add(URI.create(node));
+                writes.add(URI.create(node + "/star"));
+            }
+            http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+        }
+        
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+    
+    @Benchmark
+    public int burstOfReadsAndWrites(Server server) {
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(server.burst);
+        for (int i = 0; i < server.burst; i++) {
+            HttpRequest request = i % 2 == 0
+                    ? HttpRequest.newBuilder(server.reads.get(i % NODES)).GET().build()
+                    : HttpRequest.newBuilder(server.writes.get(i % NODES))
+                            .method("PATCH", HttpRequest.BodyPublishers.noBody()).build();
+            responses.add(server.http.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        int served = 0;
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            int status = response.join().statusCode();
+            if (status != 200) {
+                throw new IllegalStateException("Request answered with " + status);
+            }
+            served++;
+        }
+        return served;
+    }
+}
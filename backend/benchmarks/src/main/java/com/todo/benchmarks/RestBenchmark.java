@@ -0,0 +1,86 @@
+package com.todo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same outline through the REST layer: HTTP, JSON, conditional requests and the bulkhead on
+ * top of the service calls, over a kept-alive local connection.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class RestBenchmark {
+    
+    @State(Scope.Thread)
+    public static class Client {
+        
+        HttpClient http;
+        
+        String base;
+        
+        @Setup(Level.Trial)
+        public void connect(OutlineState outline) {
+            http = HttpClient.newHttpClient();
+            base = "http://localhost:" + outline.port + "/api/nodes";
+        }
+        
+        String send(HttpRequest.Builder request) throws IOException, InterruptedException {
+            HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() >= 400) {
+                throw new IllegalStateException(response.statusCode() + " " + response.body());
+            }
+            return response.body();
+        }
+        
+        HttpRequest.Builder get(String path) {
+            return HttpRequest.newBuilder(URI.create(base + path)).GET();
+        }
+    }
+    
+    @Benchmark
+    public String getNode(OutlineState outline, Client client) throws IOException, InterruptedException {
+        return client.send(client.get("/" + outline.randomLeaf()));
+    }
+    
+    @Benchmark
+    public String getChildren(OutlineState outline, Client client) throws IOException, InterruptedException {
+        return client.send(client.get("/" + outline.randomParent() + "/children"));
+    }
+    
+    @Benchmark
+    public String toggleStar(OutlineState outline, Client client) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(client.base + "/" + outline.randomLeaf() + "/star"))
+                .method("PATCH", HttpRequest.BodyPublishers.noBody()));
+    }
+    
+    @Benchmark
+    public String moveLeaf(OutlineState outline, Client client) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(client.base + "/" + outline.randomLeaf()
+                        + "/move?parentId=" + outline.randomParent() + "&position=0"))
+                .PUT(HttpRequest.BodyPublishers.noBody()));
+    }
+    
+    @Benchmark
+    public String search(OutlineState outline, Client client) throws IOException, InterruptedException {
+        return client.send(client.get("/search?q=" + outline.randomWord() + "&tag=" + outline.randomTag()));
+    }
+}
@@ -0,0 +1,101 @@
+package com.todo.controller;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps how many node API requests work against the database at once.
+ *
+ * <p>Every request under {@code /api/nodes} takes a permit before it reaches the controller and
+ * returns it when the response is done. By default there are as many permits as pooled
+ * connections, so requests past that wait here, in a fair queue, instead of inside the pool where
+ * a request holding one connection can starve waiting for a second. On virtual threads a waiting
+ * request costs next to nothing, so bursts of thousands queue here cheaply. One that has waited
+ * {@code todo.bulkhead.max-wait-ms} is answered with 503 and {@code Retry-After}.
+ *
+ * <p>The event stream is left out: it holds its connection open for minutes but touches the
+ * database only through the change feed, which clients fetch as separate requests. A streamed
+ * export gives its permit back once the response is handed to the async writer.
+ */
+@Component
+public class DatabaseBulkhead extends OncePerRequestFilter {
+    
+    static final String PREFIX = "/api/nodes";
+    
+    static final String EVENTS = PREFIX + "/events";
+    
+    private final Semaphore permits;
+    
+    private final int maxConcurrent;
+    
+    private final long maxWaitMillis;
+    
+    private final AtomicLong rejected = new AtomicLong();
+    
+    public DatabaseBulkhead(@Value("${todo.bulkhead.max-concurrent:${spring.datasource.hikari.maximum-pool-size:10}}")
+                            int maxConcurrent,
+                            @Value("${todo.bulkhead.max-wait-ms:5000}") long maxWaitMillis) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith(PREFIX) || path.equals(EVENTS);
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.incrementAndGet();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many concurrent requests");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+    
+    /**
+     * Requests currently holding a permit.
+     */
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+    
+    /**
+     * Requests currently waiting for a permit.
+     */
+    public int getQueued() {
+        return permits.getQueueLength();
+    }
+    
+    public long getRejected() {
+        return rejected.get();
+    }
+}
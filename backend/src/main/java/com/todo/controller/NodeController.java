@@ -1,51 +1,169 @@
 package com.todo.controller;
 
+import com.todo.dto.BatchResult;
+import com.todo.dto.ExpandState;
+import com.todo.dto.ImportResult;
+import com.todo.dto.NodeChanges;
+import com.todo.dto.NodeFields;
+import com.todo.dto.NodeOperation;
+import com.todo.dto.NodePage;
+import com.todo.dto.NodeTree;
+import com.todo.dto.SearchHit;
 import com.todo.entity.Node;
+import com.todo.repository.NodeStateRow;
+import com.todo.service.ChangeBroadcaster;
 import com.todo.service.NodeService;
+import com.todo.service.NodeTreeCache;
+import com.todo.service.OutlineExporter;
+import com.todo.service.OutlineImporter;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/nodes")
-@CrossOrigin(origins = "http://localhost:4200")
+@CrossOrigin(origins = "http://localhost:4200", exposedHeaders = {NodeController.NEXT_CURSOR, NodeController.TOTAL_COUNT, HttpHeaders.ETAG})
 public class NodeController {
     
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+    
+    static final String TOTAL_COUNT = "X-Total-Count";
+    
     private final NodeService nodeService;
     
-    public NodeController(NodeService nodeService) {
+    private final OutlineExporter outlineExporter;
+    
+    private final OutlineImporter outlineImporter;
+    
+    private final ChangeBroadcaster broadcaster;
+    
+    public NodeController(NodeService nodeService, OutlineExporter outlineExporter, OutlineImporter outlineImporter,
+                          ChangeBroadcaster broadcaster) {
         this.nodeService = nodeService;
+        this.outlineExporter = outlineExporter;
+        this.outlineImporter = outlineImporter;
+        this.broadcaster = broadcaster;
     }
     
     @GetMapping
-    public List<Node> getRootNodes() {
-        return nodeService.getAllRootNodes();
+    public ResponseEntity<List<Node>> getRootNodes(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "200") int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return revisioned(ifNoneMatch, () -> pageResponse(nodeService.getChildrenPage(null, cursor, limit)));
     }
     
     @GetMapping("/{id}/children")
-    public List<Node> getChildren(@PathVariable Long id) {
-        return nodeService.getChildren(id);
+    public ResponseEntity<List<Node>> getChildren(
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "200") int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return revisioned(ifNoneMatch, () -> pageResponse(nodeService.getChildrenPage(id, cursor, limit)));
+    }
+    
+    @GetMapping("/starred")
+    public ResponseEntity<List<Node>> getStarred(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "200") int limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return revisioned(ifNoneMatch, () -> pageResponse(nodeService.getStarred(cursor, limit, includeTotal)));
+    }
+    
+    // Delta sync: what changed since the client's cursor, deletes included
+    @GetMapping("/changes")
+    public ResponseEntity<NodeChanges> getChanges(
+            @RequestParam(required = false) String since,
+            @RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(nodeService.getChanges(since, limit));
+    }
+    
+    // Live updates: server-sent "changes" batches, or "resync" when the client fell too far behind
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events() {
+        return broadcaster.subscribe();
+    }
+    
+    // fields= trims every node read, see NodeFieldsAdvice; on trees it also decides which columns are read
+    @GetMapping("/tree")
+    public ResponseEntity<List<NodeTree>> getTree(
+            @RequestParam(required = false) Integer depth,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        NodeFields selected = NodeFields.parse(fields);
+        // Trees skip collapsed children, so buffered expand state is written before the read starts
+        nodeService.flushExpandState();
+        return revisioned(ifNoneMatch, () -> ResponseEntity.ok(nodeService.getForest(depth, selected)));
+    }
+    
+    @GetMapping("/{id}/tree")
+    public ResponseEntity<NodeTree> getSubtree(
+            @PathVariable Long id,
+            @RequestParam(required = false) Integer depth,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        NodeFields selected = NodeFields.parse(fields);
+        nodeService.flushExpandState();
+        return revisioned(ifNoneMatch, () -> ResponseEntity.ok(nodeService.getTree(id, depth, selected)));
+    }
+    
+    @GetMapping("/cache/stats")
+    public NodeTreeCache.Stats getCacheStats() {
+        return nodeService.getCacheStats();
+    }
+    
+    @GetMapping("/{id}/descendants/count")
+    public ResponseEntity<Long> countDescendants(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return revisioned(ifNoneMatch, () -> ResponseEntity.ok(nodeService.countDescendants(id)));
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<Node> getNode(@PathVariable Long id) {
-        return ResponseEntity.ok(nodeService.getNodeById(id));
+    public ResponseEntity<Node> getNode(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // served from the tree cache's detached copies when the node's siblings are cached
+        Node node = nodeService.getNode(id);
+        String etag = nodeTag(node);
+        // a mirror shows its original, whose edits leave the mirror's own version where it was
+        if (node.getMirrorId() == null && matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(node);
     }
     
     @PostMapping
     public ResponseEntity<Node> createNode(@RequestBody Node node) {
-        return ResponseEntity.ok(nodeService.createNode(node));
+        return versioned(nodeService.createNode(node));
     }
     
     @PutMapping("/{id}")
-    public ResponseEntity<Node> updateNode(@PathVariable Long id, @RequestBody Node node) {
-        return ResponseEntity.ok(nodeService.updateNode(id, node));
+    public ResponseEntity<Node> updateNode(
+            @PathVariable Long id,
+            @RequestBody Node node,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return versioned(nodeService.updateNode(id, node, expectedVersion(ifMatch)));
     }
     
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteNode(@PathVariable Long id) {
-        nodeService.deleteNode(id);
+    public ResponseEntity<Void> deleteNode(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        nodeService.deleteNode(id, expectedVersion(ifMatch));
         return ResponseEntity.ok().build();
     }
     
@@ -53,29 +171,48 @@ public class NodeController {
     public ResponseEntity<Node> moveNode(
             @PathVariable Long id,
             @RequestParam(required = false) Long parentId,
-            @RequestParam(required = false) Integer position) {
-        return ResponseEntity.ok(nodeService.moveNode(id, parentId, position));
+            @RequestParam(required = false) Integer position,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return versioned(nodeService.moveNode(id, parentId, position, expectedVersion(ifMatch)));
     }
     
     // New endpoints for enhanced features
     @PatchMapping("/{id}/complete")
-    public ResponseEntity<Node> toggleComplete(@PathVariable Long id) {
-        return ResponseEntity.ok(nodeService.toggleComplete(id));
+    public ResponseEntity<NodeStateRow> toggleComplete(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return versioned(nodeService.toggleComplete(id, expectedVersion(ifMatch)));
     }
     
+    // Buffered and written behind, hence 202; pass expanded to set instead of toggle (e.g. expand-all)
     @PatchMapping("/{id}/expand")
-    public ResponseEntity<Node> toggleExpand(@PathVariable Long id) {
-        return ResponseEntity.ok(nodeService.toggleExpand(id));
+    public ResponseEntity<ExpandState> toggleExpand(
+            @PathVariable Long id,
+            @RequestParam(required = false) Boolean expanded) {
+        return ResponseEntity.accepted().body(nodeService.setExpanded(id, expanded));
     }
     
     @PatchMapping("/{id}/star")
-    public ResponseEntity<Node> toggleStar(@PathVariable Long id) {
-        return ResponseEntity.ok(nodeService.toggleStar(id));
+    public ResponseEntity<NodeStateRow> toggleStar(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return versioned(nodeService.toggleStar(id, expectedVersion(ifMatch)));
     }
     
     @PatchMapping("/{id}/notes")
-    public ResponseEntity<Node> updateNotes(@PathVariable Long id, @RequestBody String notes) {
-        return ResponseEntity.ok(nodeService.updateNotes(id, notes));
+    public ResponseEntity<NodeStateRow> updateNotes(
+            @PathVariable Long id,
+            @RequestBody String notes,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return versioned(nodeService.updateNotes(id, notes, expectedVersion(ifMatch)));
+    }
+    
+    @PatchMapping("/{id}/complete-subtree")
+    public ResponseEntity<NodeStateRow> setSubtreeCompleted(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "true") boolean completed,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return versioned(nodeService.setSubtreeCompleted(id, completed, expectedVersion(ifMatch)));
     }
     
     @PostMapping("/batch")
@@ -83,12 +220,144 @@ public class NodeController {
         return ResponseEntity.ok(nodeService.batchUpdate(nodes));
     }
     
+    @PostMapping("/operations")
+    public ResponseEntity<BatchResult> applyOperations(@RequestBody List<NodeOperation> operations) {
+        return ResponseEntity.ok(nodeService.applyOperations(operations));
+    }
+    
     @GetMapping("/search")
     public ResponseEntity<List<Node>> search(
             @RequestParam(required = false) String q,
             @RequestParam(required = false) String tag,
-            @RequestParam(required = false) Boolean completed) {
-        return ResponseEntity.ok(nodeService.search(q, tag, completed));
+            @RequestParam(required = false) Boolean completed,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return pageResponse(nodeService.search(q, tag, completed, cursor, limit, includeTotal));
+    }
+    
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) Long rootId) {
+        OutlineExporter.Format exportFormat = OutlineExporter.Format.fromName(format);
+        if (rootId != null) {
+            // fail before the response is committed rather than halfway through the stream
+            nodeService.getNode(rootId);
+        }
+        ContentDisposition attachment = ContentDisposition.attachment()
+                .filename("nodeflow-export." + exportFormat.extension())
+                .build();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, attachment.toString())
+                .body(out -> outlineExporter.export(rootId, exportFormat, out));
+    }
+    
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ImportResult> importOutline(
+            @RequestParam(required = false) Long parentId,
+            InputStream body) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(outlineImporter.importOutline(parentId, body));
+    }
+    
+    @GetMapping("/search/text")
+    public ResponseEntity<List<SearchHit>> searchText(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(nodeService.searchText(q, limit));
+    }
+    
+    // Another request changed the node between this one's read and its write
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleConcurrentUpdate(OptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+    
+    /**
+     * Tags a list or tree read with the document revision. The revision is read before the data,
+     * so a write landing in between leaves the tag older than the body and the next request
+     * refetches; a matching If-None-Match is answered with 304 without loading anything.
+     * The tag is weak: the same revision goes out in JSON, Smile or CBOR, gzipped or not, and the
+     * server only compresses responses whose tag is weak.
+     */
+    private <T> ResponseEntity<T> revisioned(String ifNoneMatch, Supplier<ResponseEntity<T>> read) {
+        String etag = "W/\"" + nodeService.getDocumentRevision() + "\"";
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(CacheControl.noCache()).build();
+        }
+        ResponseEntity<T> response = read.get();
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .body(response.getBody());
+    }
+    
+    // A single node is tagged with its own version, which is what If-Match on writes compares
+    private static ResponseEntity<Node> versioned(Node node) {
+        return ResponseEntity.ok().eTag(versionTag(node.getVersion())).cacheControl(CacheControl.noCache()).body(node);
+    }
+    
+    private static ResponseEntity<NodeStateRow> versioned(NodeStateRow state) {
+        return ResponseEntity.ok().eTag(versionTag(state.getVersion())).cacheControl(CacheControl.noCache())
+                .body(state);
+    }
+    
+    private static String versionTag(Long version) {
+        return "\"" + version + "\"";
+    }
+    
+    // Writes below a node change its counters but not its version, so the read tag carries both.
+    // The version leads, and If-Match only looks at that part.
+    private static String nodeTag(Node node) {
+        return "\"" + node.getVersion() + "." + node.getChildCount() + "." + node.getDescendantCount() + "."
+                + node.getCompletedDescendantCount() + "\"";
+    }
+    
+    // Weak comparison, as If-None-Match calls for
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaque(tag).equals(opaque(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+    
+    // The version named by If-Match, null when absent or "*". Anything else cannot match a node's tag.
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            int end = tag.indexOf('.');
+            try {
+                return Long.valueOf(tag.substring(1, end > 0 ? end : tag.length() - 1));
+            } catch (NumberFormatException e) {
+                // falls through to the precondition failure
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "If-Match does not name a node version: " + ifMatch);
+    }
+    
+    private static ResponseEntity<List<Node>> pageResponse(NodePage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR, page.nextCursor());
+        }
+        if (page.total() != null) {
+            response.header(TOTAL_COUNT, page.total().toString());
+        }
+        return response.body(page.items());
     }
 }
-
@@ -0,0 +1,34 @@
+package com.todo.controller;
+
+import com.todo.dto.NodeFields;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+
+/**
+ * Writes only the node properties named by a {@code fields=} parameter, whichever node API
+ * response carries them: single nodes, pages, trees and batch results alike, in every Jackson
+ * format. Responses without the parameter keep every property.
+ */
+@RestControllerAdvice(assignableTypes = NodeController.class)
+public class NodeFieldsAdvice extends AbstractMappingJacksonResponseBodyAdvice {
+    
+    static final String PARAMETER = "fields";
+    
+    @Override
+    protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType,
+                                           MethodParameter returnType, ServerHttpRequest request,
+                                           ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest servletRequest) {
+            String fields = servletRequest.getServletRequest().getParameter(PARAMETER);
+            if (fields != null) {
+                bodyContainer.setFilters(NodeFields.parse(fields).filters());
+            }
+        }
+    }
+}
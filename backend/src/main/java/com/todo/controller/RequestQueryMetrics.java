@@ -0,0 +1,68 @@
+package com.todo.controller;
+
+import com.todo.repository.QueryCounter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Records how much database work each API request did, per endpoint: the statements it executed,
+ * the rows they returned and the entities Hibernate built from them, as the distribution summaries
+ * {@code todo.request.statements}, {@code todo.request.rows} and {@code todo.request.entities}
+ * tagged like {@code http.server.requests}. Each request is also logged at debug level.
+ *
+ * <p>Only work on the request thread is counted; a streamed export or the event stream writes from
+ * other threads after the request has returned.
+ */
+@Component
+public class RequestQueryMetrics extends OncePerRequestFilter {
+    
+    private static final Logger log = LoggerFactory.getLogger(RequestQueryMetrics.class);
+    
+    private final MeterRegistry registry;
+    
+    public RequestQueryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + "/api/");
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        QueryCounter.Scope scope = QueryCounter.open();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            scope.close();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+            record("todo.request.statements", request, uri, scope.getStatements());
+            record("todo.request.rows", request, uri, scope.getRows());
+            record("todo.request.entities", request, uri, scope.getEntities());
+            log.debug("{} {}: {} statements, {} rows, {} entities", request.getMethod(), uri,
+                    scope.getStatements(), scope.getRows(), scope.getEntities());
+        }
+    }
+    
+    private void record(String name, HttpServletRequest request, String uri, long amount) {
+        DistributionSummary.builder(name)
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(registry)
+                .record(amount);
+    }
+}
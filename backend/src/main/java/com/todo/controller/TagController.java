@@ -0,0 +1,26 @@
+package com.todo.controller;
+
+import com.todo.dto.TagCount;
+import com.todo.service.TagService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/tags")
+@CrossOrigin(origins = "http://localhost:4200")
+public class TagController {
+    
+    private final TagService tagService;
+    
+    public TagController(TagService tagService) {
+        this.tagService = tagService;
+    }
+    
+    // Tag facet counts for the whole outline, or for the subtree under rootId
+    @GetMapping("/counts")
+    public ResponseEntity<List<TagCount>> getCounts(@RequestParam(required = false) Long rootId) {
+        return ResponseEntity.ok(tagService.counts(rootId));
+    }
+}
@@ -0,0 +1,37 @@
+package com.todo.controller;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.todo.dto.NodeFields;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * The API's wire formats: JSON by default, and the binary Smile ({@code application/x-jackson-smile})
+ * and CBOR ({@code application/cbor}) encodings for clients that ask for them in {@code Accept}.
+ * All three are built from the application's Jackson settings, so they write the same properties.
+ */
+@Configuration(proxyBeanMethods = false)
+public class WireFormatConfiguration {
+    
+    // Node carries a property filter; without a field list it writes everything
+    @Bean
+    Jackson2ObjectMapperBuilderCustomizer nodeFieldFilters() {
+        return builder -> builder.filters(NodeFields.ALL_FILTERS);
+    }
+    
+    // The builder is a fresh prototype per injection point, so setting its factory here is local
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+    
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+}
@@ -0,0 +1,10 @@
+package com.todo.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of a mixed batch in request order, plus the real id assigned to each temporary id.
+ */
+public record BatchResult(List<OperationResult> results, Map<String, Long> createdIds) {
+}
@@ -0,0 +1,8 @@
+package com.todo.dto;
+
+/**
+ * Expand state accepted for a node. It is buffered and reaches the database shortly after, so no
+ * version is returned.
+ */
+public record ExpandState(Long id, boolean isExpanded) {
+}
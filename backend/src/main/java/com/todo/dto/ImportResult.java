@@ -0,0 +1,7 @@
+package com.todo.dto;
+
+/**
+ * Outcome of a bulk import: how many nodes were inserted and how long it took.
+ */
+public record ImportResult(int imported, long elapsedMillis) {
+}
@@ -0,0 +1,38 @@
+package com.todo.dto;
+
+import com.todo.entity.Node;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last row a client has seen in a list ordered by (position, id), or by
+ * (change number, id) in the change feed. Travels as an opaque URL-safe token so clients never
+ * depend on its layout.
+ */
+public record KeysetCursor(long position, long id) {
+
+    public static KeysetCursor after(Node node) {
+        return new KeysetCursor(node.getPosition(), node.getId());
+    }
+
+    public static KeysetCursor parse(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            return new KeysetCursor(Long.parseLong(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    public String encode() {
+        byte[] raw = (position + ":" + id).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+}
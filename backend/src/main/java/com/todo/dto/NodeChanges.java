@@ -0,0 +1,13 @@
+package com.todo.dto;
+
+import com.todo.entity.Node;
+
+import java.util.List;
+
+/**
+ * One page of the change feed: nodes created or changed and ids of nodes deleted after the
+ * client's cursor. Pass {@code cursor} back as {@code since}; while {@code hasMore} is set there
+ * are further pages to fetch right away, otherwise the client is up to date.
+ */
+public record NodeChanges(List<Node> nodes, List<Long> deletedIds, String cursor, boolean hasMore) {
+}
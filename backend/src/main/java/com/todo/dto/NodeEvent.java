@@ -0,0 +1,42 @@
+package com.todo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Locale;
+
+/**
+ * Compact change notice pushed to live clients. Upserts and moves carry where the node now sits;
+ * a delete removes the node and everything below it; {@code children-changed} means the child list
+ * of {@code parentId} (null for the roots) changed wholesale and should be refetched;
+ * {@code subtree-changed} means node {@code id} and its descendants were rewritten in one statement;
+ * {@code counts-changed} means only the child, descendant or completed counts of node {@code id} moved.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record NodeEvent(Type type, Long id, Long parentId, Long position, Long version) {
+    
+    public enum Type {
+        UPSERTED, MOVED, DELETED, CHILDREN_CHANGED, SUBTREE_CHANGED, COUNTS_CHANGED;
+        
+        @JsonValue
+        public String jsonName() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+    
+    public static NodeEvent deleted(Long id, Long parentId) {
+        return new NodeEvent(Type.DELETED, id, parentId, null, null);
+    }
+    
+    public static NodeEvent childrenChanged(Long parentId) {
+        return new NodeEvent(Type.CHILDREN_CHANGED, null, parentId, null, null);
+    }
+    
+    public static NodeEvent subtreeChanged(Long id, Long parentId) {
+        return new NodeEvent(Type.SUBTREE_CHANGED, id, parentId, null, null);
+    }
+    
+    public static NodeEvent countsChanged(Long id, Long parentId) {
+        return new NodeEvent(Type.COUNTS_CHANGED, id, parentId, null, null);
+    }
+}
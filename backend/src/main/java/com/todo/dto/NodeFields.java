@@ -0,0 +1,75 @@
+package com.todo.dto;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The node properties a read asked for with {@code fields=}, a comma-separated list of JSON
+ * property names such as {@code fields=content,position,isCompleted}. The id is always written and
+ * trees keep their {@code children}; without the parameter every property is.
+ *
+ * <p>Tree reads that ask for none of {@link #FULL_ROW} select only the short columns, so notes,
+ * timestamps and tags are neither read nor written.
+ */
+public final class NodeFields {
+
+    /** Id of the property filter on {@link com.todo.entity.Node}. */
+    public static final String FILTER = "nodeFields";
+
+    /** Writes every property; the default for mappers and for responses without a field list. */
+    public static final FilterProvider ALL_FILTERS = new SimpleFilterProvider()
+            .addFilter(FILTER, SimpleBeanPropertyFilter.serializeAll());
+
+    public static final NodeFields ALL = new NodeFields(null);
+
+    private static final Set<String> PROPERTIES = Set.of("id", "parentId", "content", "position", "version",
+            "isCompleted", "isExpanded", "isStarred", "mirrorId", "childCount", "descendantCount",
+            "completedDescendantCount", "notes", "tags", "createdAt", "updatedAt");
+
+    private static final Set<String> FULL_ROW = Set.of("notes", "tags", "createdAt", "updatedAt");
+
+    // null for all
+    private final Set<String> names;
+
+    private NodeFields(Set<String> names) {
+        this.names = names;
+    }
+
+    public static NodeFields parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        names.add("id");
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!PROPERTIES.contains(name)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown node field: " + name);
+            }
+            names.add(name);
+        }
+        return new NodeFields(names);
+    }
+
+    public boolean includes(String name) {
+        return names == null || names.contains(name);
+    }
+
+    /**
+     * Whether the nodes must be read with every column, rather than just the short ones.
+     */
+    public boolean needsFullRows() {
+        return names == null || names.stream().anyMatch(FULL_ROW::contains);
+    }
+
+    public FilterProvider filters() {
+        return names == null ? ALL_FILTERS : new SimpleFilterProvider()
+                .addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(names));
+    }
+}
@@ -0,0 +1,51 @@
+package com.todo.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One step of a mixed batch. {@code id} and {@code parentId} take either a real node id or the
+ * {@code tempId} of a node created earlier in the same batch; a null {@code parentId} means the root.
+ * Only the fields the operation type uses are read. A non-null {@code version} must match the
+ * target node's current version, or the whole batch fails with 412.
+ */
+public record NodeOperation(
+        Type type,
+        String tempId,
+        String id,
+        String parentId,
+        Integer index,
+        Long position,
+        String content,
+        String notes,
+        List<String> tags,
+        Boolean isCompleted,
+        Boolean isExpanded,
+        Boolean isStarred,
+        Long version) {
+    
+    public enum Type {
+        CREATE, UPDATE, MOVE, DELETE, TOGGLE_COMPLETE, TOGGLE_EXPAND, TOGGLE_STAR, UPDATE_NOTES;
+        
+        // Accepts the client's spelling ("toggle-complete") as well as the constant name
+        @JsonCreator
+        public static Type fromName(String name) {
+            return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+        
+        @JsonValue
+        public String jsonName() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+    
+    /** Field update of an existing node, as sent to the legacy batch endpoint. */
+    public static NodeOperation update(Long id, String content, String notes, Boolean isCompleted,
+                                       Boolean isExpanded, Boolean isStarred) {
+        return new NodeOperation(Type.UPDATE, null, String.valueOf(id), null, null, null,
+                content, notes, null, isCompleted, isExpanded, isStarred, null);
+    }
+}
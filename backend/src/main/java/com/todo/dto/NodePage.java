@@ -0,0 +1,12 @@
+package com.todo.dto;
+
+import com.todo.entity.Node;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated node list. {@code nextCursor} is null on the last page and
+ * {@code total} is only filled in when the caller asked for it.
+ */
+public record NodePage(List<Node> items, String nextCursor, Long total) {
+}
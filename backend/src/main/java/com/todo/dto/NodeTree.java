@@ -0,0 +1,53 @@
+package com.todo.dto;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.todo.entity.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A node together with its loaded descendants, serialized as the node's own
+ * fields plus a nested {@code children} array.
+ */
+public class NodeTree {
+
+    @JsonUnwrapped
+    private final Node node;
+
+    private final List<NodeTree> children = new ArrayList<>();
+
+    public NodeTree(Node node) {
+        this.node = node;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    public List<NodeTree> getChildren() {
+        return children;
+    }
+
+    /**
+     * Builds trees from rows ordered by depth, so parents are always seen before their children.
+     * Rows whose parent is not among them become roots.
+     */
+    public static List<NodeTree> assemble(List<Node> rows) {
+        Map<Long, NodeTree> byId = new HashMap<>();
+        List<NodeTree> roots = new ArrayList<>();
+        for (Node node : rows) {
+            NodeTree tree = new NodeTree(node);
+            byId.put(node.getId(), tree);
+            NodeTree parent = node.getParentId() != null ? byId.get(node.getParentId()) : null;
+            if (parent != null) {
+                parent.getChildren().add(tree);
+            } else {
+                roots.add(tree);
+            }
+        }
+        return roots;
+    }
+}
@@ -0,0 +1,10 @@
+package com.todo.dto;
+
+import com.todo.entity.Node;
+
+/**
+ * Outcome of one operation in a batch: the real id it touched and the node's state after the whole
+ * batch was applied, or null if the node was deleted.
+ */
+public record OperationResult(int index, NodeOperation.Type type, Long id, String tempId, Node node) {
+}
@@ -0,0 +1,20 @@
+package com.todo.dto;
+
+import java.util.List;
+
+/**
+ * One ranked full-text match. {@code highlights} are [start, end) character ranges of matched
+ * terms within {@code snippet}.
+ */
+public record SearchHit(
+        Long id,
+        Long parentId,
+        String content,
+        double score,
+        List<String> matchedFields,
+        String snippet,
+        List<Highlight> highlights) {
+
+    public record Highlight(int start, int end) {
+    }
+}
@@ -0,0 +1,7 @@
+package com.todo.dto;
+
+/**
+ * Number of nodes carrying a tag, for the tag sidebar.
+ */
+public record TagCount(String name, long count) {
+}
@@ -1,16 +1,37 @@
 package com.todo.entity;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.todo.dto.NodeFields;
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @Entity
-@Table(name = "nodes")
+@Table(name = "nodes", indexes = {
+    @Index(name = "idx_nodes_parent_position", columnList = "parent_id, position"),
+    @Index(name = "idx_nodes_path", columnList = "path"),
+    @Index(name = "idx_nodes_change_seq", columnList = "change_seq, id"),
+    @Index(name = "idx_nodes_position", columnList = "position, id"),
+    @Index(name = "idx_nodes_starred_position", columnList = "is_starred, position, id"),
+    @Index(name = "idx_nodes_completed_position", columnList = "is_completed, position, id"),
+    @Index(name = "idx_nodes_mirror", columnList = "mirror_id")
+})
+// Reads can ask for a subset of the JSON properties, see NodeFields
+@JsonFilter(NodeFields.FILTER)
 public class Node {
     
+    // Pooled sequence rather than IDENTITY so Hibernate can batch inserts, see OutlineImporter
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "node_seq")
+    @SequenceGenerator(name = "node_seq", sequenceName = "node_seq", allocationSize = 500)
     private Long id;
     
     @Column(nullable = false)
@@ -19,8 +40,22 @@ public class Node {
     @Column(name = "parent_id")
     private Long parentId;
     
+    // Materialized ancestor path, see TreePaths
+    @Column(length = 2048)
+    private String path;
+    
+    // Sparse sort key among siblings, see SiblingOrder
+    @Column(nullable = false)
+    private Long position = 0L;
+    
+    // Optimistic lock: bumped on every update, and the node's ETag for If-Match on writes
+    @Version
     @Column(nullable = false)
-    private Integer position = 0;
+    private Long version;
+    
+    // Change number of the last write to this row, for delta sync, see ChangeSequence
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq = 0L;
     
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -37,26 +72,89 @@ public class Node {
     @Column(name = "is_starred", nullable = false)
     private Boolean isStarred = false;
     
-    @ElementCollection
-    @CollectionTable(name = "node_tags", joinColumns = @JoinColumn(name = "node_id"))
-    @Column(name = "tag")
-    private List<String> tags = new ArrayList<>();
+    // Interned tags, fetched for up to 100 nodes per query when a list of nodes is serialized
+    @ManyToMany
+    @JoinTable(name = "node_tag",
+            joinColumns = @JoinColumn(name = "node_id"),
+            inverseJoinColumns = @JoinColumn(name = "tag_id"),
+            indexes = @Index(name = "idx_node_tag_tag", columnList = "tag_id"))
+    @OrderBy("name")
+    @BatchSize(size = 100)
+    private Set<Tag> tagRefs = new LinkedHashSet<>();
+    
+    // Tag names set through the API; TagService interns them into tagRefs before the node is saved
+    @Transient
+    private List<String> pendingTags;
     
     @Column(name = "notes", columnDefinition = "TEXT")
     private String notes;
     
+    // Subtree aggregates, kept up to date by SubtreeCounters; Hibernate never writes them
+    @Column(name = "child_count", nullable = false, insertable = false, updatable = false)
+    private Long childCount = 0L;
+    
+    @Column(name = "descendant_count", nullable = false, insertable = false, updatable = false)
+    private Long descendantCount = 0L;
+    
+    @Column(name = "completed_descendant_count", nullable = false, insertable = false, updatable = false)
+    private Long completedDescendantCount = 0L;
+    
+    // Set on a mirror: the node whose content it shows, see MirrorResolver
     @Column(name = "mirror_id")
     private Long mirrorId;
     
     public Node() {
     }
     
-    public Node(String content, Long parentId, Integer position) {
+    public Node(String content, Long parentId, Long position) {
         this.content = content;
         this.parentId = parentId;
         this.position = position;
     }
     
+    /**
+     * Detached copy with its own list of tag names, safe to share between threads and sessions.
+     */
+    public Node snapshot() {
+        return copy(getTags());
+    }
+    
+    /**
+     * Detached copy of this mirror showing the content, notes, tags, flags and subtree counters of
+     * {@code original}. Everything that places the mirror in the tree stays its own.
+     */
+    public Node mirroring(Node original) {
+        Node copy = copy(original.getTags());
+        copy.content = original.content;
+        copy.notes = original.notes;
+        copy.isCompleted = original.isCompleted;
+        copy.isStarred = original.isStarred;
+        copy.childCount = original.childCount;
+        copy.descendantCount = original.descendantCount;
+        copy.completedDescendantCount = original.completedDescendantCount;
+        return copy;
+    }
+    
+    private Node copy(List<String> tags) {
+        Node copy = new Node(content, parentId, position);
+        copy.id = id;
+        copy.path = path;
+        copy.version = version;
+        copy.changeSeq = changeSeq;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        copy.isCompleted = isCompleted;
+        copy.isExpanded = isExpanded;
+        copy.isStarred = isStarred;
+        copy.childCount = childCount;
+        copy.descendantCount = descendantCount;
+        copy.completedDescendantCount = completedDescendantCount;
+        copy.pendingTags = new ArrayList<>(tags);
+        copy.notes = notes;
+        copy.mirrorId = mirrorId;
+        return copy;
+    }
+    
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -93,14 +191,42 @@ public class Node {
         this.parentId = parentId;
     }
     
-    public Integer getPosition() {
+    @JsonIgnore
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    public Long getPosition() {
         return position;
     }
     
-    public void setPosition(Integer position) {
+    public void setPosition(Long position) {
         this.position = position;
     }
     
+    // Clients send the version back through If-Match, never in the body
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
+    @JsonIgnore
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+    
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -143,11 +269,61 @@ public class Node {
     }
     
     public List<String> getTags() {
-        return tags;
+        if (pendingTags != null) {
+            return pendingTags;
+        }
+        List<String> names = new ArrayList<>(tagRefs.size());
+        for (Tag tag : tagRefs) {
+            names.add(tag.getName());
+        }
+        return names;
     }
     
     public void setTags(List<String> tags) {
-        this.tags = tags != null ? tags : new ArrayList<>();
+        this.pendingTags = tags != null ? new ArrayList<>(tags) : new ArrayList<>();
+    }
+    
+    @JsonIgnore
+    public List<String> getPendingTags() {
+        return pendingTags;
+    }
+    
+    @JsonIgnore
+    public Set<Tag> getTagRefs() {
+        return tagRefs;
+    }
+    
+    public void setTagRefs(Collection<Tag> tags) {
+        tagRefs.clear();
+        tagRefs.addAll(tags);
+        pendingTags = null;
+    }
+    
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public Long getChildCount() {
+        return childCount;
+    }
+    
+    public void setChildCount(Long childCount) {
+        this.childCount = childCount;
+    }
+    
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public Long getDescendantCount() {
+        return descendantCount;
+    }
+    
+    public void setDescendantCount(Long descendantCount) {
+        this.descendantCount = descendantCount;
+    }
+    
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public Long getCompletedDescendantCount() {
+        return completedDescendantCount;
+    }
+    
+    public void setCompletedDescendantCount(Long completedDescendantCount) {
+        this.completedDescendantCount = completedDescendantCount;
     }
     
     public String getNotes() {
@@ -0,0 +1,47 @@
+package com.todo.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Trace of a deleted node, so delta-sync clients learn about deletes. Written set-based by
+ * {@link com.todo.repository.NodeTombstoneRepository#insertForSubtree} for a whole deleted subtree.
+ */
+@Entity
+@Table(name = "node_tombstones", indexes = {
+    @Index(name = "idx_node_tombstones_change_seq", columnList = "change_seq, node_id")
+})
+public class NodeTombstone {
+    
+    @Id
+    @Column(name = "node_id")
+    private Long nodeId;
+    
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq;
+    
+    @Column(name = "deleted_at", nullable = false)
+    private LocalDateTime deletedAt;
+    
+    protected NodeTombstone() {
+    }
+    
+    public NodeTombstone(Long nodeId, Long changeSeq, LocalDateTime deletedAt) {
+        this.nodeId = nodeId;
+        this.changeSeq = changeSeq;
+        this.deletedAt = deletedAt;
+    }
+    
+    public Long getNodeId() {
+        return nodeId;
+    }
+    
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+    
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+}
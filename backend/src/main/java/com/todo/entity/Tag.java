@@ -0,0 +1,37 @@
+package com.todo.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Interned tag name. Nodes refer to tags through the node_tag join table, so each distinct name
+ * is stored once and tag lookups and counts work on ids. Rows are never changed once inserted,
+ * which is what lets {@link com.todo.service.TagService} share instances across sessions.
+ */
+@Entity
+@Immutable
+@Table(name = "tags", uniqueConstraints = @UniqueConstraint(name = "uk_tags_name", columnNames = "name"))
+public class Tag {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private String name;
+    
+    protected Tag() {
+    }
+    
+    public Tag(String name) {
+        this.name = name;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,15 @@
+package com.todo.repository;
+
+/**
+ * Where a mirror node sits, for deleting mirrors without loading them.
+ */
+public interface MirrorRow {
+    
+    Long getId();
+    
+    Long getParentId();
+    
+    String getPath();
+    
+    Boolean getIsCompleted();
+}
@@ -0,0 +1,38 @@
+package com.todo.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Every persisted column of one node, tags joined with {@link OutlineRow#TAG_SEPARATOR}, read
+ * straight from the table for the operation log. Paths are left out; they follow from the parents.
+ */
+public interface NodeJournalRow {
+    
+    Long getId();
+    
+    Long getParentId();
+    
+    Long getPosition();
+    
+    Long getVersion();
+    
+    Long getChangeSeq();
+    
+    LocalDateTime getCreatedAt();
+    
+    LocalDateTime getUpdatedAt();
+    
+    Boolean getIsCompleted();
+    
+    Boolean getIsExpanded();
+    
+    Boolean getIsStarred();
+    
+    String getContent();
+    
+    String getNotes();
+    
+    Long getMirrorId();
+    
+    String getTags();
+}
@@ -1,33 +1,273 @@
 package com.todo.repository;
 
 import com.todo.entity.Node;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface NodeRepository extends JpaRepository<Node, Long> {
+public interface NodeRepository extends JpaRepository<Node, Long>, JpaSpecificationExecutor<Node> {
     
+    String STATE_COLUMNS = "id, parent_id AS parentId, path, position, version, content, "
+            + "is_completed AS isCompleted, is_expanded AS isExpanded, is_starred AS isStarred, notes, "
+            + "updated_at AS updatedAt, mirror_id AS mirrorId, child_count AS childCount, "
+            + "descendant_count AS descendantCount, completed_descendant_count AS completedDescendantCount";
+    
+    // Every field write moves the version and change number on, as dirty checking would
+    String STAMP = "version = version + 1, change_seq = :seq, updated_at = LOCALTIMESTAMP";
+    
+    // Mirrors are skipped: their fields are read from the original, which is where writes go
+    String SINGLE_ROW = " WHERE id = :id AND (:expected IS NULL OR version = :expected) AND mirror_id IS NULL";
+    
+    @EntityGraph(attributePaths = "tagRefs")
     List<Node> findByParentIdIsNullOrderByPositionAsc();
     
+    @EntityGraph(attributePaths = "tagRefs")
     List<Node> findByParentIdOrderByPositionAsc(Long parentId);
     
-    @Query("SELECT MAX(n.position) FROM Node n WHERE n.parentId = :parentId")
-    Integer findMaxPositionByParentId(Long parentId);
+    // Set-based load for batches, tags included so snapshots do not lazy-load them one node at a time
+    @EntityGraph(attributePaths = "tagRefs")
+    List<Node> findByIdIn(Collection<Long> ids);
+    
+    // Keyset pages of sibling ids, for lists that are not cached; the nodes follow by findByIdIn
+    @Query("SELECT n.id FROM Node n WHERE n.parentId = :parentId "
+            + "AND (n.position > :position OR (n.position = :position AND n.id > :id)) ORDER BY n.position, n.id")
+    List<Long> findChildIdsAfter(@Param("parentId") Long parentId, @Param("position") long position,
+                                 @Param("id") long id, Limit limit);
+    
+    @Query("SELECT n.id FROM Node n WHERE n.parentId IS NULL "
+            + "AND (n.position > :position OR (n.position = :position AND n.id > :id)) ORDER BY n.position, n.id")
+    List<Long> findRootIdsAfter(@Param("position") long position, @Param("id") long id, Limit limit);
+    
+    long countByParentId(Long parentId);
+    
+    long countByParentIdIsNull();
+    
+    @Query("SELECT MAX(n.position) FROM Node n")
+    Long findMaxPosition();
+    
+    // Delta sync: rows written after a (change_seq, id) cursor, up to the ChangeSequence watermark.
+    // No entity graph: a collection fetch would page in memory; tags are batch-fetched instead.
+    @Query("SELECT COALESCE(MAX(n.changeSeq), 0) FROM Node n")
+    long findMaxChangeSeq();
+    
+    @Query("SELECT n FROM Node n WHERE (n.changeSeq > :seq OR (n.changeSeq = :seq AND n.id > :id)) "
+            + "AND n.changeSeq <= :upTo ORDER BY n.changeSeq, n.id")
+    List<Node> findChangedAfter(@Param("seq") long seq, @Param("id") long id, @Param("upTo") long upTo, Limit limit);
+    
+    // Sibling ordering: neighbours around an insertion index, and lists that ran out of gaps
+    @Query(value = "SELECT position FROM nodes WHERE parent_id = :parentId AND id <> :excludeId "
+            + "ORDER BY position, id LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Long> findSiblingPositions(@Param("parentId") Long parentId, @Param("excludeId") Long excludeId,
+                                    @Param("offset") int offset, @Param("limit") int limit);
+    
+    @Query(value = "SELECT position FROM nodes WHERE parent_id IS NULL AND id <> :excludeId "
+            + "ORDER BY position, id LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Long> findRootPositions(@Param("excludeId") Long excludeId,
+                                 @Param("offset") int offset, @Param("limit") int limit);
+    
+    @Query(value = """
+            SELECT DISTINCT parent_id FROM (
+                SELECT parent_id, position - LAG(position) OVER (PARTITION BY parent_id ORDER BY position, id) AS gap
+                FROM nodes
+            ) g WHERE gap < :minGap
+            """, nativeQuery = true)
+    List<Long> findParentsWithGapsBelow(@Param("minGap") long minGap);
+    
+    // Filtered and starred lists go through JpaSpecificationExecutor with NodeSpecifications
+    @Query(value = "SELECT nt.node_id AS nodeId, t.name AS tag FROM node_tag nt JOIN tags t ON t.id = nt.tag_id",
+            nativeQuery = true)
+    List<NodeTagRow> findAllTagRows();
+    
+    // Export: one node, or one page of a parent's children in (position, id) order after a cursor.
+    // OutlineExporter walks the tree depth-first with these, one page per level at a time.
+    String OUTLINE_COLUMNS = "n.id AS id, n.parent_id AS parentId, n.position AS position, n.content AS content, "
+            + "n.is_completed AS completed, n.is_starred AS starred, n.notes AS notes, n.mirror_id AS mirrorId, "
+            + "EXISTS (SELECT 1 FROM nodes c WHERE c.parent_id = n.id) AS hasChildren, "
+            + "(SELECT LISTAGG(t.name, CHAR(31)) WITHIN GROUP (ORDER BY t.name) "
+            + "FROM node_tag nt JOIN tags t ON t.id = nt.tag_id WHERE nt.node_id = n.id) AS tags";
+    
+    String OUTLINE_PAGE = " AND (n.position > :position OR (n.position = :position AND n.id > :id)) "
+            + "ORDER BY n.position, n.id LIMIT :limit";
+    
+    @Query(value = "SELECT " + OUTLINE_COLUMNS + " FROM nodes n WHERE n.id = :id", nativeQuery = true)
+    Optional<OutlineRow> findOutlineRow(@Param("id") Long id);
+    
+    @Query(value = "SELECT " + OUTLINE_COLUMNS + " FROM nodes n WHERE n.parent_id = :parentId" + OUTLINE_PAGE,
+            nativeQuery = true)
+    List<OutlineRow> findOutlineChildren(@Param("parentId") Long parentId, @Param("position") long position,
+                                         @Param("id") long id, @Param("limit") int limit);
+    
+    @Query(value = "SELECT " + OUTLINE_COLUMNS + " FROM nodes n WHERE n.parent_id IS NULL" + OUTLINE_PAGE,
+            nativeQuery = true)
+    List<OutlineRow> findOutlineRoots(@Param("position") long position, @Param("id") long id,
+                                      @Param("limit") int limit);
+    
+    // Operation log: the rows one transaction wrote, and every row for a snapshot
+    String JOURNAL_COLUMNS = "n.id AS id, n.parent_id AS parentId, n.position AS position, n.version AS version, "
+            + "n.change_seq AS changeSeq, n.created_at AS createdAt, n.updated_at AS updatedAt, "
+            + "n.is_completed AS isCompleted, n.is_expanded AS isExpanded, n.is_starred AS isStarred, "
+            + "n.content AS content, n.notes AS notes, n.mirror_id AS mirrorId, "
+            + "(SELECT LISTAGG(t.name, CHAR(31)) WITHIN GROUP (ORDER BY t.name) "
+            + "FROM node_tag nt JOIN tags t ON t.id = nt.tag_id WHERE nt.node_id = n.id) AS tags";
+    
+    @Query(value = "SELECT " + JOURNAL_COLUMNS + " FROM nodes n WHERE n.change_seq = :seq ORDER BY n.id",
+            nativeQuery = true)
+    List<NodeJournalRow> findJournalRows(@Param("seq") long seq);
+    
+    @Query(value = "SELECT " + JOURNAL_COLUMNS + " FROM nodes n WHERE n.change_seq = :seq AND n.id > :afterId "
+            + "ORDER BY n.id LIMIT :limit", nativeQuery = true)
+    List<NodeJournalRow> findJournalRowsAfter(@Param("seq") long seq, @Param("afterId") long afterId,
+                                              @Param("limit") int limit);
     
-    // Search methods
-    @Query("SELECT n FROM Node n WHERE LOWER(n.content) LIKE LOWER(CONCAT('%', :query, '%'))")
-    List<Node> findByContentContaining(@Param("query") String query);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "SELECT " + JOURNAL_COLUMNS + " FROM nodes n ORDER BY n.id", nativeQuery = true)
+    Stream<NodeJournalRow> streamJournalRows();
     
-    @Query("SELECT n FROM Node n JOIN n.tags t WHERE LOWER(t) LIKE LOWER(CONCAT('%', :tag, '%'))")
-    List<Node> findByTagsContaining(@Param("tag") String tag);
+    // Tree loading: one recursive query per request, descending only into expanded nodes
+    String EXPANDED_SUBTREE = """
+            WITH RECURSIVE subtree(id, depth, expanded) AS (
+                SELECT id, 0, TRUE FROM nodes WHERE id = :rootId
+                UNION ALL
+                SELECT c.id, s.depth + 1, c.is_expanded FROM nodes c
+                JOIN subtree s ON c.parent_id = s.id
+                WHERE s.expanded AND s.depth < :maxDepth
+            )
+            """;
     
-    // Filter by completion status
-    List<Node> findByIsCompletedOrderByPositionAsc(Boolean isCompleted);
+    String EXPANDED_FOREST = """
+            WITH RECURSIVE subtree(id, depth, expanded) AS (
+                SELECT id, 0, is_expanded FROM nodes WHERE parent_id IS NULL
+                UNION ALL
+                SELECT c.id, s.depth + 1, c.is_expanded FROM nodes c
+                JOIN subtree s ON c.parent_id = s.id
+                WHERE s.expanded AND s.depth < :maxDepth
+            )
+            """;
     
-    List<Node> findByIsStarredTrueOrderByPositionAsc();
+    String IN_TREE_ORDER = " FROM nodes n JOIN subtree s ON n.id = s.id ORDER BY s.depth, n.position, n.id";
+    
+    // What a tree view shows of a node: no notes, timestamps or tags
+    String TREE_COLUMNS = "n.id AS id, n.parent_id AS parentId, n.position AS position, n.version AS version, "
+            + "n.content AS content, n.is_completed AS isCompleted, n.is_expanded AS isExpanded, "
+            + "n.is_starred AS isStarred, n.mirror_id AS mirrorId, n.child_count AS childCount, "
+            + "n.descendant_count AS descendantCount, n.completed_descendant_count AS completedDescendantCount";
+    
+    @Query(value = EXPANDED_SUBTREE + "SELECT n.*" + IN_TREE_ORDER, nativeQuery = true)
+    List<Node> findExpandedSubtree(@Param("rootId") Long rootId, @Param("maxDepth") int maxDepth);
+    
+    @Query(value = EXPANDED_FOREST + "SELECT n.*" + IN_TREE_ORDER, nativeQuery = true)
+    List<Node> findExpandedForest(@Param("maxDepth") int maxDepth);
+    
+    @Query(value = EXPANDED_SUBTREE + "SELECT " + TREE_COLUMNS + IN_TREE_ORDER, nativeQuery = true)
+    List<TreeRow> findExpandedSubtreeRows(@Param("rootId") Long rootId, @Param("maxDepth") int maxDepth);
+    
+    @Query(value = EXPANDED_FOREST + "SELECT " + TREE_COLUMNS + IN_TREE_ORDER, nativeQuery = true)
+    List<TreeRow> findExpandedForestRows(@Param("maxDepth") int maxDepth);
+    
+    // The originals behind a response's mirrors, each with its expanded subtree, in one query
+    @Query(value = """
+            WITH RECURSIVE subtree(id, depth, expanded) AS (
+                SELECT id, 0, TRUE FROM nodes WHERE id IN (:rootIds)
+                UNION ALL
+                SELECT c.id, s.depth + 1, c.is_expanded FROM nodes c
+                JOIN subtree s ON c.parent_id = s.id
+                WHERE s.expanded AND s.depth < :maxDepth
+            )
+            SELECT n.* FROM nodes n JOIN subtree s ON n.id = s.id
+            ORDER BY s.depth, n.position, n.id
+            """, nativeQuery = true)
+    List<Node> findExpandedSubtrees(@Param("rootIds") Collection<Long> rootIds, @Param("maxDepth") int maxDepth);
+    
+    // Subtree queries over the materialized path range [path, upper)
+    @Query("SELECT n.id FROM Node n WHERE n.path >= :path AND n.path < :upper")
+    List<Long> findSubtreeIds(@Param("path") String path, @Param("upper") String upper);
+    
+    @Query("SELECT COUNT(n) FROM Node n WHERE n.path >= :path AND n.path < :upper")
+    long countSubtree(@Param("path") String path, @Param("upper") String upper);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM node_tag WHERE node_id IN "
+            + "(SELECT id FROM nodes WHERE path >= :path AND path < :upper)", nativeQuery = true)
+    int deleteSubtreeTags(@Param("path") String path, @Param("upper") String upper);
+    
+    // Native on purpose: a JPQL bulk delete makes Hibernate clean node_tag through a correlated subquery
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM nodes WHERE path >= :path AND path < :upper", nativeQuery = true)
+    int deleteSubtree(@Param("path") String path, @Param("upper") String upper);
+    
+    // Mirrors elsewhere in the tree of any node in the range; they go when the range is deleted
+    @Query(value = "SELECT m.id AS id, m.parent_id AS parentId, m.path AS path, m.is_completed AS isCompleted "
+            + "FROM nodes m WHERE m.mirror_id IN "
+            + "(SELECT id FROM nodes WHERE path >= :path AND path < :upper) "
+            + "AND (m.path < :path OR m.path >= :upper)", nativeQuery = true)
+    List<MirrorRow> findMirrorsOutside(@Param("path") String path, @Param("upper") String upper);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM node_tag WHERE node_id IN (:ids)", nativeQuery = true)
+    int deleteTagsOf(@Param("ids") Collection<Long> ids);
+    
+    // Only for nodes without children, such as mirrors
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM nodes WHERE id IN (:ids)", nativeQuery = true)
+    int deleteLeaves(@Param("ids") Collection<Long> ids);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE nodes SET path = CONCAT(:newPath, SUBSTRING(path, CHAR_LENGTH(:oldPath) + 1)) "
+            + "WHERE path > :oldPath AND path < :upper", nativeQuery = true)
+    int rebaseDescendantPaths(@Param("oldPath") String oldPath, @Param("upper") String upper,
+                              @Param("newPath") String newPath);
+    
+    // Field writes without loading the entity: one UPDATE that reads the changed row back through
+    // H2's FINAL TABLE. No row means the id is unknown or the expected version is stale.
+    @Query(value = "SELECT " + STATE_COLUMNS + " FROM FINAL TABLE (UPDATE nodes SET "
+            + "is_completed = NOT is_completed, " + STAMP + SINGLE_ROW + ")", nativeQuery = true)
+    Optional<NodeStateRow> toggleCompleted(@Param("id") Long id, @Param("expected") Long expectedVersion,
+                                           @Param("seq") long seq);
+    
+    @Query(value = "SELECT " + STATE_COLUMNS + " FROM FINAL TABLE (UPDATE nodes SET "
+            + "is_starred = NOT is_starred, " + STAMP + SINGLE_ROW + ")", nativeQuery = true)
+    Optional<NodeStateRow> toggleStarred(@Param("id") Long id, @Param("expected") Long expectedVersion,
+                                         @Param("seq") long seq);
+    
+    @Query(value = "SELECT " + STATE_COLUMNS + " FROM FINAL TABLE (UPDATE nodes SET "
+            + "notes = :notes, " + STAMP + SINGLE_ROW + ")", nativeQuery = true)
+    Optional<NodeStateRow> updateNotes(@Param("id") Long id, @Param("notes") String notes,
+                                       @Param("expected") Long expectedVersion, @Param("seq") long seq);
+    
+    // Write-behind flush of buffered expand state; rows already in that state are skipped
+    @Query(value = "SELECT " + STATE_COLUMNS + " FROM FINAL TABLE (UPDATE nodes SET is_expanded = :expanded, "
+            + STAMP + " WHERE id IN (:ids) AND is_expanded <> :expanded)", nativeQuery = true)
+    List<NodeStateRow> setExpanded(@Param("ids") Collection<Long> ids, @Param("expanded") boolean expanded,
+                                   @Param("seq") long seq);
+    
+    @Query(value = "SELECT " + STATE_COLUMNS + " FROM nodes WHERE id = :id", nativeQuery = true)
+    Optional<NodeStateRow> findStateById(@Param("id") Long id);
+    
+    // Rows already in the target state keep their version
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE nodes SET is_completed = :completed, " + STAMP
+            + " WHERE path >= :path AND path < :upper AND is_completed <> :completed", nativeQuery = true)
+    int setSubtreeCompleted(@Param("path") String path, @Param("upper") String upper,
+                            @Param("completed") boolean completed, @Param("seq") long seq);
+    
+    // After setSubtreeCompleted every node in the range has all or none of its descendants completed
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE nodes SET completed_descendant_count = CASE WHEN :completed THEN descendant_count ELSE 0 END "
+            + "WHERE path >= :path AND path < :upper", nativeQuery = true)
+    int setSubtreeCompletedCounts(@Param("path") String path, @Param("upper") String upper,
+                                  @Param("completed") boolean completed);
 }
-
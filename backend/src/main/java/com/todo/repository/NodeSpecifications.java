@@ -0,0 +1,74 @@
+package com.todo.repository;
+
+import com.todo.dto.KeysetCursor;
+import com.todo.entity.Node;
+import com.todo.entity.Tag;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Composable filters for node queries. A filter whose argument is absent returns null,
+ * which Spring Data treats as "no restriction", so callers can chain them unconditionally.
+ */
+public final class NodeSpecifications {
+
+    /** Stable order every keyset-paginated node list is read in. */
+    public static final Sort KEYSET_ORDER = Sort.by("position", "id");
+
+    private NodeSpecifications() {
+    }
+
+    public static Specification<Node> contentContains(String q) {
+        if (q == null || q.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> cb.like(cb.lower(root.get("content")), containsPattern(q), '\\');
+    }
+
+    public static Specification<Node> hasTagContaining(String tag) {
+        if (tag == null || tag.isEmpty()) {
+            return null;
+        }
+        // EXISTS rather than a join so a node with several matching tags is returned once
+        return (root, query, cb) -> {
+            Subquery<Integer> matching = query.subquery(Integer.class);
+            Root<Node> node = matching.correlate(root);
+            Join<Node, Tag> tags = node.join("tagRefs");
+            matching.select(cb.literal(1)).where(cb.like(cb.lower(tags.get("name")), containsPattern(tag), '\\'));
+            return cb.exists(matching);
+        };
+    }
+
+    public static Specification<Node> isCompleted(Boolean completed) {
+        if (completed == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("isCompleted"), completed);
+    }
+
+    public static Specification<Node> isStarred() {
+        return (root, query, cb) -> cb.isTrue(root.get("isStarred"));
+    }
+
+    /** Rows strictly after the cursor in {@link #KEYSET_ORDER}. */
+    public static Specification<Node> after(KeysetCursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.or(
+                cb.greaterThan(root.get("position"), cursor.position()),
+                cb.and(cb.equal(root.get("position"), cursor.position()),
+                        cb.greaterThan(root.get("id"), cursor.id())));
+    }
+
+    private static String containsPattern(String text) {
+        String escaped = text.toLowerCase()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
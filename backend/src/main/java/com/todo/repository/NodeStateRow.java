@@ -0,0 +1,43 @@
+package com.todo.repository;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.LocalDateTime;
+
+/**
+ * Scalar columns of one node as a single-row write left them, read back in the same statement.
+ * Tags are not included; field writes never change them.
+ */
+public interface NodeStateRow {
+
+    Long getId();
+
+    Long getParentId();
+
+    @JsonIgnore
+    String getPath();
+
+    Long getPosition();
+
+    Long getVersion();
+
+    String getContent();
+
+    Boolean getIsCompleted();
+
+    Boolean getIsExpanded();
+
+    Boolean getIsStarred();
+
+    String getNotes();
+
+    LocalDateTime getUpdatedAt();
+
+    Long getMirrorId();
+
+    Long getChildCount();
+
+    Long getDescendantCount();
+
+    Long getCompletedDescendantCount();
+}
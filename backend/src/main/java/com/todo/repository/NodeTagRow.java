@@ -0,0 +1,11 @@
+package com.todo.repository;
+
+/**
+ * One node_tag row joined to its tag name, for bulk reads that should not load entities.
+ */
+public interface NodeTagRow {
+    
+    Long getNodeId();
+    
+    String getTag();
+}
@@ -0,0 +1,38 @@
+package com.todo.repository;
+
+import com.todo.entity.NodeTombstone;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface NodeTombstoneRepository extends JpaRepository<NodeTombstone, Long> {
+    
+    @Query("SELECT COALESCE(MAX(t.changeSeq), 0) FROM NodeTombstone t")
+    long findMaxChangeSeq();
+    
+    // Same keyset as NodeRepository.findChangedAfter, so the two lists merge into one change feed
+    @Query("SELECT t FROM NodeTombstone t WHERE (t.changeSeq > :seq OR (t.changeSeq = :seq AND t.nodeId > :id)) "
+            + "AND t.changeSeq <= :upTo ORDER BY t.changeSeq, t.nodeId")
+    List<NodeTombstone> findChangedAfter(@Param("seq") long seq, @Param("id") long id, @Param("upTo") long upTo,
+                                         Limit limit);
+    
+    List<NodeTombstone> findByChangeSeq(long changeSeq);
+    
+    // One statement for a whole subtree; run before the subtree's rows are deleted
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO node_tombstones (node_id, change_seq, deleted_at) "
+            + "SELECT id, :seq, CURRENT_TIMESTAMP FROM nodes WHERE path >= :path AND path < :upper", nativeQuery = true)
+    int insertForSubtree(@Param("path") String path, @Param("upper") String upper, @Param("seq") long seq);
+    
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO node_tombstones (node_id, change_seq, deleted_at) "
+            + "SELECT id, :seq, CURRENT_TIMESTAMP FROM nodes WHERE id IN (:ids)", nativeQuery = true)
+    int insertForNodes(@Param("ids") Collection<Long> ids, @Param("seq") long seq);
+}
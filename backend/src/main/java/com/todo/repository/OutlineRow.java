@@ -0,0 +1,30 @@
+package com.todo.repository;
+
+/**
+ * Flat, unmanaged view of one node, read a page of siblings at a time for streaming exports.
+ * Tags arrive joined with {@link #TAG_SEPARATOR}.
+ */
+public interface OutlineRow {
+
+    String TAG_SEPARATOR = "\u001f";
+
+    Long getId();
+
+    Long getParentId();
+
+    Long getPosition();
+
+    String getContent();
+
+    Boolean getCompleted();
+
+    Boolean getStarred();
+
+    String getNotes();
+
+    Long getMirrorId();
+
+    Boolean getHasChildren();
+
+    String getTags();
+}
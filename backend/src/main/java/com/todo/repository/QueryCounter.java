@@ -0,0 +1,223 @@
+package com.todo.repository;
+
+import org.hibernate.Interceptor;
+import org.hibernate.type.Type;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts the database work done on the current thread: statements executed, rows fetched and
+ * entities loaded, whichever way they were issued (repositories, Hibernate or plain JDBC).
+ *
+ * <p>Counting happens inside a {@link Scope}. Scopes nest, and every open scope on the thread sees
+ * the work done while it is open, so a test can measure one call while the request filter
+ * measures the whole request. Statements run on a connection obtained outside any scope, such as
+ * scheduled flushes, are not counted and cost nothing extra.
+ */
+public final class QueryCounter {
+    
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+    
+    private QueryCounter() {
+    }
+    
+    /**
+     * The counts of one scope. A batch counts as one statement, since it is one round trip.
+     */
+    public static final class Scope implements AutoCloseable {
+        
+        private final Scope parent;
+        
+        private final List<String> sql;
+        
+        private long statements;
+        
+        private long rows;
+        
+        private long entities;
+        
+        private Scope(Scope parent, boolean recordSql) {
+            this.parent = parent;
+            this.sql = recordSql ? new ArrayList<>() : null;
+        }
+        
+        public long getStatements() {
+            return statements;
+        }
+        
+        public long getRows() {
+            return rows;
+        }
+        
+        public long getEntities() {
+            return entities;
+        }
+        
+        /**
+         * The statements executed, in order, if the scope was opened to record them.
+         */
+        public List<String> getSql() {
+            return sql != null ? Collections.unmodifiableList(sql) : List.of();
+        }
+        
+        @Override
+        public void close() {
+            if (CURRENT.get() == this) {
+                if (parent != null) {
+                    CURRENT.set(parent);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        }
+    }
+    
+    public static Scope open() {
+        return open(false);
+    }
+    
+    /**
+     * Starts counting on this thread until the returned scope is closed.
+     */
+    public static Scope open(boolean recordSql) {
+        Scope scope = new Scope(CURRENT.get(), recordSql);
+        CURRENT.set(scope);
+        return scope;
+    }
+    
+    static void statement(String sql) {
+        for (Scope scope = CURRENT.get(); scope != null; scope = scope.parent) {
+            scope.statements++;
+            if (scope.sql != null) {
+                scope.sql.add(sql);
+            }
+        }
+    }
+    
+    static void row() {
+        for (Scope scope = CURRENT.get(); scope != null; scope = scope.parent) {
+            scope.rows++;
+        }
+    }
+    
+    static void entityLoaded() {
+        for (Scope scope = CURRENT.get(); scope != null; scope = scope.parent) {
+            scope.entities++;
+        }
+    }
+    
+    /**
+     * Wraps a data source so that connections handed out inside a scope count what runs on them.
+     */
+    public static DataSource counting(DataSource dataSource) {
+        return new DelegatingDataSource(dataSource) {
+            
+            @Override
+            public Connection getConnection() throws SQLException {
+                return counting(super.getConnection());
+            }
+            
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return counting(super.getConnection(username, password));
+            }
+        };
+    }
+    
+    /**
+     * Counts every entity Hibernate hydrates from a row; registered as the session factory interceptor.
+     */
+    public static Interceptor entityLoadInterceptor() {
+        return new Interceptor() {
+            
+            @Override
+            public boolean onLoad(Object entity, Object id, Object[] state, String[] propertyNames, Type[] types) {
+                entityLoaded();
+                return false;
+            }
+        };
+    }
+    
+    private static Connection counting(Connection connection) {
+        if (CURRENT.get() == null) {
+            return connection;
+        }
+        return proxy(Connection.class, connection, (method, args, result) -> {
+            if (result instanceof CallableStatement statement) {
+                return countingStatement(CallableStatement.class, statement, (String) args[0]);
+            }
+            if (result instanceof PreparedStatement statement) {
+                return countingStatement(PreparedStatement.class, statement, (String) args[0]);
+            }
+            if (result instanceof Statement statement) {
+                return countingStatement(Statement.class, statement, null);
+            }
+            return result;
+        });
+    }
+    
+    private static <S extends Statement> S countingStatement(Class<S> type, S statement, String preparedSql) {
+        return proxy(type, statement, (method, args, result) -> {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                boolean batch = name.endsWith("Batch");
+                statement(preparedSql != null ? preparedSql
+                        : args != null && args.length > 0 && args[0] instanceof String sql ? sql
+                        : batch ? "(batch)" : "(statement)");
+            }
+            if (result instanceof ResultSet resultSet) {
+                return countingResultSet(resultSet);
+            }
+            return result;
+        });
+    }
+    
+    private static ResultSet countingResultSet(ResultSet resultSet) {
+        return proxy(ResultSet.class, resultSet, (method, args, result) -> {
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                row();
+            }
+            return result;
+        });
+    }
+    
+    private interface AfterCall {
+        
+        Object apply(Method method, Object[] args, Object result) throws Throwable;
+    }
+    
+    // Calls through to the target, then lets `after` count the call and wrap what it returned. A proxy
+    // is only equal to itself, as pools and transaction managers compare the connections they hand out.
+    private static <T> T proxy(Class<T> type, T target, AfterCall after) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().equals("equals") && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            }
+            if (method.getName().equals("hashCode") && method.getParameterCount() == 0) {
+                return System.identityHashCode(proxy);
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            return method.getDeclaringClass() == Object.class ? result : after.apply(method, args, result);
+        };
+        return type.cast(Proxy.newProxyInstance(QueryCounter.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+}
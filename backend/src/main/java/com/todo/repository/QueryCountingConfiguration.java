@@ -0,0 +1,33 @@
+package com.todo.repository;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Plugs {@link QueryCounter} into the application's data source and session factory.
+ */
+@Configuration(proxyBeanMethods = false)
+public class QueryCountingConfiguration {
+    
+    // Static, so the post-processor is registered before the data source is created
+    @Bean
+    static BeanPostProcessor queryCountingDataSource() {
+        return new BeanPostProcessor() {
+            
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource dataSource ? QueryCounter.counting(dataSource) : bean;
+            }
+        };
+    }
+    
+    @Bean
+    HibernatePropertiesCustomizer entityLoadCounting() {
+        return properties -> properties.put(AvailableSettings.INTERCEPTOR, QueryCounter.entityLoadInterceptor());
+    }
+}
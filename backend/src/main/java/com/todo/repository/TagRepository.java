@@ -0,0 +1,33 @@
+package com.todo.repository;
+
+import com.todo.dto.TagCount;
+import com.todo.entity.Tag;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TagRepository extends JpaRepository<Tag, Long> {
+    
+    List<Tag> findByNameIn(Collection<String> names);
+    
+    // Insert-if-absent that cannot fail on the unique name when two requests intern the same tag
+    @Modifying
+    @Query(value = "MERGE INTO tags (name) KEY (name) VALUES (:name)", nativeQuery = true)
+    int insertIfAbsent(@Param("name") String name);
+    
+    // Facet counts: grouped in the database over the join table, most used first
+    @Query("SELECT new com.todo.dto.TagCount(t.name, COUNT(n)) FROM Node n JOIN n.tagRefs t "
+            + "GROUP BY t.name ORDER BY COUNT(n) DESC, t.name")
+    List<TagCount> countAll();
+    
+    @Query("SELECT new com.todo.dto.TagCount(t.name, COUNT(n)) FROM Node n JOIN n.tagRefs t "
+            + "WHERE n.path >= :path AND n.path < :upper "
+            + "GROUP BY t.name ORDER BY COUNT(n) DESC, t.name")
+    List<TagCount> countInSubtree(@Param("path") String path, @Param("upper") String upper);
+}
@@ -0,0 +1,32 @@
+package com.todo.repository;
+
+/**
+ * The short columns of one node in a tree read, for responses that ask for no notes, timestamps
+ * or tags, see {@link com.todo.dto.NodeFields}.
+ */
+public interface TreeRow {
+
+    Long getId();
+
+    Long getParentId();
+
+    Long getPosition();
+
+    Long getVersion();
+
+    String getContent();
+
+    Boolean getIsCompleted();
+
+    Boolean getIsExpanded();
+
+    Boolean getIsStarred();
+
+    Long getMirrorId();
+
+    Long getChildCount();
+
+    Long getDescendantCount();
+
+    Long getCompletedDescendantCount();
+}
@@ -0,0 +1,30 @@
+package com.todo.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers side effects on in-memory state until the surrounding transaction has committed, so a
+ * rollback never leaves caches or indexes ahead of the database.
+ */
+public final class AfterCommit {
+    
+    private AfterCommit() {
+    }
+    
+    /**
+     * Runs {@code action} after the current transaction commits, or right away outside a transaction.
+     */
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
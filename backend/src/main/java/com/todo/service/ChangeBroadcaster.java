@@ -0,0 +1,281 @@
+package com.todo.service;
+
+import com.todo.dto.NodeEvent;
+import com.todo.entity.Node;
+import com.todo.repository.NodeStateRow;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pushes committed node changes to connected clients over server-sent events.
+ *
+ * <p>Connections are async servlet requests, so an idle client holds no thread, only its emitter
+ * and a small pending map. Events are queued per client and coalesced by node (a later event for
+ * the same node replaces the earlier one) until a sender thread from a small shared pool writes
+ * them out as one batch. A client has at most one batch in flight, so a slow reader only slows
+ * itself; once more than {@code todo.events.max-pending} nodes pile up behind it, its queue is
+ * dropped and it is sent a single {@code resync} event instead, to catch up through the change feed.
+ *
+ * <p>The socket write itself blocks, so it runs on a separate writer thread and a sender waits for
+ * it at most {@code todo.events.send-timeout-ms}. A client that has stopped reading without
+ * disconnecting is dropped at that point, and it reconnects and resyncs if it ever wakes up; its
+ * writer stays blocked until the container gives up on the connection, but no sender waits for it.
+ */
+@Component
+public class ChangeBroadcaster {
+    
+    private static final Logger log = LoggerFactory.getLogger(ChangeBroadcaster.class);
+    
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    
+    private final ExecutorService senders;
+    
+    // Blocking emitter writes; grows only by the clients that stopped reading, each of them once
+    private final ExecutorService writers;
+    
+    private final long timeoutMillis;
+    
+    private final int maxPending;
+    
+    private final long sendTimeoutMillis;
+    
+    public ChangeBroadcaster(@Value("${todo.events.sender-threads:4}") int senderThreads,
+                             @Value("${todo.events.timeout-ms:1800000}") long timeoutMillis,
+                             @Value("${todo.events.max-pending:1000}") int maxPending,
+                             @Value("${todo.events.send-timeout-ms:10000}") long sendTimeoutMillis) {
+        this.senders = Executors.newFixedThreadPool(senderThreads, daemon("node-events"));
+        this.writers = Executors.newCachedThreadPool(daemon("node-events-write"));
+        this.timeoutMillis = timeoutMillis;
+        this.maxPending = maxPending;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+    }
+    
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Opens an event stream. The client reconnects on its own once it times out.
+     */
+    public SseEmitter subscribe() {
+        return subscribe(new SseEmitter(timeoutMillis));
+    }
+    
+    SseEmitter subscribe(SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+    
+    /**
+     * Announces a created or changed node; a move when it left {@code previousParentId}.
+     */
+    public void nodeChanged(Node node, Long previousParentId) {
+        boolean moved = !Objects.equals(node.getParentId(), previousParentId);
+        publish(new NodeEvent(moved ? NodeEvent.Type.MOVED : NodeEvent.Type.UPSERTED,
+                node.getId(), node.getParentId(), node.getPosition(), node.getVersion()));
+    }
+    
+    public void nodeChanged(NodeStateRow state) {
+        publish(new NodeEvent(NodeEvent.Type.UPSERTED, state.getId(), state.getParentId(), state.getPosition(),
+                state.getVersion()));
+    }
+    
+    public void nodeDeleted(Long id, Long parentId) {
+        publish(NodeEvent.deleted(id, parentId));
+    }
+    
+    public void childrenChanged(Long parentId) {
+        publish(NodeEvent.childrenChanged(parentId));
+    }
+    
+    public void subtreeChanged(Long id, Long parentId) {
+        publish(NodeEvent.subtreeChanged(id, parentId));
+    }
+    
+    public void countsChanged(Long id, Long parentId) {
+        publish(NodeEvent.countsChanged(id, parentId));
+    }
+    
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+    
+    // Call after commit only, like the cache and index updates
+    void publish(NodeEvent event) {
+        if (senders.isShutdown()) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.offer(event)) {
+                senders.execute(subscriber::drain);
+            }
+        }
+    }
+    
+    // Comments keep proxies from closing idle streams and flush out clients that went away. They go
+    // through each client's queue, so the scheduler thread never waits on a socket
+    @Scheduled(fixedDelayString = "${todo.events.heartbeat-ms:30000}")
+    public void heartbeat() {
+        if (senders.isShutdown()) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.offerPing()) {
+                senders.execute(subscriber::drain);
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        senders.shutdownNow();
+        writers.shutdownNow();
+    }
+    
+    private final class Subscriber {
+        
+        private final SseEmitter emitter;
+        
+        // Keyed by node id, by parent for children-changed, or by root for subtree-changed; guarded by this
+        private Map<Object, NodeEvent> pending = new LinkedHashMap<>();
+        
+        private boolean overflowed;
+        
+        private boolean ping;
+        
+        private boolean draining;
+        
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+        
+        // Queues the event; true when the caller should schedule a drain
+        synchronized boolean offer(NodeEvent event) {
+            if (!overflowed) {
+                Object key = switch (event.type()) {
+                    case CHILDREN_CHANGED -> "children:" + event.parentId();
+                    case SUBTREE_CHANGED -> "subtree:" + event.id();
+                    // never replaces a fuller event for the node, which makes clients refetch it anyway
+                    case COUNTS_CHANGED -> "counts:" + event.id();
+                    default -> event.id();
+                };
+                pending.remove(key);
+                pending.put(key, event);
+                if (pending.size() > maxPending) {
+                    pending.clear();
+                    overflowed = true;
+                }
+            }
+            return startDraining();
+        }
+        
+        // Queues a heartbeat, sent only if nothing else goes out first; true as for offer
+        synchronized boolean offerPing() {
+            ping = true;
+            return startDraining();
+        }
+        
+        private boolean startDraining() {
+            if (draining) {
+                return false;
+            }
+            draining = true;
+            return true;
+        }
+        
+        void drain() {
+            while (true) {
+                List<NodeEvent> batch;
+                boolean resync;
+                boolean pingOnly;
+                synchronized (this) {
+                    if (pending.isEmpty() && !overflowed && !ping) {
+                        draining = false;
+                        return;
+                    }
+                    batch = new ArrayList<>(pending.values());
+                    resync = overflowed;
+                    pingOnly = batch.isEmpty() && !resync;
+                    pending = new LinkedHashMap<>();
+                    overflowed = false;
+                    ping = false;
+                }
+                boolean sent;
+                if (resync) {
+                    sent = send(SseEmitter.event().name("resync").data(""));
+                } else if (pingOnly) {
+                    sent = send(SseEmitter.event().comment("ping"));
+                } else {
+                    sent = send(SseEmitter.event().name("changes").data(batch, MediaType.APPLICATION_JSON));
+                }
+                if (!sent) {
+                    return;
+                }
+            }
+        }
+        
+        // Leaves draining set on failure, so nothing is queued for this client again
+        boolean send(SseEmitter.SseEventBuilder event) {
+            Future<?> write;
+            try {
+                write = writers.submit(() -> {
+                    emitter.send(event);
+                    return null;
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                return false;
+            }
+            try {
+                write.get(sendTimeoutMillis, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                log.debug("Dropping event subscriber that stopped reading");
+                subscribers.remove(this);
+                write.cancel(true);
+                // completing waits for the blocked write to give up, so not on this thread
+                writers.execute(() -> emitter.completeWithError(e));
+                return false;
+            } catch (ExecutionException e) {
+                // the container reports the broken connection through onError; just stop sending
+                log.debug("Dropping event subscriber: {}", e.getCause().getMessage());
+                subscribers.remove(this);
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
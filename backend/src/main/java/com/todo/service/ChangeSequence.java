@@ -0,0 +1,95 @@
+package com.todo.service;
+
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeTombstoneRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Hands out the change numbers that order committed writes for delta sync.
+ *
+ * <p>Each write transaction takes one number on first use and stamps it on every row it writes,
+ * including the tombstones of deleted nodes. Numbers are taken in order but transactions commit
+ * in any order, so readers only look as far as the {@link #watermark()}: the highest number at or
+ * below which no transaction is still open. A client that has synced up to the watermark can never
+ * see a row turn up behind its cursor later.
+ *
+ * <p>The same number tells {@link NodeJournal} which rows a transaction wrote.
+ */
+@Component
+public class ChangeSequence {
+    
+    private final NodeRepository nodeRepository;
+    
+    private final NodeTombstoneRepository tombstoneRepository;
+    
+    private final NodeJournal journal;
+    
+    // Numbers of transactions that have not completed yet
+    private final NavigableSet<Long> open = new TreeSet<>();
+    
+    private long last;
+    
+    private boolean seeded;
+    
+    public ChangeSequence(NodeRepository nodeRepository, NodeTombstoneRepository tombstoneRepository,
+                          NodeJournal journal) {
+        this.nodeRepository = nodeRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.journal = journal;
+    }
+    
+    /**
+     * The change number of the current transaction, taken on the first call within it.
+     */
+    public long current() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Change numbers are only handed out inside a transaction");
+        }
+        Long bound = (Long) TransactionSynchronizationManager.getResource(this);
+        if (bound != null) {
+            return bound;
+        }
+        long number = begin();
+        TransactionSynchronizationManager.bindResource(this, number);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ChangeSequence.this);
+                end(number);
+            }
+        });
+        journal.track(number);
+        return number;
+    }
+    
+    /**
+     * Highest change number whose writes, and those of every lower number, are committed or
+     * rolled back.
+     */
+    public synchronized long watermark() {
+        seed();
+        return open.isEmpty() ? last : open.first() - 1;
+    }
+    
+    private synchronized long begin() {
+        seed();
+        open.add(++last);
+        return last;
+    }
+    
+    private synchronized void end(long number) {
+        open.remove(number);
+    }
+    
+    private void seed() {
+        if (!seeded) {
+            last = Math.max(nodeRepository.findMaxChangeSeq(), tombstoneRepository.findMaxChangeSeq());
+            seeded = true;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeStateRow;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind buffer for expand/collapse state, which is view state clicked far more often than
+ * anything else is written.
+ *
+ * <p>Requests only record the latest value per node; {@link #flush()} writes everything pending with
+ * one UPDATE per value on a short interval and at shutdown. Reads overlay pending values through
+ * {@link #pending(Long)}. A crash can lose the last interval of expand state, nothing else.
+ */
+@Component
+public class ExpandStateBuffer {
+    
+    // Ids per UPDATE; keeps the IN list within what the database plans well
+    static final int FLUSH_CHUNK = 500;
+    
+    private static final Logger log = LoggerFactory.getLogger(ExpandStateBuffer.class);
+    
+    private final Map<Long, Boolean> pending = new ConcurrentHashMap<>();
+    
+    private final NodeRepository nodeRepository;
+    
+    private final NodeTreeCache treeCache;
+    
+    private final ChangeSequence changeSequence;
+    
+    private final ChangeBroadcaster broadcaster;
+    
+    private final TransactionTemplate flushTransaction;
+    
+    public ExpandStateBuffer(NodeRepository nodeRepository, NodeTreeCache treeCache, ChangeSequence changeSequence,
+                             ChangeBroadcaster broadcaster, PlatformTransactionManager transactionManager) {
+        this.nodeRepository = nodeRepository;
+        this.treeCache = treeCache;
+        this.changeSequence = changeSequence;
+        this.broadcaster = broadcaster;
+        // Always a transaction of its own, never part of whatever the caller has open
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    
+    /**
+     * Flips the node's expand state as the client last saw it, pending value included.
+     */
+    public boolean toggle(Long id) {
+        // a flush or discard may drop the entry at any point, so the stored value is read inside
+        return pending.compute(id, (key, value) -> !(value != null ? value : stored(key)));
+    }
+    
+    public boolean set(Long id, boolean expanded) {
+        if (!pending.containsKey(id)) {
+            stored(id);
+        }
+        pending.put(id, expanded);
+        return expanded;
+    }
+    
+    /**
+     * The buffered value for a node, or null if nothing is waiting to be written.
+     */
+    public Boolean pending(Long id) {
+        return pending.get(id);
+    }
+    
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+    
+    /**
+     * Drops a buffered value that a transactional write has superseded.
+     */
+    public void discard(Long id) {
+        pending.remove(id);
+    }
+    
+    /**
+     * Writes every pending value in its own transaction. Entries leave the buffer only once the
+     * cache and live clients have the written rows, and only if no newer value arrived meanwhile.
+     */
+    @Scheduled(fixedDelayString = "${todo.write-behind.flush-ms:250}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Long, Boolean> batch = new HashMap<>(pending);
+        List<NodeStateRow> written = flushTransaction.execute(status -> {
+            long seq = changeSequence.current();
+            List<NodeStateRow> rows = new ArrayList<>();
+            for (boolean expanded : new boolean[] {true, false}) {
+                List<Long> ids = batch.entrySet().stream()
+                        .filter(entry -> entry.getValue() == expanded)
+                        .map(Map.Entry::getKey)
+                        .toList();
+                for (int from = 0; from < ids.size(); from += FLUSH_CHUNK) {
+                    List<Long> chunk = ids.subList(from, Math.min(from + FLUSH_CHUNK, ids.size()));
+                    rows.addAll(nodeRepository.setExpanded(chunk, expanded, seq));
+                }
+            }
+            return rows;
+        });
+        for (NodeStateRow row : written) {
+            treeCache.update(row.getId(), node -> {
+                node.setIsExpanded(row.getIsExpanded());
+                node.setVersion(row.getVersion());
+                node.setUpdatedAt(row.getUpdatedAt());
+            });
+            broadcaster.nodeChanged(row);
+        }
+        batch.forEach(pending::remove);
+        log.debug("Flushed expand state of {} nodes, {} changed", batch.size(), written.size());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+    
+    // The committed value, which also checks that the node exists
+    private boolean stored(Long id) {
+        Node cached = treeCache.getNode(id);
+        if (cached != null) {
+            return cached.getIsExpanded();
+        }
+        return nodeRepository.findStateById(id)
+                .orElseThrow(() -> new RuntimeException("Node not found with id: " + id))
+                .getIsExpanded();
+    }
+}
@@ -0,0 +1,207 @@
+package com.todo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * One append-only file of length- and checksum-framed records, written with group commit.
+ *
+ * <p>Callers hand over a frame and wait on the returned future. A single writer thread takes
+ * whatever has queued up, writes it with one gathering write and makes it durable with one
+ * {@code force}, then completes every waiting caller; concurrent commits share an fsync.
+ * Callers keep {@link #append} and {@link #close} apart, so nothing is queued behind the close.
+ */
+final class JournalFile implements Closeable {
+    
+    static final int MAGIC = 0x544A4C31; // "TJL1"
+    
+    private static final int FRAME_HEADER = 8;
+    
+    private static final Logger log = LoggerFactory.getLogger(JournalFile.class);
+    
+    private record Append(ByteBuffer frame, CompletableFuture<Void> done) {
+    }
+    
+    private static final Append CLOSE = new Append(null, null);
+    
+    private final Path path;
+    
+    private final FileChannel channel;
+    
+    private final BlockingQueue<Append> queue = new LinkedBlockingQueue<>();
+    
+    private final Thread writer;
+    
+    private volatile boolean closed;
+    
+    private volatile long size;
+    
+    private JournalFile(Path path, FileChannel channel, long size) {
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+        this.writer = new Thread(this::writeLoop, "journal-writer-" + path.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+    
+    /**
+     * Creates a new file, which must not exist yet, and starts its writer.
+     */
+    static JournalFile create(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        channel.write(ByteBuffer.allocate(4).putInt(0, MAGIC));
+        channel.force(true);
+        return new JournalFile(path, channel, 4);
+    }
+    
+    Path path() {
+        return path;
+    }
+    
+    /**
+     * Queues one record; the future completes once it is on disk.
+     */
+    CompletableFuture<Void> append(byte[] payload) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Journal file " + path + " is closed"));
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue.add(new Append(frame(payload), done));
+        return done;
+    }
+    
+    /**
+     * Writes all queued records, then stops the writer and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+    
+    static ByteBuffer frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return frame;
+    }
+    
+    /**
+     * Hands every intact record in {@code path} to {@code reader} in order. Reading stops at the
+     * first torn or corrupt frame, which is where a crash cut the last group write short.
+     * Returns the number of bytes read.
+     */
+    static long read(Path path, Consumer<byte[]> reader) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER);
+            if (length < 4) {
+                throw new IOException(path + " is not a journal file");
+            }
+            readFully(channel, header.limit(4), 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a journal file");
+            }
+            long offset = 4;
+            while (offset + FRAME_HEADER <= length) {
+                header.clear();
+                readFully(channel, header, offset);
+                int payloadLength = header.getInt(0);
+                if (payloadLength < 0 || offset + FRAME_HEADER + payloadLength > length) {
+                    log.warn("Journal {} ends in a torn record at offset {}; ignoring the rest", path, offset);
+                    return offset;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+                readFully(channel, payload, offset + FRAME_HEADER);
+                CRC32 crc = new CRC32();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != header.getInt(4)) {
+                    log.warn("Journal {} has a corrupt record at offset {}; ignoring the rest", path, offset);
+                    return offset;
+                }
+                reader.accept(payload.array());
+                offset += FRAME_HEADER + payloadLength;
+            }
+            return offset;
+        }
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+        }
+    }
+    
+    private void writeLoop() {
+        List<Append> group = new ArrayList<>();
+        while (true) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(group);
+            boolean closing = group.remove(CLOSE);
+            if (!group.isEmpty()) {
+                writeGroup(group);
+                group.clear();
+            }
+            if (closing) {
+                return;
+            }
+        }
+    }
+    
+    private void writeGroup(List<Append> group) {
+        ByteBuffer[] frames = group.stream().map(Append::frame).toArray(ByteBuffer[]::new);
+        try {
+            long remaining = 0;
+            for (ByteBuffer frame : frames) {
+                remaining += frame.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(frames);
+            }
+            channel.force(false);
+            size = channel.position();
+            group.forEach(append -> append.done().complete(null));
+        } catch (IOException e) {
+            log.error("Could not write {} records to journal {}", group.size(), path, e);
+            UncheckedIOException failure = new UncheckedIOException(e);
+            group.forEach(append -> append.done().completeExceptionally(failure));
+        }
+    }
+    
+    long size() {
+        return size;
+    }
+}
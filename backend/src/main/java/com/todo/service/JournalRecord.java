@@ -0,0 +1,143 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.entity.NodeTombstone;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One entry of the operation log: the full state of every node a transaction wrote and the
+ * tombstones of the nodes it deleted. Full row images make replay idempotent and let it resolve
+ * records that reached the log out of commit order by {@link Node#getVersion() version}.
+ * Snapshots are written as the same records, so startup reads both with one decoder.
+ */
+record JournalRecord(List<Node> nodes, List<NodeTombstone> tombstones) {
+    
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * (nodes.size() + 1));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(nodes.size());
+            for (Node node : nodes) {
+                out.writeLong(node.getId());
+                writeNullableLong(out, node.getParentId());
+                out.writeLong(node.getPosition());
+                out.writeLong(node.getVersion());
+                out.writeLong(node.getChangeSeq());
+                writeTimestamp(out, node.getCreatedAt());
+                writeTimestamp(out, node.getUpdatedAt());
+                out.writeByte((node.getIsCompleted() ? 1 : 0) | (node.getIsExpanded() ? 2 : 0)
+                        | (node.getIsStarred() ? 4 : 0));
+                writeString(out, node.getContent());
+                writeString(out, node.getNotes());
+                writeNullableLong(out, node.getMirrorId());
+                List<String> tags = node.getTags();
+                out.writeInt(tags.size());
+                for (String tag : tags) {
+                    writeString(out, tag);
+                }
+            }
+            out.writeInt(tombstones.size());
+            for (NodeTombstone tombstone : tombstones) {
+                out.writeLong(tombstone.getNodeId());
+                out.writeLong(tombstone.getChangeSeq());
+                writeTimestamp(out, tombstone.getDeletedAt());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    static JournalRecord decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int nodeCount = in.readInt();
+            List<Node> nodes = new ArrayList<>(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                Node node = new Node(null, null, null);
+                node.setId(in.readLong());
+                node.setParentId(readNullableLong(in));
+                node.setPosition(in.readLong());
+                node.setVersion(in.readLong());
+                node.setChangeSeq(in.readLong());
+                node.setCreatedAt(readTimestamp(in));
+                node.setUpdatedAt(readTimestamp(in));
+                int flags = in.readByte();
+                node.setIsCompleted((flags & 1) != 0);
+                node.setIsExpanded((flags & 2) != 0);
+                node.setIsStarred((flags & 4) != 0);
+                node.setContent(readString(in));
+                node.setNotes(readString(in));
+                node.setMirrorId(readNullableLong(in));
+                int tagCount = in.readInt();
+                List<String> tags = new ArrayList<>(tagCount);
+                for (int t = 0; t < tagCount; t++) {
+                    tags.add(readString(in));
+                }
+                node.setTags(tags);
+                nodes.add(node);
+            }
+            int tombstoneCount = in.readInt();
+            List<NodeTombstone> tombstones = new ArrayList<>(tombstoneCount);
+            for (int i = 0; i < tombstoneCount; i++) {
+                tombstones.add(new NodeTombstone(in.readLong(), in.readLong(), readTimestamp(in)));
+            }
+            return new JournalRecord(nodes, tombstones);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt journal record", e);
+        }
+    }
+    
+    private static void writeNullableLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+    
+    private static Long readNullableLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+    
+    // Length-prefixed UTF-8; writeUTF stops at 64 KB, which long notes can exceed
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static void writeTimestamp(DataOutputStream out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(value.getNano());
+        }
+    }
+    
+    private static LocalDateTime readTimestamp(DataInputStream in) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+    }
+}
@@ -0,0 +1,220 @@
+package com.todo.service;
+
+import com.todo.dto.NodeTree;
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shows mirror nodes with the content of the node they mirror.
+ *
+ * <p>A mirror is a node of its own, with its own parent, position, expand state and version, whose
+ * {@code mirrorId} names the original. Content, notes, tags and the completed and starred flags
+ * are always read from the original, so an edit to the original shows in every mirror without
+ * writing to them. A mirror has no children of its own; it shows the original's.
+ *
+ * <p>Originals are looked up once per response, however many mirrors point at them: from the
+ * tree cache where their siblings are cached, the rest with one IN query.
+ */
+@Service
+public class MirrorResolver {
+    
+    private final NodeRepository nodeRepository;
+    
+    private final NodeTreeCache treeCache;
+    
+    public MirrorResolver(NodeRepository nodeRepository, NodeTreeCache treeCache) {
+        this.nodeRepository = nodeRepository;
+        this.treeCache = treeCache;
+    }
+    
+    /**
+     * Returns the list with each mirror replaced by a copy showing its original. A list without
+     * mirrors is returned as it is, without a lookup.
+     */
+    public List<Node> resolve(List<Node> nodes) {
+        Set<Long> originalIds = new LinkedHashSet<>();
+        for (Node node : nodes) {
+            if (node.getMirrorId() != null) {
+                originalIds.add(node.getMirrorId());
+            }
+        }
+        if (originalIds.isEmpty()) {
+            return nodes;
+        }
+        Map<Long, Node> originals = findOriginals(originalIds);
+        List<Node> result = new ArrayList<>(nodes);
+        for (int i = 0; i < result.size(); i++) {
+            Node node = result.get(i);
+            Node original = node.getMirrorId() != null ? originals.get(node.getMirrorId()) : null;
+            if (original != null) {
+                result.set(i, node.mirroring(original));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * The original a node mirrors, or null when the node is not a mirror or does not exist.
+     */
+    public Long originalOf(Long id) {
+        Node node = treeCache.getNode(id);
+        if (node == null) {
+            node = nodeRepository.findById(id).orElse(null);
+        }
+        return node != null ? node.getMirrorId() : null;
+    }
+    
+    /**
+     * Resolves the mirrors in loaded trees, in place, and hangs the original's subtree under every
+     * expanded mirror, down to {@code maxDepth} levels below the roots. Mirrors found inside those
+     * subtrees are resolved in the next round, so a response costs one query per level of mirror
+     * nesting. A mirror placed inside its own original shows no children, which ends the recursion.
+     */
+    public void expand(List<NodeTree> roots, int maxDepth) {
+        new Expansion(maxDepth).run(roots);
+    }
+    
+    /**
+     * The nodes with the given ids, for showing mirrors that are not loaded as {@link Node}s.
+     * Missing ids are left out of the map.
+     */
+    public Map<Long, Node> findOriginals(Set<Long> ids) {
+        Map<Long, Node> originals = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            Node cached = treeCache.getNode(id);
+            if (cached != null) {
+                originals.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            nodeRepository.findByIdIn(missing).forEach(node -> originals.put(node.getId(), node));
+        }
+        return originals;
+    }
+    
+    // Ids of the nodes shown above a position in the response, originals of mirrors included
+    private record Chain(Long id, Chain parent) {
+        
+        boolean contains(Long other) {
+            for (Chain chain = this; chain != null; chain = chain.parent) {
+                if (chain.id.equals(other)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    // A mirror in a tree: where it sits, how deep, and what is shown above it
+    private record Slot(List<NodeTree> siblings, int index, int depth, Chain ancestors) {
+        
+        Node mirror() {
+            return siblings.get(index).getNode();
+        }
+    }
+    
+    private final class Expansion {
+        
+        private final int maxDepth;
+        
+        private final Map<Long, NodeTree> originals = new HashMap<>();
+        
+        // How many levels below each loaded original were loaded with it
+        private final Map<Long, Integer> loadedDepth = new HashMap<>();
+        
+        Expansion(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+        
+        void run(List<NodeTree> roots) {
+            List<Slot> slots = new ArrayList<>();
+            collect(roots, 0, null, slots);
+            while (!slots.isEmpty()) {
+                load(slots);
+                List<Slot> next = new ArrayList<>();
+                for (Slot slot : slots) {
+                    Node mirror = slot.mirror();
+                    NodeTree original = originals.get(mirror.getMirrorId());
+                    if (original == null) {
+                        continue;
+                    }
+                    NodeTree shown = new NodeTree(mirror.mirroring(original.getNode()));
+                    slot.siblings().set(slot.index(), shown);
+                    if (expands(slot)) {
+                        Chain ancestors = new Chain(mirror.getMirrorId(), new Chain(mirror.getId(), slot.ancestors()));
+                        copyChildren(original, shown, slot.depth() + 1, ancestors, next);
+                    }
+                }
+                slots = next;
+            }
+        }
+        
+        private boolean expands(Slot slot) {
+            Node mirror = slot.mirror();
+            return mirror.getIsExpanded() && slot.depth() < maxDepth && (slot.ancestors() == null
+                    || !slot.ancestors().contains(mirror.getMirrorId()));
+        }
+        
+        // Loads every original not yet loaded deep enough, all in one query
+        private void load(List<Slot> slots) {
+            Set<Long> ids = new LinkedHashSet<>();
+            int depth = 0;
+            for (Slot slot : slots) {
+                Long id = slot.mirror().getMirrorId();
+                int needed = expands(slot) ? maxDepth - slot.depth() : 0;
+                Integer loaded = loadedDepth.get(id);
+                if (loaded == null || loaded < needed) {
+                    ids.add(id);
+                    depth = Math.max(depth, needed);
+                }
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+            for (NodeTree tree : NodeTree.assemble(nodeRepository.findExpandedSubtrees(ids, depth))) {
+                if (ids.contains(tree.getNode().getId())) {
+                    originals.put(tree.getNode().getId(), tree);
+                    loadedDepth.put(tree.getNode().getId(), depth);
+                }
+            }
+        }
+        
+        private void collect(List<NodeTree> trees, int depth, Chain ancestors, List<Slot> slots) {
+            for (int i = 0; i < trees.size(); i++) {
+                NodeTree tree = trees.get(i);
+                if (tree.getNode().getMirrorId() != null) {
+                    slots.add(new Slot(trees, i, depth, ancestors));
+                } else {
+                    collect(tree.getChildren(), depth + 1, new Chain(tree.getNode().getId(), ancestors), slots);
+                }
+            }
+        }
+        
+        // Copies the loaded levels that fit above maxDepth; the nodes themselves are shared, not copied
+        private void copyChildren(NodeTree from, NodeTree to, int depth, Chain ancestors, List<Slot> slots) {
+            if (depth > maxDepth) {
+                return;
+            }
+            for (NodeTree child : from.getChildren()) {
+                NodeTree copy = new NodeTree(child.getNode());
+                to.getChildren().add(copy);
+                if (child.getNode().getMirrorId() != null) {
+                    slots.add(new Slot(to.getChildren(), to.getChildren().size() - 1, depth, ancestors));
+                } else {
+                    copyChildren(child, copy, depth + 1, new Chain(child.getNode().getId(), ancestors), slots);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.entity.NodeTombstone;
+import com.todo.entity.Tag;
+import com.todo.repository.NodeJournalRow;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeTombstoneRepository;
+import com.todo.repository.OutlineRow;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Durable storage for {@code todo.storage.mode=journal}: the embedded database stays the working
+ * set, and every committed change is also appended to an operation log on disk.
+ *
+ * <p>Every write transaction takes a {@link ChangeSequence change number} and stamps it on the rows
+ * it writes and the tombstones of the rows it deletes. Just before commit those rows are read back
+ * by that number into one {@link JournalRecord}; after commit the record is appended to the current
+ * log segment with group commit, and the writing request returns once it is on disk. So whatever
+ * path a write took, whether entity, single UPDATE, bulk import or set-based delete, the log sees
+ * its result.
+ *
+ * <p>Once the log has grown past {@code todo.storage.snapshot-after-bytes}, it is compacted: the
+ * current segment is closed, every live node and tombstone is written to a new snapshot, and the
+ * segments it covers are deleted. Startup loads the latest snapshot and the segments after it in
+ * one bulk insert, keeping the highest version of each node.
+ */
+@Component
+public class NodeJournal {
+    
+    public static final String MODE = "journal";
+    
+    private static final Logger log = LoggerFactory.getLogger(NodeJournal.class);
+    
+    private static final Pattern SEGMENT = Pattern.compile("journal-(\\d{9})\\.log");
+    
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d{9})\\.bin");
+    
+    // Nodes per snapshot record, so a snapshot never needs the whole outline in one buffer
+    static final int SNAPSHOT_CHUNK = 1000;
+    
+    private static final String INSERT_NODE = "INSERT INTO nodes (id, content, parent_id, path, position, version, "
+            + "change_seq, created_at, updated_at, is_completed, is_expanded, is_starred, notes, mirror_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String INSERT_TAG = "INSERT INTO node_tag (node_id, tag_id) VALUES (?, ?)";
+    
+    private static final String INSERT_TOMBSTONE =
+            "INSERT INTO node_tombstones (node_id, change_seq, deleted_at) VALUES (?, ?, ?)";
+    
+    private final boolean enabled;
+    
+    private final Path directory;
+    
+    private final long snapshotAfterBytes;
+    
+    private final int batchSize;
+    
+    private final NodeRepository nodeRepository;
+    
+    private final NodeTombstoneRepository tombstoneRepository;
+    
+    private final TagService tagService;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    private final EntityManager entityManager;
+    
+    private final SubtreeCounters counters;
+    
+    private final TransactionTemplate transaction;
+    
+    private final TransactionTemplate readOnlyTransaction;
+    
+    // Appends hold the read lock while queueing; rotation and shutdown take the write lock
+    private final ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    
+    private final AtomicLong bytesSinceSnapshot = new AtomicLong();
+    
+    private JournalFile segment;
+    
+    private long segmentNumber;
+    
+    public NodeJournal(@Value("${todo.storage.mode:memory}") String mode,
+                       @Value("${todo.storage.dir:data}") String directory,
+                       @Value("${todo.storage.snapshot-after-bytes:67108864}") long snapshotAfterBytes,
+                       @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}") int batchSize,
+                       NodeRepository nodeRepository, NodeTombstoneRepository tombstoneRepository,
+                       TagService tagService, JdbcTemplate jdbcTemplate, EntityManager entityManager,
+                       SubtreeCounters counters, PlatformTransactionManager transactionManager) {
+        this.enabled = MODE.equalsIgnoreCase(mode);
+        this.directory = Path.of(directory);
+        this.snapshotAfterBytes = snapshotAfterBytes;
+        this.batchSize = batchSize;
+        this.nodeRepository = nodeRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.tagService = tagService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.counters = counters;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Restores the database from disk and opens a fresh segment for this run's writes.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        long last = replay();
+        // the journal does not record the counters; derive them once from the restored tree
+        counters.rebuild();
+        segmentNumber = last + 1;
+        segment = JournalFile.create(segmentPath(segmentNumber));
+    }
+    
+    /**
+     * Logs the current transaction's writes when it commits. Called by {@link ChangeSequence} when
+     * the transaction takes change number {@code seq}.
+     */
+    void track(long seq) {
+        if (!enabled) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            
+            private byte[] record;
+            
+            // Ahead of the cache, index and live-update hooks: nothing is published before it is durable
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+            
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                entityManager.flush();
+                List<Node> nodes = nodeRepository.findJournalRows(seq).stream().map(NodeJournal::toNode).toList();
+                List<NodeTombstone> tombstones = tombstoneRepository.findByChangeSeq(seq);
+                if (!nodes.isEmpty() || !tombstones.isEmpty()) {
+                    record = new JournalRecord(nodes, tombstones).encode();
+                }
+            }
+            
+            @Override
+            public void afterCommit() {
+                if (record != null) {
+                    append(record);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Compacts the log once it has grown past the configured size.
+     */
+    @Scheduled(fixedDelayString = "${todo.storage.snapshot-check-ms:60000}")
+    public void snapshotIfDue() {
+        if (enabled && bytesSinceSnapshot.get() >= snapshotAfterBytes) {
+            snapshot();
+        }
+    }
+    
+    /**
+     * Writes every live node and tombstone to a snapshot and deletes the segments it replaces.
+     * Segments are closed first, so everything in them committed before the snapshot is read.
+     */
+    public synchronized void snapshot() {
+        if (!enabled) {
+            return;
+        }
+        long covered;
+        segmentLock.writeLock().lock();
+        try {
+            covered = segmentNumber;
+            segment.close();
+            segmentNumber++;
+            segment = JournalFile.create(segmentPath(segmentNumber));
+            bytesSinceSnapshot.set(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+        
+        Path snapshot = snapshotPath(covered + 1);
+        Path partial = directory.resolve(snapshot.getFileName() + ".tmp");
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 Stream<NodeJournalRow> rows = nodeRepository.streamJournalRows()) {
+                out.write(ByteBuffer.allocate(4).putInt(0, JournalFile.MAGIC));
+                List<Node> chunk = new ArrayList<>(SNAPSHOT_CHUNK);
+                for (Iterator<NodeJournalRow> it = rows.iterator(); it.hasNext(); ) {
+                    chunk.add(toNode(it.next()));
+                    if (chunk.size() == SNAPSHOT_CHUNK || !it.hasNext()) {
+                        writeFully(out, new JournalRecord(chunk, List.of()).encode());
+                        chunk.clear();
+                    }
+                }
+                writeFully(out, new JournalRecord(List.of(), tombstoneRepository.findAll()).encode());
+                out.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        try {
+            Files.move(partial, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (Path file : list()) {
+                if (number(file) <= covered) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Wrote snapshot {}", snapshot);
+    }
+    
+    @PreDestroy
+    public void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        segmentLock.writeLock().lock();
+        try {
+            segment.close();
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Loads the latest snapshot and every later segment into the (empty) database. Returns the
+     * number of the last segment found, or 0.
+     */
+    synchronized long replay() throws IOException {
+        long started = System.nanoTime();
+        List<Path> files = list();
+        long snapshotNumber = files.stream()
+                .filter(file -> SNAPSHOT.matcher(file.getFileName().toString()).matches())
+                .mapToLong(NodeJournal::number).max().orElse(0);
+        long lastSegment = 0;
+        
+        Map<Long, Node> latest = new HashMap<>();
+        Map<Long, NodeTombstone> deleted = new HashMap<>();
+        if (snapshotNumber > 0) {
+            JournalFile.read(snapshotPath(snapshotNumber),
+                    payload -> merge(JournalRecord.decode(payload), latest, deleted));
+        }
+        long tailBytes = 0;
+        for (Path file : files) {
+            if (SEGMENT.matcher(file.getFileName().toString()).matches()) {
+                long number = number(file);
+                lastSegment = Math.max(lastSegment, number);
+                if (number >= snapshotNumber) {
+                    tailBytes += JournalFile.read(file,
+                            payload -> merge(JournalRecord.decode(payload), latest, deleted));
+                }
+            }
+        }
+        load(latest, deleted);
+        bytesSinceSnapshot.set(tailBytes);
+        log.info("Restored {} nodes and {} tombstones from {} in {} ms", latest.size(), deleted.size(), directory,
+                (System.nanoTime() - started) / 1_000_000);
+        return Math.max(lastSegment, snapshotNumber - 1);
+    }
+    
+    private void append(byte[] record) {
+        CompletableFuture<Void> written;
+        segmentLock.readLock().lock();
+        try {
+            written = segment.append(record);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+        try {
+            written.join();
+        } catch (CompletionException e) {
+            // The database has committed but the log has not; the change would not survive a restart
+            throw new IllegalStateException("Committed change could not be written to the journal", e.getCause());
+        }
+        bytesSinceSnapshot.addAndGet(record.length);
+    }
+    
+    // Records can reach the log out of commit order; the highest version of a node wins, and a delete is final
+    private static void merge(JournalRecord record, Map<Long, Node> latest, Map<Long, NodeTombstone> deleted) {
+        for (NodeTombstone tombstone : record.tombstones()) {
+            deleted.put(tombstone.getNodeId(), tombstone);
+            latest.remove(tombstone.getNodeId());
+        }
+        for (Node node : record.nodes()) {
+            if (!deleted.containsKey(node.getId())) {
+                latest.merge(node.getId(), node, (kept, candidate) ->
+                        candidate.getVersion() >= kept.getVersion() ? candidate : kept);
+            }
+        }
+    }
+    
+    // One transaction of JDBC batches, the same way OutlineImporter writes; paths are rebuilt from the parents
+    private void load(Map<Long, Node> latest, Map<Long, NodeTombstone> deleted) {
+        Map<Long, String> paths = new HashMap<>();
+        for (Node node : latest.values()) {
+            pathOf(node, latest, paths);
+        }
+        transaction.executeWithoutResult(status -> {
+            Set<String> names = new LinkedHashSet<>();
+            latest.values().forEach(node -> names.addAll(node.getTags()));
+            Map<String, Tag> tags = tagService.intern(names);
+            
+            List<Node> nodes = new ArrayList<>(latest.values());
+            jdbcTemplate.batchUpdate(INSERT_NODE, nodes, batchSize, (ps, node) -> {
+                ps.setLong(1, node.getId());
+                ps.setString(2, node.getContent());
+                ps.setObject(3, node.getParentId(), Types.BIGINT);
+                ps.setString(4, paths.get(node.getId()));
+                ps.setLong(5, node.getPosition());
+                ps.setLong(6, node.getVersion());
+                ps.setLong(7, node.getChangeSeq());
+                ps.setTimestamp(8, node.getCreatedAt() != null ? Timestamp.valueOf(node.getCreatedAt()) : null);
+                ps.setTimestamp(9, node.getUpdatedAt() != null ? Timestamp.valueOf(node.getUpdatedAt()) : null);
+                ps.setBoolean(10, node.getIsCompleted());
+                ps.setBoolean(11, node.getIsExpanded());
+                ps.setBoolean(12, node.getIsStarred());
+                ps.setString(13, node.getNotes());
+                ps.setObject(14, node.getMirrorId(), Types.BIGINT);
+            });
+            List<long[]> nodeTags = new ArrayList<>();
+            for (Node node : nodes) {
+                for (String name : new LinkedHashSet<>(node.getTags())) {
+                    nodeTags.add(new long[] {node.getId(), tags.get(name).getId()});
+                }
+            }
+            jdbcTemplate.batchUpdate(INSERT_TAG, nodeTags, batchSize, (ps, row) -> {
+                ps.setLong(1, row[0]);
+                ps.setLong(2, row[1]);
+            });
+            List<NodeTombstone> tombstones = new ArrayList<>(deleted.values());
+            jdbcTemplate.batchUpdate(INSERT_TOMBSTONE, tombstones, batchSize, (ps, tombstone) -> {
+                ps.setLong(1, tombstone.getNodeId());
+                ps.setLong(2, tombstone.getChangeSeq());
+                ps.setTimestamp(3, Timestamp.valueOf(tombstone.getDeletedAt()));
+            });
+            // Ids are handed out by a pooled sequence; start it past every restored id
+            long maxId = Math.max(latest.keySet().stream().mapToLong(Long::longValue).max().orElse(0),
+                    deleted.keySet().stream().mapToLong(Long::longValue).max().orElse(0));
+            if (maxId > 0) {
+                jdbcTemplate.execute("ALTER SEQUENCE node_seq RESTART WITH " + (maxId + 1000));
+            }
+        });
+    }
+    
+    // Walks up to the nearest known ancestor; a node whose parent is missing is restored as a root
+    private static String pathOf(Node node, Map<Long, Node> nodes, Map<Long, String> paths) {
+        List<Node> chain = new ArrayList<>();
+        Set<Long> seen = new LinkedHashSet<>();
+        Node current = node;
+        String base = null;
+        while (current != null && seen.add(current.getId())) {
+            String known = paths.get(current.getId());
+            if (known != null) {
+                base = known;
+                break;
+            }
+            chain.add(current);
+            current = current.getParentId() != null ? nodes.get(current.getParentId()) : null;
+        }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Node link = chain.get(i);
+            if (base == null && link.getParentId() != null) {
+                log.warn("Parent {} of node {} is missing from the journal; restoring it as a root",
+                        link.getParentId(), link.getId());
+                link.setParentId(null);
+            }
+            base = TreePaths.childPath(base, link.getId());
+            paths.put(link.getId(), base);
+        }
+        return paths.get(node.getId());
+    }
+    
+    private static Node toNode(NodeJournalRow row) {
+        Node node = new Node(row.getContent(), row.getParentId(), row.getPosition());
+        node.setId(row.getId());
+        node.setVersion(row.getVersion());
+        node.setChangeSeq(row.getChangeSeq());
+        node.setCreatedAt(row.getCreatedAt());
+        node.setUpdatedAt(row.getUpdatedAt());
+        node.setIsCompleted(row.getIsCompleted());
+        node.setIsExpanded(row.getIsExpanded());
+        node.setIsStarred(row.getIsStarred());
+        node.setNotes(row.getNotes());
+        node.setMirrorId(row.getMirrorId());
+        node.setTags(row.getTags() != null
+                ? new ArrayList<>(Arrays.asList(row.getTags().split(OutlineRow.TAG_SEPARATOR)))
+                : new ArrayList<>());
+        return node;
+    }
+    
+    private static void writeFully(FileChannel out, byte[] record) throws IOException {
+        ByteBuffer frame = JournalFile.frame(record);
+        while (frame.hasRemaining()) {
+            out.write(frame);
+        }
+    }
+    
+    private List<Path> list() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> SEGMENT.matcher(file.getFileName().toString()).matches()
+                            || SNAPSHOT.matcher(file.getFileName().toString()).matches())
+                    .sorted()
+                    .toList();
+        }
+    }
+    
+    private static long number(Path file) {
+        String name = file.getFileName().toString();
+        Matcher matcher = name.startsWith("journal-") ? SEGMENT.matcher(name) : SNAPSHOT.matcher(name);
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+    
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("journal-%09d.log", number));
+    }
+    
+    // snapshot-N holds everything written to segments before N
+    private Path snapshotPath(long number) {
+        return directory.resolve(String.format("snapshot-%09d.bin", number));
+    }
+}
@@ -0,0 +1,299 @@
+package com.todo.service;
+
+import com.todo.dto.SearchHit;
+import com.todo.entity.Node;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded inverted index over node content, notes and tags.
+ *
+ * <p>Every query term matches as a prefix, and a node must match all terms. Results are ranked with
+ * BM25, with content matches weighted above tags and tags above notes, and carry a snippet around
+ * the first match with highlight ranges. {@link NodeService} keeps the index current after each
+ * committed write and rebuilds it from the database at startup.
+ */
+@Component
+public class NodeSearchIndex {
+    
+    enum Field {
+        CONTENT(3.0), TAGS(2.0), NOTES(1.0);
+        
+        final double weight;
+        
+        Field(double weight) {
+            this.weight = weight;
+        }
+    }
+    
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}]+");
+    
+    // Caps how many indexed terms a single short prefix can expand to
+    private static final int MAX_PREFIX_EXPANSIONS = 128;
+    
+    private static final int SNIPPET_RADIUS = 40;
+    
+    private static final double K1 = 1.2;
+    
+    private static final double B = 0.75;
+    
+    private final NavigableMap<String, Map<Long, Posting>> postings = new TreeMap<>();
+    
+    private final Map<Long, Document> documents = new HashMap<>();
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private long totalLength;
+    
+    public void index(Node node) {
+        index(node.getId(), node.getParentId(), node.getContent(), node.getNotes(), node.getTags());
+    }
+    
+    public void index(Long id, Long parentId, String content, String notes, List<String> tags) {
+        Document document = new Document(id, parentId, content, notes, tags != null ? List.copyOf(tags) : List.of());
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            documents.put(id, document);
+            totalLength += document.length;
+            document.termFrequencies.forEach((term, posting) ->
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).put(id, posting));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Notes changed without loading the node: the tags come from the indexed document
+    public void updateNotes(Long id, Long parentId, String content, String notes) {
+        lock.writeLock().lock();
+        try {
+            Document previous = documents.get(id);
+            index(id, parentId, content, notes, previous != null ? previous.tags : List.of());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(Iterable<Long> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(this::removeLocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public List<SearchHit> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = null;
+            Map<Long, Set<String>> matchedTerms = new HashMap<>();
+            double averageLength = documents.isEmpty() ? 1.0 : (double) totalLength / documents.size();
+            
+            for (String term : terms) {
+                Map<Long, Double> termScores = new HashMap<>();
+                for (Map.Entry<String, Map<Long, Posting>> expansion : expand(term)) {
+                    double idf = Math.log(1 + (documents.size() - expansion.getValue().size() + 0.5)
+                            / (expansion.getValue().size() + 0.5));
+                    expansion.getValue().forEach((id, posting) -> {
+                        double norm = K1 * (1 - B + B * documents.get(id).length / averageLength);
+                        double score = 0;
+                        for (Field field : Field.values()) {
+                            int tf = posting.frequencies[field.ordinal()];
+                            score += field.weight * idf * tf * (K1 + 1) / (tf + norm);
+                        }
+                        termScores.merge(id, score, Double::sum);
+                        matchedTerms.computeIfAbsent(id, i -> new HashSet<>()).add(expansion.getKey());
+                    });
+                }
+                // Every query term has to match
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    Map<Long, Double> previous = scores;
+                    scores = new HashMap<>();
+                    for (Map.Entry<Long, Double> entry : termScores.entrySet()) {
+                        Double earlier = previous.get(entry.getKey());
+                        if (earlier != null) {
+                            scores.put(entry.getKey(), earlier + entry.getValue());
+                        }
+                    }
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+            
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(limit)
+                    .map(entry -> toHit(documents.get(entry.getKey()), entry.getValue(),
+                            matchedTerms.get(entry.getKey())))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private List<Map.Entry<String, Map<Long, Posting>>> expand(String prefix) {
+        List<Map.Entry<String, Map<Long, Posting>>> expansions = new ArrayList<>();
+        for (Map.Entry<String, Map<Long, Posting>> entry
+                : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).entrySet()) {
+            if (expansions.size() == MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+            expansions.add(entry);
+        }
+        return expansions;
+    }
+    
+    private SearchHit toHit(Document document, double score, Set<String> terms) {
+        List<String> matchedFields = new ArrayList<>();
+        for (Field field : Field.values()) {
+            if (terms.stream().anyMatch(term -> document.fieldTerms.get(field).contains(term))) {
+                matchedFields.add(field.name().toLowerCase(Locale.ROOT));
+            }
+        }
+        String source = matchedFields.contains("content") || matchedFields.isEmpty() ? document.content
+                : matchedFields.contains("tags") ? String.join(" ", document.tags)
+                : document.notes;
+        return snippet(document, score, matchedFields, source != null ? source : "", terms);
+    }
+    
+    // Cuts a window around the first matched term and reports every matched term inside it
+    private SearchHit snippet(Document document, double score, List<String> matchedFields, String text,
+                              Set<String> terms) {
+        List<int[]> matches = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            if (terms.contains(matcher.group().toLowerCase(Locale.ROOT))) {
+                matches.add(new int[] {matcher.start(), matcher.end()});
+            }
+        }
+        int start = matches.isEmpty() ? 0 : Math.max(0, matches.get(0)[0] - SNIPPET_RADIUS);
+        int end = Math.min(text.length(), (matches.isEmpty() ? 0 : matches.get(0)[1]) + SNIPPET_RADIUS);
+        if (matches.isEmpty()) {
+            end = Math.min(text.length(), 2 * SNIPPET_RADIUS);
+        }
+        String prefix = start > 0 ? "..." : "";
+        String snippet = prefix + text.substring(start, end) + (end < text.length() ? "..." : "");
+        List<SearchHit.Highlight> highlights = new ArrayList<>();
+        for (int[] match : matches) {
+            if (match[0] >= start && match[1] <= end) {
+                highlights.add(new SearchHit.Highlight(
+                        match[0] - start + prefix.length(), match[1] - start + prefix.length()));
+            }
+        }
+        return new SearchHit(document.id, document.parentId, document.content, score, matchedFields,
+                snippet, highlights);
+    }
+    
+    private void removeLocked(Long id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        totalLength -= document.length;
+        for (String term : document.termFrequencies.keySet()) {
+            Map<Long, Posting> byNode = postings.get(term);
+            byNode.remove(id);
+            if (byNode.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+    
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            tokens.add(matcher.group().toLowerCase(Locale.ROOT));
+        }
+        return tokens;
+    }
+    
+    private static final class Posting {
+        
+        private final int[] frequencies = new int[Field.values().length];
+    }
+    
+    private static final class Document {
+        
+        private final Long id;
+        
+        private final Long parentId;
+        
+        private final String content;
+        
+        private final String notes;
+        
+        private final List<String> tags;
+        
+        private final Map<String, Posting> termFrequencies = new HashMap<>();
+        
+        private final Map<Field, Set<String>> fieldTerms = new HashMap<>();
+        
+        private final int length;
+        
+        private Document(Long id, Long parentId, String content, String notes, List<String> tags) {
+            this.id = id;
+            this.parentId = parentId;
+            this.content = content;
+            this.notes = notes;
+            this.tags = tags;
+            this.length = add(Field.CONTENT, content) + add(Field.TAGS, String.join(" ", tags))
+                    + add(Field.NOTES, notes);
+        }
+        
+        private int add(Field field, String text) {
+            List<String> tokens = tokenize(text);
+            fieldTerms.put(field, new HashSet<>(tokens));
+            for (String token : tokens) {
+                termFrequencies.computeIfAbsent(token, t -> new Posting()).frequencies[field.ordinal()]++;
+            }
+            return tokens.size();
+        }
+    }
+}
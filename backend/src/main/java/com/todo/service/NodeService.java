@@ -1,28 +1,289 @@
 package com.todo.service;
 
+import com.todo.dto.BatchResult;
+import com.todo.dto.ExpandState;
+import com.todo.dto.KeysetCursor;
+import com.todo.dto.NodeChanges;
+import com.todo.dto.NodeFields;
+import com.todo.dto.NodeOperation;
+import com.todo.dto.NodePage;
+import com.todo.dto.NodeTree;
+import com.todo.dto.OperationResult;
+import com.todo.dto.SearchHit;
 import com.todo.entity.Node;
+import com.todo.entity.NodeTombstone;
+import com.todo.repository.MirrorRow;
 import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeSpecifications;
+import com.todo.repository.NodeStateRow;
+import com.todo.repository.NodeTagRow;
+import com.todo.repository.NodeTombstoneRepository;
+import com.todo.repository.TreeRow;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 public class NodeService {
     
+    /** Upper bound on the page size a client may ask for. */
+    static final int MAX_PAGE_SIZE = 500;
+    
     private final NodeRepository nodeRepository;
     
-    public NodeService(NodeRepository nodeRepository) {
+    private final SiblingOrder siblingOrder;
+    
+    private final NodeTreeCache treeCache;
+    
+    private final NodeSearchIndex searchIndex;
+    
+    private final TagService tagService;
+    
+    private final ChangeSequence changeSequence;
+    
+    private final NodeTombstoneRepository tombstoneRepository;
+    
+    private final ChangeBroadcaster broadcaster;
+    
+    private final ExpandStateBuffer expandState;
+    
+    private final MirrorResolver mirrors;
+    
+    private final SubtreeCounters counters;
+    
+    public NodeService(NodeRepository nodeRepository, SiblingOrder siblingOrder, NodeTreeCache treeCache,
+                       NodeSearchIndex searchIndex, TagService tagService, ChangeSequence changeSequence,
+                       NodeTombstoneRepository tombstoneRepository, ChangeBroadcaster broadcaster,
+                       ExpandStateBuffer expandState, MirrorResolver mirrors, SubtreeCounters counters) {
         this.nodeRepository = nodeRepository;
+        this.siblingOrder = siblingOrder;
+        this.treeCache = treeCache;
+        this.searchIndex = searchIndex;
+        this.tagService = tagService;
+        this.changeSequence = changeSequence;
+        this.tombstoneRepository = tombstoneRepository;
+        this.broadcaster = broadcaster;
+        this.expandState = expandState;
+        this.mirrors = mirrors;
+        this.counters = counters;
     }
     
+    // Root and child lists are served from the tree cache; writes below update it after commit.
+    // Mirrors are cached as stored and resolved on every read, so they always show the original.
     public List<Node> getAllRootNodes() {
-        return nodeRepository.findByParentIdIsNullOrderByPositionAsc();
+        return mirrors.resolve(withPendingExpandState(
+                treeCache.getChildren(null, nodeRepository::findByParentIdIsNullOrderByPositionAsc)));
     }
     
     public List<Node> getChildren(Long parentId) {
-        return nodeRepository.findByParentIdOrderByPositionAsc(parentId);
+        List<Node> children = treeCache.getChildren(parentId,
+                () -> nodeRepository.findByParentIdOrderByPositionAsc(parentId));
+        // A mirror has no children of its own and lists the original's
+        if (children.isEmpty()) {
+            Long originalId = mirrors.originalOf(parentId);
+            if (originalId != null) {
+                return getChildren(originalId);
+            }
+        }
+        return mirrors.resolve(withPendingExpandState(children));
+    }
+    
+    /**
+     * One page of the children of {@code parentId} (null for the roots). A cached sibling list is
+     * sliced; otherwise only the page is read, by keyset, and a first page that turns out to hold
+     * every child is cached as the list. The total is always filled in.
+     */
+    public NodePage getChildrenPage(Long parentId, String cursor, int limit) {
+        int pageSize = pageSize(limit);
+        KeysetCursor after = KeysetCursor.parse(cursor);
+        List<Node> siblings = treeCache.getCachedChildren(parentId);
+        NodePage page;
+        if (siblings != null) {
+            int from = firstAfter(siblings, after);
+            int to = Math.min(from + pageSize + 1, siblings.size());
+            page = page(mirrors.resolve(withPendingExpandState(siblings.subList(from, to))), pageSize,
+                    (long) siblings.size());
+        } else {
+            page = loadChildrenPage(parentId, after, pageSize);
+        }
+        // A mirror has no children of its own and lists the original's
+        if (parentId != null && page.total() == 0) {
+            Long originalId = mirrors.originalOf(parentId);
+            if (originalId != null) {
+                return getChildrenPage(originalId, cursor, limit);
+            }
+        }
+        return page;
+    }
+    
+    // Ids of the page first, one extra telling whether another page exists, then those nodes with their tags
+    private NodePage loadChildrenPage(Long parentId, KeysetCursor after, int pageSize) {
+        long loadedAt = treeCache.generation();
+        long position = after != null ? after.position() : Long.MIN_VALUE;
+        long id = after != null ? after.id() : Long.MIN_VALUE;
+        List<Long> ids = parentId != null
+                ? nodeRepository.findChildIdsAfter(parentId, position, id, Limit.of(pageSize + 1))
+                : nodeRepository.findRootIdsAfter(position, id, Limit.of(pageSize + 1));
+        List<Node> rows = ids.isEmpty() ? List.of() : nodeRepository.findByIdIn(ids).stream()
+                .sorted(Comparator.comparing(Node::getPosition).thenComparing(Node::getId))
+                .toList();
+        long total;
+        if (after == null && ids.size() <= pageSize) {
+            total = treeCache.putChildren(parentId, rows, loadedAt).size();
+        } else {
+            total = parentId != null ? nodeRepository.countByParentId(parentId) : nodeRepository.countByParentIdIsNull();
+        }
+        return page(mirrors.resolve(withPendingExpandState(rows)), pageSize, total);
+    }
+    
+    @Transactional(readOnly = true)
+    public NodePage getStarred(String cursor, int limit, boolean includeTotal) {
+        return queryPage(NodeSpecifications.isStarred(), cursor, limit, includeTotal);
+    }
+    
+    /**
+     * Nodes written and ids of nodes deleted after {@code since}, in commit-safe change order. Only
+     * changes up to the {@link ChangeSequence#watermark() watermark} are returned, so a concurrent
+     * transaction still in flight cannot later land behind the returned cursor. A null cursor
+     * starts from the beginning, which doubles as the initial full sync.
+     */
+    @Transactional(readOnly = true)
+    public NodeChanges getChanges(String since, int limit) {
+        long upTo = changeSequence.watermark();
+        KeysetCursor after = KeysetCursor.parse(since);
+        if (after == null) {
+            after = new KeysetCursor(Long.MIN_VALUE, Long.MIN_VALUE);
+        }
+        int pageSize = pageSize(limit);
+        List<Node> changed = nodeRepository.findChangedAfter(after.position(), after.id(), upTo, Limit.of(pageSize + 1));
+        List<NodeTombstone> tombstones = tombstoneRepository.findChangedAfter(after.position(), after.id(), upTo,
+                Limit.of(pageSize + 1));
+        
+        // Merge the two (change_seq, id)-ordered lists and cut the page at pageSize entries
+        List<Node> nodes = new ArrayList<>();
+        List<Long> deletedIds = new ArrayList<>();
+        int n = 0;
+        int t = 0;
+        KeysetCursor last = after;
+        while (n + t < pageSize && (n < changed.size() || t < tombstones.size())) {
+            Node node = n < changed.size() ? changed.get(n) : null;
+            NodeTombstone tombstone = t < tombstones.size() ? tombstones.get(t) : null;
+            if (tombstone == null || (node != null && (node.getChangeSeq() < tombstone.getChangeSeq()
+                    || (node.getChangeSeq().equals(tombstone.getChangeSeq()) && node.getId() < tombstone.getNodeId())))) {
+                nodes.add(node);
+                last = new KeysetCursor(node.getChangeSeq(), node.getId());
+                n++;
+            } else {
+                deletedIds.add(tombstone.getNodeId());
+                last = new KeysetCursor(tombstone.getChangeSeq(), tombstone.getNodeId());
+                t++;
+            }
+        }
+        boolean hasMore = n < changed.size() || t < tombstones.size();
+        // Caught up: everything at or below the watermark has been seen, so skip past it
+        if (!hasMore && last.position() <= upTo) {
+            last = new KeysetCursor(upTo, Long.MAX_VALUE);
+        }
+        return new NodeChanges(mirrors.resolve(withPendingExpandState(nodes)), deletedIds, last.encode(), hasMore);
+    }
+    
+    /**
+     * Read-only lookup for clients, served from the tree cache when the node's siblings are cached.
+     */
+    public Node getNode(Long id) {
+        Node cached = treeCache.getNode(id);
+        return mirrors.resolve(withPendingExpandState(List.of(cached != null ? cached : getNodeById(id)))).get(0);
+    }
+    
+    @Transactional(readOnly = true)
+    public NodeTree getTree(Long rootId, Integer depth) {
+        return getTree(rootId, depth, NodeFields.ALL);
+    }
+    
+    /**
+     * Loads the subtree under {@code rootId} down to {@code depth} levels in a single query.
+     * Children of collapsed nodes are not loaded, except for the requested node itself. Mirrors
+     * in it cost one more query, see {@link MirrorResolver#expand}. Only the short columns are
+     * read when {@code fields} needs nothing else.
+     *
+     * <p>Which children are loaded depends on the stored expand state, so callers that want
+     * buffered clicks to count call {@link #flushExpandState()} first.
+     */
+    @Transactional(readOnly = true)
+    public NodeTree getTree(Long rootId, Integer depth, NodeFields fields) {
+        List<NodeTree> roots = NodeTree.assemble(fields.needsFullRows()
+                ? nodeRepository.findExpandedSubtree(rootId, maxDepth(depth))
+                : fromTreeRows(nodeRepository.findExpandedSubtreeRows(rootId, maxDepth(depth))));
+        if (roots.isEmpty()) {
+            throw new RuntimeException("Node not found with id: " + rootId);
+        }
+        mirrors.expand(roots, maxDepth(depth));
+        return roots.get(0);
+    }
+    
+    /**
+     * Loads the whole document down to {@code depth} levels below the root nodes in a single query,
+     * skipping the children of collapsed nodes.
+     */
+    @Transactional(readOnly = true)
+    public List<NodeTree> getForest(Integer depth) {
+        return getForest(depth, NodeFields.ALL);
+    }
+    
+    @Transactional(readOnly = true)
+    public List<NodeTree> getForest(Integer depth, NodeFields fields) {
+        List<NodeTree> roots = NodeTree.assemble(fields.needsFullRows()
+                ? nodeRepository.findExpandedForest(maxDepth(depth))
+                : fromTreeRows(nodeRepository.findExpandedForestRows(maxDepth(depth))));
+        mirrors.expand(roots, maxDepth(depth));
+        return roots;
+    }
+    
+    /**
+     * Writes buffered expand state now. Call it outside any transaction: the flush commits on a
+     * connection of its own, and a read holding one already would need two.
+     */
+    public void flushExpandState() {
+        expandState.flush();
+    }
+    
+    // Unmanaged nodes carrying just the short columns; their notes, timestamps and tags stay empty
+    private static List<Node> fromTreeRows(List<TreeRow> rows) {
+        List<Node> nodes = new ArrayList<>(rows.size());
+        for (TreeRow row : rows) {
+            Node node = new Node(row.getContent(), row.getParentId(), row.getPosition());
+            node.setId(row.getId());
+            node.setVersion(row.getVersion());
+            node.setIsCompleted(row.getIsCompleted());
+            node.setIsExpanded(row.getIsExpanded());
+            node.setIsStarred(row.getIsStarred());
+            node.setMirrorId(row.getMirrorId());
+            node.setChildCount(row.getChildCount());
+            node.setDescendantCount(row.getDescendantCount());
+            node.setCompletedDescendantCount(row.getCompletedDescendantCount());
+            nodes.add(node);
+        }
+        return nodes;
+    }
+    
+    private int maxDepth(Integer depth) {
+        return depth == null || depth < 0 ? Integer.MAX_VALUE : depth;
     }
     
     public Node getNodeById(Long id) {
@@ -30,168 +291,719 @@ public class NodeService {
                 .orElseThrow(() -> new RuntimeException("Node not found with id: " + id));
     }
     
+    private Node getNodeById(Long id, Long expectedVersion) {
+        Node node = getNodeById(id);
+        checkVersion(node, expectedVersion);
+        return node;
+    }
+    
+    // Content writes go to the original; a mirror only has its own place in the tree and expand state
+    private static void checkNotMirror(Long id, Long mirrorId) {
+        if (mirrorId != null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Node " + id + " mirrors node " + mirrorId + "; edit the original instead");
+        }
+    }
+    
+    // Children added or moved under a mirror go under its original
+    private Node childParent(Node parent) {
+        return parent.getMirrorId() != null ? getNodeById(parent.getMirrorId()) : parent;
+    }
+    
+    private static void checkVersion(Node node, Long expectedVersion) {
+        checkVersion(node.getId(), node.getVersion(), expectedVersion);
+    }
+    
+    private static void checkVersion(Long id, Long version, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(version)) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+                    "Node " + id + " is at version " + version + ", not " + expectedVersion);
+        }
+    }
+    
+    /**
+     * Revision of the whole document, for ETags on list and tree reads. It moves on after every
+     * committed write, so comparing it answers "has anything changed" without loading a node.
+     */
+    public String getDocumentRevision() {
+        return treeCache.revision();
+    }
+    
+    /**
+     * Creates a node, or a mirror when {@code mirrorId} is set. A mirror of a mirror mirrors the
+     * same original, and a mirror may not sit inside the subtree it mirrors.
+     */
     @Transactional
     public Node createNode(Node node) {
-        if (node.getParentId() != null && !nodeRepository.existsById(node.getParentId())) {
-            throw new RuntimeException("Parent node not found");
+        String parentPath = null;
+        if (node.getParentId() != null) {
+            Node parent = childParent(nodeRepository.findById(node.getParentId())
+                    .orElseThrow(() -> new RuntimeException("Parent node not found")));
+            node.setParentId(parent.getId());
+            parentPath = parent.getPath();
+        }
+        if (node.getMirrorId() != null) {
+            Node original = getNodeById(node.getMirrorId());
+            if (original.getMirrorId() != null) {
+                original = getNodeById(original.getMirrorId());
+            }
+            if (parentPath != null && TreePaths.isWithin(parentPath, original.getId())) {
+                throw new RuntimeException("Cannot create circular reference");
+            }
+            node.setMirrorId(original.getId());
+            node.setContent(original.getContent());
+            node.setTags(List.of());
         }
         
-        // Set default position if not set
+        // Append after the existing siblings if no position is given
         if (node.getPosition() == null) {
-            Integer maxPosition = nodeRepository.findMaxPositionByParentId(node.getParentId());
-            node.setPosition(maxPosition != null ? maxPosition + 1 : 0);
+            node.setPosition(siblingOrder.nextAppendKey());
+        } else {
+            siblingOrder.observe(node.getPosition());
         }
         
-        return nodeRepository.save(node);
+        tagService.attach(node);
+        // The path ends with the node's own id, which is only known once it is inserted
+        Node saved = nodeRepository.save(node);
+        saved.setPath(TreePaths.childPath(parentPath, saved.getId()));
+        // Mirrors are not indexed for search; their original is
+        flushAndPublish(saved, saved.getParentId(), saved.getMirrorId() == null);
+        SubtreeCounters.Changes changes = new SubtreeCounters.Changes();
+        changes.attach(parentPath, 1, saved.getIsCompleted() ? 1 : 0);
+        counters.apply(changes, changeSequence.current());
+        return saved.getMirrorId() != null ? mirrors.resolve(List.of(saved)).get(0) : saved;
     }
     
+    /**
+     * The writes below take the version the client last saw (from If-Match), or null to skip the
+     * check. A stale version fails with 412 before anything is changed.
+     */
     @Transactional
-    public Node updateNode(Long id, Node node) {
-        Node existing = getNodeById(id);
+    public Node updateNode(Long id, Node node, Long expectedVersion) {
+        Node existing = getNodeById(id, expectedVersion);
+        checkNotMirror(id, existing.getMirrorId());
         existing.setContent(node.getContent());
         if (node.getPosition() != null) {
+            siblingOrder.observe(node.getPosition());
             existing.setPosition(node.getPosition());
         }
-        return nodeRepository.save(existing);
+        Node saved = nodeRepository.save(existing);
+        flushAndPublish(saved, saved.getParentId(), true);
+        return saved;
     }
     
     @Transactional
-    public void deleteNode(Long id) {
-        Node node = getNodeById(id);
-        
-        // Recursively delete all children
-        List<Node> children = nodeRepository.findByParentIdOrderByPositionAsc(id);
-        for (Node child : children) {
-            deleteNode(child.getId());
+    public void deleteNode(Long id, Long expectedVersion) {
+        SubtreeCounters.Changes changes = new SubtreeCounters.Changes();
+        deleteSubtree(getNodeById(id, expectedVersion), null, changes);
+        counters.apply(changes, changeSequence.current());
+    }
+    
+    // Set-based delete of a node and everything below it; also drops it from the previous parent's cached list.
+    // Mirrors of deleted nodes go too, wherever they are, with one statement per table however many there are.
+    // The counter deltas go into `changes`, sized from the node's own counters plus what `changes` already holds.
+    private void deleteSubtree(Node node, Long previousParentId, SubtreeCounters.Changes changes) {
+        Long id = node.getId();
+        String upper = TreePaths.upperBound(node.getPath());
+        List<Long> deletedIds = nodeRepository.findSubtreeIds(node.getPath(), upper);
+        List<MirrorRow> mirrorRows = nodeRepository.findMirrorsOutside(node.getPath(), upper);
+        List<Long> mirrorIds = mirrorRows.stream().map(MirrorRow::getId).toList();
+        long[] pending = changes.pending(id);
+        changes.detach(TreePaths.parentPath(node.getPath()), node.getDescendantCount() + pending[1] + 1,
+                node.getCompletedDescendantCount() + pending[2] + (node.getIsCompleted() ? 1 : 0));
+        for (MirrorRow mirror : mirrorRows) {
+            changes.detach(TreePaths.parentPath(mirror.getPath()), 1, mirror.getIsCompleted() ? 1 : 0);
         }
-        
-        nodeRepository.delete(node);
+        tombstoneRepository.insertForSubtree(node.getPath(), upper, changeSequence.current());
+        if (!mirrorIds.isEmpty()) {
+            tombstoneRepository.insertForNodes(mirrorIds, changeSequence.current());
+            nodeRepository.deleteTagsOf(mirrorIds);
+            nodeRepository.deleteLeaves(mirrorIds);
+        }
+        nodeRepository.deleteSubtreeTags(node.getPath(), upper);
+        nodeRepository.deleteSubtree(node.getPath(), upper);
+        Long parentId = node.getParentId();
+        AfterCommit.run(() -> {
+            treeCache.evictSubtree(id, parentId);
+            if (previousParentId != null && !previousParentId.equals(parentId)) {
+                treeCache.evictChildren(previousParentId);
+            }
+            searchIndex.remove(deletedIds);
+            broadcaster.nodeDeleted(id, parentId);
+            for (MirrorRow mirror : mirrorRows) {
+                treeCache.evictSubtree(mirror.getId(), mirror.getParentId());
+                broadcaster.nodeDeleted(mirror.getId(), mirror.getParentId());
+            }
+        });
     }
     
-    @Transactional
-    public Node moveNode(Long id, Long newParentId, Integer newPosition) {
+    public long countDescendants(Long id) {
         Node node = getNodeById(id);
+        return nodeRepository.countSubtree(node.getPath(), TreePaths.upperBound(node.getPath())) - 1;
+    }
+    
+    @Transactional
+    public Node moveNode(Long id, Long newParentId, Integer newPosition, Long expectedVersion) {
+        Node node = getNodeById(id, expectedVersion);
         
-        // Validate no circular reference
+        // Validate no circular reference: the new parent must not lie inside the moved subtree
+        String parentPath = null;
         if (newParentId != null) {
-            Node tempParent = nodeRepository.findById(newParentId).orElse(null);
-            while (tempParent != null) {
-                if (tempParent.getId().equals(id)) {
-                    throw new RuntimeException("Cannot create circular reference");
-                }
-                tempParent = tempParent.getParentId() != null ? 
-                    nodeRepository.findById(tempParent.getParentId()).orElse(null) : null;
+            Node newParent = childParent(nodeRepository.findById(newParentId)
+                    .orElseThrow(() -> new RuntimeException("Parent node not found")));
+            if (TreePaths.isWithin(newParent.getPath(), id)
+                    || (node.getMirrorId() != null && TreePaths.isWithin(newParent.getPath(), node.getMirrorId()))) {
+                throw new RuntimeException("Cannot create circular reference");
             }
+            newParentId = newParent.getId();
+            parentPath = newParent.getPath();
         }
         
+        // Only the moved row is written: its key is placed between the new neighbours
         Long oldParentId = node.getParentId();
-        
-        // If parent changed, recalculate positions in old parent's children
-        if (!java.util.Objects.equals(oldParentId, newParentId)) {
-            List<Node> oldSiblings = nodeRepository.findByParentIdOrderByPositionAsc(oldParentId);
-            int position = 0;
-            for (Node sibling : oldSiblings) {
-                if (!sibling.getId().equals(id)) {
-                    sibling.setPosition(position++);
-                    nodeRepository.save(sibling);
-                }
-            }
-        }
-        
-        // Update node's parent and position
+        String oldPath = node.getPath();
+        String newPath = TreePaths.childPath(parentPath, id);
+        node.setPosition(siblingOrder.keyForIndex(newParentId, id, newPosition));
         node.setParentId(newParentId);
+        node.setPath(newPath);
+        Node saved = nodeRepository.save(node);
+        flushAndPublish(saved, oldParentId, saved.getMirrorId() == null);
         
-        // Recalculate positions in new parent's children
-        List<Node> newSiblings = nodeRepository.findByParentIdOrderByPositionAsc(newParentId);
-        
-        if (newPosition == null || newPosition < 0 || newPosition > newSiblings.size()) {
-            newPosition = newSiblings.size();
-        }
-        
-        int position = 0;
-        for (Node sibling : newSiblings) {
-            if (!sibling.getId().equals(id)) {
-                if (position == newPosition) {
-                    position++;
-                }
-                sibling.setPosition(position++);
-                nodeRepository.save(sibling);
-            }
+        if (!newPath.equals(oldPath)) {
+            nodeRepository.rebaseDescendantPaths(oldPath, TreePaths.upperBound(oldPath), newPath);
+            SubtreeCounters.Changes changes = new SubtreeCounters.Changes();
+            moveCounts(changes, saved, oldPath);
+            counters.apply(changes, changeSequence.current());
         }
-        
-        node.setPosition(newPosition);
-        return nodeRepository.save(node);
+        return saved;
     }
     
-    // New service methods for enhanced features
+    // The whole subtree leaves the ancestors of its old place and joins those of its new one
+    private static void moveCounts(SubtreeCounters.Changes changes, Node node, String oldPath) {
+        long[] pending = changes.pending(node.getId());
+        long size = node.getDescendantCount() + pending[1] + 1;
+        long completed = node.getCompletedDescendantCount() + pending[2] + (node.getIsCompleted() ? 1 : 0);
+        changes.detach(TreePaths.parentPath(oldPath), size, completed);
+        changes.attach(TreePaths.parentPath(node.getPath()), size, completed);
+    }
+    
+    /**
+     * Field writes are single UPDATE statements that return the changed row; the entity and its
+     * tags are never loaded. The cached copy and the search document are patched after commit.
+     */
     @Transactional
-    public Node toggleComplete(Long id) {
-        Node node = getNodeById(id);
-        node.setIsCompleted(!node.getIsCompleted());
-        return nodeRepository.save(node);
+    public NodeStateRow toggleComplete(Long id, Long expectedVersion) {
+        NodeStateRow state = written(id, expectedVersion,
+                nodeRepository.toggleCompleted(id, expectedVersion, changeSequence.current()));
+        SubtreeCounters.Changes changes = new SubtreeCounters.Changes();
+        changes.completed(TreePaths.parentPath(state.getPath()), state.getIsCompleted() ? 1 : -1);
+        counters.apply(changes, changeSequence.current());
+        publishStateAfterCommit(state, node -> node.setIsCompleted(state.getIsCompleted()));
+        return state;
+    }
+    
+    /**
+     * Expand state is view state: it is buffered and written behind (see {@link ExpandStateBuffer}),
+     * so there is no transaction here and no version to check. A null {@code expanded} toggles.
+     */
+    public ExpandState setExpanded(Long id, Boolean expanded) {
+        boolean value = expanded != null ? expandState.set(id, expanded) : expandState.toggle(id);
+        return new ExpandState(id, value);
     }
     
     @Transactional
-    public Node toggleExpand(Long id) {
-        Node node = getNodeById(id);
-        node.setIsExpanded(!node.getIsExpanded());
-        return nodeRepository.save(node);
+    public NodeStateRow toggleStar(Long id, Long expectedVersion) {
+        NodeStateRow state = written(id, expectedVersion,
+                nodeRepository.toggleStarred(id, expectedVersion, changeSequence.current()));
+        publishStateAfterCommit(state, node -> node.setIsStarred(state.getIsStarred()));
+        return state;
     }
     
     @Transactional
-    public Node toggleStar(Long id) {
-        Node node = getNodeById(id);
-        node.setIsStarred(!node.getIsStarred());
-        return nodeRepository.save(node);
+    public NodeStateRow updateNotes(Long id, String notes, Long expectedVersion) {
+        NodeStateRow state = written(id, expectedVersion,
+                nodeRepository.updateNotes(id, notes, expectedVersion, changeSequence.current()));
+        AfterCommit.run(() -> searchIndex.updateNotes(state.getId(), state.getParentId(), state.getContent(),
+                state.getNotes()));
+        publishStateAfterCommit(state, node -> node.setNotes(state.getNotes()));
+        return state;
     }
     
+    /**
+     * Marks a node and every descendant completed (or not) with one set-based UPDATE. Rows already
+     * in that state are left alone. Returns the node's own state afterwards.
+     */
     @Transactional
-    public Node updateNotes(Long id, String notes) {
-        Node node = getNodeById(id);
-        node.setNotes(notes);
-        return nodeRepository.save(node);
+    public NodeStateRow setSubtreeCompleted(Long id, boolean completed, Long expectedVersion) {
+        NodeStateRow root = nodeRepository.findStateById(id)
+                .orElseThrow(() -> new RuntimeException("Node not found with id: " + id));
+        checkVersion(id, root.getVersion(), expectedVersion);
+        String upper = TreePaths.upperBound(root.getPath());
+        int changed = nodeRepository.setSubtreeCompleted(root.getPath(), upper, completed, changeSequence.current());
+        nodeRepository.setSubtreeCompletedCounts(root.getPath(), upper, completed);
+        SubtreeCounters.Changes changes = new SubtreeCounters.Changes();
+        changes.completed(TreePaths.parentPath(root.getPath()), completed ? changed : -changed);
+        counters.apply(changes, changeSequence.current());
+        Long parentId = root.getParentId();
+        AfterCommit.run(() -> {
+            treeCache.evictSubtreeLists(id, parentId);
+            broadcaster.subtreeChanged(id, parentId);
+        });
+        return nodeRepository.findStateById(id).orElseThrow();
     }
     
+    // An empty result is an unknown id, a stale version or a mirror; only then is the row looked up again
+    private NodeStateRow written(Long id, Long expectedVersion, Optional<NodeStateRow> result) {
+        return result.orElseGet(() -> {
+            NodeStateRow current = nodeRepository.findStateById(id)
+                    .orElseThrow(() -> new RuntimeException("Node not found with id: " + id));
+            checkVersion(id, current.getVersion(), expectedVersion);
+            checkNotMirror(id, current.getMirrorId());
+            throw new IllegalStateException("Node " + id + " was not updated");
+        });
+    }
+    
+    private void publishStateAfterCommit(NodeStateRow state, Consumer<Node> change) {
+        AfterCommit.run(() -> {
+            treeCache.update(state.getId(), node -> {
+                change.accept(node);
+                node.setVersion(state.getVersion());
+                node.setUpdatedAt(state.getUpdatedAt());
+            });
+            broadcaster.nodeChanged(state);
+        });
+    }
+    
+    /**
+     * Legacy field-only batch, applied as UPDATE operations. Returns the persisted state of each node.
+     */
     @Transactional
     public List<Node> batchUpdate(List<Node> nodes) {
-        for (Node node : nodes) {
-            if (node.getId() != null) {
-                Node existing = getNodeById(node.getId());
-                if (node.getContent() != null) existing.setContent(node.getContent());
-                if (node.getIsCompleted() != null) existing.setIsCompleted(node.getIsCompleted());
-                if (node.getIsExpanded() != null) existing.setIsExpanded(node.getIsExpanded());
-                if (node.getIsStarred() != null) existing.setIsStarred(node.getIsStarred());
-                if (node.getNotes() != null) existing.setNotes(node.getNotes());
-                nodeRepository.save(existing);
+        List<NodeOperation> updates = nodes.stream()
+                .filter(node -> node.getId() != null)
+                .map(node -> NodeOperation.update(node.getId(), node.getContent(), node.getNotes(),
+                        node.getIsCompleted(), node.getIsExpanded(), node.getIsStarred()))
+                .toList();
+        return applyOperations(updates).results().stream().map(OperationResult::node).toList();
+    }
+    
+    /**
+     * Applies a mixed list of operations in order, all or nothing.
+     *
+     * <p>Every node the batch refers to is loaded with one IN query and changed in memory, and the
+     * changes go out in one flush at the end. Moves and deletes touch whole subtrees; their
+     * set-based path rewrites and deletes run after that flush, because those statements clear the
+     * persistence context. Until then, loaded descendants of a moved node get their paths
+     * rewritten in memory, so later operations in the batch see the new tree.
+     */
+    @Transactional
+    public BatchResult applyOperations(List<NodeOperation> operations) {
+        OperationBatch batch = new OperationBatch(operations);
+        for (int i = 0; i < operations.size(); i++) {
+            NodeOperation operation = operations.get(i);
+            try {
+                batch.apply(i, operation);
+            } catch (ResponseStatusException e) {
+                String type = operation.type() != null ? operation.type().jsonName() : "unknown";
+                throw new ResponseStatusException(e.getStatusCode(),
+                        "Operation " + i + " (" + type + ") failed: " + e.getReason(), e);
+            } catch (RuntimeException e) {
+                String type = operation.type() != null ? operation.type().jsonName() : "unknown";
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Operation " + i + " (" + type + ") failed: " + e.getMessage(), e);
             }
         }
-        return nodes;
+        return batch.finish();
     }
     
-    public List<Node> search(String q, String tag, Boolean completed) {
-        List<Node> results = new ArrayList<>();
-        
-        if (q != null && !q.isEmpty()) {
-            results.addAll(nodeRepository.findByContentContaining(q));
+    public NodeTreeCache.Stats getCacheStats() {
+        return treeCache.stats();
+    }
+    
+    public List<SearchHit> searchText(String q, int limit) {
+        return searchIndex.search(q, limit);
+    }
+    
+    /**
+     * Fills the full-text index from the database with two queries: all nodes, then all tags.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuildSearchIndex() {
+        Map<Long, List<String>> tagsByNode = new HashMap<>();
+        for (NodeTagRow row : nodeRepository.findAllTagRows()) {
+            tagsByNode.computeIfAbsent(row.getNodeId(), id -> new ArrayList<>()).add(row.getTag());
         }
-        if (tag != null && !tag.isEmpty()) {
-            List<Node> tagResults = nodeRepository.findByTagsContaining(tag);
-            if (results.isEmpty()) {
-                results.addAll(tagResults);
+        searchIndex.clear();
+        for (Node node : nodeRepository.findAll()) {
+            if (node.getMirrorId() != null) {
+                continue;
+            }
+            searchIndex.index(node.getId(), node.getParentId(), node.getContent(), node.getNotes(),
+                    tagsByNode.getOrDefault(node.getId(), List.of()));
+        }
+    }
+    
+    // Single-node writes are stamped with the transaction's change number and flushed here, so the
+    // snapshot carries the version this write produces
+    private void flushAndPublish(Node node, Long previousParentId, boolean reindex) {
+        node.setChangeSeq(changeSequence.current());
+        nodeRepository.flush();
+        publishAfterCommit(node, previousParentId, reindex);
+    }
+    
+    // Snapshot now, while the entity is current, and publish it to the cache and index once committed
+    private void publishAfterCommit(Node node, Long previousParentId, boolean reindex) {
+        Node snapshot = node.snapshot();
+        AfterCommit.run(() -> {
+            if (reindex) {
+                searchIndex.index(snapshot);
+            }
+            // after the index, since it moves the document revision on
+            treeCache.put(snapshot, previousParentId);
+            broadcaster.nodeChanged(snapshot, previousParentId);
+        });
+    }
+    
+    /**
+     * Filters nodes in a single query and returns them in (position, id) order, one page at a time.
+     * The next page starts strictly after {@code cursor}, so pages stay consistent while rows change.
+     * A search without text, tag or completion filter matches nothing rather than the whole table.
+     */
+    @Transactional(readOnly = true)
+    public NodePage search(String q, String tag, Boolean completed, String cursor, int limit, boolean includeTotal) {
+        KeysetCursor.parse(cursor); // rejects a malformed cursor either way
+        if ((q == null || q.isEmpty()) && (tag == null || tag.isEmpty()) && completed == null) {
+            return new NodePage(List.of(), null, includeTotal ? 0L : null);
+        }
+        Specification<Node> filters = Specification.where(NodeSpecifications.contentContains(q))
+                .and(NodeSpecifications.hasTagContaining(tag))
+                .and(NodeSpecifications.isCompleted(completed));
+        return queryPage(filters, cursor, limit, includeTotal);
+    }
+    
+    private NodePage queryPage(Specification<Node> filters, String cursor, int limit, boolean includeTotal) {
+        int pageSize = pageSize(limit);
+        // one extra row tells us whether another page exists without a count query
+        List<Node> rows = nodeRepository.findBy(filters.and(NodeSpecifications.after(KeysetCursor.parse(cursor))),
+                query -> query.sortBy(NodeSpecifications.KEYSET_ORDER).limit(pageSize + 1).all());
+        Long total = includeTotal ? nodeRepository.count(filters) : null;
+        return page(mirrors.resolve(withPendingExpandState(rows)), pageSize, total);
+    }
+    
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+    
+    // Index of the first node ordered after the cursor in a (position, id)-sorted list
+    private static int firstAfter(List<Node> sorted, KeysetCursor cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Node node = sorted.get(mid);
+            int cmp = Long.compare(node.getPosition(), cursor.position());
+            if (cmp < 0 || (cmp == 0 && node.getId() <= cursor.id())) {
+                low = mid + 1;
             } else {
-                results.retainAll(tagResults);
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    // Reads show expand state that is still buffered, on copies since cached nodes are shared
+    private List<Node> withPendingExpandState(List<Node> nodes) {
+        if (!expandState.hasPending()) {
+            return nodes;
+        }
+        List<Node> result = null;
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            Boolean pending = expandState.pending(node.getId());
+            if (pending != null && !pending.equals(node.getIsExpanded())) {
+                if (result == null) {
+                    result = new ArrayList<>(nodes);
+                }
+                Node copy = node.snapshot();
+                copy.setIsExpanded(pending);
+                result.set(i, copy);
             }
         }
-        if (completed != null) {
-            List<Node> completedResults = nodeRepository.findByIsCompletedOrderByPositionAsc(completed);
-            if (results.isEmpty()) {
-                results.addAll(completedResults);
+        return result != null ? result : nodes;
+    }
+    
+    private static NodePage page(List<Node> rows, int pageSize, Long total) {
+        if (rows.size() <= pageSize) {
+            return new NodePage(rows, null, total);
+        }
+        List<Node> items = rows.subList(0, pageSize);
+        return new NodePage(items, KeysetCursor.after(items.get(pageSize - 1)).encode(), total);
+    }
+    
+    private record Applied(int index, NodeOperation operation, Node node) {
+    }
+    
+    private final class OperationBatch {
+        
+        private final Map<Long, Node> nodes = new HashMap<>();
+        
+        private final Map<String, Node> created = new LinkedHashMap<>();
+        
+        // Parent each touched node had before the batch, and whether its text changed
+        private final Map<Long, Long> previousParents = new LinkedHashMap<>();
+        
+        private final Set<Long> reindex = new HashSet<>();
+        
+        private final List<String[]> rebases = new ArrayList<>();
+        
+        private final List<Node> deleted = new ArrayList<>();
+        
+        private final List<Applied> applied = new ArrayList<>();
+        
+        private final SubtreeCounters.Changes changes = new SubtreeCounters.Changes();
+        
+        OperationBatch(List<NodeOperation> operations) {
+            Set<String> tempIds = new HashSet<>();
+            for (NodeOperation operation : operations) {
+                if (operation.tempId() != null) {
+                    tempIds.add(operation.tempId());
+                }
+            }
+            Set<Long> ids = new HashSet<>();
+            for (NodeOperation operation : operations) {
+                for (String ref : new String[] {operation.id(), operation.parentId()}) {
+                    if (ref != null && !tempIds.contains(ref)) {
+                        try {
+                            ids.add(Long.valueOf(ref));
+                        } catch (NumberFormatException e) {
+                            // reported when the operation that uses it is applied
+                        }
+                    }
+                }
+            }
+            if (!ids.isEmpty()) {
+                nodeRepository.findByIdIn(ids).forEach(node -> nodes.put(node.getId(), node));
+            }
+        }
+        
+        void apply(int index, NodeOperation operation) {
+            if (operation.type() == null) {
+                throw new RuntimeException("Missing operation type");
+            }
+            if (operation.version() != null && operation.type() != NodeOperation.Type.CREATE) {
+                checkVersion(resolve(operation.id()), operation.version());
+            }
+            Node node = switch (operation.type()) {
+                case CREATE -> create(operation);
+                case UPDATE -> update(operation);
+                case MOVE -> move(operation);
+                case DELETE -> {
+                    Node target = resolve(operation.id());
+                    deleted.add(target);
+                    yield target;
+                }
+                case TOGGLE_COMPLETE -> touch(original(operation.id()), false, n -> setCompleted(n, !n.getIsCompleted()));
+                case TOGGLE_EXPAND -> touch(resolve(operation.id()), false, n -> n.setIsExpanded(!isExpanded(n)));
+                case TOGGLE_STAR -> touch(original(operation.id()), false, n -> n.setIsStarred(!n.getIsStarred()));
+                case UPDATE_NOTES -> touch(original(operation.id()), true, n -> n.setNotes(operation.notes()));
+            };
+            applied.add(new Applied(index, operation, node));
+        }
+        
+        private Node create(NodeOperation operation) {
+            if (operation.tempId() != null && created.containsKey(operation.tempId())) {
+                throw new RuntimeException("Duplicate temporary id: " + operation.tempId());
+            }
+            Node parent = operation.parentId() != null ? parentOf(operation.parentId()) : null;
+            Node node = new Node(operation.content() != null ? operation.content() : "",
+                    parent != null ? parent.getId() : null, operation.position());
+            copyFields(operation, node);
+            if (node.getPosition() == null) {
+                node.setPosition(siblingOrder.nextAppendKey());
             } else {
-                results.retainAll(completedResults);
+                siblingOrder.observe(node.getPosition());
+            }
+            node = nodeRepository.save(node);
+            node.setPath(TreePaths.childPath(parent != null ? parent.getPath() : null, node.getId()));
+            changes.attach(parent != null ? parent.getPath() : null, 1, node.getIsCompleted() ? 1 : 0);
+            nodes.put(node.getId(), node);
+            if (operation.tempId() != null) {
+                created.put(operation.tempId(), node);
+            }
+            return touch(node, true, n -> { });
+        }
+        
+        private Node update(NodeOperation operation) {
+            boolean textChanged = operation.content() != null || operation.notes() != null || operation.tags() != null;
+            Node node = textChanged || operation.isCompleted() != null || operation.isStarred() != null
+                    ? original(operation.id()) : resolve(operation.id());
+            return touch(node, textChanged, n -> {
+                if (operation.content() != null) n.setContent(operation.content());
+                copyFields(operation, n);
+                if (operation.position() != null) {
+                    siblingOrder.observe(operation.position());
+                    n.setPosition(operation.position());
+                }
+            });
+        }
+        
+        private Node move(NodeOperation operation) {
+            Node node = resolve(operation.id());
+            Node parent = operation.parentId() != null ? parentOf(operation.parentId()) : null;
+            if (parent != null && (parent == node || TreePaths.isWithin(parent.getPath(), node.getId())
+                    || (node.getMirrorId() != null && TreePaths.isWithin(parent.getPath(), node.getMirrorId())))) {
+                throw new RuntimeException("Cannot create circular reference");
+            }
+            
+            String oldPath = node.getPath();
+            String newPath = TreePaths.childPath(parent != null ? parent.getPath() : null, node.getId());
+            touch(node, true, n -> {
+                n.setPosition(siblingOrder.keyForIndex(parent != null ? parent.getId() : null, n.getId(), operation.index()));
+                n.setParentId(parent != null ? parent.getId() : null);
+                n.setPath(newPath);
+            });
+            if (!newPath.equals(oldPath)) {
+                moveCounts(changes, node, oldPath);
+                rebases.add(new String[] {oldPath, newPath});
+                for (Node other : nodes.values()) {
+                    if (other != node && other.getPath().startsWith(oldPath)) {
+                        other.setPath(newPath + other.getPath().substring(oldPath.length()));
+                    }
+                }
             }
+            return node;
         }
         
-        return results.stream().distinct().toList();
+        private void copyFields(NodeOperation operation, Node node) {
+            if (operation.notes() != null) node.setNotes(operation.notes());
+            if (operation.tags() != null) {
+                node.setTags(operation.tags());
+                tagService.attach(node);
+            }
+            if (operation.isCompleted() != null) setCompleted(node, operation.isCompleted());
+            if (operation.isExpanded() != null) {
+                node.setIsExpanded(operation.isExpanded());
+                supersedeExpandState(node);
+            }
+            if (operation.isStarred() != null) node.setIsStarred(operation.isStarred());
+        }
+        
+        // Nodes created in this batch are counted with the state they are created in, see create
+        private void setCompleted(Node node, boolean completed) {
+            if (node.getPath() != null && node.getIsCompleted() != completed) {
+                changes.completed(TreePaths.parentPath(node.getPath()), completed ? 1 : -1);
+            }
+            node.setIsCompleted(completed);
+        }
+        
+        private Node touch(Node node, boolean textChanged, Consumer<Node> change) {
+            node.setChangeSeq(changeSequence.current());
+            previousParents.putIfAbsent(node.getId(), node.getParentId());
+            if (textChanged && node.getMirrorId() == null) {
+                reindex.add(node.getId());
+            }
+            change.accept(node);
+            return node;
+        }
+        
+        // The state the client sees, buffered value included; the batch's own write then replaces it
+        private boolean isExpanded(Node node) {
+            Boolean pending = expandState.pending(node.getId());
+            boolean current = pending != null ? pending : node.getIsExpanded();
+            supersedeExpandState(node);
+            return current;
+        }
+        
+        private void supersedeExpandState(Node node) {
+            if (node.getId() != null) {
+                Long id = node.getId();
+                AfterCommit.run(() -> expandState.discard(id));
+            }
+        }
+        
+        private Node resolve(String ref) {
+            Node node = created.get(ref);
+            if (node == null && ref != null) {
+                try {
+                    node = nodes.get(Long.valueOf(ref));
+                } catch (NumberFormatException e) {
+                    // falls through to not found
+                }
+            }
+            if (node == null) {
+                throw new RuntimeException("Node not found with id: " + ref);
+            }
+            if (isDeleted(node)) {
+                throw new RuntimeException("Node " + ref + " is deleted earlier in the batch");
+            }
+            return node;
+        }
+        
+        // A node whose content the operation changes; mirrors are refused, see checkNotMirror
+        private Node original(String ref) {
+            Node node = resolve(ref);
+            checkNotMirror(node.getId(), node.getMirrorId());
+            return node;
+        }
+        
+        // The node new children go under: a mirror's original, loaded into the batch if needed
+        private Node parentOf(String ref) {
+            Node parent = resolve(ref);
+            if (parent.getMirrorId() == null) {
+                return parent;
+            }
+            Node original = nodes.computeIfAbsent(parent.getMirrorId(), NodeService.this::getNodeById);
+            if (isDeleted(original)) {
+                throw new RuntimeException("Node " + original.getId() + " is deleted earlier in the batch");
+            }
+            return original;
+        }
+        
+        private boolean isDeleted(Node node) {
+            for (Node gone : deleted) {
+                if (gone == node || TreePaths.isWithin(node.getPath(), gone.getId())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        BatchResult finish() {
+            nodeRepository.flush();
+            
+            // Snapshot before the set-based statements below clear the persistence context
+            List<OperationResult> results = new ArrayList<>(applied.size());
+            Map<Long, Node> snapshots = new HashMap<>();
+            for (Applied step : applied) {
+                Node node = step.node();
+                Node state = isDeleted(node) ? null : snapshots.computeIfAbsent(node.getId(), id -> node.snapshot());
+                results.add(new OperationResult(step.index(), step.operation().type(), node.getId(),
+                        step.operation().tempId(), state));
+            }
+            previousParents.forEach((id, previousParentId) -> {
+                Node node = nodes.get(id);
+                if (!isDeleted(node)) {
+                    publishAfterCommit(node, previousParentId, reindex.contains(id));
+                }
+            });
+            
+            for (String[] rebase : rebases) {
+                nodeRepository.rebaseDescendantPaths(rebase[0], TreePaths.upperBound(rebase[0]), rebase[1]);
+            }
+            for (Node node : deleted) {
+                if (deleted.stream().noneMatch(other -> other != node && TreePaths.isWithin(node.getPath(), other.getId()))) {
+                    deleteSubtree(node, previousParents.get(node.getId()), changes);
+                }
+            }
+            counters.apply(changes, changeSequence.current());
+            
+            Map<String, Long> createdIds = new LinkedHashMap<>();
+            created.forEach((tempId, node) -> createdIds.put(tempId, node.getId()));
+            return new BatchResult(results, createdIds);
+        }
     }
 }
-
@@ -0,0 +1,276 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * In-memory index of parent id to ordered child list, and id to node, in front of the database.
+ *
+ * <p>Reads are lock-free: each child list is an immutable snapshot of detached {@link Node} copies
+ * that writers replace wholesale. Writers take the cache lock, and {@link NodeService} applies its
+ * changes only after the transaction commits. Once more than {@code todo.cache.max-nodes} nodes are
+ * cached, the least recently read child lists are dropped together with any cached lists below them.
+ */
+@Component
+public class NodeTreeCache {
+    
+    // Key of the root list; database ids start at 1
+    private static final Long ROOT = 0L;
+    
+    private static final Comparator<Node> SIBLING_ORDER =
+            Comparator.comparing(Node::getPosition).thenComparing(Node::getId);
+    
+    private final int maxNodes;
+    
+    private final Map<Long, ChildList> children = new ConcurrentHashMap<>();
+    
+    private final Map<Long, Node> nodes = new ConcurrentHashMap<>();
+    
+    private final LongAdder hits = new LongAdder();
+    
+    private final LongAdder misses = new LongAdder();
+    
+    private final LongAdder evictions = new LongAdder();
+    
+    // Bumped at the end of every write so a load that raced with a write is not cached. Writes are
+    // applied after commit, so it doubles as the document revision behind HTTP ETags.
+    private volatile long generation;
+    
+    // Tells revisions of this run apart from those handed out before a restart
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    
+    public NodeTreeCache(@Value("${todo.cache.max-nodes:100000}") int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+    
+    /**
+     * Returns the children of {@code parentId} (null for the roots) in (position, id) order,
+     * loading and caching them on a miss.
+     */
+    public List<Node> getChildren(Long parentId, Supplier<List<Node>> loader) {
+        List<Node> cached = getCachedChildren(parentId);
+        if (cached != null) {
+            return cached;
+        }
+        long loadedAt = generation();
+        return putChildren(parentId, loader.get(), loadedAt);
+    }
+    
+    /**
+     * Returns the cached children of {@code parentId} in (position, id) order, or null when they
+     * are not cached. Nothing is loaded.
+     */
+    public List<Node> getCachedChildren(Long parentId) {
+        ChildList cached = children.get(key(parentId));
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        cached.lastAccess = System.nanoTime();
+        return cached.nodes;
+    }
+    
+    /**
+     * Caches {@code loaded} as every child of {@code parentId}, unless the cache has been written
+     * since {@code loadedAt}, the {@link #generation()} read before loading them. Returns the list
+     * as it would be cached.
+     */
+    public List<Node> putChildren(Long parentId, List<Node> loaded, long loadedAt) {
+        Long key = key(parentId);
+        // kept in (position, id) order so callers can page through a list by binary search
+        List<Node> sorted = loaded.stream().map(Node::snapshot).sorted(SIBLING_ORDER).toList();
+        synchronized (this) {
+            if (generation == loadedAt && !children.containsKey(key)) {
+                children.put(key, new ChildList(sorted));
+                sorted.forEach(node -> nodes.put(node.getId(), node));
+                evictIfFull();
+            }
+        }
+        return sorted;
+    }
+    
+    /**
+     * Counts writes to the cache; read it before loading a list to hand to {@link #putChildren}.
+     */
+    public long generation() {
+        return generation;
+    }
+    
+    /**
+     * Returns the cached copy of a node, if its sibling list is cached.
+     */
+    public Node getNode(Long id) {
+        Node node = nodes.get(id);
+        if (node != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return node;
+    }
+    
+    /**
+     * Writes a created or changed node through to its cached sibling list, moving it out of the list
+     * of {@code previousParentId} if that differs.
+     */
+    public synchronized void put(Node node, Long previousParentId) {
+        Node previous = nodes.remove(node.getId());
+        Long oldKey = previous != null ? key(previous.getParentId()) : key(previousParentId);
+        Long newKey = key(node.getParentId());
+        if (!oldKey.equals(newKey)) {
+            replace(oldKey, node.getId(), null);
+        }
+        if (replace(newKey, node.getId(), node)) {
+            nodes.put(node.getId(), node);
+        }
+        generation++;
+    }
+    
+    /**
+     * Applies a field change to the cached copy of a node, for writes that never load the entity.
+     * Nothing is cached to change when its sibling list is not.
+     */
+    public synchronized void update(Long id, Consumer<Node> change) {
+        Node cached = nodes.get(id);
+        if (cached != null) {
+            Node updated = cached.snapshot();
+            change.accept(updated);
+            replace(key(updated.getParentId()), id, updated);
+            nodes.put(id, updated);
+        }
+        generation++;
+    }
+    
+    /**
+     * Drops the list holding a node and every cached list below it, after a set-based write to the
+     * whole subtree.
+     */
+    public synchronized void evictSubtreeLists(Long id, Long parentId) {
+        ChildList list = children.remove(key(parentId));
+        if (list != null) {
+            list.nodes.forEach(node -> nodes.remove(node.getId()));
+        }
+        evictLists(id);
+        generation++;
+    }
+    
+    /**
+     * Drops a deleted node, its cached descendants, and its entry in the parent's list.
+     */
+    public synchronized void evictSubtree(Long id, Long parentId) {
+        replace(key(parentId), id, null);
+        nodes.remove(id);
+        evictLists(id);
+        generation++;
+    }
+    
+    /**
+     * Drops the cached child list of {@code parentId}, e.g. after its siblings were renumbered.
+     */
+    public synchronized void evictChildren(Long parentId) {
+        ChildList list = children.remove(key(parentId));
+        if (list != null) {
+            list.nodes.forEach(node -> nodes.remove(node.getId()));
+        }
+        generation++;
+    }
+    
+    public synchronized void clear() {
+        children.clear();
+        nodes.clear();
+        generation++;
+    }
+    
+    /**
+     * Current document revision. Read it before reading nodes: a write that lands in between makes
+     * the data newer than the revision, never the other way round.
+     */
+    public String revision() {
+        return epoch + "." + generation;
+    }
+    
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), children.size(), nodes.size());
+    }
+    
+    // Swaps `id` for `replacement` (or removes it) in a cached list; false if the list is not cached
+    private boolean replace(Long key, Long id, Node replacement) {
+        ChildList list = children.get(key);
+        if (list == null) {
+            return false;
+        }
+        List<Node> updated = new ArrayList<>(list.nodes.size() + 1);
+        for (Node sibling : list.nodes) {
+            if (!sibling.getId().equals(id)) {
+                updated.add(sibling);
+            }
+        }
+        if (replacement != null) {
+            updated.add(replacement);
+            updated.sort(SIBLING_ORDER);
+        }
+        ChildList swapped = new ChildList(List.copyOf(updated));
+        swapped.lastAccess = list.lastAccess;
+        children.put(key, swapped);
+        return true;
+    }
+    
+    private void evictLists(Long parentKey) {
+        ChildList list = children.remove(parentKey);
+        if (list == null) {
+            return;
+        }
+        for (Node node : list.nodes) {
+            nodes.remove(node.getId());
+            evictLists(node.getId());
+        }
+    }
+    
+    // Drops the coldest lists, and the cached subtrees below them, until back under 90% of the bound
+    private void evictIfFull() {
+        if (nodes.size() <= maxNodes) {
+            return;
+        }
+        List<Map.Entry<Long, ChildList>> coldestFirst = new ArrayList<>(children.entrySet());
+        coldestFirst.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        int target = maxNodes / 10 * 9;
+        for (Map.Entry<Long, ChildList> entry : coldestFirst) {
+            if (nodes.size() <= target) {
+                break;
+            }
+            if (children.containsKey(entry.getKey())) {
+                evictLists(entry.getKey());
+                evictions.increment();
+            }
+        }
+    }
+    
+    private static Long key(Long parentId) {
+        return parentId != null ? parentId : ROOT;
+    }
+    
+    private static final class ChildList {
+        
+        private final List<Node> nodes;
+        
+        private volatile long lastAccess = System.nanoTime();
+        
+        private ChildList(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+    }
+    
+    public record Stats(long hits, long misses, long evictions, int cachedLists, int cachedNodes) {
+    }
+}
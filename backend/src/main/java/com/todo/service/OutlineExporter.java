@@ -0,0 +1,372 @@
+package com.todo.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.OutlineRow;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Streams an outline depth-first from the database into NDJSON, OPML or Markdown.
+ *
+ * <p>The walk reads one parent's children at a time, a page of siblings per keyset query on
+ * {@code (parent_id, position)}, and descends into each node with children before reading on. So the
+ * database never sorts the whole outline, and memory holds at most one page per level of depth.
+ *
+ * <p>Mirrors are written with the content, notes, tags and flags of their original, looked up once
+ * per page through {@link MirrorResolver}; like in the tree, they have no children of their own.
+ */
+@Service
+public class OutlineExporter {
+    
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        OPML("text/x-opml", "opml"),
+        MARKDOWN("text/markdown", "md");
+        
+        private final String contentType;
+        
+        private final String extension;
+        
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+        
+        public String contentType() {
+            return contentType;
+        }
+        
+        public String extension() {
+            return extension;
+        }
+        
+        public static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name) || format.extension.equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported export format: " + name);
+        }
+    }
+    
+    // Siblings read per query
+    static final int PAGE_SIZE = 1000;
+    
+    private final NodeRepository nodeRepository;
+    
+    private final MirrorResolver mirrorResolver;
+    
+    private final TransactionTemplate readOnlyTransaction;
+    
+    private final JsonFactory jsonFactory = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    
+    private final XMLOutputFactory xmlFactory = XMLOutputFactory.newFactory();
+    
+    public OutlineExporter(NodeRepository nodeRepository, MirrorResolver mirrorResolver,
+                           PlatformTransactionManager transactionManager) {
+        this.nodeRepository = nodeRepository;
+        this.mirrorResolver = mirrorResolver;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+    
+    /**
+     * Writes the subtree under {@code rootId}, or every root when null, to {@code out}.
+     * Runs in its own read-only transaction because streaming responses are written after the
+     * request thread has returned.
+     */
+    public void export(Long rootId, Format format, OutputStream out) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try {
+                OutlineWriter writer = open(format, out);
+                writer.start();
+                walk(rootId, writer);
+                writer.finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (XMLStreamException e) {
+                throw new UncheckedIOException(new IOException(e));
+            }
+        });
+    }
+    
+    private void walk(Long rootId, OutlineWriter writer) throws IOException, XMLStreamException {
+        Deque<Level> levels = new ArrayDeque<>();
+        if (rootId == null) {
+            levels.push(new Level(null, 0));
+        } else {
+            Optional<OutlineRow> root = nodeRepository.findOutlineRow(rootId);
+            if (root.isEmpty()) {
+                return;
+            }
+            Entry entry = entries(List.of(root.get()), 0).get(0);
+            writer.write(entry);
+            if (entry.hasChildren()) {
+                levels.push(new Level(entry.id(), 1));
+            }
+        }
+        while (!levels.isEmpty()) {
+            Entry entry = levels.peek().next();
+            if (entry == null) {
+                levels.pop();
+                continue;
+            }
+            writer.write(entry);
+            if (entry.hasChildren()) {
+                levels.push(new Level(entry.id(), entry.depth() + 1));
+            }
+        }
+    }
+    
+    private List<Entry> entries(List<OutlineRow> rows, int depth) {
+        Set<Long> mirrored = new HashSet<>();
+        for (OutlineRow row : rows) {
+            if (row.getMirrorId() != null) {
+                mirrored.add(row.getMirrorId());
+            }
+        }
+        Map<Long, Node> originals = mirrored.isEmpty() ? Map.of() : mirrorResolver.findOriginals(mirrored);
+        List<Entry> entries = new ArrayList<>(rows.size());
+        for (OutlineRow row : rows) {
+            Node original = row.getMirrorId() != null ? originals.get(row.getMirrorId()) : null;
+            entries.add(original != null
+                    ? new Entry(row.getId(), row.getParentId(), depth, original.getContent(), original.getIsCompleted(),
+                            original.getIsStarred(), original.getNotes(), original.getTags(), false)
+                    : new Entry(row.getId(), row.getParentId(), depth, row.getContent(),
+                            Boolean.TRUE.equals(row.getCompleted()), Boolean.TRUE.equals(row.getStarred()),
+                            row.getNotes(), tags(row), Boolean.TRUE.equals(row.getHasChildren())));
+        }
+        return entries;
+    }
+    
+    private OutlineWriter open(Format format, OutputStream out) throws IOException, XMLStreamException {
+        return switch (format) {
+            case NDJSON -> new NdjsonWriter(jsonFactory.createGenerator(out));
+            case OPML -> new OpmlWriter(xmlFactory.createXMLStreamWriter(out, "UTF-8"));
+            case MARKDOWN -> new MarkdownWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        };
+    }
+    
+    private static List<String> tags(OutlineRow row) {
+        String joined = row.getTags();
+        return joined == null || joined.isEmpty() ? List.of() : List.of(joined.split(OutlineRow.TAG_SEPARATOR));
+    }
+    
+    // One node as written, a mirror already showing its original
+    private record Entry(Long id, Long parentId, int depth, String content, boolean completed, boolean starred,
+                         String notes, List<String> tags, boolean hasChildren) {
+    }
+    
+    // One parent's children, read a page at a time after the last row read
+    private final class Level {
+        
+        private final Long parentId;
+        
+        private final int depth;
+        
+        private Iterator<Entry> page = Collections.emptyIterator();
+        
+        private boolean more = true;
+        
+        private long position = Long.MIN_VALUE;
+        
+        private long id = Long.MIN_VALUE;
+        
+        private Level(Long parentId, int depth) {
+            this.parentId = parentId;
+            this.depth = depth;
+        }
+        
+        // The next child, or null once there are none left
+        Entry next() {
+            if (!page.hasNext() && more) {
+                List<OutlineRow> rows = parentId != null
+                        ? nodeRepository.findOutlineChildren(parentId, position, id, PAGE_SIZE)
+                        : nodeRepository.findOutlineRoots(position, id, PAGE_SIZE);
+                more = rows.size() == PAGE_SIZE;
+                if (!rows.isEmpty()) {
+                    OutlineRow last = rows.get(rows.size() - 1);
+                    position = last.getPosition();
+                    id = last.getId();
+                }
+                page = entries(rows, depth).iterator();
+            }
+            return page.hasNext() ? page.next() : null;
+        }
+    }
+    
+    private interface OutlineWriter {
+        
+        void start() throws IOException, XMLStreamException;
+        
+        void write(Entry entry) throws IOException, XMLStreamException;
+        
+        void finish() throws IOException, XMLStreamException;
+    }
+    
+    // One JSON object per line, carrying depth so the hierarchy can be rebuilt without lookups
+    private static final class NdjsonWriter implements OutlineWriter {
+        
+        private final JsonGenerator json;
+        
+        private NdjsonWriter(JsonGenerator json) {
+            this.json = json;
+            json.setRootValueSeparator(new SerializedString("\n"));
+        }
+        
+        @Override
+        public void start() {
+        }
+        
+        @Override
+        public void write(Entry entry) throws IOException {
+            json.writeStartObject();
+            json.writeNumberField("id", entry.id());
+            if (entry.parentId() != null) {
+                json.writeNumberField("parentId", entry.parentId());
+            } else {
+                json.writeNullField("parentId");
+            }
+            json.writeNumberField("depth", entry.depth());
+            json.writeStringField("content", entry.content());
+            json.writeBooleanField("isCompleted", entry.completed());
+            json.writeBooleanField("isStarred", entry.starred());
+            json.writeArrayFieldStart("tags");
+            for (String tag : entry.tags()) {
+                json.writeString(tag);
+            }
+            json.writeEndArray();
+            if (entry.notes() != null) {
+                json.writeStringField("notes", entry.notes());
+            }
+            json.writeEndObject();
+        }
+        
+        @Override
+        public void finish() throws IOException {
+            json.writeRaw('\n');
+            json.flush();
+        }
+    }
+    
+    // OPML 2.0, nesting <outline> elements; open elements are closed when a shallower row arrives
+    private static final class OpmlWriter implements OutlineWriter {
+        
+        private final XMLStreamWriter xml;
+        
+        private int open;
+        
+        private OpmlWriter(XMLStreamWriter xml) {
+            this.xml = xml;
+        }
+        
+        @Override
+        public void start() throws XMLStreamException {
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeStartElement("opml");
+            xml.writeAttribute("version", "2.0");
+            xml.writeStartElement("head");
+            xml.writeStartElement("title");
+            xml.writeCharacters("NodeFlow Export");
+            xml.writeEndElement();
+            xml.writeEndElement();
+            xml.writeStartElement("body");
+        }
+        
+        @Override
+        public void write(Entry entry) throws XMLStreamException {
+            while (open > entry.depth()) {
+                xml.writeEndElement();
+                open--;
+            }
+            xml.writeStartElement("outline");
+            xml.writeAttribute("text", entry.content());
+            if (entry.completed()) {
+                xml.writeAttribute("_complete", "true");
+            }
+            if (entry.notes() != null && !entry.notes().isEmpty()) {
+                xml.writeAttribute("_note", entry.notes());
+            }
+            if (!entry.tags().isEmpty()) {
+                xml.writeAttribute("category", String.join(",", entry.tags()));
+            }
+            open++;
+        }
+        
+        @Override
+        public void finish() throws XMLStreamException {
+            while (open > 0) {
+                xml.writeEndElement();
+                open--;
+            }
+            xml.writeEndElement();
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.flush();
+        }
+    }
+    
+    // Same layout as the client-side Markdown export, so either can be imported back
+    private static final class MarkdownWriter implements OutlineWriter {
+        
+        private final Writer out;
+        
+        private MarkdownWriter(Writer out) {
+            this.out = out;
+        }
+        
+        @Override
+        public void start() throws IOException {
+            out.write("# NodeFlow Export\n\nExported on: " + LocalDate.now() + "\n\n");
+        }
+        
+        @Override
+        public void write(Entry entry) throws IOException {
+            out.write("  ".repeat(entry.depth()));
+            out.write(entry.completed() ? "- [x] " : "- [ ] ");
+            String content = entry.content();
+            out.write(content == null || content.isBlank() ? "Untitled" : content.replace('\n', ' '));
+            for (String tag : entry.tags()) {
+                out.write(" #");
+                out.write(tag);
+            }
+            out.write('\n');
+        }
+        
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+    }
+}
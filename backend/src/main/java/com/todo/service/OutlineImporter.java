@@ -0,0 +1,332 @@
+package com.todo.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.todo.dto.ImportResult;
+import com.todo.entity.Node;
+import com.todo.repository.NodeJournalRow;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.OutlineRow;
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk-inserts an outline read incrementally from JSON.
+ *
+ * <p>The input is either a JSON array of nodes or a stream of whitespace-separated node objects
+ * (NDJSON). A node may nest its children under {@code "children"}, or name its parent through
+ * {@code "parentRef"} (or {@code "parentId"}) pointing at the {@code "ref"} (or {@code "id"}) of a
+ * node earlier in the input, which is the shape {@link OutlineExporter} writes. Nodes without either
+ * are placed under the import target.
+ *
+ * <p>Ids are drawn from the same pooled sequence generator Hibernate uses for {@link Node}, so each
+ * row's materialized path is known before it is written. Rows then go straight to JDBC in batches,
+ * one INSERT per node and none of the insert-then-update a managed entity would need for its path.
+ * Only the current batch and the refs map are kept in memory; the search index reads the rows back
+ * after commit.
+ */
+@Service
+public class OutlineImporter {
+    
+    private static final String INSERT_NODE = "INSERT INTO nodes (id, content, parent_id, path, position, version, change_seq, "
+            + "created_at, updated_at, is_completed, is_expanded, is_starred, notes) VALUES (?, ?, ?, ?, ?, 0, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String INSERT_TAG = "INSERT INTO node_tag (node_id, tag_id) VALUES (?, ?)";
+    
+    private final EntityManager entityManager;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    private final NodeRepository nodeRepository;
+    
+    private final SiblingOrder siblingOrder;
+    
+    private final NodeTreeCache treeCache;
+    
+    private final NodeSearchIndex searchIndex;
+    
+    private final TagService tagService;
+    
+    private final ChangeSequence changeSequence;
+    
+    private final ChangeBroadcaster broadcaster;
+    
+    private final SubtreeCounters counters;
+    
+    private final int batchSize;
+    
+    private final JsonFactory jsonFactory = new JsonFactory();
+    
+    public OutlineImporter(EntityManager entityManager, JdbcTemplate jdbcTemplate, NodeRepository nodeRepository,
+                           SiblingOrder siblingOrder, NodeTreeCache treeCache, NodeSearchIndex searchIndex,
+                           TagService tagService, ChangeSequence changeSequence, ChangeBroadcaster broadcaster,
+                           SubtreeCounters counters,
+                           @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}") int batchSize) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.nodeRepository = nodeRepository;
+        this.siblingOrder = siblingOrder;
+        this.treeCache = treeCache;
+        this.searchIndex = searchIndex;
+        this.tagService = tagService;
+        this.changeSequence = changeSequence;
+        this.broadcaster = broadcaster;
+        this.counters = counters;
+        this.batchSize = batchSize;
+    }
+    
+    /**
+     * Imports every node in {@code in} under {@code parentId} (at the root when null), keeping input
+     * order among siblings and appending after existing children.
+     */
+    @Transactional
+    public ImportResult importOutline(Long parentId, InputStream in) {
+        long started = System.nanoTime();
+        Parent target = Parent.ROOT;
+        if (parentId != null) {
+            Node parent = nodeRepository.findById(parentId)
+                    .orElseThrow(() -> new RuntimeException("Parent node not found"));
+            target = new Parent(parent.getId(), parent.getPath());
+        }
+        
+        Batch batch = new Batch(target, entityManager.unwrap(SharedSessionContractImplementor.class));
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    batch.readNode(parser, null);
+                }
+            } else {
+                for (; token != null; token = parser.nextToken()) {
+                    if (token != JsonToken.START_OBJECT) {
+                        throw invalid("Expected a node object but found " + token);
+                    }
+                    batch.readNode(parser, null);
+                }
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed import: " + e.getMessage(), e);
+        }
+        batch.write();
+        long change = changeSequence.current();
+        // every inserted node counted once along its path: one more batch for the whole import
+        counters.apply(batch.counts, change);
+        
+        AfterCommit.run(() -> {
+            treeCache.evictChildren(parentId);
+            index(change);
+            // only the target's child list changed for clients; everything below it is new to them
+            broadcaster.childrenChanged(parentId);
+        });
+        return new ImportResult(batch.count, (System.nanoTime() - started) / 1_000_000);
+    }
+    
+    /**
+     * Indexes the committed import for search, read back from the table a batch at a time by its
+     * change number, so no node's text outlives the batch that wrote it. The target's ancestors,
+     * stamped with the same number by their counters, are indexed again along the way.
+     */
+    private void index(long change) {
+        long after = 0;
+        List<NodeJournalRow> rows;
+        do {
+            rows = nodeRepository.findJournalRowsAfter(change, after, batchSize);
+            for (NodeJournalRow row : rows) {
+                List<String> tags = row.getTags() != null
+                        ? Arrays.asList(row.getTags().split(OutlineRow.TAG_SEPARATOR))
+                        : List.of();
+                searchIndex.index(row.getId(), row.getParentId(), row.getContent(), row.getNotes(), tags);
+                after = row.getId();
+            }
+        } while (rows.size() == batchSize);
+    }
+    
+    private static ResponseStatusException invalid(String message) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, message);
+    }
+    
+    private record Parent(Long id, String path) {
+        
+        static final Parent ROOT = new Parent(null, null);
+    }
+    
+    private final class Batch {
+        
+        private final Parent target;
+        
+        private final SharedSessionContractImplementor session;
+        
+        private final IdentifierGenerator ids;
+        
+        private final Map<String, Parent> refs = new HashMap<>();
+        
+        private final Map<String, Long> tagIds = new HashMap<>();
+        
+        private final List<Node> pending = new ArrayList<>();
+        
+        private final SubtreeCounters.Changes counts = new SubtreeCounters.Changes();
+        
+        private int count;
+        
+        private Batch(Parent target, SharedSessionContractImplementor session) {
+            this.target = target;
+            this.session = session;
+            this.ids = (IdentifierGenerator) session.getFactory().getMappingMetamodel()
+                    .getEntityDescriptor(Node.class).getGenerator();
+        }
+        
+        // Reads one node object, the parser positioned on its START_OBJECT; inserts it, then its children
+        void readNode(JsonParser parser, Parent enclosing) throws IOException {
+            Node node = new Node("", null, null);
+            String ref = null;
+            String parentRef = null;
+            Parent inserted = null;
+            
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (inserted != null && !field.equals("children")) {
+                    throw invalid("\"children\" must be the last field of a node, found \"" + field + "\" after it");
+                }
+                switch (field) {
+                    case "ref", "id" -> ref = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                    case "parentRef", "parentId" -> parentRef = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                    case "content" -> node.setContent(value == JsonToken.VALUE_NULL ? "" : parser.getValueAsString());
+                    case "notes" -> node.setNotes(parser.getValueAsString());
+                    case "isCompleted" -> node.setIsCompleted(parser.getValueAsBoolean());
+                    case "isExpanded" -> node.setIsExpanded(parser.getValueAsBoolean());
+                    case "isStarred" -> node.setIsStarred(parser.getValueAsBoolean());
+                    case "tags" -> node.setTags(readTags(parser, value));
+                    case "children" -> {
+                        if (value != JsonToken.START_ARRAY) {
+                            throw invalid("\"children\" must be an array");
+                        }
+                        if (inserted == null) {
+                            inserted = insert(node, ref, resolve(parentRef, enclosing));
+                        }
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            readNode(parser, inserted);
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (inserted == null) {
+                insert(node, ref, resolve(parentRef, enclosing));
+            }
+        }
+        
+        private List<String> readTags(JsonParser parser, JsonToken value) throws IOException {
+            List<String> tags = new ArrayList<>();
+            if (value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    String tag = parser.getValueAsString();
+                    // normalized the way TagService interns names, so the per-import id map lines up
+                    if (tag != null && !tag.isBlank()) {
+                        tags.add(tag.trim());
+                    }
+                }
+            }
+            return tags;
+        }
+        
+        private Parent resolve(String parentRef, Parent enclosing) {
+            if (parentRef != null) {
+                Parent parent = refs.get(parentRef);
+                if (parent == null) {
+                    throw invalid("Unknown parent reference: " + parentRef + " (parents must come before their children)");
+                }
+                return parent;
+            }
+            return enclosing != null ? enclosing : target;
+        }
+        
+        private Parent insert(Node node, String ref, Parent parent) {
+            node.setId((Long) ids.generate(session, node));
+            node.setParentId(parent.id());
+            // the global append counter hands out increasing keys, so input order is sibling order
+            node.setPosition(siblingOrder.nextAppendKey());
+            node.setPath(TreePaths.childPath(parent.path(), node.getId()));
+            
+            Parent inserted = new Parent(node.getId(), node.getPath());
+            if (ref != null) {
+                refs.put(ref, inserted);
+            }
+            counts.attach(parent.path(), 1, node.getIsCompleted() ? 1 : 0);
+            pending.add(node);
+            if (++count % batchSize == 0) {
+                write();
+            }
+            return inserted;
+        }
+        
+        void write() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            long change = changeSequence.current();
+            jdbcTemplate.batchUpdate(INSERT_NODE, pending, pending.size(), (ps, node) -> {
+                ps.setLong(1, node.getId());
+                ps.setString(2, node.getContent());
+                ps.setObject(3, node.getParentId(), Types.BIGINT);
+                ps.setString(4, node.getPath());
+                ps.setLong(5, node.getPosition());
+                ps.setLong(6, change);
+                ps.setTimestamp(7, now);
+                ps.setTimestamp(8, now);
+                ps.setBoolean(9, node.getIsCompleted());
+                ps.setBoolean(10, node.getIsExpanded());
+                ps.setBoolean(11, node.getIsStarred());
+                ps.setString(12, node.getNotes());
+            });
+            // tag names are interned once per batch, and only names this import has not seen yet
+            Set<String> unseen = new HashSet<>();
+            for (Node node : pending) {
+                for (String tag : node.getTags()) {
+                    if (!tagIds.containsKey(tag)) {
+                        unseen.add(tag);
+                    }
+                }
+            }
+            if (!unseen.isEmpty()) {
+                tagService.intern(unseen).forEach((name, tag) -> tagIds.put(name, tag.getId()));
+            }
+            List<Object[]> tags = new ArrayList<>();
+            for (Node node : pending) {
+                Set<Long> linked = new HashSet<>();
+                for (String tag : node.getTags()) {
+                    Long tagId = tagIds.get(tag);
+                    if (tagId != null && linked.add(tagId)) {
+                        tags.add(new Object[] {node.getId(), tagId});
+                    }
+                }
+            }
+            if (!tags.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_TAG, tags);
+            }
+            pending.clear();
+        }
+    }
+}
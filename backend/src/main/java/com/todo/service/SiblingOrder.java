@@ -0,0 +1,164 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns sparse {@link Node#getPosition() position} keys so that inserting or moving a node only
+ * writes that node's row.
+ *
+ * <p>Appends take the next key from a process-wide counter spaced {@link #GAP} apart, which is always
+ * past every existing key. Inserts between two siblings take the midpoint of their keys. When two
+ * neighbours have no room left between them their sibling list is renumbered, either on the spot or
+ * by the periodic {@link #rebalanceCrowdedSiblings()} job before it comes to that.
+ */
+@Component
+public class SiblingOrder {
+    
+    public static final long GAP = 1L << 16;
+    
+    // Lists with an adjacent gap below this get renumbered in the background
+    static final long CROWDED_GAP = 16;
+    
+    private static final Logger log = LoggerFactory.getLogger(SiblingOrder.class);
+    
+    private final NodeRepository nodeRepository;
+    
+    private final NodeTreeCache treeCache;
+    
+    private final ChangeSequence changeSequence;
+    
+    private final ChangeBroadcaster broadcaster;
+    
+    private final AtomicLong lastKey = new AtomicLong();
+    
+    private volatile boolean seeded;
+    
+    public SiblingOrder(NodeRepository nodeRepository, NodeTreeCache treeCache, ChangeSequence changeSequence,
+                        ChangeBroadcaster broadcaster) {
+        this.nodeRepository = nodeRepository;
+        this.treeCache = treeCache;
+        this.changeSequence = changeSequence;
+        this.broadcaster = broadcaster;
+    }
+    
+    /**
+     * Returns a key that sorts after every key handed out or observed so far.
+     */
+    public long nextAppendKey() {
+        return reserve(1);
+    }
+    
+    /**
+     * Reserves {@code count} consecutive append keys, {@link #GAP} apart, and returns the first one.
+     */
+    public long reserve(int count) {
+        seed();
+        return lastKey.addAndGet(count * GAP) - (count - 1) * GAP;
+    }
+    
+    /**
+     * Records a key chosen by a client so later appends still sort after it.
+     */
+    public void observe(long key) {
+        seed();
+        lastKey.accumulateAndGet(key, Math::max);
+    }
+    
+    /**
+     * Returns the key for a node inserted at sibling {@code index} under {@code parentId}, ignoring
+     * the node {@code excludeId} itself. A null or out-of-range index appends.
+     */
+    public long keyForIndex(Long parentId, Long excludeId, Integer index) {
+        if (index == null || index < 0) {
+            return nextAppendKey();
+        }
+        Long key = keyBetweenNeighbours(parentId, excludeId, index);
+        if (key == null) {
+            rebalance(parentId);
+            key = keyBetweenNeighbours(parentId, excludeId, index);
+        }
+        return key != null ? key : nextAppendKey();
+    }
+    
+    private Long keyBetweenNeighbours(Long parentId, Long excludeId, int index) {
+        int offset = Math.max(index - 1, 0);
+        int limit = index == 0 ? 1 : 2;
+        List<Long> neighbours = parentId != null
+                ? nodeRepository.findSiblingPositions(parentId, excludeId, offset, limit)
+                : nodeRepository.findRootPositions(excludeId, offset, limit);
+        
+        Long before = index > 0 && !neighbours.isEmpty() ? neighbours.get(0) : null;
+        Long after = index == 0
+                ? (neighbours.isEmpty() ? null : neighbours.get(0))
+                : (neighbours.size() > 1 ? neighbours.get(1) : null);
+        
+        if (after == null) {
+            return nextAppendKey();
+        }
+        if (before == null) {
+            return after - GAP;
+        }
+        return after - before > 1 ? before + (after - before) / 2 : null;
+    }
+    
+    /**
+     * Renumbers the children of {@code parentId} with fresh append keys, keeping their order.
+     */
+    @Transactional
+    public void rebalance(Long parentId) {
+        List<Node> siblings = new ArrayList<>(parentId != null
+                ? nodeRepository.findByParentIdOrderByPositionAsc(parentId)
+                : nodeRepository.findByParentIdIsNullOrderByPositionAsc());
+        if (siblings.isEmpty()) {
+            return;
+        }
+        siblings.sort(Comparator.comparing(Node::getPosition).thenComparing(Node::getId));
+        long key = reserve(siblings.size());
+        long change = changeSequence.current();
+        for (Node sibling : siblings) {
+            sibling.setPosition(key);
+            sibling.setChangeSeq(change);
+            key += GAP;
+        }
+        nodeRepository.saveAll(siblings);
+        AfterCommit.run(() -> {
+            treeCache.evictChildren(parentId);
+            broadcaster.childrenChanged(parentId);
+        });
+    }
+    
+    @Scheduled(fixedDelayString = "${todo.ordering.rebalance-interval-ms:300000}")
+    @Transactional
+    public void rebalanceCrowdedSiblings() {
+        List<Long> crowded = nodeRepository.findParentsWithGapsBelow(CROWDED_GAP);
+        for (Long parentId : crowded) {
+            rebalance(parentId);
+        }
+        if (!crowded.isEmpty()) {
+            log.info("Rebalanced positions under {} parent(s)", crowded.size());
+        }
+    }
+    
+    private void seed() {
+        if (!seeded) {
+            synchronized (this) {
+                if (!seeded) {
+                    Long max = nodeRepository.findMaxPosition();
+                    lastKey.accumulateAndGet(max != null ? max : 0L, Math::max);
+                    seeded = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.todo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the per-node subtree aggregates up to date: direct children, all descendants and completed
+ * descendants.
+ *
+ * <p>A write describes what it did to the tree as a set of {@link Changes}: a subtree of so many
+ * nodes attached or detached under a parent, or a node's completion flipped. Each of those touches
+ * exactly the ancestors named in the parent's materialized path, so the deltas are known without a
+ * query, and {@link #apply} writes them as one JDBC batch however deep the tree is. The adjusted
+ * rows are stamped with the write's change number, so the change feed and journal carry them; cached
+ * copies are patched and live clients told after commit.
+ *
+ * <p>{@link #rebuild()} recomputes every counter from a single scan of the table and fixes the rows
+ * that drifted. It runs after a journal replay and on {@code todo.counters.repair-cron}.
+ */
+@Component
+public class SubtreeCounters {
+    
+    private static final Logger log = LoggerFactory.getLogger(SubtreeCounters.class);
+    
+    private static final String ADJUST = "UPDATE nodes SET child_count = child_count + ?, "
+            + "descendant_count = descendant_count + ?, completed_descendant_count = completed_descendant_count + ?, "
+            + "change_seq = ? WHERE id = ?";
+    
+    // Only rows still holding the values the rebuild read, so a write racing the rebuild is not undone
+    private static final String REPAIR = "UPDATE nodes SET child_count = ?, descendant_count = ?, "
+            + "completed_descendant_count = ? WHERE id = ? AND child_count = ? AND descendant_count = ? "
+            + "AND completed_descendant_count = ?";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    private final NodeTreeCache treeCache;
+    
+    private final ChangeBroadcaster broadcaster;
+    
+    public SubtreeCounters(JdbcTemplate jdbcTemplate, NodeTreeCache treeCache, ChangeBroadcaster broadcaster) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.treeCache = treeCache;
+        this.broadcaster = broadcaster;
+    }
+    
+    /**
+     * Counter deltas per node, collected over one write.
+     */
+    public static final class Changes {
+        
+        private final Map<Long, long[]> deltas = new LinkedHashMap<>();
+        
+        // Parent of every node in deltas, as its path named it; null for roots
+        private final Map<Long, Long> parents = new HashMap<>();
+        
+        /**
+         * A subtree of {@code nodes} nodes, {@code completed} of them completed, now hangs below
+         * {@code parentPath} (null for the roots).
+         */
+        public void attach(String parentPath, long nodes, long completed) {
+            shift(parentPath, 1, nodes, completed);
+        }
+        
+        public void detach(String parentPath, long nodes, long completed) {
+            shift(parentPath, -1, -nodes, -completed);
+        }
+        
+        /**
+         * A node below {@code parentPath} became completed (+1) or not completed (-1).
+         */
+        public void completed(String parentPath, long delta) {
+            shift(parentPath, 0, 0, delta);
+        }
+        
+        /**
+         * Descendants and completed descendants added to {@code id} by this write so far, for
+         * writes that move or remove a subtree whose counters they read before.
+         */
+        public long[] pending(Long id) {
+            long[] delta = deltas.get(id);
+            return delta != null ? delta : new long[3];
+        }
+        
+        public boolean isEmpty() {
+            return deltas.isEmpty();
+        }
+        
+        private void shift(String parentPath, long children, long nodes, long completed) {
+            if (parentPath == null || (nodes == 0 && completed == 0 && children == 0)) {
+                return;
+            }
+            List<Long> ancestors = ancestors(parentPath);
+            for (int i = 0; i < ancestors.size(); i++) {
+                long[] delta = deltas.computeIfAbsent(ancestors.get(i), id -> new long[3]);
+                parents.put(ancestors.get(i), i > 0 ? ancestors.get(i - 1) : null);
+                if (i == ancestors.size() - 1) {
+                    delta[0] += children;
+                }
+                delta[1] += nodes;
+                delta[2] += completed;
+            }
+        }
+    }
+    
+    /**
+     * Writes the deltas in one batch, stamping the rows with {@code changeSeq}, and once the
+     * transaction commits patches the cached copies and announces the new counts. Rows deleted in
+     * the meantime are simply not matched.
+     */
+    public void apply(Changes changes, long changeSeq) {
+        Map<Long, long[]> applied = new LinkedHashMap<>();
+        List<Object[]> rows = new ArrayList<>();
+        changes.deltas.forEach((id, delta) -> {
+            if (delta[0] != 0 || delta[1] != 0 || delta[2] != 0) {
+                applied.put(id, delta);
+                rows.add(new Object[] {delta[0], delta[1], delta[2], changeSeq, id});
+            }
+        });
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(ADJUST, rows);
+        Map<Long, Long> parents = new HashMap<>(changes.parents);
+        AfterCommit.run(() -> applied.forEach((id, delta) -> {
+            treeCache.update(id, node -> {
+                node.setChildCount(node.getChildCount() + delta[0]);
+                node.setDescendantCount(node.getDescendantCount() + delta[1]);
+                node.setCompletedDescendantCount(node.getCompletedDescendantCount() + delta[2]);
+                node.setChangeSeq(changeSeq);
+            });
+            broadcaster.countsChanged(id, parents.get(id));
+        }));
+    }
+    
+    /**
+     * Recomputes every node's counters from one scan of the table and writes the ones that differ.
+     * Returns the number of rows repaired.
+     */
+    public int rebuild() {
+        Map<Long, long[]> stored = new HashMap<>();
+        Map<Long, long[]> actual = new HashMap<>();
+        jdbcTemplate.query("SELECT id, parent_id, path, is_completed, child_count, descendant_count, "
+                + "completed_descendant_count FROM nodes", rs -> {
+            long id = rs.getLong(1);
+            stored.put(id, new long[] {rs.getLong(5), rs.getLong(6), rs.getLong(7)});
+            actual.computeIfAbsent(id, key -> new long[3]);
+            String path = rs.getString(3);
+            if (path == null) {
+                return;
+            }
+            boolean completed = rs.getBoolean(4);
+            List<Long> ancestors = ancestors(path);
+            // the last entry is the node itself
+            for (int i = 0; i < ancestors.size() - 1; i++) {
+                long[] counts = actual.computeIfAbsent(ancestors.get(i), key -> new long[3]);
+                if (i == ancestors.size() - 2) {
+                    counts[0]++;
+                }
+                counts[1]++;
+                if (completed) {
+                    counts[2]++;
+                }
+            }
+        });
+        
+        List<Object[]> repairs = new ArrayList<>();
+        stored.forEach((id, was) -> {
+            long[] is = actual.get(id);
+            if (is[0] != was[0] || is[1] != was[1] || is[2] != was[2]) {
+                repairs.add(new Object[] {is[0], is[1], is[2], id, was[0], was[1], was[2]});
+            }
+        });
+        if (!repairs.isEmpty()) {
+            jdbcTemplate.batchUpdate(REPAIR, repairs);
+            treeCache.clear();
+            log.warn("Repaired subtree counters of {} nodes", repairs.size());
+        }
+        return repairs.size();
+    }
+    
+    @Scheduled(cron = "${todo.counters.repair-cron:-}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+    
+    // Ids along a materialized path, root first
+    private static List<Long> ancestors(String path) {
+        List<Long> ids = new ArrayList<>();
+        int start = 1;
+        for (int end = path.indexOf('/', start); end > 0; end = path.indexOf('/', start)) {
+            ids.add(Long.parseLong(path, start, end, 10));
+            start = end + 1;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,112 @@
+package com.todo.service;
+
+import com.todo.dto.TagCount;
+import com.todo.entity.Node;
+import com.todo.entity.Tag;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.TagRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns tag names into the tag dictionary and answers tag counts.
+ *
+ * <p>Known tags are cached by name. A tag looked up or created inside a transaction is only cached
+ * once that transaction commits, so a rollback cannot leave an id in the cache that the database
+ * never kept. Tags that no node uses any more stay in the dictionary; counts only see used ones.
+ */
+@Service
+public class TagService {
+    
+    private final TagRepository tagRepository;
+    
+    private final NodeRepository nodeRepository;
+    
+    private final ConcurrentMap<String, Tag> interned = new ConcurrentHashMap<>();
+    
+    public TagService(TagRepository tagRepository, NodeRepository nodeRepository) {
+        this.tagRepository = tagRepository;
+        this.nodeRepository = nodeRepository;
+    }
+    
+    /**
+     * Replaces the node's tags with the names last given to {@link Node#setTags}, if any.
+     */
+    public void attach(Node node) {
+        List<String> names = node.getPendingTags();
+        if (names == null) {
+            return;
+        }
+        List<Tag> tags = new ArrayList<>(intern(names).values());
+        // the same order the collection is loaded in, so responses do not change between requests
+        tags.sort(Comparator.comparing(Tag::getName));
+        node.setTagRefs(tags);
+    }
+    
+    /**
+     * Dictionary entries for {@code names}, created where missing. Blank names are dropped and
+     * surrounding whitespace trimmed. Costs no queries when every name is cached, otherwise one
+     * lookup plus one insert per new name and a second lookup.
+     */
+    @Transactional
+    public Map<String, Tag> intern(Iterable<String> names) {
+        Set<String> wanted = new LinkedHashSet<>();
+        for (String name : names) {
+            if (name != null && !name.isBlank()) {
+                wanted.add(name.trim());
+            }
+        }
+        
+        Map<String, Tag> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String name : wanted) {
+            Tag tag = interned.get(name);
+            if (tag != null) {
+                found.put(name, tag);
+            } else {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Tag> loaded = new HashMap<>();
+            tagRepository.findByNameIn(missing).forEach(tag -> loaded.put(tag.getName(), tag));
+            if (loaded.size() < missing.size()) {
+                missing.stream().filter(name -> !loaded.containsKey(name)).forEach(tagRepository::insertIfAbsent);
+                missing.removeAll(loaded.keySet());
+                tagRepository.findByNameIn(missing).forEach(tag -> loaded.put(tag.getName(), tag));
+            }
+            found.putAll(loaded);
+            AfterCommit.run(() -> interned.putAll(loaded));
+        }
+        
+        Map<String, Tag> result = new LinkedHashMap<>();
+        for (String name : wanted) {
+            result.put(name, found.get(name));
+        }
+        return result;
+    }
+    
+    /**
+     * Tag counts for the whole outline, or for one node and its descendants.
+     */
+    @Transactional(readOnly = true)
+    public List<TagCount> counts(Long rootId) {
+        if (rootId == null) {
+            return tagRepository.countAll();
+        }
+        Node root = nodeRepository.findById(rootId)
+                .orElseThrow(() -> new RuntimeException("Node not found with id: " + rootId));
+        return tagRepository.countInSubtree(root.getPath(), TreePaths.upperBound(root.getPath()));
+    }
+}
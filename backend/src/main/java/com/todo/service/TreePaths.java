@@ -0,0 +1,37 @@
+package com.todo.service;
+
+/**
+ * Helpers for the materialized ancestor path stored on each node, e.g. {@code /1/5/9/} for node 9
+ * under 5 under the root 1. A subtree is then the key range {@code [path, upperBound(path))}.
+ */
+public final class TreePaths {
+    
+    private TreePaths() {
+    }
+    
+    public static String childPath(String parentPath, Long id) {
+        return (parentPath != null ? parentPath : "/") + id + "/";
+    }
+    
+    /**
+     * Path of the parent of the node with this path, null for a root.
+     */
+    public static String parentPath(String path) {
+        int end = path.lastIndexOf('/', path.length() - 2);
+        return end > 0 ? path.substring(0, end + 1) : null;
+    }
+    
+    /**
+     * Smallest key above every path that starts with {@code path}: the trailing '/' becomes '0'.
+     */
+    public static String upperBound(String path) {
+        return path.substring(0, path.length() - 1) + '0';
+    }
+    
+    /**
+     * Whether the node with this path is {@code ancestorId} itself or lies below it.
+     */
+    public static boolean isWithin(String path, Long ancestorId) {
+        return path != null && path.contains("/" + ancestorId + "/");
+    }
+}
@@ -0,0 +1,51 @@
+-- The schema as Hibernate generated it from the entities before migrations were introduced
+
+CREATE SEQUENCE node_seq START WITH 1 INCREMENT BY 500;
+
+CREATE TABLE nodes (
+    id           BIGINT        NOT NULL,
+    content      VARCHAR(255)  NOT NULL,
+    parent_id    BIGINT,
+    path         VARCHAR(2048),
+    position     BIGINT        NOT NULL,
+    version      BIGINT        NOT NULL,
+    change_seq   BIGINT        NOT NULL,
+    created_at   TIMESTAMP(6)  NOT NULL,
+    updated_at   TIMESTAMP(6),
+    is_completed BOOLEAN       NOT NULL,
+    is_expanded  BOOLEAN       NOT NULL,
+    is_starred   BOOLEAN       NOT NULL,
+    notes        TEXT,
+    mirror_id    BIGINT,
+    CONSTRAINT pk_nodes PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_nodes_parent_position ON nodes (parent_id, position);
+CREATE INDEX idx_nodes_path ON nodes (path);
+CREATE INDEX idx_nodes_change_seq ON nodes (change_seq, id);
+
+CREATE TABLE tags (
+    id   BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_tags PRIMARY KEY (id),
+    CONSTRAINT uk_tags_name UNIQUE (name)
+);
+
+CREATE TABLE node_tag (
+    node_id BIGINT NOT NULL,
+    tag_id  BIGINT NOT NULL,
+    CONSTRAINT pk_node_tag PRIMARY KEY (node_id, tag_id),
+    CONSTRAINT fk_node_tag_node FOREIGN KEY (node_id) REFERENCES nodes (id),
+    CONSTRAINT fk_node_tag_tag FOREIGN KEY (tag_id) REFERENCES tags (id)
+);
+
+CREATE INDEX idx_node_tag_tag ON node_tag (tag_id);
+
+CREATE TABLE node_tombstones (
+    node_id    BIGINT       NOT NULL,
+    change_seq BIGINT       NOT NULL,
+    deleted_at TIMESTAMP(6) NOT NULL,
+    CONSTRAINT pk_node_tombstones PRIMARY KEY (node_id)
+);
+
+CREATE INDEX idx_node_tombstones_change_seq ON node_tombstones (change_seq, node_id);
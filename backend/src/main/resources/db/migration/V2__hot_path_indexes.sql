@@ -0,0 +1,11 @@
+-- Indexes for the lists that are not read by parent or path. Each one ends in the (position, id)
+-- keyset order, so a page is read off the index in order and stops after `limit` rows.
+
+-- Filtered lists and search pages without a more selective filter
+CREATE INDEX idx_nodes_position ON nodes (position, id);
+
+-- The starred list
+CREATE INDEX idx_nodes_starred_position ON nodes (is_starred, position, id);
+
+-- Search filtered by completion state
+CREATE INDEX idx_nodes_completed_position ON nodes (is_completed, position, id);
@@ -0,0 +1,2 @@
+-- Mirrors are looked up by the node they mirror when that node's subtree is deleted
+CREATE INDEX idx_nodes_mirror ON nodes (mirror_id);
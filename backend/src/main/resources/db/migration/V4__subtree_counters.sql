@@ -0,0 +1,14 @@
+-- Per-node subtree aggregates, maintained incrementally by the application (see SubtreeCounters)
+ALTER TABLE nodes ADD COLUMN child_count BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE nodes ADD COLUMN descendant_count BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE nodes ADD COLUMN completed_descendant_count BIGINT DEFAULT 0 NOT NULL;
+
+-- Backfill existing rows; a node's descendants are the path range (path, path with its last '/' as '0')
+UPDATE nodes a SET
+    child_count = (SELECT COUNT(*) FROM nodes c WHERE c.parent_id = a.id),
+    descendant_count = (SELECT COUNT(*) FROM nodes d
+                        WHERE d.path > a.path AND d.path < CONCAT(LEFT(a.path, CHAR_LENGTH(a.path) - 1), '0')),
+    completed_descendant_count = (SELECT COUNT(*) FROM nodes d
+                                  WHERE d.path > a.path AND d.path < CONCAT(LEFT(a.path, CHAR_LENGTH(a.path) - 1), '0')
+                                  AND d.is_completed)
+WHERE a.path IS NOT NULL;
@@ -0,0 +1,34 @@
+package com.todo;
+
+import com.todo.repository.QueryCounter;
+import org.junit.jupiter.api.function.ThrowingSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Fails a test when a call executes more statements than its budget, listing the statements it ran,
+ * so an N+1 query shows up as a test failure rather than as a slow endpoint in production. Needs the
+ * counting data source, which the full application context installs.
+ */
+public final class QueryBudget {
+
+    private QueryBudget() {
+    }
+
+    public static <T> T assertAtMost(int statements, ThrowingSupplier<T> call) {
+        QueryCounter.Scope scope = QueryCounter.open(true);
+        T result;
+        try {
+            result = call.get();
+        } catch (Throwable e) {
+            throw new AssertionError("Call under query budget failed", e);
+        } finally {
+            scope.close();
+        }
+        if (scope.getStatements() > statements) {
+            fail("Expected at most " + statements + " statements but " + scope.getStatements() + " ran:\n  "
+                    + String.join("\n  ", scope.getSql()));
+        }
+        return result;
+    }
+}
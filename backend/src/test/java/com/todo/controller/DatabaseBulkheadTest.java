@@ -0,0 +1,138 @@
+package com.todo.controller;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseBulkheadTest {
+
+    private static MockHttpServletRequest request(String uri) {
+        return new MockHttpServletRequest("GET", uri);
+    }
+
+    @Test
+    void requestsPastTheLimit_waitAndAreRejectedAfterMaxWait() throws Exception {
+        DatabaseBulkhead bulkhead = new DatabaseBulkhead(1, 50);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain blocking = (req, res) -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+            try {
+                bulkhead.doFilter(request("/api/nodes/1"), new MockHttpServletResponse(), blocking);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, bulkhead.getActive());
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        bulkhead.doFilter(request("/api/nodes/2"), rejected, new MockFilterChain());
+
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, bulkhead.getRejected());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(0, bulkhead.getActive());
+        MockHttpServletResponse served = new MockHttpServletResponse();
+        bulkhead.doFilter(request("/api/nodes/2"), served, new MockFilterChain());
+        assertEquals(200, served.getStatus());
+    }
+
+    @Test
+    void requestsPastTheLimit_queueUntilAPermitIsFree() throws Exception {
+        DatabaseBulkhead bulkhead = new DatabaseBulkhead(1, 5000);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> filter(bulkhead, (req, res) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        waitFor(() -> bulkhead.getActive() == 1);
+
+        MockHttpServletResponse queued = new MockHttpServletResponse();
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> filter(bulkhead, queued));
+        waitFor(() -> bulkhead.getQueued() == 1);
+        assertFalse(second.isDone());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(200, queued.getStatus());
+        assertEquals(0, bulkhead.getRejected());
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    private static void filter(DatabaseBulkhead bulkhead, FilterChain chain) {
+        try {
+            bulkhead.doFilter(request("/api/nodes/1"), new MockHttpServletResponse(), chain);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void filter(DatabaseBulkhead bulkhead, MockHttpServletResponse response) {
+        try {
+            bulkhead.doFilter(request("/api/nodes/2"), response, new MockFilterChain());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void permit_isReturnedWhenTheRequestFails() {
+        DatabaseBulkhead bulkhead = new DatabaseBulkhead(1, 0);
+
+        assertThrows(IllegalStateException.class, () -> bulkhead.doFilter(request("/api/nodes/1"),
+                new MockHttpServletResponse(), (req, res) -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    @Test
+    void eventStreamAndOtherPaths_areNotLimited() throws Exception {
+        DatabaseBulkhead bulkhead = new DatabaseBulkhead(0, 0);
+
+        MockHttpServletResponse events = new MockHttpServletResponse();
+        bulkhead.doFilter(request("/api/nodes/events"), events, new MockFilterChain());
+        MockHttpServletResponse tags = new MockHttpServletResponse();
+        bulkhead.doFilter(request("/api/tags"), tags, new MockFilterChain());
+        MockHttpServletResponse nodes = new MockHttpServletResponse();
+        bulkhead.doFilter(request("/api/nodes"), nodes, new MockFilterChain());
+
+        assertEquals(200, events.getStatus());
+        assertEquals(200, tags.getStatus());
+        assertEquals(503, nodes.getStatus());
+    }
+}
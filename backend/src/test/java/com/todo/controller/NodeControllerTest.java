@@ -1,21 +1,41 @@
 package com.todo.controller;
 
+import com.todo.dto.BatchResult;
+import com.todo.dto.ImportResult;
+import com.todo.dto.NodeFields;
+import com.todo.dto.NodeOperation;
+import com.todo.dto.NodePage;
+import com.todo.dto.NodeTree;
+import com.todo.dto.OperationResult;
+import com.todo.dto.SearchHit;
 import com.todo.entity.Node;
+import com.todo.repository.NodeStateRow;
+import com.todo.service.ChangeBroadcaster;
 import com.todo.service.NodeService;
+import com.todo.service.OutlineExporter;
+import com.todo.service.OutlineImporter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
@@ -25,6 +45,15 @@ class NodeControllerTest {
     @Mock
     private NodeService nodeService;
 
+    @Mock
+    private OutlineExporter outlineExporter;
+
+    @Mock
+    private OutlineImporter outlineImporter;
+
+    @Mock
+    private ChangeBroadcaster broadcaster;
+
     @InjectMocks
     private NodeController nodeController;
 
@@ -32,47 +61,103 @@ class NodeControllerTest {
 
     @BeforeEach
     void setUp() {
-        testNode = new Node("Test Node", null, 0);
+        testNode = new Node("Test Node", null, 0L);
         testNode.setId(1L);
     }
 
     @Test
     void getRootNodes_returnsListOfNodes() {
-        List<Node> nodes = List.of(testNode);
-        when(nodeService.getAllRootNodes()).thenReturn(nodes);
+        when(nodeService.getChildrenPage(null, null, 200)).thenReturn(new NodePage(List.of(testNode), null, 1L));
+
+        ResponseEntity<List<Node>> result = nodeController.getRootNodes(null, 200, null);
+
+        assertEquals(1, result.getBody().size());
+        assertEquals(testNode.getId(), result.getBody().get(0).getId());
+        assertNull(result.getHeaders().getFirst("X-Next-Cursor"));
+        assertEquals("1", result.getHeaders().getFirst("X-Total-Count"));
+    }
+
+    @Test
+    void getRootNodes_answersMatchingRevisionWithNotModified() {
+        when(nodeService.getDocumentRevision()).thenReturn("k1.7");
+
+        ResponseEntity<List<Node>> result = nodeController.getRootNodes(null, 200, "W/\"k1.6\", \"k1.7\"");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertEquals("W/\"k1.7\"", result.getHeaders().getETag());
+        verify(nodeService, never()).getChildrenPage(any(), any(), anyInt());
+    }
+
+    @Test
+    void getRootNodes_tagsPageWithRevision() {
+        when(nodeService.getDocumentRevision()).thenReturn("k1.8");
+        when(nodeService.getChildrenPage(null, null, 200)).thenReturn(new NodePage(List.of(testNode), null, 1L));
 
-        List<Node> result = nodeController.getRootNodes();
+        ResponseEntity<List<Node>> result = nodeController.getRootNodes(null, 200, "\"k1.7\"");
 
-        assertEquals(1, result.size());
-        assertEquals(testNode.getId(), result.get(0).getId());
-        verify(nodeService).getAllRootNodes();
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("W/\"k1.8\"", result.getHeaders().getETag());
+        assertEquals("1", result.getHeaders().getFirst("X-Total-Count"));
     }
 
     @Test
     void getChildren_returnsChildrenList() {
-        List<Node> children = List.of(testNode);
-        when(nodeService.getChildren(1L)).thenReturn(children);
+        when(nodeService.getChildrenPage(1L, "abc", 10)).thenReturn(new NodePage(List.of(testNode), "def", 30L));
 
-        List<Node> result = nodeController.getChildren(1L);
+        ResponseEntity<List<Node>> result = nodeController.getChildren(1L, "abc", 10, null);
 
-        assertEquals(1, result.size());
-        verify(nodeService).getChildren(1L);
+        assertEquals(1, result.getBody().size());
+        assertEquals("def", result.getHeaders().getFirst("X-Next-Cursor"));
+    }
+
+    @Test
+    void getStarred_returnsPage() {
+        when(nodeService.getStarred(null, 200, false)).thenReturn(new NodePage(List.of(testNode), null, null));
+
+        ResponseEntity<List<Node>> result = nodeController.getStarred(null, 200, false, null);
+
+        assertEquals(List.of(testNode), result.getBody());
+        assertFalse(result.getHeaders().containsKey("X-Total-Count"));
+    }
+
+    @Test
+    void getSubtree_returnsTreeWithOkStatus() {
+        NodeTree tree = new NodeTree(testNode);
+        when(nodeService.getTree(1L, 3, NodeFields.ALL)).thenReturn(tree);
+
+        ResponseEntity<NodeTree> response = nodeController.getSubtree(1L, 3, null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(tree, response.getBody());
+        InOrder order = inOrder(nodeService);
+        order.verify(nodeService).flushExpandState();
+        order.verify(nodeService).getTree(1L, 3, NodeFields.ALL);
+    }
+
+    @Test
+    void countDescendants_returnsCountWithOkStatus() {
+        when(nodeService.countDescendants(1L)).thenReturn(42L);
+
+        ResponseEntity<Long> response = nodeController.countDescendants(1L, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(42L, response.getBody());
     }
 
     @Test
     void getNode_returnsNodeWithOkStatus() {
-        when(nodeService.getNodeById(1L)).thenReturn(testNode);
+        when(nodeService.getNode(1L)).thenReturn(testNode);
 
-        ResponseEntity<Node> response = nodeController.getNode(1L);
+        ResponseEntity<Node> response = nodeController.getNode(1L, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(testNode, response.getBody());
-        verify(nodeService).getNodeById(1L);
+        verify(nodeService).getNode(1L);
     }
 
     @Test
     void createNode_returnsCreatedNodeWithOkStatus() {
-        Node newNode = new Node("New Node", null, 0);
+        Node newNode = new Node("New Node", null, 0L);
         when(nodeService.createNode(any(Node.class))).thenReturn(testNode);
 
         ResponseEntity<Node> response = nodeController.createNode(newNode);
@@ -84,54 +169,165 @@ class NodeControllerTest {
 
     @Test
     void updateNode_returnsUpdatedNodeWithOkStatus() {
-        Node updatedNode = new Node("Updated Node", null, 0);
-        when(nodeService.updateNode(anyLong(), any(Node.class))).thenReturn(testNode);
+        Node updatedNode = new Node("Updated Node", null, 0L);
+        when(nodeService.updateNode(anyLong(), any(Node.class), any())).thenReturn(testNode);
 
-        ResponseEntity<Node> response = nodeController.updateNode(1L, updatedNode);
+        ResponseEntity<Node> response = nodeController.updateNode(1L, updatedNode, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(testNode, response.getBody());
-        verify(nodeService).updateNode(1L, updatedNode);
+        verify(nodeService).updateNode(1L, updatedNode, null);
+    }
+
+    @Test
+    void updateNode_passesIfMatchVersionAndReturnsNewTag() {
+        Node updatedNode = new Node("Updated Node", null, 0L);
+        testNode.setVersion(4L);
+        when(nodeService.updateNode(1L, updatedNode, 3L)).thenReturn(testNode);
+
+        ResponseEntity<Node> response = nodeController.updateNode(1L, updatedNode, "\"3\"");
+
+        assertEquals("\"4\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    void getNode_tagsVersionAndCountersAndIfMatchAcceptsTheTag() {
+        testNode.setVersion(3L);
+        testNode.setChildCount(2L);
+        testNode.setDescendantCount(5L);
+        testNode.setCompletedDescendantCount(1L);
+        when(nodeService.getNode(1L)).thenReturn(testNode);
+
+        ResponseEntity<Node> response = nodeController.getNode(1L, null);
+        assertEquals("\"3.2.5.1\"", response.getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, nodeController.getNode(1L, "\"3.2.5.1\"").getStatusCode());
+        assertEquals(HttpStatus.OK, nodeController.getNode(1L, "\"3.2.4.1\"").getStatusCode());
+
+        nodeController.deleteNode(1L, "\"3.2.5.1\"");
+        verify(nodeService).deleteNode(1L, 3L);
+    }
+
+    @Test
+    void updateNode_rejectsIfMatchThatIsNotAVersion() {
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> nodeController.updateNode(1L, testNode, "W/\"3\""));
+
+        assertEquals(HttpStatus.PRECONDITION_FAILED, error.getStatusCode());
+        verifyNoInteractions(nodeService);
     }
 
     @Test
     void deleteNode_returnsOkStatus() {
-        doNothing().when(nodeService).deleteNode(1L);
+        doNothing().when(nodeService).deleteNode(1L, null);
 
-        ResponseEntity<Void> response = nodeController.deleteNode(1L);
+        ResponseEntity<Void> response = nodeController.deleteNode(1L, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        verify(nodeService).deleteNode(1L);
+        verify(nodeService).deleteNode(1L, null);
     }
 
     @Test
     void moveNode_returnsMovedNodeWithOkStatus() {
-        when(nodeService.moveNode(anyLong(), any(), any())).thenReturn(testNode);
+        when(nodeService.moveNode(anyLong(), any(), any(), any())).thenReturn(testNode);
 
-        ResponseEntity<Node> response = nodeController.moveNode(1L, 2L, 0);
+        ResponseEntity<Node> response = nodeController.moveNode(1L, 2L, 0, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(testNode, response.getBody());
-        verify(nodeService).moveNode(1L, 2L, 0);
+        verify(nodeService).moveNode(1L, 2L, 0, null);
     }
 
     @Test
     void moveNode_withNullParentId_works() {
-        when(nodeService.moveNode(anyLong(), any(), any())).thenReturn(testNode);
+        when(nodeService.moveNode(anyLong(), any(), any(), any())).thenReturn(testNode);
 
-        ResponseEntity<Node> response = nodeController.moveNode(1L, null, 0);
+        ResponseEntity<Node> response = nodeController.moveNode(1L, null, 0, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        verify(nodeService).moveNode(1L, null, 0);
+        verify(nodeService).moveNode(1L, null, 0, null);
     }
 
     @Test
     void moveNode_withNullPosition_works() {
-        when(nodeService.moveNode(anyLong(), any(), any())).thenReturn(testNode);
+        when(nodeService.moveNode(anyLong(), any(), any(), any())).thenReturn(testNode);
+
+        ResponseEntity<Node> response = nodeController.moveNode(1L, 2L, null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(nodeService).moveNode(1L, 2L, null, null);
+    }
+
+    @Test
+    void searchText_returnsRankedHits() {
+        SearchHit hit = new SearchHit(1L, null, "Test Node", 1.5, List.of("content"), "Test Node",
+                List.of(new SearchHit.Highlight(0, 4)));
+        when(nodeService.searchText("test", 20)).thenReturn(List.of(hit));
+
+        ResponseEntity<List<SearchHit>> response = nodeController.searchText("test", 20);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(List.of(hit), response.getBody());
+    }
+
+    @Test
+    void search_exposesCursorAndTotalAsHeaders() {
+        when(nodeService.search("test", null, null, null, 50, true))
+                .thenReturn(new NodePage(List.of(testNode), "next", 7L));
+
+        ResponseEntity<List<Node>> response = nodeController.search("test", null, null, null, 50, true);
 
-        ResponseEntity<Node> response = nodeController.moveNode(1L, 2L, null);
+        assertEquals(List.of(testNode), response.getBody());
+        assertEquals("next", response.getHeaders().getFirst("X-Next-Cursor"));
+        assertEquals("7", response.getHeaders().getFirst("X-Total-Count"));
+    }
+
+    @Test
+    void export_streamsRequestedFormatAsAttachment() throws Exception {
+        ResponseEntity<StreamingResponseBody> response = nodeController.export("md", 1L);
+
+        assertEquals("text/markdown", response.getHeaders().getContentType().toString());
+        assertTrue(response.getHeaders().getFirst(HttpHeaders.CONTENT_DISPOSITION).contains("nodeflow-export.md"));
+        verify(nodeService).getNode(1L);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        verify(outlineExporter).export(1L, OutlineExporter.Format.MARKDOWN, out);
+    }
+
+    @Test
+    void importOutline_returnsCreatedWithCount() {
+        ByteArrayInputStream body = new ByteArrayInputStream(new byte[0]);
+        when(outlineImporter.importOutline(1L, body)).thenReturn(new ImportResult(3, 5));
+
+        ResponseEntity<ImportResult> response = nodeController.importOutline(1L, body);
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertEquals(3, response.getBody().imported());
+    }
+
+    @Test
+    void applyOperations_returnsResultsAndIdMappings() {
+        NodeOperation create = new NodeOperation(NodeOperation.Type.CREATE, "t1", null, null, null, null,
+                "x", null, null, null, null, null, null);
+        BatchResult batch = new BatchResult(
+                List.of(new OperationResult(0, NodeOperation.Type.CREATE, 9L, "t1", testNode)), Map.of("t1", 9L));
+        when(nodeService.applyOperations(List.of(create))).thenReturn(batch);
+
+        ResponseEntity<BatchResult> response = nodeController.applyOperations(List.of(create));
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        verify(nodeService).moveNode(1L, 2L, null);
+        assertEquals(9L, response.getBody().createdIds().get("t1"));
+    }
+
+    @Test
+    void setSubtreeCompleted_tagsResponseWithTheRootVersion() {
+        NodeStateRow state = mock(NodeStateRow.class);
+        when(state.getVersion()).thenReturn(4L);
+        when(nodeService.setSubtreeCompleted(1L, true, 3L)).thenReturn(state);
+
+        ResponseEntity<NodeStateRow> result = nodeController.setSubtreeCompleted(1L, true, "\"3\"");
+
+        assertSame(state, result.getBody());
+        assertEquals("\"4\"", result.getHeaders().getETag());
     }
 }
@@ -0,0 +1,146 @@
+package com.todo.controller;
+
+import com.todo.QueryBudget;
+import com.todo.entity.Node;
+import com.todo.repository.QueryCounter;
+import com.todo.service.NodeService;
+import com.todo.service.NodeTreeCache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Query budgets of the tree and search endpoints on a cold cache. The budgets do not depend on
+ * how many nodes are returned, so loading children or tags one node at a time fails here.
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@AutoConfigureMockMvc
+class NodeQueryBudgetTest {
+
+    private static final int FAN_OUT = 5;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private NodeTreeCache treeCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Node root;
+
+    private List<Node> leaves;
+
+    // Three levels below the root, every node tagged
+    @BeforeEach
+    void setUp() {
+        root = nodeService.createNode(new Node("root", null, null));
+        List<Node> level = List.of(root);
+        for (int depth = 0; depth < 3; depth++) {
+            List<Node> next = new ArrayList<>();
+            for (Node parent : level) {
+                for (int i = 0; i < FAN_OUT; i++) {
+                    Node child = new Node("node " + depth + "." + i, parent.getId(), null);
+                    child.setTags(List.of("tag" + i, "level" + depth));
+                    next.add(nodeService.createNode(child));
+                }
+            }
+            level = next;
+        }
+        leaves = level;
+        treeCache.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM node_tag");
+        jdbcTemplate.update("DELETE FROM nodes");
+        jdbcTemplate.update("DELETE FROM node_tombstones");
+        treeCache.clear();
+    }
+
+    @Test
+    void subtree_loadsInAFixedNumberOfStatements() {
+        QueryBudget.assertAtMost(3, () -> mockMvc.perform(get("/api/nodes/{id}/tree", root.getId()))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void forest_loadsInAFixedNumberOfStatements() {
+        QueryBudget.assertAtMost(3, () -> mockMvc.perform(get("/api/nodes/tree")).andExpect(status().isOk()));
+    }
+
+    @Test
+    void sparseSubtree_skipsTagsAndLoadsInOneStatement() {
+        QueryBudget.assertAtMost(1, () -> mockMvc.perform(get("/api/nodes/{id}/tree", root.getId())
+                        .param("fields", "content,position,isCompleted"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void search_loadsTagsOfAllHitsTogether() {
+        // page, tags of the page, total
+        QueryBudget.assertAtMost(3, () -> mockMvc.perform(get("/api/nodes/search")
+                        .param("q", "node").param("tag", "tag1").param("includeTotal", "true"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void children_loadInAFixedNumberOfStatements() {
+        // a page of ids, then those nodes with their tags; the whole list fits, so it is cached
+        QueryBudget.assertAtMost(2, () -> mockMvc.perform(get("/api/nodes/{id}/children", root.getId()))
+                .andExpect(status().isOk()));
+        QueryBudget.assertAtMost(0, () -> mockMvc.perform(get("/api/nodes/{id}/children", root.getId()))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void changeFeed_loadsTagsInBatches() {
+        // nodes, tombstones, and the tags of 156 nodes in batches of 100
+        QueryBudget.assertAtMost(4, () -> mockMvc.perform(get("/api/nodes/changes"))
+                .andExpect(status().isOk()));
+    }
+
+    @Test
+    void counter_seesStatementsRowsAndEntities() {
+        try (QueryCounter.Scope scope = QueryCounter.open()) {
+            nodeService.getNodeById(leaves.get(0).getId());
+
+            assertEquals(1, scope.getStatements());
+            assertEquals(1, scope.getRows());
+            assertEquals(1, scope.getEntities());
+        }
+    }
+
+    @Test
+    void requests_recordTheirStatementsPerEndpoint() throws Exception {
+        mockMvc.perform(get("/api/nodes/{id}", leaves.get(0).getId())).andExpect(status().isOk());
+
+        DistributionSummary statements = meterRegistry.find("todo.request.statements")
+                .tags("method", "GET", "uri", "/api/nodes/{id}").summary();
+        assertNotNull(statements);
+        assertTrue(statements.count() >= 1);
+        assertTrue(statements.max() >= 1);
+    }
+}
@@ -0,0 +1,154 @@
+package com.todo.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.todo.entity.Node;
+import com.todo.repository.QueryCounter;
+import com.todo.service.NodeService;
+import com.todo.service.NodeTreeCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * What node reads look like on the wire: sparse fieldsets, the binary encodings and compression.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "spring.jpa.show-sql=false")
+@AutoConfigureMockMvc
+class NodeWireFormatTest {
+
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private NodeTreeCache treeCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Node root;
+
+    @BeforeEach
+    void setUp() {
+        Node node = new Node("root", null, null);
+        node.setTags(List.of("work"));
+        root = nodeService.createNode(node);
+        nodeService.updateNotes(root.getId(), "long notes", null);
+        for (int i = 0; i < 40; i++) {
+            nodeService.createNode(new Node("child number " + i + " with some text to make it longer", root.getId(), null));
+        }
+        treeCache.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM node_tag");
+        jdbcTemplate.update("DELETE FROM nodes");
+        jdbcTemplate.update("DELETE FROM node_tombstones");
+        treeCache.clear();
+    }
+
+    @Test
+    void sparseTree_writesAndReadsOnlyTheAskedForFields() throws Exception {
+        try (QueryCounter.Scope scope = QueryCounter.open(true)) {
+            mockMvc.perform(get("/api/nodes/{id}/tree", root.getId()).param("fields", "content,isCompleted"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(root.getId()))
+                    .andExpect(jsonPath("$.content").value("root"))
+                    .andExpect(jsonPath("$.isCompleted").value(false))
+                    .andExpect(jsonPath("$.notes").doesNotExist())
+                    .andExpect(jsonPath("$.tags").doesNotExist())
+                    .andExpect(jsonPath("$.position").doesNotExist())
+                    .andExpect(jsonPath("$.children.length()").value(40))
+                    .andExpect(jsonPath("$.children[0].updatedAt").doesNotExist());
+
+            assertTrue(scope.getSql().stream().noneMatch(sql -> sql.contains("notes") || sql.contains("node_tag")),
+                    () -> String.join("\n", scope.getSql()));
+        }
+
+        mockMvc.perform(get("/api/nodes/{id}/tree", root.getId()).param("fields", "notes,tags"))
+                .andExpect(jsonPath("$.notes").value("long notes"))
+                .andExpect(jsonPath("$.tags[0]").value("work"))
+                .andExpect(jsonPath("$.content").doesNotExist());
+    }
+
+    @Test
+    void fields_applyToEveryNodeReadAndRejectUnknownNames() throws Exception {
+        mockMvc.perform(get("/api/nodes").param("fields", "content"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].content").value("root"))
+                .andExpect(jsonPath("$[0].notes").doesNotExist());
+        mockMvc.perform(get("/api/nodes/{id}", root.getId()))
+                .andExpect(jsonPath("$.notes").value("long notes"))
+                .andExpect(jsonPath("$.descendantCount").value(40));
+
+        mockMvc.perform(get("/api/nodes/{id}/children", root.getId()).param("fields", "content,secret"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void smileAndCbor_areNegotiatedAndCarryTheSameTree() throws Exception {
+        byte[] json = mockMvc.perform(get("/api/nodes/{id}/tree", root.getId()))
+                .andReturn().getResponse().getContentAsByteArray();
+        byte[] smile = mockMvc.perform(get("/api/nodes/{id}/tree", root.getId()).accept(SMILE))
+                .andExpect(content().contentType(SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+        byte[] cbor = mockMvc.perform(get("/api/nodes/{id}/tree", root.getId()).accept(CBOR))
+                .andExpect(content().contentType(CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode expected = new ObjectMapper().readTree(json);
+        assertEquals(expected, new ObjectMapper(new SmileFactory()).readTree(smile));
+        assertEquals(expected, new ObjectMapper(new CBORFactory()).readTree(cbor));
+        assertTrue(smile.length < json.length);
+        assertTrue(cbor.length < json.length);
+    }
+
+    @Test
+    void largeReads_areGzippedForClientsThatAcceptIt() throws Exception {
+        HttpResponse<InputStream> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/nodes/" + root.getId() + "/tree"))
+                        .header("Accept-Encoding", "gzip").GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+        assertTrue(response.headers().firstValue("ETag").orElseThrow().startsWith("W/"));
+        try (InputStream body = new GZIPInputStream(response.body())) {
+            assertEquals(40, new ObjectMapper().readTree(body).get("children").size());
+        }
+    }
+}
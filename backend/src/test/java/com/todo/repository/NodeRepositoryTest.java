@@ -0,0 +1,210 @@
+package com.todo.repository;
+
+import com.todo.dto.KeysetCursor;
+import com.todo.dto.TagCount;
+import com.todo.entity.Node;
+import com.todo.entity.Tag;
+import com.todo.service.TreePaths;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class NodeRepositoryTest {
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    private Node save(String content, Node parent, long position) {
+        Node node = nodeRepository.save(new Node(content, parent != null ? parent.getId() : null, position));
+        node.setPath(TreePaths.childPath(parent != null ? parent.getPath() : null, node.getId()));
+        return nodeRepository.save(node);
+    }
+
+    private List<Tag> tags(String... names) {
+        List<Tag> tags = new ArrayList<>();
+        for (String name : names) {
+            tags.add(tagRepository.findByNameIn(List.of(name)).stream().findFirst()
+                    .orElseGet(() -> tagRepository.save(new Tag(name))));
+        }
+        return tags;
+    }
+
+    @Test
+    void findExpandedSubtree_skipsChildrenOfCollapsedNodes() {
+        Node root = save("root", null, 0);
+        Node open = save("open", root, 0);
+        Node closed = save("closed", root, 1);
+        closed.setIsExpanded(false);
+        nodeRepository.save(closed);
+        save("visible", open, 0);
+        save("hidden", closed, 0);
+
+        List<Node> result = nodeRepository.findExpandedSubtree(root.getId(), Integer.MAX_VALUE);
+
+        assertEquals(List.of("root", "open", "closed", "visible"),
+                result.stream().map(Node::getContent).toList());
+    }
+
+    @Test
+    void findExpandedSubtree_includesChildrenOfCollapsedRoot() {
+        Node root = save("root", null, 0);
+        root.setIsExpanded(false);
+        nodeRepository.save(root);
+        save("child", root, 0);
+
+        List<Node> result = nodeRepository.findExpandedSubtree(root.getId(), Integer.MAX_VALUE);
+
+        assertEquals(2, result.size());
+    }
+
+    @Test
+    void findExpandedSubtree_stopsAtMaxDepth() {
+        Node root = save("root", null, 0);
+        Node child = save("child", root, 0);
+        save("grandchild", child, 0);
+
+        List<Node> result = nodeRepository.findExpandedSubtree(root.getId(), 1);
+
+        assertEquals(List.of("root", "child"), result.stream().map(Node::getContent).toList());
+    }
+
+    @Test
+    void findExpandedForest_startsFromAllRoots() {
+        Node first = save("first", null, 0);
+        Node second = save("second", null, 1);
+        second.setIsExpanded(false);
+        nodeRepository.save(second);
+        save("a", first, 0);
+        save("b", second, 0);
+
+        List<Node> result = nodeRepository.findExpandedForest(Integer.MAX_VALUE);
+
+        assertEquals(List.of("first", "second", "a"), result.stream().map(Node::getContent).toList());
+    }
+
+    @Test
+    void findSiblingPositions_returnsNeighboursAroundOffsetExcludingNode() {
+        Node parent = save("parent", null, 0);
+        save("a", parent, 100);
+        Node moving = save("moving", parent, 150);
+        save("b", parent, 200);
+        save("c", parent, 300);
+
+        assertEquals(List.of(200L, 300L),
+                nodeRepository.findSiblingPositions(parent.getId(), moving.getId(), 1, 2));
+        assertEquals(List.of(100L), nodeRepository.findSiblingPositions(parent.getId(), moving.getId(), 0, 1));
+        assertEquals(List.of(), nodeRepository.findRootPositions(parent.getId(), 0, 1));
+    }
+
+    @Test
+    void findParentsWithGapsBelow_reportsOnlyCrowdedSiblingLists() {
+        Node crowded = save("crowded", null, 0);
+        save("x", crowded, 10);
+        save("y", crowded, 12);
+        Node roomy = save("roomy", null, 65536);
+        save("z", roomy, 0);
+        save("w", roomy, 65536);
+
+        assertEquals(List.of(crowded.getId()), nodeRepository.findParentsWithGapsBelow(16));
+    }
+
+    @Test
+    void subtreeQueries_coverExactlyThePathRange() {
+        Node one = save("1", null, 0);
+        Node child = save("1.1", one, 0);
+        save("1.1.1", child, 0);
+        Node sibling = save("sibling", null, 1);
+        // ids like 1 and 10 share a string prefix; the trailing '/' keeps their ranges apart
+        String upper = TreePaths.upperBound(one.getPath());
+
+        assertEquals(3, nodeRepository.countSubtree(one.getPath(), upper));
+
+        nodeRepository.deleteSubtreeTags(one.getPath(), upper);
+        nodeRepository.deleteSubtree(one.getPath(), upper);
+
+        assertEquals(List.of(sibling.getId()), nodeRepository.findAll().stream().map(Node::getId).toList());
+    }
+
+    @Test
+    void rebaseDescendantPaths_rewritesPrefixOfEveryDescendant() {
+        Node oldParent = save("old", null, 0);
+        Node newParent = save("new", null, 1);
+        Node moved = save("moved", oldParent, 0);
+        Node grandchild = save("grandchild", moved, 0);
+        String newPath = TreePaths.childPath(newParent.getPath(), moved.getId());
+
+        int updated = nodeRepository.rebaseDescendantPaths(
+                moved.getPath(), TreePaths.upperBound(moved.getPath()), newPath);
+
+        assertEquals(1, updated);
+        assertEquals(newPath + grandchild.getId() + "/",
+                nodeRepository.findById(grandchild.getId()).orElseThrow().getPath());
+    }
+
+    private List<String> searchPage(Specification<Node> filters, KeysetCursor cursor, int limit) {
+        return nodeRepository.findBy(filters.and(NodeSpecifications.after(cursor)),
+                        query -> query.sortBy(NodeSpecifications.KEYSET_ORDER).limit(limit).all())
+                .stream().map(Node::getContent).toList();
+    }
+
+    @Test
+    void specifications_combineFiltersInOneQuery() {
+        Node match = save("Buy Milk", null, 0);
+        match.setTagRefs(tags("errand", "errands-weekly"));
+        nodeRepository.save(match);
+        Node done = save("buy milk again", null, 1);
+        done.setTagRefs(tags("errand"));
+        done.setIsCompleted(true);
+        nodeRepository.save(done);
+        save("buy bread", null, 2);
+        save("100% milk", null, 3);
+
+        Specification<Node> filters = Specification.where(NodeSpecifications.contentContains("milk"))
+                .and(NodeSpecifications.hasTagContaining("ERRAND"))
+                .and(NodeSpecifications.isCompleted(false));
+
+        // matches two tags but comes back once
+        assertEquals(List.of("Buy Milk"), searchPage(filters, null, 10));
+        assertEquals(List.of("100% milk"),
+                searchPage(Specification.where(NodeSpecifications.contentContains("0%")), null, 10));
+    }
+
+    @Test
+    void specifications_pageByPositionThenId() {
+        Node a = save("a", null, 5);
+        save("b", null, 5);
+        save("c", null, 7);
+        Specification<Node> all = Specification.where(NodeSpecifications.contentContains(null));
+
+        assertEquals(List.of("a", "b"), searchPage(all, null, 2));
+        assertEquals(List.of("b", "c"), searchPage(all, KeysetCursor.after(a), 10));
+    }
+
+    @Test
+    void tagCounts_groupInTheDatabaseForAllNodesOrOneSubtree() {
+        Node work = save("work", null, 0);
+        Node report = save("report", work, 0);
+        report.setTagRefs(tags("urgent", "q3"));
+        nodeRepository.save(report);
+        Node email = save("email", work, 1);
+        email.setTagRefs(tags("urgent"));
+        nodeRepository.save(email);
+        Node home = save("home", null, 1);
+        home.setTagRefs(tags("q3", "urgent"));
+        nodeRepository.save(home);
+
+        assertEquals(List.of(new TagCount("urgent", 3), new TagCount("q3", 2)), tagRepository.countAll());
+        assertEquals(List.of(new TagCount("urgent", 2), new TagCount("q3", 1)),
+                tagRepository.countInSubtree(work.getPath(), TreePaths.upperBound(work.getPath())));
+    }
+}
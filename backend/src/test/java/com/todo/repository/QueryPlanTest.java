@@ -0,0 +1,284 @@
+package com.todo.repository;
+
+import com.todo.dto.KeysetCursor;
+import com.todo.entity.Node;
+import com.todo.entity.Tag;
+import com.todo.service.TreePaths;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs every repository query against a seeded database, captures the SQL it sends and fails when
+ * {@code EXPLAIN} shows a table scan. Queries that read a whole table by design list the tables they
+ * may scan. A repository method without an entry here fails too, so new queries get checked.
+ */
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Import(QueryCountingConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class QueryPlanTest {
+
+    private static final Pattern TABLE_SCAN = Pattern.compile("/\\* PUBLIC\\.(\\w+)\\.tableScan");
+
+    private static final long SEQ = 1;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private NodeTombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private record Query(Runnable call, Set<String> fullReads) {
+    }
+
+    private Node root;
+
+    private Node child;
+
+    private Node save(String content, Node parent, long position) {
+        Node node = nodeRepository.save(new Node(content, parent != null ? parent.getId() : null, position));
+        node.setPath(TreePaths.childPath(parent != null ? parent.getPath() : null, node.getId()));
+        node.setChangeSeq(SEQ);
+        return nodeRepository.save(node);
+    }
+
+    private void seed() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Tag tag = tagRepository.save(new Tag("work"));
+            root = save("root", null, 0);
+            for (int i = 0; i < 20; i++) {
+                Node parent = save("parent " + i, root, i * 1000L);
+                for (int j = 0; j < 20; j++) {
+                    Node leaf = save("leaf " + j, parent, j * 1000L);
+                    leaf.getTagRefs().add(tag);
+                    leaf.setIsStarred(j % 10 == 0);
+                    leaf.setMirrorId(j % 10 == 5 ? root.getId() : null);
+                    child = leaf;
+                }
+            }
+        });
+        jdbcTemplate.update("INSERT INTO node_tombstones (node_id, change_seq, deleted_at) "
+                + "SELECT id + 1000000, change_seq, CURRENT_TIMESTAMP FROM nodes");
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM node_tag");
+        jdbcTemplate.update("DELETE FROM nodes");
+        jdbcTemplate.update("DELETE FROM node_tombstones");
+        jdbcTemplate.update("DELETE FROM tags");
+    }
+
+    private static Query indexed(Runnable call) {
+        return new Query(call, Set.of());
+    }
+
+    private static Query fullRead(Runnable call, String... tables) {
+        return new Query(call, Set.of(tables));
+    }
+
+    private Map<String, Query> queries() {
+        String path = root.getPath();
+        String upper = TreePaths.upperBound(path);
+        String childPath = nodeRepository.findById(child.getParentId()).orElseThrow().getPath();
+        List<Long> ids = List.of(root.getId(), child.getId());
+        Map<String, Query> queries = new LinkedHashMap<>();
+
+        queries.put("NodeRepository.findByParentIdIsNullOrderByPositionAsc",
+                indexed(nodeRepository::findByParentIdIsNullOrderByPositionAsc));
+        queries.put("NodeRepository.findByParentIdOrderByPositionAsc",
+                indexed(() -> nodeRepository.findByParentIdOrderByPositionAsc(root.getId())));
+        queries.put("NodeRepository.findByIdIn", indexed(() -> nodeRepository.findByIdIn(ids)));
+        queries.put("NodeRepository.findChildIdsAfter",
+                indexed(() -> nodeRepository.findChildIdsAfter(root.getId(), Long.MIN_VALUE, Long.MIN_VALUE, Limit.of(50))));
+        queries.put("NodeRepository.findRootIdsAfter",
+                indexed(() -> nodeRepository.findRootIdsAfter(Long.MIN_VALUE, Long.MIN_VALUE, Limit.of(50))));
+        queries.put("NodeRepository.countByParentId", indexed(() -> nodeRepository.countByParentId(root.getId())));
+        queries.put("NodeRepository.countByParentIdIsNull", indexed(nodeRepository::countByParentIdIsNull));
+        queries.put("NodeRepository.findMaxPosition", indexed(nodeRepository::findMaxPosition));
+        queries.put("NodeRepository.findMaxChangeSeq", indexed(nodeRepository::findMaxChangeSeq));
+        queries.put("NodeRepository.findChangedAfter",
+                indexed(() -> nodeRepository.findChangedAfter(0, 0, SEQ, Limit.of(50))));
+        queries.put("NodeRepository.findSiblingPositions",
+                indexed(() -> nodeRepository.findSiblingPositions(root.getId(), child.getId(), 0, 10)));
+        queries.put("NodeRepository.findRootPositions",
+                indexed(() -> nodeRepository.findRootPositions(child.getId(), 0, 10)));
+        queries.put("NodeRepository.findParentsWithGapsBelow",
+                fullRead(() -> nodeRepository.findParentsWithGapsBelow(2), "NODES"));
+        queries.put("NodeRepository.findAllTagRows", fullRead(nodeRepository::findAllTagRows, "NODE_TAG"));
+        queries.put("NodeRepository.findOutlineRow", indexed(() -> nodeRepository.findOutlineRow(root.getId())));
+        queries.put("NodeRepository.findOutlineChildren",
+                indexed(() -> nodeRepository.findOutlineChildren(root.getId(), Long.MIN_VALUE, Long.MIN_VALUE, 50)));
+        queries.put("NodeRepository.findOutlineRoots",
+                indexed(() -> nodeRepository.findOutlineRoots(Long.MIN_VALUE, Long.MIN_VALUE, 50)));
+        queries.put("NodeRepository.findJournalRows", indexed(() -> nodeRepository.findJournalRows(SEQ)));
+        queries.put("NodeRepository.findJournalRowsAfter",
+                indexed(() -> nodeRepository.findJournalRowsAfter(SEQ, 0, 50)));
+        queries.put("NodeRepository.streamJournalRows", fullRead(() -> {
+            try (Stream<NodeJournalRow> rows = nodeRepository.streamJournalRows()) {
+                rows.count();
+            }
+        }, "NODES"));
+        queries.put("NodeRepository.findExpandedSubtree",
+                indexed(() -> nodeRepository.findExpandedSubtree(root.getId(), 10)));
+        queries.put("NodeRepository.findExpandedForest", indexed(() -> nodeRepository.findExpandedForest(10)));
+        queries.put("NodeRepository.findExpandedSubtreeRows",
+                indexed(() -> nodeRepository.findExpandedSubtreeRows(root.getId(), 10)));
+        queries.put("NodeRepository.findExpandedForestRows", indexed(() -> nodeRepository.findExpandedForestRows(10)));
+        queries.put("NodeRepository.findExpandedSubtrees",
+                indexed(() -> nodeRepository.findExpandedSubtrees(ids, 10)));
+        queries.put("NodeRepository.findMirrorsOutside", indexed(() -> nodeRepository.findMirrorsOutside(childPath,
+                TreePaths.upperBound(childPath))));
+        queries.put("NodeRepository.deleteTagsOf", indexed(() -> nodeRepository.deleteTagsOf(List.of(child.getId()))));
+        queries.put("NodeRepository.deleteLeaves", indexed(() -> {
+            nodeRepository.deleteTagsOf(List.of(child.getId()));
+            nodeRepository.deleteLeaves(List.of(child.getId()));
+        }));
+        queries.put("NodeRepository.findSubtreeIds", indexed(() -> nodeRepository.findSubtreeIds(childPath,
+                TreePaths.upperBound(childPath))));
+        queries.put("NodeRepository.countSubtree", indexed(() -> nodeRepository.countSubtree(path, upper)));
+        queries.put("NodeRepository.deleteSubtreeTags",
+                indexed(() -> nodeRepository.deleteSubtreeTags(childPath, TreePaths.upperBound(childPath))));
+        queries.put("NodeRepository.deleteSubtree", indexed(() -> {
+            nodeRepository.deleteSubtreeTags(childPath, TreePaths.upperBound(childPath));
+            nodeRepository.deleteSubtree(childPath, TreePaths.upperBound(childPath));
+        }));
+        queries.put("NodeRepository.rebaseDescendantPaths", indexed(() -> nodeRepository.rebaseDescendantPaths(
+                childPath, TreePaths.upperBound(childPath), "/0/")));
+        queries.put("NodeRepository.toggleCompleted",
+                indexed(() -> nodeRepository.toggleCompleted(child.getId(), null, SEQ)));
+        queries.put("NodeRepository.toggleStarred",
+                indexed(() -> nodeRepository.toggleStarred(child.getId(), null, SEQ)));
+        queries.put("NodeRepository.updateNotes",
+                indexed(() -> nodeRepository.updateNotes(child.getId(), "notes", null, SEQ)));
+        queries.put("NodeRepository.setExpanded", indexed(() -> nodeRepository.setExpanded(ids, false, SEQ)));
+        queries.put("NodeRepository.findStateById", indexed(() -> nodeRepository.findStateById(child.getId())));
+        queries.put("NodeRepository.setSubtreeCompleted",
+                indexed(() -> nodeRepository.setSubtreeCompleted(childPath, TreePaths.upperBound(childPath), true, SEQ)));
+        queries.put("NodeRepository.setSubtreeCompletedCounts",
+                indexed(() -> nodeRepository.setSubtreeCompletedCounts(childPath, TreePaths.upperBound(childPath), true)));
+
+        queries.put("NodeTombstoneRepository.findMaxChangeSeq", indexed(tombstoneRepository::findMaxChangeSeq));
+        queries.put("NodeTombstoneRepository.findChangedAfter",
+                indexed(() -> tombstoneRepository.findChangedAfter(0, 0, SEQ, Limit.of(50))));
+        queries.put("NodeTombstoneRepository.findByChangeSeq", indexed(() -> tombstoneRepository.findByChangeSeq(SEQ)));
+        queries.put("NodeTombstoneRepository.insertForSubtree",
+                indexed(() -> tombstoneRepository.insertForSubtree(childPath, TreePaths.upperBound(childPath), 2)));
+
+        queries.put("NodeTombstoneRepository.insertForNodes",
+                indexed(() -> tombstoneRepository.insertForNodes(List.of(child.getId()), 2)));
+
+        queries.put("TagRepository.findByNameIn", indexed(() -> tagRepository.findByNameIn(List.of("work"))));
+        queries.put("TagRepository.insertIfAbsent", indexed(() -> tagRepository.insertIfAbsent("home")));
+        queries.put("TagRepository.countAll", fullRead(tagRepository::countAll, "NODES", "NODE_TAG"));
+        queries.put("TagRepository.countInSubtree", indexed(() -> tagRepository.countInSubtree(childPath,
+                TreePaths.upperBound(childPath))));
+
+        // Keyset pages through JpaSpecificationExecutor
+        queries.put("starred page", indexed(() -> page(NodeSpecifications.isStarred()
+                .and(NodeSpecifications.after(new KeysetCursor(1000, child.getId()))))));
+        queries.put("completed search page", indexed(() -> page(NodeSpecifications.isCompleted(true))));
+        return queries;
+    }
+
+    private List<Node> page(Specification<Node> filters) {
+        return nodeRepository.findBy(filters,
+                query -> query.sortBy(NodeSpecifications.KEYSET_ORDER).limit(51).all());
+    }
+
+    // The SQL one call sends, inside a transaction that is rolled back so every call sees the same data
+    private List<String> capture(Runnable call) {
+        try (QueryCounter.Scope scope = QueryCounter.open(true)) {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.executeWithoutResult(status -> {
+                call.run();
+                status.setRollbackOnly();
+            });
+            return scope.getSql();
+        }
+    }
+
+    // Base tables only: a recursive query always scans its own working table
+    private Set<String> scannedTables(String plan) {
+        List<String> baseTables = jdbcTemplate.queryForList("SELECT table_name FROM information_schema.tables "
+                + "WHERE table_schema = 'PUBLIC' AND table_type = 'BASE TABLE'", String.class);
+        Set<String> tables = new TreeSet<>();
+        Matcher matcher = TABLE_SCAN.matcher(plan);
+        while (matcher.find()) {
+            if (baseTables.contains(matcher.group(1))) {
+                tables.add(matcher.group(1));
+            }
+        }
+        return tables;
+    }
+
+    @TestFactory
+    Stream<DynamicTest> repositoryQueries_useIndexes() {
+        seed();
+        Map<String, Query> queries = queries();
+
+        List<DynamicTest> tests = new ArrayList<>();
+        tests.add(DynamicTest.dynamicTest("every repository query is listed", () -> {
+            for (Class<?> repository : List.of(NodeRepository.class, NodeTombstoneRepository.class,
+                    TagRepository.class)) {
+                for (Method method : repository.getDeclaredMethods()) {
+                    if (!method.isDefault() && !method.isSynthetic()) {
+                        String name = repository.getSimpleName() + "." + method.getName();
+                        assertTrue(queries.containsKey(name), name + " has no query plan check");
+                    }
+                }
+            }
+        }));
+        queries.forEach((name, query) -> tests.add(DynamicTest.dynamicTest(name, () -> {
+            List<String> statements = capture(query.call());
+            assertFalse(statements.isEmpty(), "no SQL captured");
+            for (String sql : statements) {
+                String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class));
+                Set<String> scans = scannedTables(plan);
+                scans.removeAll(query.fullReads());
+                assertTrue(scans.isEmpty(), () -> "Table scan of " + scans + " in\n" + plan);
+            }
+        })));
+        return tests.stream();
+    }
+
+    @TestFactory
+    Stream<DynamicTest> planCheck_catchesTableScans() {
+        return Stream.of(DynamicTest.dynamicTest("unindexed filter", () -> assertEquals(Set.of("NODES"),
+                scannedTables(String.join("\n", jdbcTemplate.queryForList(
+                        "EXPLAIN SELECT id FROM nodes WHERE content = 'x'", String.class))))));
+    }
+}
@@ -0,0 +1,61 @@
+package com.todo.repository;
+
+import com.todo.entity.Node;
+import com.todo.service.NodeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the application on a database that the old {@code ddl-auto=update} built: the V1 schema
+ * with data in it, but no Flyway history.
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+class SchemaUpgradeTest {
+
+    private static final String URL = "jdbc:h2:mem:legacy;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NodeService nodeService;
+
+    @DynamicPropertySource
+    static void legacyDatabase(DynamicPropertyRegistry registry) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("RUNSCRIPT FROM 'classpath:db/migration/V1__baseline_schema.sql'");
+            statement.execute("INSERT INTO nodes (id, content, parent_id, path, position, version, change_seq, "
+                    + "created_at, is_completed, is_expanded, is_starred) VALUES "
+                    + "(1, 'parent', NULL, '/1/', 65536, 0, 1, LOCALTIMESTAMP, FALSE, TRUE, FALSE), "
+                    + "(2, 'child', 1, '/1/2/', 65536, 0, 1, LOCALTIMESTAMP, TRUE, TRUE, FALSE)");
+        }
+        registry.add("spring.datasource.url", () -> URL);
+    }
+
+    @Test
+    void existingSchema_isBaselinedAndMigratedWithItsData() {
+        List<String> applied = jdbcTemplate.queryForList("SELECT \"version\" FROM \"flyway_schema_history\" "
+                + "WHERE \"success\" AND \"version\" IS NOT NULL ORDER BY \"installed_rank\"", String.class);
+        assertEquals(List.of("1", "2", "3", "4"), applied);
+        assertEquals("BASELINE", jdbcTemplate.queryForObject(
+                "SELECT \"type\" FROM \"flyway_schema_history\" WHERE \"version\" = '1'", String.class));
+
+        Node parent = nodeService.getNode(1L);
+        assertEquals("parent", parent.getContent());
+        assertEquals(1L, parent.getDescendantCount());
+        assertEquals(1L, parent.getCompletedDescendantCount());
+    }
+}
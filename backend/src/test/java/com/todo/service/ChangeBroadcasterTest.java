@@ -0,0 +1,143 @@
+package com.todo.service;
+
+import com.todo.dto.NodeEvent;
+import com.todo.entity.Node;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeBroadcasterTest {
+
+    private final ChangeBroadcaster broadcaster = new ChangeBroadcaster(1, 60_000, 3, 200);
+
+    @AfterEach
+    void tearDown() {
+        broadcaster.shutdown();
+    }
+
+    // Records each batch or resync, optionally holding the first send to play a slow client
+    private static class RecordingEmitter extends SseEmitter {
+
+        final BlockingQueue<Object> sent = new LinkedBlockingQueue<>();
+
+        final CountDownLatch release;
+
+        final CountDownLatch sending = new CountDownLatch(1);
+
+        RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder event) throws IOException {
+            sending.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (DataWithMediaType part : event.build()) {
+                if (part.getData() instanceof List<?> batch) {
+                    sent.add(batch);
+                } else if (part.getData().toString().contains("event:resync")) {
+                    sent.add("resync");
+                } else if (part.getData().toString().contains(":ping")) {
+                    sent.add("ping");
+                }
+            }
+        }
+
+        Object next() throws InterruptedException {
+            return sent.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Node node(long id, Long parentId, long position) {
+        Node node = new Node("n" + id, parentId, position);
+        node.setId(id);
+        return node;
+    }
+
+    @Test
+    void publish_coalescesEventsPerNodeWhileClientIsBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter client = new RecordingEmitter(release);
+        broadcaster.subscribe(client);
+
+        broadcaster.nodeChanged(node(1, null, 0), null);
+        assertTrue(client.sending.await(5, TimeUnit.SECONDS));
+        broadcaster.nodeChanged(node(2, null, 1), null);
+        broadcaster.nodeChanged(node(2, 1L, 5), null);
+        broadcaster.nodeDeleted(3L, 1L);
+        release.countDown();
+
+        assertEquals(List.of(new NodeEvent(NodeEvent.Type.UPSERTED, 1L, null, 0L, null)), client.next());
+        assertEquals(List.of(new NodeEvent(NodeEvent.Type.MOVED, 2L, 1L, 5L, null), NodeEvent.deleted(3L, 1L)),
+                client.next());
+    }
+
+    @Test
+    void publish_replacesBacklogWithResyncWhenClientFallsBehind() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(release);
+        broadcaster.subscribe(slow);
+
+        broadcaster.childrenChanged(null);
+        assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+        for (long id = 10; id < 15; id++) {
+            broadcaster.nodeChanged(node(id, null, id), null);
+        }
+        release.countDown();
+
+        assertEquals(List.of(NodeEvent.childrenChanged(null)), slow.next());
+        assertEquals("resync", slow.next());
+        assertEquals(1, broadcaster.subscriberCount());
+    }
+
+    @Test
+    void stuckClient_isDroppedWithoutHoldingUpTheOthers() throws Exception {
+        // never released within the test: a client that stopped reading but kept the connection
+        CountDownLatch never = new CountDownLatch(1);
+        RecordingEmitter stuck = new RecordingEmitter(never);
+        RecordingEmitter first = new RecordingEmitter(new CountDownLatch(0));
+        RecordingEmitter second = new RecordingEmitter(new CountDownLatch(0));
+        broadcaster.subscribe(stuck);
+        broadcaster.subscribe(first);
+        broadcaster.subscribe(second);
+
+        for (long id = 1; id <= 3; id++) {
+            broadcaster.nodeChanged(node(id, null, id), null);
+            // the single sender thread serves everyone, the stuck client included
+            assertNotNull(first.next());
+            assertNotNull(second.next());
+        }
+
+        assertEquals(2, broadcaster.subscriberCount());
+        never.countDown();
+    }
+
+    @Test
+    void heartbeat_goesThroughTheSenderPool() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        RecordingEmitter stuck = new RecordingEmitter(never);
+        RecordingEmitter healthy = new RecordingEmitter(new CountDownLatch(0));
+        broadcaster.subscribe(stuck);
+        broadcaster.subscribe(healthy);
+
+        long start = System.nanoTime();
+        broadcaster.heartbeat();
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertEquals("ping", healthy.next());
+        never.countDown();
+    }
+}
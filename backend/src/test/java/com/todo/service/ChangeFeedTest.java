@@ -0,0 +1,131 @@
+package com.todo.service;
+
+import com.todo.dto.NodeChanges;
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeTombstoneRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Delta sync against the embedded database. Each service call commits on its own, since the
+ * watermark only moves past transactions that have finished.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({NodeService.class, SiblingOrder.class, NodeTreeCache.class, NodeSearchIndex.class, TagService.class,
+        ChangeSequence.class, ChangeBroadcaster.class, ExpandStateBuffer.class,
+        NodeJournal.class, MirrorResolver.class, SubtreeCounters.class})
+class ChangeFeedTest {
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private ChangeSequence changeSequence;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private NodeTombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            nodeRepository.findAll().forEach(node -> node.setTagRefs(List.of()));
+            nodeRepository.deleteAllInBatch();
+            tombstoneRepository.deleteAllInBatch();
+        });
+    }
+
+    private List<String> contents(NodeChanges changes) {
+        return changes.nodes().stream().map(Node::getContent).toList();
+    }
+
+    @Test
+    void getChanges_returnsWritesAndDeletesAfterCursor() {
+        Node a = nodeService.createNode(new Node("a", null, null));
+        Node b = nodeService.createNode(new Node("b", null, null));
+        Node child = nodeService.createNode(new Node("child", b.getId(), null));
+
+        NodeChanges initial = nodeService.getChanges(null, 100);
+        assertEquals(List.of("a", "b", "child"), contents(initial));
+        assertFalse(initial.hasMore());
+
+        nodeService.toggleStar(a.getId(), null);
+        nodeService.deleteNode(b.getId(), null);
+
+        NodeChanges delta = nodeService.getChanges(initial.cursor(), 100);
+        assertEquals(List.of("a"), contents(delta));
+        assertEquals(List.of(b.getId(), child.getId()), delta.deletedIds());
+
+        NodeChanges none = nodeService.getChanges(delta.cursor(), 100);
+        assertTrue(none.nodes().isEmpty());
+        assertTrue(none.deletedIds().isEmpty());
+    }
+
+    @Test
+    void getChanges_includesAncestorsWhoseCountsMoved() {
+        Node root = nodeService.createNode(new Node("root", null, null));
+        Node parent = nodeService.createNode(new Node("parent", root.getId(), null));
+        NodeChanges before = nodeService.getChanges(null, 100);
+
+        nodeService.createNode(new Node("child", parent.getId(), null));
+
+        NodeChanges delta = nodeService.getChanges(before.cursor(), 100);
+        assertEquals(List.of("root", "parent", "child"), contents(delta));
+        Node shown = delta.nodes().get(1);
+        assertEquals(1L, shown.getChildCount());
+        assertEquals(2L, delta.nodes().get(0).getDescendantCount());
+    }
+
+    @Test
+    void getChanges_pagesThroughNodesAndTombstonesInChangeOrder() {
+        Node a = nodeService.createNode(new Node("a", null, null));
+        nodeService.createNode(new Node("b", null, null));
+        nodeService.deleteNode(a.getId(), null);
+        nodeService.createNode(new Node("c", null, null));
+
+        NodeChanges first = nodeService.getChanges(null, 2);
+        NodeChanges second = nodeService.getChanges(first.cursor(), 2);
+
+        assertEquals(List.of("b"), contents(first));
+        assertEquals(List.of(a.getId()), first.deletedIds());
+        assertTrue(first.hasMore());
+        assertEquals(List.of("c"), contents(second));
+        assertFalse(second.hasMore());
+    }
+
+    @Test
+    void getChanges_holdsBackCommitsBehindAnOpenTransaction() throws Exception {
+        NodeChanges start = nodeService.getChanges(null, 100);
+
+        NodeChanges whileOpen = new TransactionTemplate(transactionManager).execute(status -> {
+            long open = changeSequence.current();
+            // a later transaction commits while this one still holds a lower number
+            CompletableFuture.runAsync(() -> nodeService.createNode(new Node("later", null, null))).join();
+            assertEquals(open - 1, changeSequence.watermark());
+            return nodeService.getChanges(start.cursor(), 100);
+        });
+
+        assertTrue(whileOpen.nodes().isEmpty());
+        assertEquals(whileOpen.cursor(), start.cursor());
+        assertEquals(List.of("later"), contents(nodeService.getChanges(whileOpen.cursor(), 100)));
+    }
+}
@@ -0,0 +1,137 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeTombstoneRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Write-behind of expand state against the embedded database. The scheduled flush is pushed out of
+ * the way so each test decides when buffered values are written.
+ */
+@DataJpaTest(properties = "todo.write-behind.flush-ms=3600000")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({NodeService.class, SiblingOrder.class, NodeTreeCache.class, NodeSearchIndex.class, TagService.class,
+        ChangeSequence.class, ChangeBroadcaster.class, ExpandStateBuffer.class,
+        NodeJournal.class, MirrorResolver.class, SubtreeCounters.class})
+class ExpandStateBufferTest {
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private ExpandStateBuffer expandState;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private NodeTombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        expandState.flush();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            nodeRepository.deleteAllInBatch();
+            tombstoneRepository.deleteAllInBatch();
+        });
+    }
+
+    private Node stored(Long id) {
+        return nodeRepository.findById(id).orElseThrow();
+    }
+
+    @Test
+    void toggles_areBufferedAndVisibleToReadsUntilFlushed() {
+        Node parent = nodeService.createNode(new Node("parent", null, null));
+        Node child = nodeService.createNode(new Node("child", parent.getId(), null));
+        long version = stored(child.getId()).getVersion();
+
+        assertFalse(nodeService.setExpanded(child.getId(), null).isExpanded());
+
+        assertTrue(stored(child.getId()).getIsExpanded());
+        assertFalse(nodeService.getChildren(parent.getId()).get(0).getIsExpanded());
+        assertFalse(nodeService.getNode(child.getId()).getIsExpanded());
+
+        expandState.flush();
+
+        assertFalse(expandState.hasPending());
+        assertFalse(stored(child.getId()).getIsExpanded());
+        assertEquals(version + 1, stored(child.getId()).getVersion());
+        assertFalse(nodeService.getChildren(parent.getId()).get(0).getIsExpanded());
+    }
+
+    @Test
+    void toggles_survivePendingValuesVanishingUnderThem() throws Exception {
+        Node node = nodeService.createNode(new Node("node", null, null));
+        AtomicBoolean done = new AtomicBoolean();
+
+        // discard drops entries the way a finishing flush does, just far more often
+        CompletableFuture<Void> discards = CompletableFuture.runAsync(() -> {
+            while (!done.get()) {
+                expandState.discard(node.getId());
+            }
+        });
+        try {
+            for (int i = 0; i < 200_000; i++) {
+                expandState.toggle(node.getId());
+            }
+        } finally {
+            done.set(true);
+            discards.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void flush_skipsNodesToggledBackToTheirStoredState() {
+        Node node = nodeService.createNode(new Node("node", null, null));
+        long version = stored(node.getId()).getVersion();
+
+        nodeService.setExpanded(node.getId(), null);
+        nodeService.setExpanded(node.getId(), null);
+        expandState.flush();
+
+        assertTrue(stored(node.getId()).getIsExpanded());
+        assertEquals(version, stored(node.getId()).getVersion());
+    }
+
+    @Test
+    void treeReads_leaveTheBufferAloneUntilFlushedBeforehand() {
+        Node parent = nodeService.createNode(new Node("parent", null, null));
+        nodeService.createNode(new Node("child", parent.getId(), null));
+
+        nodeService.setExpanded(parent.getId(), false);
+
+        // a read does not write
+        assertEquals(1, nodeService.getForest(null).get(0).getChildren().size());
+        assertTrue(expandState.hasPending());
+
+        nodeService.flushExpandState();
+        assertEquals(List.of(), nodeService.getForest(null).get(0).getChildren());
+        assertFalse(expandState.hasPending());
+    }
+
+    @Test
+    void unknownNodes_areRejectedUpFront() {
+        assertThrows(RuntimeException.class, () -> nodeService.setExpanded(-1L, true));
+        assertFalse(expandState.hasPending());
+    }
+}
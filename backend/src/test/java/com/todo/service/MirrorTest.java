@@ -0,0 +1,221 @@
+package com.todo.service;
+
+import com.todo.dto.NodeTree;
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeTombstoneRepository;
+import com.todo.repository.QueryCounter;
+import com.todo.repository.QueryCountingConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Mirror nodes against the embedded database. Each service call commits on its own, so the tree
+ * cache sees the writes as a client would.
+ */
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({NodeService.class, SiblingOrder.class, NodeTreeCache.class, NodeSearchIndex.class, TagService.class,
+        ChangeSequence.class, ChangeBroadcaster.class, ExpandStateBuffer.class,
+        NodeJournal.class, MirrorResolver.class, SubtreeCounters.class, QueryCountingConfiguration.class})
+class MirrorTest {
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private NodeTombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private NodeTreeCache treeCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Node original;
+
+    private Node child;
+
+    private Node elsewhere;
+
+    @BeforeEach
+    void setUp() {
+        Node node = new Node("original", null, null);
+        node.setTags(List.of("work"));
+        original = nodeService.createNode(node);
+        child = nodeService.createNode(new Node("child", original.getId(), null));
+        elsewhere = nodeService.createNode(new Node("elsewhere", null, null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            nodeRepository.findAll().forEach(node -> node.setTagRefs(List.of()));
+            nodeRepository.deleteAllInBatch();
+            tombstoneRepository.deleteAllInBatch();
+        });
+        treeCache.clear();
+    }
+
+    private Node mirror(Node of, Node parent) {
+        Node mirror = new Node("", parent != null ? parent.getId() : null, null);
+        mirror.setMirrorId(of.getId());
+        return nodeService.createNode(mirror);
+    }
+
+    @Test
+    void mirrors_showTheOriginalAndFollowItsEdits() {
+        Node mirror = mirror(original, elsewhere);
+
+        Node shown = nodeService.getChildren(elsewhere.getId()).get(0);
+        assertEquals(mirror.getId(), shown.getId());
+        assertEquals(original.getId(), shown.getMirrorId());
+        assertEquals("original", shown.getContent());
+        assertEquals(List.of("work"), shown.getTags());
+
+        nodeService.toggleComplete(original.getId(), null);
+        nodeService.updateNotes(original.getId(), "notes", null);
+
+        shown = nodeService.getNode(mirror.getId());
+        assertTrue(shown.getIsCompleted());
+        assertEquals("notes", shown.getNotes());
+        assertEquals(elsewhere.getId(), shown.getParentId());
+    }
+
+    @Test
+    void mirrorOfAMirror_mirrorsTheSameOriginal() {
+        Node first = mirror(original, elsewhere);
+
+        Node second = mirror(first, null);
+
+        assertEquals(original.getId(), second.getMirrorId());
+        assertEquals("original", second.getContent());
+    }
+
+    @Test
+    void mirrorChildren_areTheOriginalsAndNewChildrenGoThere() {
+        Node mirror = mirror(original, elsewhere);
+
+        assertEquals(List.of(child.getId()), nodeService.getChildren(mirror.getId()).stream().map(Node::getId).toList());
+
+        Node added = nodeService.createNode(new Node("added", mirror.getId(), null));
+        assertEquals(original.getId(), added.getParentId());
+        assertEquals(2, nodeService.getChildren(mirror.getId()).size());
+    }
+
+    @Test
+    void tree_hangsTheOriginalsSubtreeUnderEveryMirror() {
+        mirror(original, elsewhere);
+        mirror(original, elsewhere);
+
+        NodeTree tree = nodeService.getTree(elsewhere.getId(), null);
+
+        assertEquals(2, tree.getChildren().size());
+        for (NodeTree shown : tree.getChildren()) {
+            assertEquals("original", shown.getNode().getContent());
+            assertEquals(List.of("child"), shown.getChildren().stream().map(t -> t.getNode().getContent()).toList());
+        }
+    }
+
+    @Test
+    void tree_loadsOriginalsInOneQueryHoweverManyMirrorsPointAtThem() {
+        List<Node> parents = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            parents.add(nodeService.createNode(new Node("parent " + i, elsewhere.getId(), null)));
+        }
+        for (Node parent : parents) {
+            for (int i = 0; i < 20; i++) {
+                mirror(original, parent);
+            }
+        }
+
+        try (QueryCounter.Scope scope = QueryCounter.open()) {
+            NodeTree tree = nodeService.getTree(elsewhere.getId(), null);
+
+            assertEquals(100, tree.getChildren().stream().mapToLong(parent -> parent.getChildren().size()).sum());
+            // the subtree, the original with its subtree, and the original's tags
+            assertEquals(3, scope.getStatements());
+        }
+    }
+
+    @Test
+    void tree_stopsAtAMirrorInsideItsOwnOriginal() {
+        Node mirror = mirror(elsewhere, null);
+        Node inner = nodeService.createNode(new Node("inner", elsewhere.getId(), null));
+        nodeService.moveNode(mirror.getId(), original.getId(), null, null);
+        nodeService.moveNode(original.getId(), inner.getId(), null, null);
+
+        // original > [child, mirror of elsewhere > inner > original > [child, mirror]]
+        NodeTree tree = nodeService.getTree(original.getId(), null);
+
+        NodeTree shown = tree.getChildren().get(1);
+        assertEquals(mirror.getId(), shown.getNode().getId());
+        assertEquals(List.of(inner.getId()), shown.getChildren().stream().map(t -> t.getNode().getId()).toList());
+        NodeTree again = shown.getChildren().get(0).getChildren().get(0).getChildren().get(1);
+        assertEquals(mirror.getId(), again.getNode().getId());
+        assertTrue(again.getChildren().isEmpty());
+    }
+
+    @Test
+    void mirror_cannotBePlacedInsideItsOriginal() {
+        Node mirror = mirror(original, elsewhere);
+
+        assertThrows(RuntimeException.class, () -> nodeService.moveNode(mirror.getId(), child.getId(), null, null));
+        assertThrows(RuntimeException.class, () -> mirror(original, child));
+    }
+
+    @Test
+    void contentWritesToAMirror_areRefused() {
+        Node mirror = mirror(original, elsewhere);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> nodeService.toggleStar(mirror.getId(), null));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        assertThrows(ResponseStatusException.class,
+                () -> nodeService.updateNode(mirror.getId(), new Node("changed", null, null), null));
+        assertFalse(nodeService.getNode(original.getId()).getIsStarred());
+    }
+
+    @Test
+    void deletingAnOriginal_deletesItsMirrorsEverywhere() {
+        Node mirror = mirror(original, elsewhere);
+        Node childMirror = mirror(child, null);
+        nodeService.getChildren(elsewhere.getId());
+
+        nodeService.deleteNode(original.getId(), null);
+
+        assertTrue(nodeRepository.findById(mirror.getId()).isEmpty());
+        assertTrue(nodeRepository.findById(childMirror.getId()).isEmpty());
+        assertTrue(nodeService.getChildren(elsewhere.getId()).isEmpty());
+        assertEquals(List.of(elsewhere.getId()), nodeService.getAllRootNodes().stream().map(Node::getId).toList());
+        assertEquals(4, tombstoneRepository.count());
+    }
+
+    @Test
+    void deletingAMirror_leavesTheOriginal() {
+        Node mirror = mirror(original, elsewhere);
+
+        nodeService.deleteNode(mirror.getId(), null);
+
+        assertTrue(nodeRepository.findById(original.getId()).isPresent());
+        assertTrue(nodeRepository.findById(child.getId()).isPresent());
+    }
+}
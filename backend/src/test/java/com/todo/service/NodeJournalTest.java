@@ -0,0 +1,169 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeTombstoneRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Journal storage mode against the embedded database. Each test commits through the service, wipes
+ * the tables and restores them from the log, the way a restart would.
+ */
+@DataJpaTest(properties = "todo.storage.mode=journal")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({NodeService.class, SiblingOrder.class, NodeTreeCache.class, NodeSearchIndex.class, TagService.class,
+        ChangeSequence.class, ChangeBroadcaster.class, ExpandStateBuffer.class,
+        NodeJournal.class, MirrorResolver.class, SubtreeCounters.class})
+class NodeJournalTest {
+
+    private static final Path DIRECTORY = createDirectory();
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        registry.add("todo.storage.dir", DIRECTORY::toString);
+    }
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private NodeJournal journal;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private NodeTombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static Path createDirectory() {
+        try {
+            return Files.createTempDirectory("node-journal");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // A snapshot of the empty database also drops every segment, so the next test starts from nothing
+    @AfterEach
+    void tearDown() {
+        wipe();
+        journal.snapshot();
+    }
+
+    private void wipe() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM node_tag");
+            jdbcTemplate.update("DELETE FROM nodes");
+            jdbcTemplate.update("DELETE FROM node_tombstones");
+        });
+    }
+
+    private void restart() throws IOException {
+        wipe();
+        journal.replay();
+    }
+
+    private Node stored(Long id) {
+        return nodeRepository.findById(id).orElseThrow();
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(DIRECTORY)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    @Test
+    void replay_restoresLatestVersionsTagsPathsAndTombstones() throws IOException {
+        Node parent = nodeService.createNode(new Node("parent", null, null));
+        Node tagged = new Node("child", parent.getId(), null);
+        tagged.setTags(List.of("home", "urgent"));
+        Node child = nodeService.createNode(tagged);
+        Node doomed = nodeService.createNode(new Node("doomed", parent.getId(), null));
+        nodeService.updateNode(parent.getId(), new Node("renamed", null, null), null);
+        nodeService.toggleStar(child.getId(), null);
+        nodeService.deleteNode(doomed.getId(), null);
+        Node before = stored(child.getId());
+
+        restart();
+
+        assertEquals("renamed", stored(parent.getId()).getContent());
+        Node after = stored(child.getId());
+        assertEquals(before.getVersion(), after.getVersion());
+        assertEquals(before.getPath(), after.getPath());
+        assertEquals(before.getPosition(), after.getPosition());
+        assertTrue(after.getIsStarred());
+        assertEquals(List.of("home", "urgent"), new TransactionTemplate(transactionManager).execute(status ->
+                stored(child.getId()).getTags().stream().sorted().toList()));
+        assertFalse(nodeRepository.existsById(doomed.getId()));
+        assertEquals(1, tombstoneRepository.count());
+        assertTrue(nodeService.createNode(new Node("next", null, null)).getId() > doomed.getId());
+    }
+
+    @Test
+    void snapshot_replacesTheSegmentsItCovers() throws IOException {
+        Node first = nodeService.createNode(new Node("first", null, null));
+        journal.snapshot();
+        Node second = nodeService.createNode(new Node("second", first.getId(), null));
+
+        List<String> files = files();
+        assertEquals(2, files.size());
+        assertTrue(files.get(0).startsWith("journal-"));
+        assertTrue(files.get(1).startsWith("snapshot-"));
+
+        restart();
+
+        assertEquals("first", stored(first.getId()).getContent());
+        assertEquals(first.getId(), stored(second.getId()).getParentId());
+    }
+
+    @Test
+    void read_stopsAtATornLastRecord() throws IOException {
+        Path path = DIRECTORY.resolve("torn.log");
+        try (JournalFile file = JournalFile.create(path)) {
+            file.append("one".getBytes(StandardCharsets.UTF_8)).join();
+            file.append("two".getBytes(StandardCharsets.UTF_8)).join();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.APPEND)) {
+            ByteBuffer torn = JournalFile.frame("three".getBytes(StandardCharsets.UTF_8));
+            torn.limit(torn.limit() - 2);
+            channel.write(torn);
+        }
+
+        List<String> records = new ArrayList<>();
+        JournalFile.read(path, payload -> records.add(new String(payload, StandardCharsets.UTF_8)));
+
+        assertEquals(List.of("one", "two"), records);
+        Files.delete(path);
+    }
+}
@@ -0,0 +1,224 @@
+package com.todo.service;
+
+import com.todo.dto.BatchResult;
+import com.todo.dto.NodeOperation;
+import com.todo.dto.NodeOperation.Type;
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeStateRow;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs mixed operation batches against the embedded database.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import({NodeService.class, SiblingOrder.class, NodeTreeCache.class, NodeSearchIndex.class, TagService.class,
+        ChangeSequence.class, ChangeBroadcaster.class, ExpandStateBuffer.class,
+        NodeJournal.class, MirrorResolver.class, SubtreeCounters.class})
+class NodeOperationsTest {
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Node a;
+
+    private Node b;
+
+    private Node c;
+
+    @BeforeEach
+    void setUp() {
+        a = nodeService.createNode(new Node("A", null, null));
+        b = nodeService.createNode(new Node("B", null, null));
+        c = nodeService.createNode(new Node("C", a.getId(), null));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private static NodeOperation op(Type type, String tempId, Object id, Object parentId, String content) {
+        return new NodeOperation(type, tempId, id != null ? id.toString() : null,
+                parentId != null ? parentId.toString() : null, null, null, content, null, null, null, null, null, null);
+    }
+
+    private Node reload(Long id) {
+        entityManager.clear();
+        return nodeRepository.findById(id).orElse(null);
+    }
+
+    @Test
+    void applyOperations_createsNodesThatLaterOperationsReferByTempId() {
+        BatchResult result = nodeService.applyOperations(List.of(
+                op(Type.CREATE, "t1", null, a.getId(), "new"),
+                op(Type.CREATE, "t2", null, "t1", "grandchild"),
+                op(Type.UPDATE, null, "t1", null, "renamed"),
+                op(Type.TOGGLE_STAR, null, "t2", null, null)));
+
+        Long t1 = result.createdIds().get("t1");
+        Long t2 = result.createdIds().get("t2");
+        assertEquals(t1, result.results().get(2).id());
+        assertEquals("renamed", result.results().get(0).node().getContent());
+        Node grandchild = reload(t2);
+        assertEquals(t1, grandchild.getParentId());
+        assertTrue(grandchild.getIsStarred());
+        assertEquals("/" + a.getId() + "/" + t1 + "/" + t2 + "/", grandchild.getPath());
+    }
+
+    @Test
+    void applyOperations_loadsReferencedNodesWithOneQuery() {
+        List<NodeOperation> operations = new ArrayList<>();
+        for (Node node : List.of(a, b, c)) {
+            operations.add(op(Type.UPDATE, null, node.getId(), null, node.getContent() + "!"));
+            operations.add(op(Type.TOGGLE_COMPLETE, null, node.getId(), null, null));
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        BatchResult result = nodeService.applyOperations(operations);
+
+        // one IN query for the three nodes (tags joined in), then one batched UPDATE
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(3, statistics.getEntityUpdateCount());
+        assertEquals("C!", result.results().get(4).node().getContent());
+        assertTrue(result.results().get(5).node().getIsCompleted());
+    }
+
+    @Test
+    void applyOperations_movesSubtreeAndRewritesDescendantPaths() {
+        BatchResult result = nodeService.applyOperations(List.of(
+                op(Type.MOVE, null, a.getId(), b.getId(), null),
+                op(Type.CREATE, "t1", null, c.getId(), "under C")));
+
+        String cPath = "/" + b.getId() + "/" + a.getId() + "/" + c.getId() + "/";
+        assertEquals(cPath, reload(c.getId()).getPath());
+        assertEquals(cPath + result.createdIds().get("t1") + "/", reload(result.createdIds().get("t1")).getPath());
+        assertEquals(b.getId(), result.results().get(0).node().getParentId());
+    }
+
+    @Test
+    void applyOperations_deletesSubtreesAndRejectsLaterUse() {
+        BatchResult result = nodeService.applyOperations(List.of(
+                op(Type.CREATE, "t1", null, c.getId(), "doomed"),
+                op(Type.DELETE, null, a.getId(), null, null)));
+
+        assertNull(result.results().get(0).node());
+        assertNull(reload(a.getId()));
+        assertNull(reload(c.getId()));
+        assertNull(reload(result.createdIds().get("t1")));
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class, () -> nodeService.applyOperations(List.of(
+                op(Type.DELETE, null, b.getId(), null, null),
+                op(Type.UPDATE, null, b.getId(), null, "too late"))));
+        assertTrue(error.getReason().startsWith("Operation 1 (update) failed"));
+    }
+
+    @Test
+    void applyOperations_rejectsMovesIntoOwnSubtree() {
+        ResponseStatusException error = assertThrows(ResponseStatusException.class, () -> nodeService.applyOperations(List.of(
+                op(Type.MOVE, null, a.getId(), c.getId(), null))));
+
+        assertTrue(error.getReason().contains("circular"));
+    }
+
+    @Test
+    void writes_checkTheVersionFromIfMatch() {
+        Node current = nodeRepository.findById(b.getId()).orElseThrow();
+        long version = current.getVersion();
+
+        NodeStateRow starred = nodeService.toggleStar(b.getId(), version);
+        assertEquals(version + 1, starred.getVersion());
+
+        ResponseStatusException stale = assertThrows(ResponseStatusException.class,
+                () -> nodeService.toggleStar(b.getId(), version));
+        assertEquals(412, stale.getStatusCode().value());
+    }
+
+    @Test
+    void toggles_writeOneStatementAndReturnTheChangedRow() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        NodeStateRow state = nodeService.toggleComplete(c.getId(), null);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertTrue(state.getIsCompleted());
+        assertEquals(a.getId(), state.getParentId());
+        assertEquals("C", state.getContent());
+        Node reloaded = reload(c.getId());
+        assertTrue(reloaded.getIsCompleted());
+        assertEquals(state.getVersion(), reloaded.getVersion());
+        assertEquals(c.getVersion() + 1, reloaded.getVersion());
+    }
+
+    @Test
+    void updateNotes_failsWith404ForUnknownNodes() {
+        RuntimeException missing = assertThrows(RuntimeException.class,
+                () -> nodeService.updateNotes(-1L, "lost", null));
+        assertTrue(missing.getMessage().contains("not found"));
+    }
+
+    @Test
+    void setSubtreeCompleted_marksEveryDescendantInOneStatement() {
+        Node grandchild = nodeService.createNode(new Node("D", c.getId(), null));
+        nodeService.toggleComplete(c.getId(), null);
+        entityManager.flush();
+        long cVersion = reload(c.getId()).getVersion();
+
+        NodeStateRow root = nodeService.setSubtreeCompleted(a.getId(), true, null);
+
+        assertTrue(root.getIsCompleted());
+        assertTrue(reload(grandchild.getId()).getIsCompleted());
+        // already completed, so left as it was
+        assertEquals(cVersion, reload(c.getId()).getVersion());
+        assertFalse(reload(b.getId()).getIsCompleted());
+
+        nodeService.setSubtreeCompleted(a.getId(), false, root.getVersion());
+        assertFalse(reload(c.getId()).getIsCompleted());
+        assertThrows(ResponseStatusException.class, () -> nodeService.setSubtreeCompleted(a.getId(), true, root.getVersion()));
+    }
+
+    @Test
+    void applyOperations_failsWholeBatchOnStaleVersion() {
+        long version = nodeRepository.findById(a.getId()).orElseThrow().getVersion();
+        NodeOperation stale = new NodeOperation(Type.UPDATE_NOTES, null, a.getId().toString(), null, null, null,
+                null, "lost", null, null, null, null, version + 1);
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class, () -> nodeService.applyOperations(List.of(
+                op(Type.UPDATE, null, b.getId(), null, "kept?"), stale)));
+
+        assertEquals(412, error.getStatusCode().value());
+        assertTrue(error.getReason().startsWith("Operation 1 (update-notes) failed"));
+    }
+
+    @Test
+    void typeNames_acceptClientSpelling() {
+        assertEquals(Type.TOGGLE_COMPLETE, Type.fromName("toggle-complete"));
+        assertEquals("update-notes", Type.UPDATE_NOTES.jsonName());
+    }
+}
@@ -0,0 +1,82 @@
+package com.todo.service;
+
+import com.todo.dto.SearchHit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeSearchIndexTest {
+
+    private NodeSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new NodeSearchIndex();
+        index.index(1L, null, "Buy milk and bread", "from the corner store", List.of("groceries"));
+        index.index(2L, null, "Work task", "deadline soon, bring milk for the team", List.of("work"));
+        index.index(3L, 1L, "Call plumber", null, List.of());
+    }
+
+    private static List<Long> ids(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::id).toList();
+    }
+
+    @Test
+    void search_ranksContentMatchesAboveNotesMatches() {
+        assertEquals(List.of(1L, 2L), ids(index.search("milk", 10)));
+    }
+
+    @Test
+    void search_matchesPrefixesAndRequiresEveryTerm() {
+        assertEquals(List.of(1L), ids(index.search("gro mil", 10)));
+        assertEquals(List.of(3L), ids(index.search("plumb", 10)));
+        assertEquals(List.of(), ids(index.search("plumber milk", 10)));
+    }
+
+    @Test
+    void search_reportsMatchedFieldsAndHighlights() {
+        SearchHit hit = index.search("deadline", 10).get(0);
+
+        assertEquals(List.of("notes"), hit.matchedFields());
+        SearchHit.Highlight highlight = hit.highlights().get(0);
+        assertEquals("deadline", hit.snippet().substring(highlight.start(), highlight.end()));
+    }
+
+    @Test
+    void search_cutsSnippetAroundMatchInLongText() {
+        String longContent = "x".repeat(100) + " needle " + "y".repeat(100);
+        index.index(4L, null, longContent, null, List.of());
+
+        SearchHit hit = index.search("needle", 10).get(0);
+
+        assertTrue(hit.snippet().startsWith("..."));
+        assertTrue(hit.snippet().endsWith("..."));
+        assertEquals("needle", hit.snippet().substring(hit.highlights().get(0).start(), hit.highlights().get(0).end()));
+    }
+
+    @Test
+    void index_replacesPreviousVersionOfNode() {
+        index.index(3L, 1L, "Call electrician", null, List.of());
+
+        assertEquals(List.of(), ids(index.search("plumber", 10)));
+        assertEquals(List.of(3L), ids(index.search("electrician", 10)));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void remove_dropsNodesFromResults() {
+        index.remove(List.of(1L, 2L));
+
+        assertEquals(List.of(), ids(index.search("milk", 10)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void search_respectsLimitAndIgnoresBlankQueries() {
+        assertEquals(1, index.search("milk", 1).size());
+        assertEquals(List.of(), index.search("  ", 10));
+    }
+}
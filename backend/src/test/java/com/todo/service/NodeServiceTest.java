@@ -1,17 +1,29 @@
 package com.todo.service;
 
+import com.todo.dto.KeysetCursor;
+import com.todo.dto.NodePage;
+import com.todo.dto.NodeTree;
+import com.todo.dto.SearchHit;
 import com.todo.entity.Node;
 import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeStateRow;
+import com.todo.repository.NodeTombstoneRepository;
+import com.todo.repository.NodeTagRow;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -23,6 +35,36 @@ class NodeServiceTest {
     @Mock
     private NodeRepository nodeRepository;
 
+    @Mock
+    private SiblingOrder siblingOrder;
+
+    @Spy
+    private NodeTreeCache treeCache = new NodeTreeCache(1000);
+
+    @Spy
+    private NodeSearchIndex searchIndex = new NodeSearchIndex();
+
+    @Mock
+    private TagService tagService;
+
+    @Mock
+    private ChangeSequence changeSequence;
+
+    @Mock
+    private NodeTombstoneRepository tombstoneRepository;
+
+    @Mock
+    private ChangeBroadcaster broadcaster;
+
+    @Mock
+    private ExpandStateBuffer expandState;
+
+    @Mock
+    private MirrorResolver mirrors;
+
+    @Mock
+    private SubtreeCounters counters;
+
     @InjectMocks
     private NodeService nodeService;
 
@@ -30,8 +72,9 @@ class NodeServiceTest {
 
     @BeforeEach
     void setUp() {
-        rootNode = new Node("root", null, 0);
+        rootNode = new Node("root", null, 0L);
         rootNode.setId(1L);
+        lenient().when(mirrors.resolve(any())).thenAnswer(invocation -> invocation.getArgument(0));
     }
 
     @Test
@@ -47,6 +90,69 @@ class NodeServiceTest {
         verify(nodeRepository).findByParentIdIsNullOrderByPositionAsc();
     }
 
+    @Test
+    void getChildren_servesRepeatedReadsFromCache() {
+        Node child = new Node("child", 1L, 0L); child.setId(2L);
+        when(nodeRepository.findByParentIdOrderByPositionAsc(1L)).thenReturn(List.of(child));
+
+        nodeService.getChildren(1L);
+        List<Node> result = nodeService.getChildren(1L);
+
+        assertEquals(List.of(2L), result.stream().map(Node::getId).toList());
+        verify(nodeRepository, times(1)).findByParentIdOrderByPositionAsc(1L);
+        assertEquals(1, treeCache.stats().hits());
+    }
+
+    @Test
+    void createNode_writesThroughToCachedChildren() {
+        rootNode.setPath("/1/");
+        Node existing = new Node("existing", 1L, 10L); existing.setId(2L);
+        when(nodeRepository.findByParentIdOrderByPositionAsc(1L)).thenReturn(List.of(existing));
+        when(nodeRepository.findById(1L)).thenReturn(Optional.of(rootNode));
+        when(nodeRepository.save(any(Node.class))).thenAnswer(invocation -> {
+            Node node = invocation.getArgument(0);
+            node.setId(3L);
+            return node;
+        });
+        nodeService.getChildren(1L);
+
+        nodeService.createNode(new Node("first", 1L, 5L));
+
+        assertEquals(List.of(3L, 2L), nodeService.getChildren(1L).stream().map(Node::getId).toList());
+        verify(nodeRepository, times(1)).findByParentIdOrderByPositionAsc(1L);
+    }
+
+    @Test
+    void getTree_nestsRowsUnderTheirParents() {
+        Node child = new Node("child", 1L, 0L); child.setId(2L);
+        Node grandchild = new Node("grandchild", 2L, 0L); grandchild.setId(3L);
+        when(nodeRepository.findExpandedSubtree(1L, 2)).thenReturn(List.of(rootNode, child, grandchild));
+
+        NodeTree tree = nodeService.getTree(1L, 2);
+
+        assertEquals(rootNode, tree.getNode());
+        assertEquals(1, tree.getChildren().size());
+        assertEquals(child, tree.getChildren().get(0).getNode());
+        assertEquals(grandchild, tree.getChildren().get(0).getChildren().get(0).getNode());
+    }
+
+    @Test
+    void getTree_whenRootMissing_throws() {
+        when(nodeRepository.findExpandedSubtree(99L, Integer.MAX_VALUE)).thenReturn(List.of());
+        assertThrows(RuntimeException.class, () -> nodeService.getTree(99L, null));
+    }
+
+    @Test
+    void getForest_returnsEveryRoot() {
+        Node other = new Node("other", null, 1L); other.setId(2L);
+        when(nodeRepository.findExpandedForest(Integer.MAX_VALUE)).thenReturn(List.of(rootNode, other));
+
+        List<NodeTree> forest = nodeService.getForest(null);
+
+        assertEquals(2, forest.size());
+        assertTrue(forest.get(1).getChildren().isEmpty());
+    }
+
     @Test
     void getNodeById_whenNotFound_throws() {
         when(nodeRepository.findById(99L)).thenReturn(Optional.empty());
@@ -57,115 +163,177 @@ class NodeServiceTest {
     @Test
     void createNode_setsDefaultPosition() {
         Node newNode = new Node("child", 1L, null);
-        when(nodeRepository.existsById(1L)).thenReturn(true);
-        when(nodeRepository.findMaxPositionByParentId(1L)).thenReturn(2);
-        when(nodeRepository.save(any(Node.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        rootNode.setPath("/1/");
+        when(nodeRepository.findById(1L)).thenReturn(Optional.of(rootNode));
+        when(siblingOrder.nextAppendKey()).thenReturn(3L);
+        when(nodeRepository.save(any(Node.class))).thenAnswer(invocation -> {
+            Node node = invocation.getArgument(0);
+            node.setId(2L);
+            return node;
+        });
 
         Node saved = nodeService.createNode(newNode);
 
-        assertEquals(3, saved.getPosition());
+        assertEquals(3L, saved.getPosition());
         assertEquals(1L, saved.getParentId());
+        assertEquals("/1/2/", saved.getPath());
         verify(nodeRepository).save(any(Node.class));
     }
 
     @Test
     void createNode_missingParent_throws() {
         Node newNode = new Node("child", 42L, null);
-        when(nodeRepository.existsById(42L)).thenReturn(false);
+        when(nodeRepository.findById(42L)).thenReturn(Optional.empty());
         assertThrows(RuntimeException.class, () -> nodeService.createNode(newNode));
         verify(nodeRepository, never()).save(any());
     }
 
     @Test
     void updateNode_updatesContentAndPosition() {
-        Node existing = new Node("old", null, 0);
+        Node existing = new Node("old", null, 0L);
         existing.setId(10L);
         when(nodeRepository.findById(10L)).thenReturn(Optional.of(existing));
         when(nodeRepository.save(any(Node.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-        Node update = new Node("new", null, 5);
-        Node updated = nodeService.updateNode(10L, update);
+        Node update = new Node("new", null, 5L);
+        Node updated = nodeService.updateNode(10L, update, null);
 
         assertEquals("new", updated.getContent());
-        assertEquals(5, updated.getPosition());
+        assertEquals(5L, updated.getPosition());
+        verify(siblingOrder).observe(5L);
     }
 
     @Test
-    void deleteNode_recursivelyDeletesChildren() {
-        Node parent = new Node("p", null, 0);
-        parent.setId(1L);
-        Node child = new Node("c", 1L, 0);
-        child.setId(2L);
-        when(nodeRepository.findById(1L)).thenReturn(Optional.of(parent));
-        when(nodeRepository.findByParentIdOrderByPositionAsc(1L)).thenReturn(List.of(child));
-        when(nodeRepository.findById(2L)).thenReturn(Optional.of(child));
-        when(nodeRepository.findByParentIdOrderByPositionAsc(2L)).thenReturn(List.of());
+    void deleteNode_deletesWholeSubtreeByPathRange() {
+        rootNode.setPath("/1/");
+        when(nodeRepository.findById(1L)).thenReturn(Optional.of(rootNode));
 
-        nodeService.deleteNode(1L);
+        when(nodeRepository.findSubtreeIds("/1/", "/10")).thenReturn(List.of(1L, 2L));
 
-        verify(nodeRepository, times(1)).delete(child);
-        verify(nodeRepository, times(1)).delete(parent);
+        nodeService.deleteNode(1L, null);
+
+        verify(nodeRepository).deleteSubtreeTags("/1/", "/10");
+        verify(searchIndex).remove(List.of(1L, 2L));
+        verify(nodeRepository).deleteSubtree("/1/", "/10");
+        verify(nodeRepository, never()).delete(any(Node.class));
+    }
+
+    @Test
+    void deleteNode_whenNotFound_throws() {
+        when(nodeRepository.findById(99L)).thenReturn(Optional.empty());
+        assertThrows(RuntimeException.class, () -> nodeService.deleteNode(99L, null));
+        verify(nodeRepository, never()).deleteSubtree(any(), any());
+    }
+
+    @Test
+    void countDescendants_excludesTheNodeItself() {
+        rootNode.setPath("/1/");
+        when(nodeRepository.findById(1L)).thenReturn(Optional.of(rootNode));
+        when(nodeRepository.countSubtree("/1/", "/10")).thenReturn(4L);
+
+        assertEquals(3L, nodeService.countDescendants(1L));
     }
 
     @Test
     void moveNode_preventsCircularReferences() {
-        Node a = new Node("a", null, 0); a.setId(1L);
-        Node b = new Node("b", 1L, 0); b.setId(2L);
+        Node a = new Node("a", null, 0L); a.setId(1L); a.setPath("/1/");
+        Node b = new Node("b", 1L, 0L); b.setId(2L); b.setPath("/1/2/");
         when(nodeRepository.findById(1L)).thenReturn(Optional.of(a));
         when(nodeRepository.findById(2L)).thenReturn(Optional.of(b));
 
         // attempt to move a under b (would create cycle)
-        assertThrows(RuntimeException.class, () -> nodeService.moveNode(1L, 2L, 0));
+        assertThrows(RuntimeException.class, () -> nodeService.moveNode(1L, 2L, 0, null));
+        verify(nodeRepository, never()).save(any());
     }
 
     @Test
-    void toggleComplete_togglesFlag() {
-        Node n = new Node("n", null, 0); n.setId(3L); n.setIsCompleted(false);
-        when(nodeRepository.findById(3L)).thenReturn(Optional.of(n));
+    void moveNode_writesOnlyTheMovedNodeAndRebasesDescendantPaths() {
+        Node node = new Node("n", 1L, 0L); node.setId(3L); node.setPath("/1/3/");
+        Node newParent = new Node("p", null, 0L); newParent.setId(2L); newParent.setPath("/2/");
+        when(nodeRepository.findById(3L)).thenReturn(Optional.of(node));
+        when(nodeRepository.findById(2L)).thenReturn(Optional.of(newParent));
+        when(siblingOrder.keyForIndex(2L, 3L, 1)).thenReturn(98304L);
         when(nodeRepository.save(any(Node.class))).thenAnswer(i -> i.getArgument(0));
 
-        Node updated = nodeService.toggleComplete(3L);
+        Node moved = nodeService.moveNode(3L, 2L, 1, null);
+
+        assertEquals(2L, moved.getParentId());
+        assertEquals(98304L, moved.getPosition());
+        assertEquals("/2/3/", moved.getPath());
+        verify(nodeRepository, times(1)).save(any(Node.class));
+        verify(nodeRepository).rebaseDescendantPaths("/1/3/", "/1/30", "/2/3/");
+        verify(nodeRepository, never()).findByParentIdOrderByPositionAsc(any());
+    }
 
-        assertTrue(updated.getIsCompleted());
-        verify(nodeRepository).save(updated);
+    private static NodeStateRow state(Long id, Long version) {
+        NodeStateRow state = mock(NodeStateRow.class);
+        lenient().when(state.getId()).thenReturn(id);
+        lenient().when(state.getVersion()).thenReturn(version);
+        lenient().when(state.getPath()).thenReturn("/1/" + id + "/");
+        lenient().when(state.getContent()).thenReturn("n");
+        lenient().when(state.getNotes()).thenReturn("call the plumber");
+        return state;
     }
 
     @Test
-    void toggleExpand_togglesFlag() {
-        Node n = new Node("n", null, 0); n.setId(4L); n.setIsExpanded(true);
-        when(nodeRepository.findById(4L)).thenReturn(Optional.of(n));
-        when(nodeRepository.save(any(Node.class))).thenAnswer(i -> i.getArgument(0));
+    void toggleComplete_updatesWithoutLoadingTheNode() {
+        NodeStateRow row = state(3L, 2L);
+        when(nodeRepository.toggleCompleted(3L, null, 0L)).thenReturn(Optional.of(row));
 
-        Node updated = nodeService.toggleExpand(4L);
-        assertFalse(updated.getIsExpanded());
+        assertSame(row, nodeService.toggleComplete(3L, null));
+        verify(nodeRepository, never()).findById(any());
+        verify(nodeRepository, never()).save(any());
+        verify(counters).apply(any(), anyLong());
     }
 
     @Test
-    void toggleStar_togglesFlag() {
-        Node n = new Node("n", null, 0); n.setId(5L); n.setIsStarred(false);
-        when(nodeRepository.findById(5L)).thenReturn(Optional.of(n));
-        when(nodeRepository.save(any(Node.class))).thenAnswer(i -> i.getArgument(0));
+    void setExpanded_goesThroughTheWriteBehindBuffer() {
+        when(expandState.toggle(4L)).thenReturn(false);
 
-        Node updated = nodeService.toggleStar(5L);
-        assertTrue(updated.getIsStarred());
+        assertFalse(nodeService.setExpanded(4L, null).isExpanded());
+        verify(expandState).toggle(4L);
+        verifyNoInteractions(nodeRepository);
     }
 
     @Test
-    void updateNotes_setsNotes() {
-        Node n = new Node("n", null, 0); n.setId(6L);
-        when(nodeRepository.findById(6L)).thenReturn(Optional.of(n));
-        when(nodeRepository.save(any(Node.class))).thenAnswer(i -> i.getArgument(0));
+    void getAllRootNodes_showsBufferedExpandStateOnCopies() {
+        rootNode.setIsExpanded(true);
+        when(nodeRepository.findByParentIdIsNullOrderByPositionAsc()).thenReturn(List.of(rootNode));
+        when(expandState.hasPending()).thenReturn(true);
+        when(expandState.pending(1L)).thenReturn(false);
+
+        List<Node> result = nodeService.getAllRootNodes();
 
-        Node updated = nodeService.updateNotes(6L, "hello");
-        assertEquals("hello", updated.getNotes());
+        assertFalse(result.get(0).getIsExpanded());
+        assertTrue(rootNode.getIsExpanded());
     }
 
     @Test
-    void batchUpdate_updatesFields() {
-        Node existing = new Node("old", null, 0); existing.setId(7L);
-        when(nodeRepository.findById(7L)).thenReturn(Optional.of(existing));
+    void toggleStar_rejectsStaleVersion() {
+        NodeStateRow current = state(5L, 3L);
+        when(nodeRepository.toggleStarred(5L, 1L, 0L)).thenReturn(Optional.empty());
+        when(nodeRepository.findStateById(5L)).thenReturn(Optional.of(current));
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> nodeService.toggleStar(5L, 1L));
+        assertEquals(412, error.getStatusCode().value());
+    }
+
+    @Test
+    void updateNotes_failsForUnknownNode() {
+        when(nodeRepository.updateNotes(6L, "hello", null, 0L)).thenReturn(Optional.empty());
+        when(nodeRepository.findStateById(6L)).thenReturn(Optional.empty());
+
+        assertThrows(RuntimeException.class, () -> nodeService.updateNotes(6L, "hello", null));
+    }
+
+    @Test
+    void batchUpdate_loadsAllNodesAtOnceAndReturnsPersistedState() {
+        Node existing = new Node("old", null, 0L); existing.setId(7L);
+        existing.setTags(new ArrayList<>(List.of("keep")));
+        when(nodeRepository.findByIdIn(Set.of(7L))).thenReturn(List.of(existing));
 
-        Node update = new Node("new", null, 0); update.setId(7L);
+        Node update = new Node("new", null, 0L); update.setId(7L);
         update.setIsCompleted(true);
         update.setIsExpanded(false);
         update.setIsStarred(true);
@@ -174,20 +342,132 @@ class NodeServiceTest {
         List<Node> result = nodeService.batchUpdate(List.of(update));
 
         assertEquals(1, result.size());
-        verify(nodeRepository, atLeastOnce()).save(any(Node.class));
+        assertEquals("new", result.get(0).getContent());
+        assertEquals(List.of("keep"), result.get(0).getTags());
+        assertTrue(result.get(0).getIsCompleted());
+        verify(nodeRepository, never()).findById(any());
+        verify(nodeRepository).flush();
     }
 
     @Test
-    void search_combinesFilters() {
-        when(nodeRepository.findByContentContaining("foo")).thenReturn(List.of(new Node("foo", null, 0)));
-        when(nodeRepository.findByTagsContaining("work"))
-                .thenReturn(List.of(new Node("bar", null, 0)));
-        when(nodeRepository.findByIsCompletedOrderByPositionAsc(true))
-                .thenReturn(new ArrayList<>());
+    void updateNotes_makesNotesSearchable() {
+        NodeStateRow row = state(6L, 2L);
+        when(nodeRepository.updateNotes(6L, "call the plumber", null, 0L)).thenReturn(Optional.of(row));
+
+        nodeService.updateNotes(6L, "call the plumber", null);
 
-        List<Node> result = nodeService.search("foo", "work", true);
-        assertNotNull(result);
+        assertEquals(List.of(6L), nodeService.searchText("plumb", 10).stream().map(SearchHit::id).toList());
     }
-}
 
+    @Test
+    void rebuildSearchIndex_indexesNodesWithTheirTags() {
+        NodeTagRow tag = mock(NodeTagRow.class);
+        when(tag.getNodeId()).thenReturn(1L);
+        when(tag.getTag()).thenReturn("errands");
+        when(nodeRepository.findAllTagRows()).thenReturn(List.of(tag));
+        when(nodeRepository.findAll()).thenReturn(List.of(rootNode));
+
+        nodeService.rebuildSearchIndex();
 
+        assertEquals(List.of("tags"), nodeService.searchText("errands", 10).get(0).matchedFields());
+    }
+
+    @Test
+    void getChildrenPage_slicesCachedListAfterCursor() {
+        List<Node> children = new ArrayList<>();
+        for (long i = 1; i <= 5; i++) {
+            Node child = new Node("c" + i, 1L, i <= 2 ? 100L : i * 100);
+            child.setId(i);
+            children.add(child);
+        }
+        when(nodeRepository.findByParentIdOrderByPositionAsc(1L)).thenReturn(children);
+        nodeService.getChildren(1L);
+
+        NodePage first = nodeService.getChildrenPage(1L, null, 2);
+        NodePage second = nodeService.getChildrenPage(1L, first.nextCursor(), 2);
+        NodePage last = nodeService.getChildrenPage(1L, second.nextCursor(), 2);
+
+        assertEquals(List.of(1L, 2L), first.items().stream().map(Node::getId).toList());
+        assertEquals(List.of(3L, 4L), second.items().stream().map(Node::getId).toList());
+        assertEquals(List.of(5L), last.items().stream().map(Node::getId).toList());
+        assertNull(last.nextCursor());
+        assertEquals(5L, first.total());
+        verify(nodeRepository, times(1)).findByParentIdOrderByPositionAsc(1L);
+    }
+
+    @Test
+    void getChildrenPage_readsOnlyThePageOnACacheMiss() {
+        Node a = new Node("a", 1L, 100L); a.setId(4L);
+        Node b = new Node("b", 1L, 100L); b.setId(7L);
+        when(nodeRepository.findChildIdsAfter(1L, 50L, 3L, Limit.of(3))).thenReturn(List.of(7L, 4L, 9L));
+        when(nodeRepository.findByIdIn(List.of(7L, 4L, 9L))).thenReturn(List.of(b, a, new Node("c", 1L, 200L)));
+        when(nodeRepository.countByParentId(1L)).thenReturn(40L);
+
+        NodePage page = nodeService.getChildrenPage(1L, new KeysetCursor(50L, 3L).encode(), 2);
+
+        assertEquals(List.of(4L, 7L), page.items().stream().map(Node::getId).toList());
+        assertEquals(new KeysetCursor(100L, 7L).encode(), page.nextCursor());
+        assertEquals(40L, page.total());
+        verify(nodeRepository, never()).findByParentIdOrderByPositionAsc(any());
+        assertNull(treeCache.getCachedChildren(1L));
+    }
+
+    @Test
+    void getChildrenPage_cachesAFirstPageThatHoldsEveryChild() {
+        Node child = new Node("a", 1L, 100L); child.setId(4L);
+        when(nodeRepository.findChildIdsAfter(1L, Long.MIN_VALUE, Long.MIN_VALUE, Limit.of(3))).thenReturn(List.of(4L));
+        when(nodeRepository.findByIdIn(List.of(4L))).thenReturn(List.of(child));
+
+        NodePage page = nodeService.getChildrenPage(1L, null, 2);
+        nodeService.getChildrenPage(1L, null, 2);
+
+        assertEquals(1L, page.total());
+        assertNull(page.nextCursor());
+        verify(nodeRepository, times(1)).findChildIdsAfter(any(), anyLong(), anyLong(), any());
+        verify(nodeRepository, never()).countByParentId(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void search_returnsCursorOnlyWhenAnotherPageExists() {
+        Node a = new Node("a", null, 10L); a.setId(1L);
+        Node b = new Node("b", null, 20L); b.setId(2L);
+        Node c = new Node("c", null, 30L); c.setId(3L);
+        when(nodeRepository.findBy(any(Specification.class), any())).thenReturn(List.of(a, b, c), List.of(c));
+
+        NodePage first = nodeService.search("x", null, null, null, 2, false);
+        NodePage last = nodeService.search("x", null, null, first.nextCursor(), 2, false);
+
+        assertEquals(List.of(a, b), first.items());
+        assertEquals(new KeysetCursor(20L, 2L), KeysetCursor.parse(first.nextCursor()));
+        assertEquals(List.of(c), last.items());
+        assertNull(last.nextCursor());
+        verify(nodeRepository, never()).count(any(Specification.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void search_countsOnlyWhenTotalRequested() {
+        when(nodeRepository.findBy(any(Specification.class), any())).thenReturn(List.of());
+        when(nodeRepository.count(any(Specification.class))).thenReturn(42L);
+
+        assertEquals(42L, nodeService.search(null, "work", true, null, 50, true).total());
+    }
+
+    @Test
+    void search_rejectsMalformedCursor() {
+        assertThrows(ResponseStatusException.class,
+                () -> nodeService.search(null, null, null, "not-a-cursor", 50, false));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void search_withoutTextOrFiltersMatchesNothing() {
+        NodePage page = nodeService.search("", null, null, null, 50, true);
+
+        assertEquals(List.of(), page.items());
+        assertNull(page.nextCursor());
+        assertEquals(0L, page.total());
+        verify(nodeRepository, never()).findBy(any(Specification.class), any());
+    }
+}
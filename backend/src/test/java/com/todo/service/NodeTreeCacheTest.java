@@ -0,0 +1,117 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeTreeCacheTest {
+
+    private final NodeTreeCache cache = new NodeTreeCache(10);
+
+    private static Node node(long id, Long parentId, long position) {
+        Node node = new Node("n" + id, parentId, position);
+        node.setId(id);
+        return node;
+    }
+
+    private static List<Long> ids(List<Node> nodes) {
+        return nodes.stream().map(Node::getId).toList();
+    }
+
+    @Test
+    void getChildren_loadsOnceAndCountsHitsAndMisses() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.getChildren(1L, () -> { loads.incrementAndGet(); return List.of(node(2, 1L, 0)); });
+        cache.getChildren(1L, () -> { loads.incrementAndGet(); return List.of(); });
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().hits());
+        assertEquals(1, cache.stats().misses());
+    }
+
+    @Test
+    void getChildren_returnsDetachedCopies() {
+        Node loaded = node(2, 1L, 0);
+
+        List<Node> cached = cache.getChildren(1L, () -> List.of(loaded));
+        loaded.setContent("changed");
+
+        assertEquals("n2", cached.get(0).getContent());
+        assertThrows(UnsupportedOperationException.class, () -> cached.add(node(3, 1L, 1)));
+    }
+
+    @Test
+    void putChildren_skipsAListLoadedBeforeAWrite() {
+        long loadedAt = cache.generation();
+        cache.evictChildren(5L);
+
+        cache.putChildren(1L, List.of(node(2, 1L, 0)), loadedAt);
+        assertNull(cache.getCachedChildren(1L));
+
+        cache.putChildren(1L, List.of(node(2, 1L, 0)), cache.generation());
+        assertEquals(List.of(2L), ids(cache.getCachedChildren(1L)));
+    }
+
+    @Test
+    void put_movesNodeBetweenCachedLists() {
+        cache.getChildren(null, () -> List.of(node(1, null, 0), node(2, null, 10)));
+        cache.getChildren(1L, () -> List.of(node(3, 1L, 0)));
+
+        cache.put(node(2, 1L, 5), null);
+
+        assertEquals(List.of(1L), ids(cache.getChildren(null, List::of)));
+        assertEquals(List.of(3L, 2L), ids(cache.getChildren(1L, List::of)));
+        assertEquals(1L, cache.getNode(2L).getParentId());
+    }
+
+    @Test
+    void put_reordersBySiblingPosition() {
+        cache.getChildren(1L, () -> List.of(node(2, 1L, 0), node(3, 1L, 10)));
+
+        cache.put(node(2, 1L, 20), 1L);
+
+        assertEquals(List.of(3L, 2L), ids(cache.getChildren(1L, List::of)));
+    }
+
+    @Test
+    void evictSubtree_dropsCachedDescendants() {
+        cache.getChildren(null, () -> List.of(node(1, null, 0)));
+        cache.getChildren(1L, () -> List.of(node(2, 1L, 0)));
+        cache.getChildren(2L, () -> List.of(node(3, 2L, 0)));
+
+        cache.evictSubtree(1L, null);
+
+        assertEquals(List.of(), cache.getChildren(null, List::of));
+        assertNull(cache.getNode(3L));
+        assertEquals(1, cache.stats().cachedLists());
+    }
+
+    @Test
+    void getChildren_evictsColdestListsWhenFull() {
+        cache.getChildren(1L, () -> List.of(node(11, 1L, 0), node(12, 1L, 1), node(13, 1L, 2)));
+        cache.getChildren(2L, () -> List.of(node(21, 2L, 0), node(22, 2L, 1), node(23, 2L, 2)));
+        cache.getChildren(1L, List::of);
+        cache.getChildren(3L, () -> List.of(node(31, 3L, 0), node(32, 3L, 1), node(33, 3L, 2), node(34, 3L, 3),
+                node(35, 3L, 4)));
+
+        assertNull(cache.getNode(21L));
+        assertNotNull(cache.getNode(11L));
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void revision_movesOnWithWritesButNotReads() {
+        String initial = cache.revision();
+        cache.getChildren(1L, () -> List.of(node(2, 1L, 0)));
+        assertEquals(initial, cache.revision());
+
+        cache.put(node(3, 1L, 1), 1L);
+
+        assertNotEquals(initial, cache.revision());
+    }
+}
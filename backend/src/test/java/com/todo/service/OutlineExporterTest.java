@@ -0,0 +1,134 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({OutlineExporter.class, TagService.class, MirrorResolver.class, NodeTreeCache.class})
+class OutlineExporterTest {
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private OutlineExporter exporter;
+
+    @Autowired
+    private TagService tagService;
+
+    private Node work;
+
+    private Node save(String content, Node parent, long position, String... tags) {
+        Node node = new Node(content, parent != null ? parent.getId() : null, position);
+        node.setTags(List.of(tags));
+        tagService.attach(node);
+        node = nodeRepository.save(node);
+        node.setPath(TreePaths.childPath(parent != null ? parent.getPath() : null, node.getId()));
+        return nodeRepository.save(node);
+    }
+
+    @BeforeEach
+    void setUp() {
+        work = save("Work", null, 100);
+        // negative keys come from inserting in front of the first sibling
+        Node report = save("Report", work, 50, "urgent", "q3");
+        save("Draft", report, 0);
+        Node email = save("Email <boss> & team", work, -200);
+        email.setIsCompleted(true);
+        nodeRepository.save(email);
+        save("Home", null, 200);
+    }
+
+    private String export(Long rootId, OutlineExporter.Format format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(rootId, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void markdown_walksOutlineDepthFirstInSiblingOrder() {
+        String markdown = export(null, OutlineExporter.Format.MARKDOWN);
+
+        assertTrue(markdown.startsWith("# NodeFlow Export\n\nExported on: "));
+        assertTrue(markdown.endsWith("""
+                - [ ] Work
+                  - [x] Email <boss> & team
+                  - [ ] Report #q3 #urgent
+                    - [ ] Draft
+                - [ ] Home
+                """));
+    }
+
+    @Test
+    void ndjson_writesOneObjectPerLineWithDepth() {
+        String[] lines = export(work.getId(), OutlineExporter.Format.NDJSON).split("\n");
+
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":" + work.getId() + ",\"parentId\":null,\"depth\":0,\"content\":\"Work\""));
+        assertTrue(lines[2].contains("\"depth\":1,\"content\":\"Report\",\"isCompleted\":false,\"isStarred\":false,\"tags\":[\"q3\",\"urgent\"]"));
+        assertTrue(lines[3].contains("\"depth\":2,\"content\":\"Draft\""));
+    }
+
+    @Test
+    void opml_nestsOutlinesAndEscapesText() {
+        String opml = export(null, OutlineExporter.Format.OPML);
+
+        String body = opml.substring(opml.indexOf("<body>"), opml.indexOf("</body>") + 7);
+        assertEquals("<body><outline text=\"Work\">"
+                + "<outline text=\"Email &lt;boss&gt; &amp; team\" _complete=\"true\"></outline>"
+                + "<outline text=\"Report\" category=\"q3,urgent\"><outline text=\"Draft\"></outline></outline>"
+                + "</outline><outline text=\"Home\"></outline></body>", body);
+    }
+
+    @Test
+    void export_writesMirrorsWithTheirOriginalsContent() {
+        Node report = nodeRepository.findByParentIdOrderByPositionAsc(work.getId()).get(1);
+        Node mirror = save("stale copy", null, 300);
+        mirror.setMirrorId(report.getId());
+        nodeRepository.save(mirror);
+
+        String markdown = export(null, OutlineExporter.Format.MARKDOWN);
+
+        assertTrue(markdown.endsWith("""
+                - [ ] Home
+                - [ ] Report #q3 #urgent
+                """));
+    }
+
+    @Test
+    void export_pagesThroughSiblingsInKeyOrder() {
+        Node big = save("Big", null, 300);
+        List<Node> children = new ArrayList<>();
+        for (int i = 0; i < OutlineExporter.PAGE_SIZE + 10; i++) {
+            // pairs share a key, so the page boundary falls between equal positions
+            children.add(new Node("child " + i, big.getId(), (long) (i / 2)));
+        }
+        nodeRepository.saveAll(children);
+
+        String[] lines = export(big.getId(), OutlineExporter.Format.MARKDOWN).split("\n");
+
+        List<String> written = Arrays.stream(lines).filter(line -> line.startsWith("  - ")).toList();
+        assertEquals(children.stream().map(child -> "  - [ ] " + child.getContent()).toList(), written);
+    }
+
+    @Test
+    void fromName_acceptsExtensionsAndRejectsUnknownFormats() {
+        assertEquals(OutlineExporter.Format.MARKDOWN, OutlineExporter.Format.fromName("md"));
+        assertEquals(OutlineExporter.Format.OPML, OutlineExporter.Format.fromName("OPML"));
+        assertThrows(ResponseStatusException.class, () -> OutlineExporter.Format.fromName("docx"));
+    }
+}
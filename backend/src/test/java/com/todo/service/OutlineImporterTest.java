@@ -0,0 +1,179 @@
+package com.todo.service;
+
+import com.todo.dto.ImportResult;
+import com.todo.dto.SearchHit;
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import({OutlineImporter.class, OutlineExporter.class, SiblingOrder.class, NodeTreeCache.class, NodeSearchIndex.class,
+        TagService.class, ChangeSequence.class, ChangeBroadcaster.class, ExpandStateBuffer.class,
+        NodeJournal.class, MirrorResolver.class, SubtreeCounters.class})
+class OutlineImporterTest {
+
+    @Autowired
+    private OutlineImporter importer;
+
+    @Autowired
+    private OutlineExporter exporter;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private NodeSearchIndex searchIndex;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private static InputStream json(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> children(Long parentId) {
+        return nodeRepository.findByParentIdOrderByPositionAsc(parentId).stream().map(Node::getContent).toList();
+    }
+
+    @Test
+    void importOutline_insertsNestedTreeUnderTargetInInputOrder() {
+        Node target = nodeRepository.save(new Node("Inbox", null, 0L));
+        target.setPath(TreePaths.childPath(null, target.getId()));
+        nodeRepository.save(target);
+        nodeRepository.save(new Node("Existing", target.getId(), 1L));
+
+        ImportResult result = importer.importOutline(target.getId(), json("""
+                [{"content": "Trip", "tags": ["travel"], "unknown": {"x": 1}, "children": [
+                    {"content": "Book flights", "isCompleted": true},
+                    {"content": "Pack", "notes": "passport", "children": [{"content": "Socks"}]}
+                 ]},
+                 {"content": "Later"}]
+                """));
+
+        assertEquals(5, result.imported());
+        assertEquals(List.of("Existing", "Trip", "Later"), children(target.getId()));
+        Node trip = nodeRepository.findByParentIdOrderByPositionAsc(target.getId()).get(1);
+        assertEquals(List.of("travel"), trip.getTags());
+        assertEquals(List.of("Book flights", "Pack"), children(trip.getId()));
+        Node pack = nodeRepository.findByParentIdOrderByPositionAsc(trip.getId()).get(1);
+        assertEquals("/" + target.getId() + "/" + trip.getId() + "/" + pack.getId() + "/", pack.getPath());
+        assertEquals("passport", pack.getNotes());
+    }
+
+    @Test
+    void importOutline_readsNdjsonWithParentReferences() {
+        ImportResult result = importer.importOutline(null, json("""
+                {"ref": "a", "content": "A"}
+                {"ref": "b", "parentRef": "a", "content": "B"}
+                {"parentRef": "a", "content": "C"}
+                {"parentRef": "b", "content": "D"}
+                """));
+
+        assertEquals(4, result.imported());
+        Node a = nodeRepository.findByParentIdIsNullOrderByPositionAsc().get(0);
+        assertEquals(List.of("B", "C"), children(a.getId()));
+    }
+
+    @Test
+    void importOutline_roundTripsExportedNdjson() {
+        importer.importOutline(null, json("""
+                [{"content": "Work", "children": [{"content": "Report", "tags": ["q3"]}, {"content": "Email"}]}]
+                """));
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        exporter.export(null, OutlineExporter.Format.NDJSON, exported);
+
+        ImportResult result = importer.importOutline(null, new ByteArrayInputStream(exported.toByteArray()));
+
+        assertEquals(3, result.imported());
+        List<Node> roots = nodeRepository.findByParentIdIsNullOrderByPositionAsc();
+        assertEquals(2, roots.size());
+        assertEquals(List.of("Report", "Email"), children(roots.get(1).getId()));
+    }
+
+    @Test
+    void importOutline_rejectsChildBeforeItsParent() {
+        assertThrows(ResponseStatusException.class, () -> importer.importOutline(null, json("""
+                {"parentRef": "missing", "content": "orphan"}
+                """)));
+    }
+
+    @Test
+    void importOutline_rejectsFieldsAfterChildren() {
+        assertThrows(ResponseStatusException.class, () -> importer.importOutline(null, json("""
+                {"children": [], "content": "late"}
+                """)));
+    }
+
+    @Test
+    void importOutline_insertsInJdbcBatches() {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            ndjson.append("{\"content\": \"node ").append(i).append("\", \"tags\": [\"t\"]}\n");
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        ImportResult result = importer.importOutline(null, json(ndjson.toString()));
+
+        assertEquals(2000, result.imported());
+        assertEquals(2000, nodeRepository.count());
+        // rows are written by JDBC batches; Hibernate only hands out ids, a block of 500 per sequence call,
+        // besides seeding the append counter and the change sequence, interning the one tag name once
+        // and the count above
+        assertEquals(0, statistics.getEntityInsertCount());
+        assertEquals(0, statistics.getEntityUpdateCount());
+        assertTrue(statistics.getPrepareStatementCount() <= 13,
+                "prepared " + statistics.getPrepareStatementCount() + " statements");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void importOutline_indexesEveryBatchOnceCommitted() {
+        // three JDBC batches, with a marked node in the first and in the last
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 1200; i++) {
+            String content = i == 0 ? "quokka first" : i == 1199 ? "quokka last" : "node " + i;
+            String tags = i == 600 ? "[\"wombat\"]" : "[]";
+            ndjson.append("{\"content\": \"").append(content).append("\", \"tags\": ").append(tags).append("}\n");
+        }
+        try {
+            importer.importOutline(null, json(ndjson.toString()));
+
+            assertEquals(List.of("quokka first", "quokka last"),
+                    searchIndex.search("quokka", 10).stream().map(SearchHit::content).sorted().toList());
+            assertEquals(List.of("node 600"),
+                    searchIndex.search("wombat", 10).stream().map(SearchHit::content).toList());
+        } finally {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                nodeRepository.findAll().forEach(node -> node.setTagRefs(List.of()));
+                nodeRepository.deleteAllInBatch();
+            });
+            searchIndex.clear();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SiblingOrderTest {
+
+    private static final long GAP = SiblingOrder.GAP;
+
+    @Mock
+    private NodeRepository nodeRepository;
+
+    @Mock
+    private NodeTreeCache treeCache;
+
+    @Mock
+    private ChangeSequence changeSequence;
+
+    @Mock
+    private ChangeBroadcaster broadcaster;
+
+    @InjectMocks
+    private SiblingOrder siblingOrder;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(nodeRepository.findMaxPosition()).thenReturn(10 * GAP);
+    }
+
+    @Test
+    void nextAppendKey_continuesAfterExistingMaximum() {
+        assertEquals(11 * GAP, siblingOrder.nextAppendKey());
+        assertEquals(12 * GAP, siblingOrder.nextAppendKey());
+        verify(nodeRepository, times(1)).findMaxPosition();
+    }
+
+    @Test
+    void observe_keepsAppendsAfterClientChosenKeys() {
+        siblingOrder.observe(100 * GAP);
+        assertEquals(101 * GAP, siblingOrder.nextAppendKey());
+    }
+
+    @Test
+    void keyForIndex_takesMidpointBetweenNeighbours() {
+        when(nodeRepository.findSiblingPositions(1L, 9L, 0, 2)).thenReturn(List.of(0L, GAP));
+
+        assertEquals(GAP / 2, siblingOrder.keyForIndex(1L, 9L, 1));
+    }
+
+    @Test
+    void keyForIndex_atFrontGoesBeforeFirstSibling() {
+        when(nodeRepository.findRootPositions(9L, 0, 1)).thenReturn(List.of(5 * GAP));
+
+        assertEquals(4 * GAP, siblingOrder.keyForIndex(null, 9L, 0));
+    }
+
+    @Test
+    void keyForIndex_pastTheEndAppends() {
+        when(nodeRepository.findSiblingPositions(1L, 9L, 4, 2)).thenReturn(List.of(3 * GAP));
+
+        assertEquals(11 * GAP, siblingOrder.keyForIndex(1L, 9L, 5));
+    }
+
+    @Test
+    void keyForIndex_withoutRoomRebalancesTheSiblings() {
+        Node first = new Node("a", 1L, 7L); first.setId(2L);
+        Node second = new Node("b", 1L, 8L); second.setId(3L);
+        when(nodeRepository.findSiblingPositions(1L, 9L, 0, 2))
+                .thenReturn(List.of(7L, 8L))
+                .thenReturn(List.of(11 * GAP, 12 * GAP));
+        when(nodeRepository.findByParentIdOrderByPositionAsc(1L)).thenReturn(List.of(first, second));
+
+        long key = siblingOrder.keyForIndex(1L, 9L, 1);
+
+        assertEquals(11 * GAP, first.getPosition());
+        assertEquals(12 * GAP, second.getPosition());
+        assertEquals(11 * GAP + GAP / 2, key);
+        verify(nodeRepository).saveAll(anyList());
+        verify(treeCache).evictChildren(1L);
+    }
+
+    @Test
+    void rebalanceCrowdedSiblings_rebalancesEachReportedParent() {
+        Node root = new Node("r", null, 0L); root.setId(1L);
+        when(nodeRepository.findParentsWithGapsBelow(SiblingOrder.CROWDED_GAP)).thenReturn(java.util.Arrays.asList(null, 4L));
+        when(nodeRepository.findByParentIdIsNullOrderByPositionAsc()).thenReturn(List.of(root));
+        when(nodeRepository.findByParentIdOrderByPositionAsc(4L)).thenReturn(List.of());
+
+        siblingOrder.rebalanceCrowdedSiblings();
+
+        assertEquals(11 * GAP, root.getPosition());
+    }
+}
@@ -0,0 +1,201 @@
+package com.todo.service;
+
+import com.todo.dto.NodeOperation;
+import com.todo.dto.NodeOperation.Type;
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeTombstoneRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Subtree counters against the embedded database. Each service call commits on its own, so the
+ * tree cache sees the writes as a client would.
+ */
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({NodeService.class, SiblingOrder.class, NodeTreeCache.class, NodeSearchIndex.class, TagService.class,
+        ChangeSequence.class, ChangeBroadcaster.class, ExpandStateBuffer.class,
+        NodeJournal.class, MirrorResolver.class, SubtreeCounters.class, OutlineImporter.class})
+class SubtreeCountersTest {
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private SubtreeCounters counters;
+
+    @Autowired
+    private OutlineImporter importer;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private NodeTombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private NodeTreeCache treeCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Node a;
+
+    private Node b;
+
+    private Node c;
+
+    private Node other;
+
+    @BeforeEach
+    void setUp() {
+        a = nodeService.createNode(new Node("a", null, null));
+        b = nodeService.createNode(new Node("b", a.getId(), null));
+        c = nodeService.createNode(new Node("c", b.getId(), null));
+        other = nodeService.createNode(new Node("other", null, null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            nodeRepository.findAll().forEach(node -> node.setTagRefs(List.of()));
+            nodeRepository.deleteAllInBatch();
+            tombstoneRepository.deleteAllInBatch();
+        });
+        treeCache.clear();
+    }
+
+    // child, descendant and completed descendant count as stored
+    private List<Long> counts(Node node) {
+        return jdbcTemplate.queryForObject("SELECT child_count, descendant_count, completed_descendant_count "
+                        + "FROM nodes WHERE id = ?",
+                (rs, row) -> List.of(rs.getLong(1), rs.getLong(2), rs.getLong(3)), node.getId());
+    }
+
+    private static NodeOperation op(Type type, String tempId, Object id, Object parentId, Boolean completed) {
+        return new NodeOperation(type, tempId, id != null ? id.toString() : null,
+                parentId != null ? parentId.toString() : null, null, null, "op", null, null, completed, null, null, null);
+    }
+
+    @Test
+    void createAndMove_adjustEveryAncestor() {
+        assertEquals(List.of(1L, 2L, 0L), counts(a));
+        assertEquals(List.of(1L, 1L, 0L), counts(b));
+        assertEquals(List.of(0L, 0L, 0L), counts(c));
+
+        nodeService.moveNode(b.getId(), other.getId(), null, null);
+
+        assertEquals(List.of(0L, 0L, 0L), counts(a));
+        assertEquals(List.of(1L, 2L, 0L), counts(other));
+        assertEquals(List.of(1L, 1L, 0L), counts(b));
+    }
+
+    @Test
+    void reads_showTheCountersAndCachedCopiesFollowWrites() {
+        nodeService.getAllRootNodes();
+        assertEquals(2L, nodeService.getNode(a.getId()).getDescendantCount());
+
+        nodeService.createNode(new Node("d", c.getId(), null));
+        nodeService.toggleComplete(c.getId(), null);
+
+        Node shown = nodeService.getNode(a.getId());
+        assertEquals(1L, shown.getChildCount());
+        assertEquals(3L, shown.getDescendantCount());
+        assertEquals(1L, shown.getCompletedDescendantCount());
+    }
+
+    @Test
+    void completion_countsTogglesAndSubtreeWrites() {
+        nodeService.toggleComplete(c.getId(), null);
+        assertEquals(List.of(1L, 2L, 1L), counts(a));
+        assertEquals(List.of(1L, 1L, 1L), counts(b));
+
+        nodeService.setSubtreeCompleted(b.getId(), true, null);
+        assertEquals(List.of(1L, 2L, 2L), counts(a));
+        assertEquals(List.of(1L, 1L, 1L), counts(b));
+
+        nodeService.setSubtreeCompleted(a.getId(), false, null);
+        assertEquals(List.of(1L, 2L, 0L), counts(a));
+        assertEquals(List.of(1L, 1L, 0L), counts(b));
+    }
+
+    @Test
+    void delete_detachesTheSubtreeAndMirrorsElsewhere() {
+        nodeService.toggleComplete(c.getId(), null);
+        Node mirror = new Node("", other.getId(), null);
+        mirror.setMirrorId(b.getId());
+        nodeService.createNode(mirror);
+        assertEquals(List.of(1L, 1L, 0L), counts(other));
+
+        nodeService.deleteNode(b.getId(), null);
+
+        assertEquals(List.of(0L, 0L, 0L), counts(a));
+        assertEquals(List.of(0L, 0L, 0L), counts(other));
+    }
+
+    @Test
+    void batch_countsCreatesMovesTogglesAndDeletes() {
+        nodeService.applyOperations(List.of(
+                op(Type.CREATE, "t1", null, c.getId(), null),
+                op(Type.CREATE, "t2", null, "t1", true),
+                op(Type.TOGGLE_COMPLETE, null, c.getId(), null, null),
+                op(Type.MOVE, null, b.getId(), other.getId(), null),
+                op(Type.UPDATE, null, "t2", null, false),
+                op(Type.CREATE, "t3", null, a.getId(), true)));
+
+        assertEquals(List.of(1L, 1L, 1L), counts(a));
+        assertEquals(List.of(1L, 4L, 1L), counts(other));
+        assertEquals(List.of(1L, 3L, 1L), counts(b));
+
+        nodeService.applyOperations(List.of(
+                op(Type.CREATE, "t4", null, c.getId(), null),
+                op(Type.DELETE, null, b.getId(), null, null)));
+
+        assertEquals(List.of(0L, 0L, 0L), counts(other));
+        assertEquals(0, counters.rebuild());
+    }
+
+    @Test
+    void import_countsEveryInsertedNode() {
+        importer.importOutline(c.getId(), new ByteArrayInputStream("""
+                [{"content": "x", "children": [{"content": "y", "isCompleted": true}, {"content": "z"}]},
+                 {"content": "w", "isCompleted": true}]
+                """.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(List.of(1L, 6L, 2L), counts(a));
+        assertEquals(List.of(2L, 4L, 2L), counts(c));
+        assertEquals(0, counters.rebuild());
+    }
+
+    @Test
+    void rebuild_repairsDriftedRowsOnly() {
+        jdbcTemplate.update("UPDATE nodes SET child_count = 7, completed_descendant_count = 3 WHERE id = ?", b.getId());
+        jdbcTemplate.update("UPDATE nodes SET descendant_count = 9 WHERE id = ?", other.getId());
+
+        assertEquals(2, counters.rebuild());
+
+        assertEquals(List.of(1L, 1L, 0L), counts(b));
+        assertEquals(List.of(0L, 0L, 0L), counts(other));
+        assertEquals(List.of(1L, 2L, 0L), counts(a));
+        assertEquals(0, counters.rebuild());
+    }
+}
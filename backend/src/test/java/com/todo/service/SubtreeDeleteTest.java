@@ -0,0 +1,91 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.NodeTombstoneRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Deletes a subtree against the embedded database and checks that it takes a fixed number of
+ * statements rather than one per node. Timings over larger subtrees are in the benchmarks module,
+ * see NodeServiceBenchmark.deleteSubtree.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import({NodeService.class, SiblingOrder.class, NodeTreeCache.class, NodeSearchIndex.class, TagService.class,
+        ChangeSequence.class, ChangeBroadcaster.class, ExpandStateBuffer.class,
+        NodeJournal.class, MirrorResolver.class, SubtreeCounters.class})
+class SubtreeDeleteTest {
+
+    private static final int FAN_OUT = 10;
+
+    private static final int SIZE = 100;
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private NodeTombstoneRepository tombstoneRepository;
+
+    @Test
+    void deleteNode_statementCountIsIndependentOfSubtreeSize() {
+        Node root = buildSubtree(SIZE);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        nodeService.deleteNode(root.getId(), null);
+
+        long statements = statistics.getPrepareStatementCount();
+        // root lookup, subtree ids for the search index, mirrors of the subtree (none here), then one
+        // tombstone insert, one tag delete and one node delete
+        assertEquals(6, statements);
+        assertEquals(0, nodeRepository.count());
+        assertEquals(SIZE, tombstoneRepository.count());
+        assertEquals(0L, ((Number) entityManager.createNativeQuery("SELECT COUNT(*) FROM node_tag")
+                .getSingleResult()).longValue());
+    }
+
+    // Builds a tree of exactly `size` nodes, breadth first, FAN_OUT children per node
+    private Node buildSubtree(int size) {
+        Node root = nodeService.createNode(new Node("root", null, 0L));
+        List<Node> level = List.of(root);
+        int created = 1;
+        while (created < size) {
+            List<Node> next = new ArrayList<>();
+            for (Node parent : level) {
+                for (int i = 0; i < FAN_OUT && created < size; i++, created++) {
+                    Node child = new Node("node " + created, parent.getId(), (long) i);
+                    child.setTags(List.of("tag" + (created % 7)));
+                    next.add(nodeService.createNode(child));
+                }
+            }
+            level = next;
+        }
+        nodeRepository.flush();
+        entityManager.clear();
+        return root;
+    }
+}
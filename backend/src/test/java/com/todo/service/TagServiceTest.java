@@ -0,0 +1,72 @@
+package com.todo.service;
+
+import com.todo.entity.Node;
+import com.todo.entity.Tag;
+import com.todo.repository.NodeRepository;
+import com.todo.repository.TagRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(TagService.class)
+class TagServiceTest {
+
+    @Autowired
+    private TagService tagService;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Test
+    void intern_storesEachNameOnce() {
+        tagRepository.save(new Tag("home"));
+
+        Map<String, Tag> first = tagService.intern(List.of("work", " home ", "", "work"));
+        Map<String, Tag> second = tagService.intern(List.of("home", "work"));
+
+        assertEquals(List.of("work", "home"), List.copyOf(first.keySet()));
+        assertEquals(first.get("work").getId(), second.get("work").getId());
+        assertEquals(first.get("home").getId(), second.get("home").getId());
+        assertEquals(2, tagRepository.count());
+    }
+
+    @Test
+    void attach_sharesTagRowsBetweenNodesAndKeepsNamesSorted() {
+        Node a = new Node("a", null, 0L);
+        a.setTags(List.of("urgent", "q3"));
+        tagService.attach(a);
+        a = nodeRepository.save(a);
+        Node b = new Node("b", null, 1L);
+        b.setTags(List.of("urgent"));
+        tagService.attach(b);
+        nodeRepository.save(b);
+        nodeRepository.flush();
+
+        assertEquals(List.of("q3", "urgent"), a.getTags());
+        assertEquals(2, tagRepository.count());
+        assertEquals(3, nodeRepository.findAllTagRows().size());
+    }
+
+    @Test
+    void attach_leavesTagsAloneWhenNoneWereGiven() {
+        Node node = new Node("a", null, 0L);
+        node.setTags(List.of("keep"));
+        tagService.attach(node);
+        node = nodeRepository.save(node);
+        node.setContent("edited");
+
+        tagService.attach(node);
+
+        assertEquals(List.of("keep"), node.getTags());
+    }
+}
@@ -0,0 +1,29 @@
+package com.todo.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreePathsTest {
+
+    @Test
+    void childPath_appendsIdToParentPath() {
+        assertEquals("/7/", TreePaths.childPath(null, 7L));
+        assertEquals("/7/12/", TreePaths.childPath("/7/", 12L));
+    }
+
+    @Test
+    void upperBound_excludesSiblingsSharingADigitPrefix() {
+        String upper = TreePaths.upperBound("/1/");
+        assertTrue("/1/5/".compareTo(upper) < 0);
+        assertTrue("/10/".compareTo(upper) >= 0);
+    }
+
+    @Test
+    void isWithin_matchesWholeIdsOnly() {
+        assertTrue(TreePaths.isWithin("/1/5/9/", 5L));
+        assertTrue(TreePaths.isWithin("/1/5/9/", 9L));
+        assertFalse(TreePaths.isWithin("/1/55/9/", 5L));
+        assertFalse(TreePaths.isWithin(null, 5L));
+    }
+}
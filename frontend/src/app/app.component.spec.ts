@@ -1,6 +1,7 @@
-import { TestBed } from '@angular/core/testing';
-import { HttpClientTestingModule } from '@angular/common/http/testing';
+import { TestBed, fakeAsync, tick } from '@angular/core/testing';
+import { HttpClientTestingModule, HttpTestingController } from '@angular/common/http/testing';
 import { AppComponent } from './app.component';
+import { StateService } from './services/state.service';
 
 describe('AppComponent', () => {
   beforeEach(async () => {
@@ -27,4 +28,26 @@ describe('AppComponent', () => {
     const compiled = fixture.nativeElement as HTMLElement;
     expect(compiled.querySelector('h1')?.textContent).toContain('NodeFlow');
   });
+
+  it('should refresh tag counts only when tags change', fakeAsync(() => {
+    const fixture = TestBed.createComponent(AppComponent);
+    fixture.detectChanges();
+    const http = TestBed.inject(HttpTestingController);
+    const state = TestBed.inject(StateService);
+    const tagCounts = () => http.match(r => r.url.includes('/tags/counts')).length;
+    const node = { id: 1, content: 'a #x', parentId: null, position: 65536, createdAt: '', updatedAt: '', tags: ['x'] };
+
+    state.setNodes([node]);
+    tick(300);
+    tagCounts();
+
+    state.updateNode({ ...node, isCompleted: true });
+    state.updateNode({ ...node, isExpanded: false });
+    tick(300);
+    expect(tagCounts()).toBe(0);
+
+    state.updateNode({ ...node, content: 'a #x #y', tags: ['x', 'y'] });
+    tick(300);
+    expect(tagCounts()).toBe(1);
+  }));
 });
@@ -15,8 +15,9 @@ import { ClipboardService } from './services/clipboard.service';
 import { FormattingService } from './services/formatting.service';
 import { ViewSettingsService } from './services/view-settings.service';
 import { TagService } from './services/tag.service';
-import { ActionHistory, SearchResult, Node } from './models/node.model';
-import { firstValueFrom } from 'rxjs';
+import { ActionHistory, SearchResult, Node, siblingIndexOf } from './models/node.model';
+import { EMPTY, firstValueFrom } from 'rxjs';
+import { catchError, debounceTime, distinctUntilChanged, map, switchMap } from 'rxjs/operators';
 
 @Component({
   selector: 'app-root',
@@ -126,9 +127,17 @@ export class AppComponent implements OnInit {
     // Listen for state changes to check if empty
     this.stateService.nodes$.subscribe(nodes => {
       this.isEmpty = nodes.length === 0;
-      this.tagService.updateTagCounts(nodes);
     });
     
+    // Tag counts come from the server, which sees the whole outline rather than the loaded part.
+    // Only edits that change some node's tags ask again; toggles, expands and text edits do not.
+    this.stateService.nodes$.pipe(
+      map(nodes => this.tagSignature(nodes)),
+      distinctUntilChanged(),
+      debounceTime(300),
+      switchMap(() => this.nodeService.getTagCounts().pipe(catchError(() => EMPTY)))
+    ).subscribe(counts => this.tagService.setTagCounts(counts));
+    
     // Listen for search results
     this.searchService.searchResults$.subscribe(results => {
       this.searchResults = results;
@@ -189,11 +198,18 @@ export class AppComponent implements OnInit {
     return allNodes;
   }
 
+  // Which loaded node carries which tags, as a string that changes only when tags do
+  private tagSignature(nodes: Node[]): string {
+    return nodes
+      .filter(node => node.tags && node.tags.length > 0)
+      .map(node => `${node.id}:${node.tags!.join(',')}`)
+      .join(';');
+  }
+
   createFirstNode(): void {
     this.nodeService.createNode({
       content: '',
-      parentId: null,
-      position: 0
+      parentId: null
     }).subscribe(newNode => {
       this.stateService.addNode(newNode);
       this.isEmpty = false;
@@ -301,8 +317,12 @@ export class AppComponent implements OnInit {
             parentId: action.previousParentId, 
             position: action.previousPosition 
           };
+          // The recorded position is a sort key; the move API wants the index it now corresponds to
+          const index = siblingIndexOf(this.stateService.getAllNodes(), action.previousParentId,
+            action.node.id, action.previousPosition);
           this.stateService.updateNode(updatedNode);
-          this.nodeService.moveNode(action.node.id, action.previousParentId, action.previousPosition).subscribe({
+          this.nodeService.moveNode(action.node.id, action.previousParentId, index).subscribe({
+            next: (movedNode) => this.stateService.updateNode(movedNode),
             error: (error) => {
               console.error('Failed to undo move:', error);
               // Revert state change on error
@@ -357,9 +377,12 @@ export class AppComponent implements OnInit {
           }
         });
         break;
-      case 'move':
+      case 'move': {
+        const index = siblingIndexOf(this.stateService.getAllNodes(), action.node.parentId,
+          action.node.id, action.node.position);
         this.stateService.updateNode(action.node);
-        this.nodeService.moveNode(action.node.id, action.node.parentId, action.node.position).subscribe({
+        this.nodeService.moveNode(action.node.id, action.node.parentId, index).subscribe({
+          next: (movedNode) => this.stateService.updateNode(movedNode),
           error: (error) => {
             console.error('Failed to redo move:', error);
             // Revert state change on error
@@ -374,6 +397,7 @@ export class AppComponent implements OnInit {
           }
         });
         break;
+      }
     }
   }
 
@@ -521,10 +545,8 @@ export class AppComponent implements OnInit {
   }
 
   exportToMarkdown(): void {
-    const nodes = this.stateService.getAllNodes();
-    const markdownContent = this.exportImportService.exportToMarkdown(nodes);
     const filename = `nodeflow-export-${new Date().toISOString().split('T')[0]}.md`;
-    this.exportImportService.downloadFile(markdownContent, filename, 'text/markdown');
+    this.exportImportService.downloadUrl(this.nodeService.exportUrl('md'), filename);
   }
 
   exportToText(): void {
@@ -556,11 +578,15 @@ export class AppComponent implements OnInit {
           throw new Error('Unsupported file format');
         }
 
-        // Clear current data and import new data
-        this.stateService.setNodes(nodes);
-        this.zoomService.zoomToRoot();
-        
-        alert(`Successfully imported ${nodes.length} items`);
+        // Persist in one bulk request, then reload the outline from the server
+        this.nodeService.importNodes(nodes).subscribe({
+          next: result => {
+            this.loadAllNodes();
+            this.zoomService.zoomToRoot();
+            alert(`Successfully imported ${result.imported} items`);
+          },
+          error: error => alert(`Import failed: ${error.message ?? error}`)
+        });
       } catch (error) {
         alert(`Import failed: ${error}`);
       }
@@ -1,5 +1,5 @@
 import { ComponentFixture, TestBed } from '@angular/core/testing';
-import { HttpClientTestingModule } from '@angular/common/http/testing';
+import { HttpClientTestingModule, HttpTestingController } from '@angular/common/http/testing';
 import { NodeTreeComponent } from './node-tree.component';
 import { StateService } from '../../services/state.service';
 import { ZoomService } from '../../services/zoom.service';
@@ -54,6 +54,37 @@ describe('NodeTreeComponent', () => {
     expect(updatedRoot.isCompleted).toBeTrue();
     expect(child.isCompleted).toBeTrue();
   });
-});
 
+  it('should move a node up one place by sending its sibling index', () => {
+    const http = TestBed.inject(HttpTestingController);
+    // Positions are sparse sort keys, as the server assigns them
+    state.setNodes([
+      { id: 1, content: 'root', parentId: null, position: 65536, createdAt: '', updatedAt: '' },
+      { id: 2, content: 'a', parentId: 1, position: 65536, createdAt: '', updatedAt: '' },
+      { id: 3, content: 'b', parentId: 1, position: 131072, createdAt: '', updatedAt: '' },
+      { id: 4, content: 'c', parentId: 1, position: 196608, createdAt: '', updatedAt: '' }
+    ]);
+    component['buildTree']();
+
+    component.onMoveUp(state.getAllNodes().find((n: any) => n.id === 4));
+
+    // c goes before b, which sits at index 1 among a and b
+    const req = http.expectOne(r => r.url.includes('/4/move'));
+    expect(req.request.url).toContain('parentId=1&position=1');
+    req.flush({ id: 4, content: 'c', parentId: 1, position: 98304, createdAt: '', updatedAt: '' });
 
+    component['buildTree']();
+    const children = component.nodes[0].children!.map(child => child.node.id);
+    expect(children).toEqual([2, 4, 3]);
+    http.verify();
+  });
+
+  it('should create a child without a position so the server appends it', () => {
+    const http = TestBed.inject(HttpTestingController);
+    component.onCreateChild(state.getAllNodes().find((n: any) => n.id === 1));
+
+    const req = http.expectOne(r => r.method === 'POST');
+    expect(req.request.body.position).toBeUndefined();
+    expect(req.request.body.parentId).toBe(1);
+  });
+});
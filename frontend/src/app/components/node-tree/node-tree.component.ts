@@ -1,6 +1,6 @@
 import { Component, Input, OnInit, OnDestroy } from '@angular/core';
 import { CommonModule } from '@angular/common';
-import { Node } from '../../models/node.model';
+import { Node, sortedSiblings } from '../../models/node.model';
 import { NodeItemComponent } from '../node-item/node-item.component';
 import { StateService } from '../../services/state.service';
 import { NodeService } from '../../services/node.service';
@@ -169,12 +169,8 @@ export class NodeTreeComponent implements OnInit, OnDestroy {
   }
 
   onCreateSibling(node: Node): void {
-    const siblings = this.allNodes.filter(
-      n => n.parentId === node.parentId && n.position >= node.position
-    );
-    
-    // Calculate new position
-    let newPosition = node.position + 1;
+    // Positions are spaced apart, so the next key sorts right after this node
+    const newPosition = node.position + 1;
     const newNodeData: Partial<Node> = {
       content: '',
       parentId: node.parentId,
@@ -201,14 +197,10 @@ export class NodeTreeComponent implements OnInit, OnDestroy {
   }
 
   onCreateChild(node: Node): void {
-    // Create a child node
-    const children = this.allNodes.filter(n => n.parentId === node.id);
-    const newPosition = children.length;
-    
+    // Without a position the server appends it after the existing children
     const newNodeData: Partial<Node> = {
       content: '',
       parentId: node.id,
-      position: newPosition,
       isExpanded: true
     };
     
@@ -235,13 +227,8 @@ export class NodeTreeComponent implements OnInit, OnDestroy {
   }
 
   onDuplicate(node: Node): void {
-    // Create a sibling with the same content
-    const siblings = this.allNodes.filter(
-      n => n.parentId === node.parentId && n.position >= node.position
-    );
-    
-    // Calculate new position
-    let newPosition = node.position + 1;
+    // Create a sibling with the same content, sorting right after this node
+    const newPosition = node.position + 1;
     const newNodeData: Partial<Node> = {
       content: node.content, // Copy the content
       parentId: node.parentId,
@@ -343,25 +330,24 @@ export class NodeTreeComponent implements OnInit, OnDestroy {
   }
 
   onMoveUp(node: Node): void {
-    const siblings = this.allNodes.filter(
-      n => n.parentId === node.parentId && n.position < node.position
-    );
+    const siblings = sortedSiblings(this.allNodes, node.parentId);
+    const index = siblings.findIndex(n => n.id === node.id);
     
-    if (siblings.length === 0) return;
+    if (index <= 0) return;
     
-    const targetSibling = siblings[siblings.length - 1];
-    const newPosition = targetSibling.position;
+    const targetSibling = siblings[index - 1];
     
-    // Update both nodes in state first for immediate UI feedback
+    // Swap both nodes in state first for immediate UI feedback
     const updatedTarget = { ...targetSibling, position: node.position };
-    const updatedNode = { ...node, position: newPosition };
+    const updatedNode = { ...node, position: targetSibling.position };
     this.stateService.updateNode(updatedTarget);
     this.stateService.updateNode(updatedNode);
 
-    // Update in backend
-    this.nodeService.moveNode(node.id, node.parentId, newPosition).subscribe({
+    // The backend takes the index among the other siblings, where the target sits at index - 1
+    this.nodeService.moveNode(node.id, node.parentId, index - 1).subscribe({
       next: (backendNode) => {
-        // Update state with backend response to ensure consistency
+        // The server gives the moved node a new key and leaves the target's as it was
+        this.stateService.updateNode(targetSibling);
         this.stateService.updateNode(backendNode);
       },
       error: (error) => {
@@ -377,25 +363,24 @@ export class NodeTreeComponent implements OnInit, OnDestroy {
   }
 
   onMoveDown(node: Node): void {
-    const siblings = this.allNodes.filter(
-      n => n.parentId === node.parentId && n.position > node.position
-    );
+    const siblings = sortedSiblings(this.allNodes, node.parentId);
+    const index = siblings.findIndex(n => n.id === node.id);
     
-    if (siblings.length === 0) return;
+    if (index === -1 || index === siblings.length - 1) return;
     
-    const targetSibling = siblings[0];
-    const newPosition = targetSibling.position;
+    const targetSibling = siblings[index + 1];
     
-    // Update both nodes in state first for immediate UI feedback
+    // Swap both nodes in state first for immediate UI feedback
     const updatedTarget = { ...targetSibling, position: node.position };
-    const updatedNode = { ...node, position: newPosition };
+    const updatedNode = { ...node, position: targetSibling.position };
     this.stateService.updateNode(updatedTarget);
     this.stateService.updateNode(updatedNode);
 
-    // Update in backend
-    this.nodeService.moveNode(node.id, node.parentId, newPosition).subscribe({
+    // Among the other siblings the target sits at index, so the node goes right after it
+    this.nodeService.moveNode(node.id, node.parentId, index + 1).subscribe({
       next: (backendNode) => {
-        // Update state with backend response to ensure consistency
+        // The server gives the moved node a new key and leaves the target's as it was
+        this.stateService.updateNode(targetSibling);
         this.stateService.updateNode(backendNode);
       },
       error: (error) => {
@@ -492,31 +477,27 @@ export class NodeTreeComponent implements OnInit, OnDestroy {
     const targetNode = data.node;
     const draggedNode = this.draggedNode;
     
-    // Calculate new position
-    const siblings = this.allNodes.filter(
-      n => n.parentId === targetNode.parentId && n.id !== draggedNode.id
-    );
-    
-    const targetPosition = targetNode.position;
-    const newPosition = targetPosition;
+    // The dragged node goes right before the target, at the target's index among the other siblings
+    const index = sortedSiblings(this.allNodes, targetNode.parentId, draggedNode.id)
+      .findIndex(n => n.id === targetNode.id);
     
-    // Update positions of affected nodes
-    siblings.forEach(sibling => {
-      if (sibling.position >= targetPosition) {
-        sibling.position += 1;
-        this.stateService.updateNode(sibling);
-      }
-    });
-    
-    // Update the dragged node
+    // Sort it just ahead of the target until the server assigns the real key
     const updatedDraggedNode = {
       ...draggedNode,
       parentId: targetNode.parentId,
-      position: newPosition
+      position: targetNode.position - 0.5
     };
     
     this.stateService.updateNode(updatedDraggedNode);
     this.draggedNode = null;
+
+    this.nodeService.moveNode(draggedNode.id, targetNode.parentId, index).subscribe({
+      next: (backendNode) => this.stateService.updateNode(backendNode),
+      error: (error) => {
+        console.error('Failed to move dragged node:', error);
+        this.stateService.updateNode(draggedNode);
+      }
+    });
   }
 }
 
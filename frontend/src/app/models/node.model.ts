@@ -10,6 +10,26 @@ export interface Node {
   tags?: string[];
   notes?: string;
   isStarred?: boolean;
+  // Optimistic-lock version; send it back as If-Match to fail on concurrent edits
+  version?: number;
+}
+
+// position is a sparse sort key assigned by the server, not an index; the move API takes an index
+export function sortedSiblings(nodes: Node[], parentId: number | null, excludeId?: number): Node[] {
+  return nodes
+    .filter(n => n.parentId === parentId && n.id !== excludeId)
+    .sort((a, b) => a.position - b.position || a.id - b.id);
+}
+
+// Sibling index a node with the given sort key has, not counting the node itself
+export function siblingIndexOf(nodes: Node[], parentId: number | null, id: number, position: number): number {
+  return sortedSiblings(nodes, parentId, id)
+    .filter(n => n.position < position || (n.position === position && n.id < id))
+    .length;
+}
+
+export interface NodeTree extends Node {
+  children: NodeTree[];
 }
 
 export interface ActionHistory {
@@ -26,3 +46,72 @@ export interface SearchResult {
   context: string;
 }
 
+export interface NodePage {
+  items: Node[];
+  nextCursor: string | null;
+  total: number | null;
+}
+
+export type NodeOperationType =
+  'create' | 'update' | 'delete' | 'move' | 'toggle-complete' | 'toggle-expand' | 'toggle-star' | 'update-notes';
+
+// id and parentId may name a tempId created earlier in the same batch
+export interface NodeOperation {
+  type: NodeOperationType;
+  tempId?: string;
+  id?: string;
+  parentId?: string | null;
+  index?: number | null;
+  position?: number | null;
+  content?: string;
+  notes?: string;
+  tags?: string[];
+  isCompleted?: boolean;
+  isExpanded?: boolean;
+  isStarred?: boolean;
+  // Expected version of the target node; a mismatch fails the whole batch with 412
+  version?: number;
+}
+
+export interface BatchResult {
+  results: { index: number; type: NodeOperationType; id: number; tempId: string | null; node: Node | null }[];
+  createdIds: { [tempId: string]: number };
+}
+
+export interface ImportResult {
+  imported: number;
+  elapsedMillis: number;
+}
+
+export interface NodeEvent {
+  type: 'upserted' | 'moved' | 'deleted' | 'children-changed' | 'subtree-changed' | 'counts-changed';
+  id?: number;
+  parentId?: number | null;
+  position?: number;
+  version?: number;
+}
+
+// Scalar fields of a node as returned by single-field writes; tags are not included
+export type NodeState = Omit<Node, 'createdAt' | 'tags'>;
+
+export interface NodeChanges {
+  nodes: Node[];
+  deletedIds: number[];
+  cursor: string;
+  hasMore: boolean;
+}
+
+export interface TagCount {
+  name: string;
+  count: number;
+}
+
+export interface SearchHit {
+  id: number;
+  parentId: number | null;
+  content: string;
+  score: number;
+  matchedFields: string[];
+  snippet: string;
+  highlights: { start: number; end: number }[];
+}
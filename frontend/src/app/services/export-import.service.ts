@@ -86,6 +86,16 @@ export class ExportImportService {
     window.URL.revokeObjectURL(url);
   }
 
+  // Lets the browser stream a server-side export straight to disk
+  downloadUrl(url: string, filename: string): void {
+    const link = document.createElement('a');
+    link.href = url;
+    link.download = filename;
+    document.body.appendChild(link);
+    link.click();
+    document.body.removeChild(link);
+  }
+
   importFromJSON(jsonContent: string): Node[] {
     try {
       const data = JSON.parse(jsonContent);
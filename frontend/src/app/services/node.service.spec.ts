@@ -51,6 +51,29 @@ describe('NodeService', () => {
     req.flush(mockNodes);
   });
 
+  it('should follow cursors until the last page', () => {
+    const second = { ...testNode, id: 2 };
+
+    service.getRootNodes().subscribe(nodes => {
+      expect(nodes).toEqual([testNode, second]);
+    });
+
+    httpMock.expectOne('http://localhost:8080/api/nodes')
+      .flush([testNode], { headers: { 'X-Next-Cursor': 'abc' } });
+    httpMock.expectOne('http://localhost:8080/api/nodes?cursor=abc').flush([second]);
+  });
+
+  it('should get one page of children with cursor and total', () => {
+    service.getChildrenPage(1, 'abc', 50).subscribe(page => {
+      expect(page.items).toEqual([testNode]);
+      expect(page.nextCursor).toBe('def');
+      expect(page.total).toBe(120);
+    });
+
+    httpMock.expectOne('http://localhost:8080/api/nodes/1/children?cursor=abc&limit=50')
+      .flush([testNode], { headers: { 'X-Next-Cursor': 'def', 'X-Total-Count': '120' } });
+  });
+
   it('should get children of a node', () => {
     const mockChildren = [testNode];
     
@@ -63,6 +86,30 @@ describe('NodeService', () => {
     req.flush(mockChildren);
   });
 
+  it('should get the whole tree down to a depth', () => {
+    const mockTree = [{ ...testNode, children: [] }];
+
+    service.getTree(2).subscribe(tree => {
+      expect(tree).toEqual(mockTree);
+    });
+
+    const req = httpMock.expectOne('http://localhost:8080/api/nodes/tree?depth=2');
+    expect(req.request.method).toBe('GET');
+    req.flush(mockTree);
+  });
+
+  it('should get the subtree of a node', () => {
+    const mockTree = { ...testNode, children: [] };
+
+    service.getSubtree(1).subscribe(tree => {
+      expect(tree).toEqual(mockTree);
+    });
+
+    const req = httpMock.expectOne('http://localhost:8080/api/nodes/1/tree');
+    expect(req.request.method).toBe('GET');
+    req.flush(mockTree);
+  });
+
   it('should get a specific node', () => {
     service.getNode(1).subscribe(node => {
       expect(node).toEqual(testNode);
@@ -148,4 +195,89 @@ describe('NodeService', () => {
     expect(req.request.method).toBe('PUT');
     req.flush(testNode);
   });
+
+  it('should run a ranked text search', () => {
+    service.searchText('buy milk', 5).subscribe(hits => {
+      expect(hits.length).toBe(1);
+    });
+
+    const req = httpMock.expectOne('http://localhost:8080/api/nodes/search/text?q=buy%20milk&limit=5');
+    expect(req.request.method).toBe('GET');
+    req.flush([{ id: 1, parentId: null, content: 'Buy milk', score: 1, matchedFields: ['content'], snippet: 'Buy milk', highlights: [] }]);
+  });
+
+  it('should ask for changes since a cursor', () => {
+    service.getChanges('abc', 100).subscribe(changes => {
+      expect(changes.deletedIds).toEqual([4]);
+    });
+
+    const req = httpMock.expectOne('http://localhost:8080/api/nodes/changes?since=abc&limit=100');
+    expect(req.request.method).toBe('GET');
+    req.flush({ nodes: [], deletedIds: [4], cursor: 'def', hasMore: false });
+  });
+
+  it('should set expand state', () => {
+    service.setExpanded(3, false).subscribe(state => {
+      expect(state.isExpanded).toBe(false);
+    });
+
+    const req = httpMock.expectOne('http://localhost:8080/api/nodes/3/expand?expanded=false');
+    expect(req.request.method).toBe('PATCH');
+    req.flush({ id: 3, isExpanded: false });
+  });
+
+  it('should complete a whole subtree', () => {
+    service.setSubtreeCompleted(3, true).subscribe(state => {
+      expect(state.isCompleted).toBe(true);
+    });
+
+    const req = httpMock.expectOne('http://localhost:8080/api/nodes/3/complete-subtree?completed=true');
+    expect(req.request.method).toBe('PATCH');
+    req.flush({ id: 3, content: 'a', parentId: null, position: 0, updatedAt: '', isCompleted: true, version: 2 });
+  });
+
+  it('should fetch tag counts for a subtree', () => {
+    service.getTagCounts(3).subscribe(counts => {
+      expect(counts).toEqual([{ name: 'urgent', count: 2 }]);
+    });
+
+    const req = httpMock.expectOne('http://localhost:8080/api/tags/counts?rootId=3');
+    expect(req.request.method).toBe('GET');
+    req.flush([{ name: 'urgent', count: 2 }]);
+  });
+
+  it('should build export urls', () => {
+    expect(service.exportUrl('md')).toBe('http://localhost:8080/api/nodes/export?format=md');
+    expect(service.exportUrl('opml', 3)).toBe('http://localhost:8080/api/nodes/export?format=opml&rootId=3');
+  });
+
+  it('should send imports as one NDJSON request', () => {
+    const child = { ...testNode, id: 2, parentId: 1, content: 'Child' };
+
+    service.importNodes([testNode, child]).subscribe(result => {
+      expect(result.imported).toBe(2);
+    });
+
+    const req = httpMock.expectOne('http://localhost:8080/api/nodes/import');
+    expect(req.request.method).toBe('POST');
+    expect(req.request.headers.get('Content-Type')).toBe('application/x-ndjson');
+    const lines = (req.request.body as string).split('\n').map(line => JSON.parse(line));
+    expect(lines[1].ref).toBe(2);
+    expect(lines[1].parentRef).toBe(1);
+    req.flush({ imported: 2, elapsedMillis: 3 });
+  });
+
+  it('should post mixed operations as one batch', () => {
+    service.applyOperations([
+      { type: 'create', tempId: 't1', parentId: '1', content: 'New' },
+      { type: 'toggle-star', id: 't1' }
+    ]).subscribe(result => {
+      expect(result.createdIds['t1']).toBe(9);
+    });
+
+    const req = httpMock.expectOne('http://localhost:8080/api/nodes/operations');
+    expect(req.request.method).toBe('POST');
+    expect(req.request.body.length).toBe(2);
+    req.flush({ results: [], createdIds: { t1: 9 } });
+  });
 });
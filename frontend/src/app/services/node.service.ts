@@ -1,7 +1,8 @@
 import { Injectable } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
-import { Node } from '../models/node.model';
+import { HttpClient, HttpHeaders, HttpParams } from '@angular/common/http';
+import { EMPTY, Observable } from 'rxjs';
+import { expand, map, reduce } from 'rxjs/operators';
+import { BatchResult, ImportResult, Node, NodeChanges, NodeEvent, NodeOperation, NodePage, NodeState, NodeTree, SearchHit, TagCount } from '../models/node.model';
 
 @Injectable({
   providedIn: 'root'
@@ -12,11 +13,96 @@ export class NodeService {
   constructor(private http: HttpClient) {}
 
   getRootNodes(): Observable<Node[]> {
-    return this.http.get<Node[]>(this.apiUrl);
+    return this.getAllPages(this.apiUrl);
   }
 
   getChildren(parentId: number): Observable<Node[]> {
-    return this.http.get<Node[]>(`${this.apiUrl}/${parentId}/children`);
+    return this.getAllPages(`${this.apiUrl}/${parentId}/children`);
+  }
+
+  getRootNodesPage(cursor?: string, limit?: number): Observable<NodePage> {
+    return this.getPage(this.apiUrl, cursor, limit);
+  }
+
+  getChildrenPage(parentId: number, cursor?: string, limit?: number): Observable<NodePage> {
+    return this.getPage(`${this.apiUrl}/${parentId}/children`, cursor, limit);
+  }
+
+  getStarredPage(cursor?: string, limit?: number): Observable<NodePage> {
+    return this.getPage(`${this.apiUrl}/starred`, cursor, limit);
+  }
+
+  getTree(depth?: number): Observable<NodeTree[]> {
+    const query = depth !== undefined ? `?depth=${depth}` : '';
+    return this.http.get<NodeTree[]>(`${this.apiUrl}/tree${query}`);
+  }
+
+  getSubtree(id: number, depth?: number): Observable<NodeTree> {
+    const query = depth !== undefined ? `?depth=${depth}` : '';
+    return this.http.get<NodeTree>(`${this.apiUrl}/${id}/tree${query}`);
+  }
+
+  searchText(query: string, limit?: number): Observable<SearchHit[]> {
+    let url = `${this.apiUrl}/search/text?q=${encodeURIComponent(query)}`;
+    if (limit !== undefined) {
+      url += `&limit=${limit}`;
+    }
+    return this.http.get<SearchHit[]>(url);
+  }
+
+  // Delta sync: pass the cursor from the previous response; omit it for a full initial load
+  getChanges(since?: string, limit?: number): Observable<NodeChanges> {
+    let params = new HttpParams();
+    if (since) {
+      params = params.set('since', since);
+    }
+    if (limit !== undefined) {
+      params = params.set('limit', limit);
+    }
+    return this.http.get<NodeChanges>(`${this.apiUrl}/changes`, { params });
+  }
+
+  // Live updates pushed by the server; 'resync' arrives as null, meaning refetch through getChanges()
+  watchEvents(): Observable<NodeEvent[] | null> {
+    return new Observable<NodeEvent[] | null>(subscriber => {
+      const source = new EventSource(`${this.apiUrl}/events`);
+      source.addEventListener('changes', event =>
+        subscriber.next(JSON.parse((event as MessageEvent).data) as NodeEvent[]));
+      source.addEventListener('resync', () => subscriber.next(null));
+      return () => source.close();
+    });
+  }
+
+  // Counted on the server so the sidebar covers nodes that were never loaded
+  getTagCounts(rootId?: number): Observable<TagCount[]> {
+    const query = rootId !== undefined ? `?rootId=${rootId}` : '';
+    return this.http.get<TagCount[]>(`http://localhost:8080/api/tags/counts${query}`);
+  }
+
+  exportUrl(format: 'ndjson' | 'opml' | 'md', rootId?: number): string {
+    const root = rootId !== undefined ? `&rootId=${rootId}` : '';
+    return `${this.apiUrl}/export?format=${format}${root}`;
+  }
+
+  // Nodes reference their parent through ref/parentRef; parents must come before their children
+  importNodes(nodes: Partial<Node>[], parentId?: number): Observable<ImportResult> {
+    const ndjson = nodes.map(node => JSON.stringify({
+      ref: node.id,
+      parentRef: node.parentId,
+      content: node.content,
+      isCompleted: node.isCompleted,
+      isStarred: node.isStarred,
+      notes: node.notes,
+      tags: node.tags
+    })).join('\n');
+    const query = parentId !== undefined ? `?parentId=${parentId}` : '';
+    return this.http.post<ImportResult>(`${this.apiUrl}/import${query}`, ndjson, {
+      headers: new HttpHeaders({ 'Content-Type': 'application/x-ndjson' })
+    });
+  }
+
+  applyOperations(operations: NodeOperation[]): Observable<BatchResult> {
+    return this.http.post<BatchResult>(`${this.apiUrl}/operations`, operations);
   }
 
   getNode(id: number): Observable<Node> {
@@ -31,19 +117,57 @@ export class NodeService {
     return this.http.put<Node>(`${this.apiUrl}/${id}`, node);
   }
 
+  // Expand state is buffered on the server and written shortly after, so this is cheap to call often
+  setExpanded(id: number, expanded: boolean): Observable<{ id: number; isExpanded: boolean }> {
+    return this.http.patch<{ id: number; isExpanded: boolean }>(`${this.apiUrl}/${id}/expand?expanded=${expanded}`, null);
+  }
+
+  // Completes (or reopens) a node and everything below it in one request
+  setSubtreeCompleted(id: number, completed: boolean): Observable<NodeState> {
+    return this.http.patch<NodeState>(`${this.apiUrl}/${id}/complete-subtree?completed=${completed}`, null);
+  }
+
   deleteNode(id: number): Observable<void> {
     return this.http.delete<void>(`${this.apiUrl}/${id}`);
   }
 
-  moveNode(id: number, parentId: number | null, position: number | null): Observable<Node> {
+  // index is the place among the new siblings, not counting the moved node; null appends
+  moveNode(id: number, parentId: number | null, index: number | null): Observable<Node> {
     let url = `${this.apiUrl}/${id}/move?`;
     if (parentId !== null) {
       url += `parentId=${parentId}&`;
     }
-    if (position !== null) {
-      url += `position=${position}`;
+    if (index !== null) {
+      url += `position=${index}`;
     }
     return this.http.put<Node>(url, {});
   }
-}
 
+  // List endpoints are keyset-paginated; the next cursor and total come back as headers
+  private getPage(url: string, cursor?: string, limit?: number): Observable<NodePage> {
+    let params = new HttpParams();
+    if (cursor) {
+      params = params.set('cursor', cursor);
+    }
+    if (limit !== undefined) {
+      params = params.set('limit', limit);
+    }
+    return this.http.get<Node[]>(url, { params, observe: 'response' }).pipe(
+      map(response => {
+        const total = response.headers.get('X-Total-Count');
+        return {
+          items: response.body ?? [],
+          nextCursor: response.headers.get('X-Next-Cursor'),
+          total: total !== null ? Number(total) : null
+        };
+      })
+    );
+  }
+
+  private getAllPages(url: string): Observable<Node[]> {
+    return this.getPage(url).pipe(
+      expand(page => page.nextCursor ? this.getPage(url, page.nextCursor) : EMPTY),
+      reduce((nodes: Node[], page: NodePage) => nodes.concat(page.items), [])
+    );
+  }
+}
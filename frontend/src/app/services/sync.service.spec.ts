@@ -0,0 +1,87 @@
+import { TestBed, fakeAsync, flushMicrotasks } from '@angular/core/testing';
+import { HttpClientTestingModule, HttpTestingController } from '@angular/common/http/testing';
+import { SyncService, SyncOperation } from './sync.service';
+import { StateService } from './state.service';
+import { Node } from '../models/node.model';
+
+describe('SyncService', () => {
+  let service: SyncService;
+  let state: StateService;
+  let httpMock: HttpTestingController;
+
+  const node = (id: number, parentId: number | null, position: number): Node =>
+    ({ id, content: `n${id}`, parentId, position, createdAt: '', updatedAt: '' });
+
+  const ok = { results: [], createdIds: {} };
+
+  beforeEach(() => {
+    TestBed.configureTestingModule({
+      imports: [HttpClientTestingModule]
+    });
+    service = TestBed.inject(SyncService);
+    state = TestBed.inject(StateService);
+    httpMock = TestBed.inject(HttpTestingController);
+  });
+
+  afterEach(() => {
+    httpMock.verify();
+  });
+
+  it('should send a queued move with its sibling index, not its sort key', fakeAsync(() => {
+    // 4 was moved between 2 and 3; positions are sparse sort keys
+    const moved = node(4, 1, 98304);
+    state.setNodes([node(1, null, 65536), node(2, 1, 65536), node(3, 1, 131072), moved]);
+
+    service.queueOperation({ type: 'move', node: moved });
+
+    const req = httpMock.expectOne(r => r.url.endsWith('/operations'));
+    expect(req.request.body).toEqual([{ type: 'move', id: '4', parentId: '1', index: 1 }]);
+    req.flush(ok);
+    flushMicrotasks();
+  }));
+
+  it('should drop and report an operation the server refuses, and send the rest', fakeAsync(() => {
+    const rejected: SyncOperation[] = [];
+    service.rejected$.subscribe(operation => rejected.push(operation));
+
+    service.queueOperation({ type: 'update', node: node(1, null, 0) });
+    const first = httpMock.expectOne(r => r.url.endsWith('/operations'));
+    // Queued while the first batch is in flight, so these two go out together
+    service.queueOperation({ type: 'update', node: node(9, null, 0) });
+    service.queueOperation({ type: 'update', node: node(2, null, 0) });
+    first.flush(ok);
+    flushMicrotasks();
+
+    const batch = httpMock.expectOne(r => r.url.endsWith('/operations'));
+    expect(batch.request.body.length).toBe(2);
+    batch.flush('Operation 0 (update) failed', { status: 404, statusText: 'Not Found' });
+    flushMicrotasks();
+
+    httpMock.expectOne(r => r.body[0].id === '9').flush('', { status: 404, statusText: 'Not Found' });
+    flushMicrotasks();
+    httpMock.expectOne(r => r.body[0].id === '2').flush(ok);
+    flushMicrotasks();
+
+    expect(rejected.map(operation => operation.node.id)).toEqual([9]);
+    expect(service.getPendingCount()).toBe(0);
+  }));
+
+  it('should keep the batch for a retry when the server is unavailable', fakeAsync(() => {
+    let status = '';
+    service.syncStatus$.subscribe(s => status = s);
+
+    service.queueOperation({ type: 'update', node: node(1, null, 0) });
+    httpMock.expectOne(r => r.url.endsWith('/operations')).flush('', { status: 503, statusText: 'Service Unavailable' });
+    flushMicrotasks();
+
+    expect(service.getPendingCount()).toBe(1);
+    expect(status).toBe('error');
+
+    service.syncNow();
+    httpMock.expectOne(r => r.url.endsWith('/operations')).flush(ok);
+    flushMicrotasks();
+
+    expect(service.getPendingCount()).toBe(0);
+    expect(status).toBe('idle');
+  }));
+});
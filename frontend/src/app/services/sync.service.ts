@@ -1,13 +1,17 @@
 import { Injectable } from '@angular/core';
-import { BehaviorSubject, Observable } from 'rxjs';
-import { Node } from '../models/node.model';
+import { HttpErrorResponse } from '@angular/common/http';
+import { BehaviorSubject, Observable, Subject, firstValueFrom } from 'rxjs';
+import { Node, NodeOperation, siblingIndexOf } from '../models/node.model';
 import { NodeService } from './node.service';
+import { StateService } from './state.service';
 
 export interface SyncOperation {
   id: string;
   type: 'create' | 'update' | 'delete' | 'move' | 'toggle-complete' | 'toggle-expand' | 'toggle-star' | 'update-notes';
   node: Node;
   previousState?: Partial<Node>;
+  // For moves: the place among the new siblings when the move was queued, since position is only a sort key
+  index?: number;
   timestamp: number;
   status: 'pending' | 'processing' | 'success' | 'error';
 }
@@ -20,15 +24,25 @@ export class SyncService {
   private isProcessing = false;
   private syncStatusSubject = new BehaviorSubject<'idle' | 'syncing' | 'error'>('idle');
   private pendingCountSubject = new BehaviorSubject<number>(0);
+  private idMappingsSubject = new Subject<{ [tempId: string]: number }>();
+  private rejectedSubject = new Subject<SyncOperation>();
 
   syncStatus$: Observable<'idle' | 'syncing' | 'error'> = this.syncStatusSubject.asObservable();
   pendingCount$: Observable<number> = this.pendingCountSubject.asObservable();
+  // Real ids the server assigned to nodes created under temporary ids
+  idMappings$: Observable<{ [tempId: string]: number }> = this.idMappingsSubject.asObservable();
+  // Operations the server refused with a 4xx; they are dropped instead of retried
+  rejected$: Observable<SyncOperation> = this.rejectedSubject.asObservable();
 
-  constructor(private nodeService: NodeService) {}
+  constructor(private nodeService: NodeService, private stateService: StateService) {}
 
   queueOperation(operation: Omit<SyncOperation, 'id' | 'timestamp' | 'status'>): void {
+    const node = operation.node;
     const syncOperation: SyncOperation = {
       ...operation,
+      index: operation.type === 'move'
+        ? siblingIndexOf(this.stateService.getAllNodes(), node.parentId, node.id, node.position)
+        : undefined,
       id: `${operation.type}-${Date.now()}-${Math.random()}`,
       timestamp: Date.now(),
       status: 'pending'
@@ -51,69 +65,126 @@ export class SyncService {
     this.isProcessing = true;
     this.syncStatusSubject.next('syncing');
 
-    while (this.operationQueue.length > 0) {
-      const operation = this.operationQueue.shift();
-      if (!operation) continue;
-
-      operation.status = 'processing';
-      this.pendingCountSubject.next(this.operationQueue.length);
-
-      try {
-        await this.executeOperation(operation);
-        operation.status = 'success';
-      } catch (error) {
-        console.error('Sync operation failed:', operation, error);
-        operation.status = 'error';
-        // Re-queue failed operations
-        this.operationQueue.push(operation);
-        this.syncStatusSubject.next('error');
-      }
+    // Everything queued so far goes out as one ordered, all-or-nothing batch
+    const batch = this.operationQueue.splice(0);
+    batch.forEach(operation => operation.status = 'processing');
+    this.pendingCountSubject.next(this.operationQueue.length);
+
+    let unsent: SyncOperation[] = [];
+    try {
+      const result = await firstValueFrom(this.nodeService.applyOperations(batch.map(op => this.toBatchOperation(op))));
+      batch.forEach(operation => operation.status = 'success');
+      this.publishIds(result.createdIds);
+    } catch (error) {
+      console.error('Sync batch failed:', batch, error);
+      // A refused operation rolls back the whole batch; replay it one by one so only that one is dropped
+      unsent = this.isRejection(error) ? await this.applyOneByOne(batch) : batch;
+    }
+
+    const failed = unsent.length > 0;
+    if (failed) {
+      unsent.forEach(operation => operation.status = 'error');
+      // Keep them ahead of anything queued meanwhile so order is preserved on retry
+      this.operationQueue.unshift(...unsent);
     }
 
     this.isProcessing = false;
-    this.syncStatusSubject.next(this.operationQueue.length > 0 ? 'error' : 'idle');
+    this.syncStatusSubject.next(failed ? 'error' : 'idle');
     this.pendingCountSubject.next(this.operationQueue.length);
+
+    // Operations queued while the batch was in flight go out in the next one
+    if (!failed && this.operationQueue.length > 0) {
+      await this.processQueue();
+    }
   }
 
-  private async executeOperation(operation: SyncOperation): Promise<void> {
-    // Skip operations on temporary IDs (they start with current timestamp)
-    const currentTime = Date.now();
-    const tempIdThreshold = currentTime - 60000; // 1 minute ago
-    
-    if (operation.node.id > tempIdThreshold) {
-      console.log('Skipping operation on temporary node:', operation.node.id);
-      return;
+  /**
+   * Sends the operations one at a time, dropping and reporting those the server refuses. Returns
+   * the ones still to send if the network or server fails part way.
+   */
+  private async applyOneByOne(batch: SyncOperation[]): Promise<SyncOperation[]> {
+    const createdIds: { [tempId: string]: number } = {};
+    try {
+      for (let i = 0; i < batch.length; i++) {
+        // Earlier operations in this batch may have created nodes that later ones refer to
+        const operation = this.withCreatedIds(batch[i], createdIds);
+        try {
+          const result = await firstValueFrom(this.nodeService.applyOperations([this.toBatchOperation(operation)]));
+          Object.assign(createdIds, result.createdIds);
+          batch[i].status = 'success';
+        } catch (error) {
+          if (!this.isRejection(error)) {
+            return batch.slice(i).map(op => this.withCreatedIds(op, createdIds));
+          }
+          console.error('Sync operation rejected:', operation, error);
+          batch[i].status = 'error';
+          this.rejectedSubject.next(batch[i]);
+        }
+      }
+      return [];
+    } finally {
+      this.publishIds(createdIds);
     }
+  }
+
+  // 4xx means the operation itself is wrong (missing node, stale version); timeouts and throttling are worth retrying
+  private isRejection(error: unknown): boolean {
+    return error instanceof HttpErrorResponse && error.status >= 400 && error.status < 500
+      && error.status !== 408 && error.status !== 429;
+  }
+
+  private withCreatedIds(operation: SyncOperation, createdIds: { [tempId: string]: number }): SyncOperation {
+    const id = createdIds[String(operation.node.id)];
+    const parentId = operation.node.parentId !== null ? createdIds[String(operation.node.parentId)] : undefined;
+    if (id === undefined && parentId === undefined) {
+      return operation;
+    }
+    return {
+      ...operation,
+      node: { ...operation.node, id: id ?? operation.node.id, parentId: parentId ?? operation.node.parentId }
+    };
+  }
+
+  private publishIds(createdIds: { [tempId: string]: number }): void {
+    if (Object.keys(createdIds).length > 0) {
+      this.idMappingsSubject.next(createdIds);
+    }
+  }
+
+  // Ids are timestamps until the server assigns a real one
+  private isTemporaryId(id: number | null): boolean {
+    return id !== null && id > Date.now() - 60000;
+  }
 
+  private toBatchOperation(operation: SyncOperation): NodeOperation {
+    const node = operation.node;
+    const ref = String(node.id);
     switch (operation.type) {
       case 'create':
-        await this.nodeService.createNode(operation.node).toPromise();
-        break;
+        return {
+          type: 'create',
+          tempId: this.isTemporaryId(node.id) ? ref : undefined,
+          parentId: node.parentId !== null ? String(node.parentId) : null,
+          content: node.content,
+          notes: node.notes,
+          tags: node.tags,
+          isCompleted: node.isCompleted,
+          isExpanded: node.isExpanded,
+          isStarred: node.isStarred
+        };
       case 'update':
-        await this.nodeService.updateNode(operation.node.id, operation.node).toPromise();
-        break;
-      case 'delete':
-        await this.nodeService.deleteNode(operation.node.id).toPromise();
-        break;
+        return { type: 'update', id: ref, content: node.content, tags: node.tags };
       case 'move':
-        await this.nodeService.moveNode(
-          operation.node.id,
-          operation.node.parentId,
-          operation.node.position
-        ).toPromise();
-        break;
-      case 'toggle-complete':
-        // This would call a specific endpoint for toggle operations
-        break;
-      case 'toggle-expand':
-        // This would call a specific endpoint for toggle operations
-        break;
-      case 'toggle-star':
-        // This would call a specific endpoint for toggle operations
-        break;
+        return {
+          type: 'move',
+          id: ref,
+          parentId: node.parentId !== null ? String(node.parentId) : null,
+          index: operation.index ?? null
+        };
       case 'update-notes':
-        // This would call a specific endpoint for notes update
-        break;
+        return { type: 'update-notes', id: ref, notes: node.notes };
+      default:
+        return { type: operation.type, id: ref };
     }
   }
 
@@ -1,6 +1,6 @@
 import { Injectable } from '@angular/core';
 import { BehaviorSubject } from 'rxjs';
-import { Node } from '../models/node.model';
+import { Node, TagCount } from '../models/node.model';
 
 @Injectable({
   providedIn: 'root'
@@ -31,6 +31,10 @@ export class TagService {
     this.allTagsSubject.next(tagCounts);
   }
 
+  setTagCounts(counts: TagCount[]): void {
+    this.allTagsSubject.next(new Map(counts.map(c => [c.name, c.count] as [string, number])));
+  }
+
   getAllTags(): string[] {
     return Array.from(this.allTagsSubject.value.keys());
   }